@@ -79,6 +79,7 @@ cat >"$d/.classpath" <<EOF
 	<classpathentry kind="src" path="src/main/resources"/>
         <classpathentry kind="src" path="src/test/java" output="target/bin-test"/>
 	<classpathentry kind="src" path="src/test/resources"/>
+	<classpathentry kind="src" path="src/bench/java" output="target/bin-bench"/>
         <classpathentry kind="src" path="lib/gen-java" output="target/bin"/>
 EOF
 (
@@ -0,0 +1,32 @@
+package net.floodlightcontroller.bench;
+
+/**
+ * One microbenchmark: an operation on a hot path of the controller,
+ * timed by {@link MicrobenchmarkRunner} over many calls.
+ *
+ * The runner passes every call a running count, which benchmarks use to
+ * cycle through pre-built inputs so that the JIT can't specialize on a
+ * single one. Whatever an operation returns is consumed by the runner, so
+ * return the result rather than dropping it.
+ */
+public abstract class Microbenchmark {
+
+    /**
+     * @return the name results are reported and compared under,
+     * e.g. "Ethernet.deserialize"
+     */
+    public abstract String getName();
+
+    /**
+     * Build the inputs. Called once, before the warmup.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Run the operation once.
+     * @param i the number of calls so far
+     * @return the result of the operation
+     */
+    public abstract Object run(int i) throws Exception;
+}
@@ -0,0 +1,332 @@
+package net.floodlightcontroller.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import net.floodlightcontroller.devicemanager.internal.DeviceUniqueIndexBenchmark;
+import net.floodlightcontroller.packet.EthernetDeserializeBenchmark;
+import net.floodlightcontroller.test.BenchmarkReport;
+import net.floodlightcontroller.topology.DijkstraBenchmark;
+import net.floodlightcontroller.util.MatchFromStringBenchmark;
+import net.floodlightcontroller.util.OFMessageDamperBenchmark;
+
+/**
+ * Runs the {@link Microbenchmark}s and reports the time per operation.
+ *
+ * Every benchmark runs in JVMs of its own (forks), started by the runner
+ * with the runner's JVM options. The call to the operation is then only
+ * ever compiled for that benchmark, and nothing profiled or compiled for
+ * one benchmark skews the next. With -forks 0 all benchmarks run in the
+ * runner's JVM, which is quicker but only good for a rough look.
+ *
+ * In each fork, a benchmark gets warmup iterations, whose results are
+ * discarded, and then measured iterations of a fixed length. Within an iteration the
+ * operation is called in batches that grow until a batch takes about a
+ * millisecond, so reading the clock costs little even for operations of a
+ * few nanoseconds. The score of an iteration is its time per operation; a
+ * benchmark reports the mean and spread of its iteration scores over all
+ * forks.
+ *
+ * Results are written as JSON. Given the results of an earlier run as a
+ * baseline, the runner compares the two and exits with status 2 if a
+ * benchmark got slower by more than the threshold and by more than the
+ * noise of both runs.
+ *
+ * Run with "ant bench", e.g.
+ *   ant bench -Dbench.args="-filter Ethernet -baseline target/bench/micro-baseline.json"
+ */
+public class MicrobenchmarkRunner {
+    /* Grow batches until one takes this long */
+    private static final long BATCH_NS = 1000000;
+
+    public static class Settings {
+        @Option(name="-warmup", usage="warmup iterations per benchmark")
+        private int warmup = 5;
+
+        @Option(name="-iterations", usage="measured iterations per benchmark")
+        private int iterations = 10;
+
+        @Option(name="-time", usage="length of an iteration in milliseconds")
+        private long timeMs = 500;
+
+        @Option(name="-forks", usage="JVMs to run each benchmark in; 0 runs all of them in this JVM")
+        private int forks = 1;
+
+        @Option(name="-filter", usage="only run benchmarks whose name matches this regular expression")
+        private String filter = null;
+
+        @Option(name="-out", usage="JSON output file (default stdout)")
+        private String out = null;
+
+        @Option(name="-baseline", usage="JSON results of an earlier run to compare against")
+        private String baseline = null;
+
+        @Option(name="-threshold", usage="slowdown over the baseline, in percent, that counts as a regression")
+        private double threshold = 10;
+    }
+
+    /**
+     * @return every benchmark, in the order they run
+     */
+    static List<Microbenchmark> benchmarks() {
+        return Arrays.<Microbenchmark>asList(
+                new EthernetDeserializeBenchmark(),
+                new MatchFromStringBenchmark(),
+                new DijkstraBenchmark(10),
+                new DijkstraBenchmark(32),
+                new DeviceUniqueIndexBenchmark(10000),
+                new OFMessageDamperBenchmark(1024));
+    }
+
+    private static class Result {
+        final String name;
+        final double[] scores;
+        double mean;
+        double stddev;
+        double min;
+        double max;
+        /* From the baseline, if it has this benchmark */
+        Double baselineMean;
+        Double baselineStddev;
+
+        Result(String name, double[] scores) {
+            this.name = name;
+            this.scores = scores;
+            min = Double.MAX_VALUE;
+            max = 0;
+            double sum = 0;
+            for (double s : scores) {
+                sum += s;
+                min = Math.min(min, s);
+                max = Math.max(max, s);
+            }
+            mean = sum / scores.length;
+            double squares = 0;
+            for (double s : scores) {
+                squares += (s - mean) * (s - mean);
+            }
+            stddev = scores.length > 1 ? Math.sqrt(squares / (scores.length - 1)) : 0;
+        }
+
+        double getChange() {
+            return (mean - baselineMean) / baselineMean * 100;
+        }
+
+        boolean isRegression(double threshold) {
+            return baselineMean != null
+                    && getChange() > threshold
+                    && mean - baselineMean > stddev + baselineStddev;
+        }
+    }
+
+    private final Settings settings;
+
+    /*
+     * The results of the operations end up here. The comparison in consume()
+     * is never true, but the JIT can't know that, so it can't drop the work.
+     */
+    private Object marker = new Object();
+    private volatile Object sink;
+
+    public MicrobenchmarkRunner(Settings settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = new Settings();
+        CmdLineParser parser = new CmdLineParser(settings);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        System.exit(new MicrobenchmarkRunner(settings).run());
+    }
+
+    /**
+     * @return the exit status: 0, or 2 if there are regressions
+     */
+    public int run() throws Exception {
+        Pattern filter = settings.filter == null ? null : Pattern.compile(settings.filter);
+        List<Result> results = new ArrayList<Result>();
+        for (Microbenchmark b : benchmarks()) {
+            if (filter != null && !filter.matcher(b.getName()).find())
+                continue;
+            results.add(settings.forks > 0 ? fork(b.getName()) : measure(b));
+        }
+
+        int regressions = 0;
+        if (settings.baseline != null) {
+            Map<String, JsonNode> baseline = readResults(settings.baseline);
+            for (Result r : results) {
+                JsonNode b = baseline.get(r.name);
+                if (b == null)
+                    continue;
+                r.baselineMean = b.get("mean").asDouble();
+                r.baselineStddev = b.get("stddev").asDouble();
+                boolean regression = r.isRegression(settings.threshold);
+                if (regression) {
+                    regressions++;
+                }
+                System.err.println(String.format("%-50s %10.1f -> %10.1f ns/op %+7.1f%%%s",
+                        r.name, r.baselineMean, r.mean, r.getChange(), regression ? "  REGRESSION" : ""));
+            }
+        }
+        writeResults(results);
+        return regressions > 0 ? 2 : 0;
+    }
+
+    private void consume(Object o) {
+        if (o == marker) {
+            sink = o;
+        }
+    }
+
+    /*
+     * @return the nanoseconds per operation over one iteration
+     */
+    private double iteration(Microbenchmark b, int[] calls) throws Exception {
+        long length = settings.timeMs * 1000000;
+        int batch = 1;
+        int i = calls[0];
+        long ops = 0;
+        long start = System.nanoTime();
+        long now = start;
+        while (now - start < length) {
+            long batchStart = now;
+            for (int n = 0; n < batch; n++) {
+                consume(b.run(i++));
+            }
+            ops += batch;
+            now = System.nanoTime();
+            if (now - batchStart < BATCH_NS && batch < (1 << 30)) {
+                batch <<= 1;
+            }
+        }
+        calls[0] = i;
+        return (double) (now - start) / ops;
+    }
+
+    private Result measure(Microbenchmark b) throws Exception {
+        b.setUp();
+        int[] calls = new int[1];
+        for (int w = 0; w < settings.warmup; w++) {
+            iteration(b, calls);
+        }
+        double[] scores = new double[settings.iterations];
+        for (int m = 0; m < settings.iterations; m++) {
+            scores[m] = iteration(b, calls);
+        }
+        Result r = new Result(b.getName(), scores);
+        System.err.println(String.format("%-50s %10.1f ns/op (+- %.1f)", r.name, r.mean, r.stddev));
+        return r;
+    }
+
+    /*
+     * Measure a benchmark in new JVMs, which run it with -forks 0
+     */
+    private Result fork(String name) throws Exception {
+        List<Double> scores = new ArrayList<Double>();
+        for (int f = 0; f < settings.forks; f++) {
+            File out = File.createTempFile("micro", ".json");
+            try {
+                List<String> cmd = new ArrayList<String>();
+                cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+                cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                cmd.add("-cp");
+                cmd.add(System.getProperty("java.class.path"));
+                cmd.add(MicrobenchmarkRunner.class.getName());
+                cmd.addAll(Arrays.asList("-forks", "0",
+                        "-filter", "^" + Pattern.quote(name) + "$",
+                        "-warmup", Integer.toString(settings.warmup),
+                        "-iterations", Integer.toString(settings.iterations),
+                        "-time", Long.toString(settings.timeMs),
+                        "-out", out.getPath()));
+                int status = new ProcessBuilder(cmd).inheritIO().start().waitFor();
+                if (status != 0) {
+                    throw new IllegalStateException("Fork of " + name + " exited with status " + status);
+                }
+                JsonNode r = readResults(out.getPath()).get(name);
+                if (r == null) {
+                    throw new IllegalStateException("Fork of " + name + " reported no results");
+                }
+                for (JsonNode score : r.get("scores")) {
+                    scores.add(score.asDouble());
+                }
+            } finally {
+                out.delete();
+            }
+        }
+        double[] all = new double[scores.size()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = scores.get(i);
+        }
+        Result r = new Result(name, all);
+        if (settings.forks > 1) {
+            System.err.println(String.format("%-50s %10.1f ns/op (+- %.1f) over %d forks",
+                    r.name, r.mean, r.stddev, settings.forks));
+        }
+        return r;
+    }
+
+    private static Map<String, JsonNode> readResults(String file) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(new File(file));
+        Map<String, JsonNode> byName = new HashMap<String, JsonNode>();
+        for (JsonNode b : root.get("benchmarks")) {
+            byName.put(b.get("name").asText(), b);
+        }
+        return byName;
+    }
+
+    private void writeResults(List<Result> results) throws IOException {
+        BenchmarkReport report = new BenchmarkReport(settings.out);
+        JsonGenerator jGen = report.getGenerator();
+        jGen.writeStartObject();
+        jGen.writeStringField("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        jGen.writeNumberField("forks", settings.forks);
+        jGen.writeNumberField("warmupIterations", settings.warmup);
+        jGen.writeNumberField("iterations", settings.iterations);
+        jGen.writeNumberField("iterationMs", settings.timeMs);
+        jGen.writeArrayFieldStart("benchmarks");
+        for (Result r : results) {
+            jGen.writeStartObject();
+            jGen.writeStringField("name", r.name);
+            jGen.writeStringField("unit", "ns/op");
+            jGen.writeNumberField("mean", r.mean);
+            jGen.writeNumberField("stddev", r.stddev);
+            jGen.writeNumberField("min", r.min);
+            jGen.writeNumberField("max", r.max);
+            jGen.writeArrayFieldStart("scores");
+            for (double s : r.scores) {
+                jGen.writeNumber(s);
+            }
+            jGen.writeEndArray();
+            if (r.baselineMean != null) {
+                jGen.writeNumberField("baselineMean", r.baselineMean);
+                jGen.writeNumberField("changePercent", r.getChange());
+                jGen.writeBooleanField("regression", r.isRegression(settings.threshold));
+            }
+            jGen.writeEndObject();
+        }
+        jGen.writeEndArray();
+        jGen.writeEndObject();
+        report.close();
+    }
+}
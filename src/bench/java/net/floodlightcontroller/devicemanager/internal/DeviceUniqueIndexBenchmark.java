@@ -0,0 +1,56 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.Date;
+import java.util.EnumSet;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.floodlightcontroller.bench.Microbenchmark;
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+
+/**
+ * Lookup of a known host in the primary index of the device manager,
+ * keyed on MAC and VLAN as by default.
+ */
+public class DeviceUniqueIndexBenchmark extends Microbenchmark {
+    private final int devices;
+    private DeviceUniqueIndex index;
+    private Entity[] entities;
+
+    /**
+     * @param devices the number of devices in the index
+     */
+    public DeviceUniqueIndexBenchmark(int devices) {
+        this.devices = devices;
+    }
+
+    @Override
+    public String getName() {
+        return "DeviceUniqueIndex.findByEntity[devices=" + devices + "]";
+    }
+
+    @Override
+    public void setUp() {
+        index = new DeviceUniqueIndex(EnumSet.of(DeviceField.MAC, DeviceField.VLAN));
+        entities = new Entity[devices];
+        Date now = new Date();
+        for (int d = 0; d < devices; d++) {
+            Entity e = new Entity(MacAddress.of(0x020000000000L + d), VlanVid.ZERO,
+                    IPv4Address.of(0x0a000000 + d), DatapathId.of(d / 48 + 1),
+                    OFPort.of(d % 48 + 1), now);
+            index.updateIndex(e, Long.valueOf(d));
+            /* Packet-ins bring new entity objects, not the indexed ones */
+            entities[d] = new Entity(e.getMacAddress(), e.getVlan(), e.getIpv4Address(),
+                    e.getSwitchDPID(), e.getSwitchPort(), now);
+        }
+    }
+
+    @Override
+    public Object run(int i) {
+        return index.findByEntity(entities[i % devices]);
+    }
+}
@@ -0,0 +1,78 @@
+package net.floodlightcontroller.packet;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+
+import net.floodlightcontroller.bench.Microbenchmark;
+
+/**
+ * Full decode of the frames a packet-in carries: TCP, UDP, ICMP and ARP,
+ * in turn.
+ */
+public class EthernetDeserializeBenchmark extends Microbenchmark {
+    private byte[][] frames;
+
+    @Override
+    public String getName() {
+        return "Ethernet.deserialize";
+    }
+
+    private static Ethernet ipv4(IPacket l4, IpProtocol proto) {
+        return new Ethernet()
+            .setSourceMACAddress(MacAddress.of("00:00:00:00:00:01"))
+            .setDestinationMACAddress(MacAddress.of("00:00:00:00:00:02"))
+            .setEtherType(EthType.IPv4)
+            .setPayload(new IPv4()
+                .setTtl((byte) 64)
+                .setProtocol(proto)
+                .setSourceAddress(IPv4Address.of("10.0.0.1"))
+                .setDestinationAddress(IPv4Address.of("10.0.0.2"))
+                .setPayload(l4));
+    }
+
+    @Override
+    public void setUp() {
+        TCP tcp = new TCP()
+            .setSourcePort(49152)
+            .setDestinationPort(80)
+            .setFlags((short) 0x02);
+        tcp.setPayload(new Data(new byte[64]));
+        UDP udp = new UDP()
+            .setSourcePort((short) 5000)
+            .setDestinationPort((short) 5001);
+        udp.setPayload(new Data(new byte[64]));
+        ICMP icmp = new ICMP()
+            .setIcmpType((byte) 8)
+            .setIcmpCode((byte) 0);
+        icmp.setPayload(new Data(new byte[56]));
+        Ethernet arp = new Ethernet()
+            .setSourceMACAddress(MacAddress.of("00:00:00:00:00:01"))
+            .setDestinationMACAddress(MacAddress.BROADCAST)
+            .setEtherType(EthType.ARP);
+        arp.setPayload(new ARP()
+            .setHardwareType(ARP.HW_TYPE_ETHERNET)
+            .setProtocolType(ARP.PROTO_TYPE_IP)
+            .setHardwareAddressLength((byte) 6)
+            .setProtocolAddressLength((byte) 4)
+            .setOpCode(ARP.OP_REQUEST)
+            .setSenderHardwareAddress(MacAddress.of("00:00:00:00:00:01").getBytes())
+            .setSenderProtocolAddress(IPv4Address.of("10.0.0.1").getInt())
+            .setTargetHardwareAddress(new byte[6])
+            .setTargetProtocolAddress(IPv4Address.of("10.0.0.2").getInt()));
+
+        frames = new byte[][] {
+            ipv4(tcp, IpProtocol.TCP).serialize(),
+            ipv4(udp, IpProtocol.UDP).serialize(),
+            ipv4(icmp, IpProtocol.ICMP).serialize(),
+            arp.serialize()
+        };
+    }
+
+    @Override
+    public Object run(int i) {
+        byte[] frame = frames[i & 3];
+        return new Ethernet().deserialize(frame, 0, frame.length);
+    }
+}
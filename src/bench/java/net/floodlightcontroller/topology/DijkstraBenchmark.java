@@ -0,0 +1,67 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.bench.Microbenchmark;
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * One shortest-path tree over a square grid of switches. TopologyInstance
+ * computes one for every switch of a cluster on each topology change. The
+ * root moves around the grid.
+ */
+public class DijkstraBenchmark extends Microbenchmark {
+    private final int side;
+    private TopologyInstance topology;
+    private Cluster cluster;
+    private List<DatapathId> roots;
+
+    /**
+     * @param side the grid has side x side switches
+     */
+    public DijkstraBenchmark(int side) {
+        this.side = side;
+    }
+
+    @Override
+    public String getName() {
+        return "TopologyInstance.dijkstra[switches=" + side * side + "]";
+    }
+
+    private DatapathId dpid(int row, int column) {
+        return DatapathId.of(row * side + column + 1);
+    }
+
+    /* Both directions, as link discovery reports them */
+    private void link(DatapathId a, OFPort pa, DatapathId b, OFPort pb) {
+        cluster.addLink(new Link(a, pa, b, pb));
+        cluster.addLink(new Link(b, pb, a, pa));
+    }
+
+    @Override
+    public void setUp() {
+        topology = new TopologyInstance();
+        cluster = new Cluster();
+        roots = new ArrayList<DatapathId>();
+        /* Port 1 east, 2 west, 3 south, 4 north */
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                DatapathId sw = dpid(r, c);
+                roots.add(sw);
+                if (c + 1 < side)
+                    link(sw, OFPort.of(1), dpid(r, c + 1), OFPort.of(2));
+                if (r + 1 < side)
+                    link(sw, OFPort.of(3), dpid(r + 1, c), OFPort.of(4));
+            }
+        }
+    }
+
+    @Override
+    public Object run(int i) {
+        return topology.dijkstra(cluster, roots.get(i % roots.size()), null, true);
+    }
+}
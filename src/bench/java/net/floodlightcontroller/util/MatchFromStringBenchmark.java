@@ -0,0 +1,28 @@
+package net.floodlightcontroller.util;
+
+import org.projectfloodlight.openflow.protocol.OFVersion;
+
+import net.floodlightcontroller.bench.Microbenchmark;
+
+/**
+ * Parsing of the match strings that static flows and the REST API use.
+ */
+public class MatchFromStringBenchmark extends Microbenchmark {
+    private static final String[] MATCHES = {
+        "in_port=1,eth_type=0x800,ipv4_src=10.0.0.1,ipv4_dst=10.0.0.2,ip_proto=6,tcp_dst=80",
+        "eth_dst=00:00:00:00:00:02,eth_vlan_vid=10",
+        "in_port=3,eth_type=0x806,arp_tpa=10.0.0.2",
+        /* Transport port before the protocol: parsed on a second pass */
+        "udp_dst=53,eth_type=0x800,ip_proto=17,ipv4_dst=10.0.0.0/255.255.255.0"
+    };
+
+    @Override
+    public String getName() {
+        return "MatchUtils.fromString";
+    }
+
+    @Override
+    public Object run(int i) {
+        return MatchUtils.fromString(MATCHES[i & 3], OFVersion.OF_13);
+    }
+}
@@ -0,0 +1,84 @@
+package net.floodlightcontroller.util;
+
+import java.util.Collections;
+import java.util.EnumSet;
+
+import org.projectfloodlight.openflow.protocol.OFControllerRole;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.bench.Microbenchmark;
+import net.floodlightcontroller.core.internal.MockOFConnection;
+import net.floodlightcontroller.core.internal.MockOFSwitchImpl;
+
+/**
+ * Flow-mods through the damper with the settings of ForwardingBase. The
+ * flows repeat, as when the packet-ins of a flow arrive faster than its
+ * flow-mod is installed, so most writes are dampened; the rest expire and
+ * reach the switch.
+ */
+public class OFMessageDamperBenchmark extends Microbenchmark {
+    private final int flows;
+    private OFMessageDamper damper;
+    private MockOFSwitchImpl sw;
+    private OFMessage[] flowMods;
+
+    /**
+     * @param flows the number of distinct flow-mods
+     */
+    public OFMessageDamperBenchmark(int flows) {
+        this.flows = flows;
+    }
+
+    @Override
+    public String getName() {
+        return "OFMessageDamper.write[flows=" + flows + "]";
+    }
+
+    @Override
+    public void setUp() {
+        damper = new OFMessageDamper(10000, EnumSet.of(OFType.FLOW_MOD), 250);
+        /* Discard the writes rather than keep them */
+        MockOFConnection connection = new MockOFConnection(DatapathId.of(1), OFAuxId.MAIN) {
+            @Override
+            public void write(OFMessage m) {
+            }
+        };
+        sw = new MockOFSwitchImpl(connection);
+        sw.setControllerRole(OFControllerRole.ROLE_MASTER);
+
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        flowMods = new OFMessage[flows];
+        for (int f = 0; f < flows; f++) {
+            OFFlowMod.Builder fmb = factory.buildFlowAdd()
+                .setMatch(factory.buildMatch()
+                    .setExact(MatchField.IN_PORT, OFPort.of(f % 48 + 1))
+                    .setExact(MatchField.ETH_DST, MacAddress.of(0x020000000000L + f))
+                    .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                    .setExact(MatchField.IPV4_DST, IPv4Address.of(0x0a000000 + f))
+                    .build())
+                .setIdleTimeout(5)
+                .setPriority(1)
+                .setActions(Collections.<OFAction>singletonList(
+                        factory.actions().output(OFPort.of(f % 48 + 2), Integer.MAX_VALUE)));
+            flowMods[f] = fmb.build();
+        }
+    }
+
+    @Override
+    public Object run(int i) throws Exception {
+        return damper.write(sw, flowMods[i % flows]);
+    }
+}
@@ -17,19 +17,108 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * This is a context object where floodlight listeners can register 
- * and later retrieve context information associated with an
- * event
- * @author readams
+ * Per-message state that the message listeners pass on to each other.
+ *
+ * Every key gets a fixed slot the first time it's used (normally when its
+ * {@link FloodlightContextStore} is created), and the values live in a
+ * plain array indexed by slot. Clearing a context just starts a new
+ * generation, so contexts can be reused without hashing or allocating.
+ *
+ * A context belongs to the thread that is processing its message; it is
+ * not safe to use from several threads at once.
  */
 public class FloodlightContext {
-    protected ConcurrentHashMap<String, Object> storage =
-            new ConcurrentHashMap<String, Object>();
+    /* Slot registry, shared by all contexts */
+    private static final ConcurrentHashMap<String, Integer> slotsByKey =
+            new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] keysBySlot = new String[0];
 
+    private Object[] values;
+    /* The generation each value was put in. Values of older generations are gone. */
+    private int[] stamps;
+    private int generation = 1;
+
+    public FloodlightContext() {
+        int n = keysBySlot.length;
+        values = new Object[n];
+        stamps = new int[n];
+    }
+
+    /**
+     * @param key
+     * @return the slot of the key, which is assigned on first use and never changes
+     */
+    static int getSlot(String key) {
+        Integer slot = slotsByKey.get(key);
+        if (slot != null)
+            return slot;
+        return register(key);
+    }
+
+    private static synchronized int register(String key) {
+        Integer slot = slotsByKey.get(key);
+        if (slot != null)
+            return slot;
+        String[] keys = Arrays.copyOf(keysBySlot, keysBySlot.length + 1);
+        keys[keys.length - 1] = key;
+        keysBySlot = keys;
+        slotsByKey.put(key, keys.length - 1);
+        return keys.length - 1;
+    }
+
+    Object get(int slot) {
+        if (slot < stamps.length && stamps[slot] == generation)
+            return values[slot];
+        return null;
+    }
+
+    void put(int slot, Object value) {
+        if (slot >= stamps.length) {
+            /* A key registered after this context was created */
+            int n = Math.max(slot + 1, keysBySlot.length);
+            values = Arrays.copyOf(values, n);
+            stamps = Arrays.copyOf(stamps, n);
+        }
+        values[slot] = value;
+        stamps[slot] = generation;
+    }
+
+    void remove(int slot) {
+        if (slot < stamps.length) {
+            values[slot] = null;
+            stamps[slot] = 0;
+        }
+    }
+
+    /**
+     * Remove all values, so that the context can be reused.
+     */
+    public void clear() {
+        if (++generation == 0) {
+            /* Wrapped around; stamps of 0 mean empty, so really clear once */
+            Arrays.fill(values, null);
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @return a copy of the values in this context, by key
+     * @deprecated this copies; use a {@link FloodlightContextStore} to access values
+     */
+    @Deprecated
     public ConcurrentHashMap<String, Object> getStorage() {
+        String[] keys = keysBySlot;
+        ConcurrentHashMap<String, Object> storage = new ConcurrentHashMap<String, Object>();
+        for (int slot = 0; slot < stamps.length && slot < keys.length; slot++) {
+            Object v = get(slot);
+            if (v != null)
+                storage.put(keys[slot], v);
+        }
         return storage;
     }
 }
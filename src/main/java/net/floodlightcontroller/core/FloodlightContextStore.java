@@ -17,18 +17,92 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.Arrays;
+
+/**
+ * Typed access to values in a {@link FloodlightContext}.
+ *
+ * A store created with a key is bound to that key's slot and can be used
+ * with {@link #get(FloodlightContext)} and friends. The methods that take
+ * a key work for any key; the store remembers the slots of the keys it has
+ * seen, so passing the same few constants costs no hashing either.
+ */
 public class FloodlightContextStore<V> {
-    
+    private static final class KeySlot {
+        final String key;
+        final int slot;
+
+        KeySlot(String key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+
+    private final int boundSlot;
+    /* Copy on write; stores are used with a handful of keys at most */
+    private volatile KeySlot[] known = new KeySlot[0];
+
+    public FloodlightContextStore() {
+        this.boundSlot = -1;
+    }
+
+    /**
+     * @param key, the key to bind this store to
+     */
+    public FloodlightContextStore(String key) {
+        this.boundSlot = FloodlightContext.getSlot(key);
+        this.known = new KeySlot[] { new KeySlot(key, boundSlot) };
+    }
+
+    private int slotOf(String key) {
+        KeySlot[] ks = known;
+        /* Callers pass constants, so identity nearly always matches */
+        for (KeySlot k : ks) {
+            if (k.key == key)
+                return k.slot;
+        }
+        for (KeySlot k : ks) {
+            if (k.key.equals(key))
+                return k.slot;
+        }
+        int slot = FloodlightContext.getSlot(key);
+        synchronized (this) {
+            KeySlot[] more = Arrays.copyOf(known, known.length + 1);
+            more[more.length - 1] = new KeySlot(key, slot);
+            known = more;
+        }
+        return slot;
+    }
+
+    private int boundSlot() {
+        if (boundSlot < 0)
+            throw new IllegalStateException("Store is not bound to a key");
+        return boundSlot;
+    }
+
     @SuppressWarnings("unchecked")
     public V get(FloodlightContext bc, String key) {
-        return (V)bc.storage.get(key);
+        return (V)bc.get(slotOf(key));
     }
     
     public void put(FloodlightContext bc, String key, V value) {
-        bc.storage.put(key, value);
+        bc.put(slotOf(key), value);
     }
     
     public void remove(FloodlightContext bc, String key) {
-        bc.storage.remove(key);
+        bc.remove(slotOf(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(FloodlightContext bc) {
+        return (V)bc.get(boundSlot());
+    }
+
+    public void put(FloodlightContext bc, V value) {
+        bc.put(boundSlot(), value);
+    }
+
+    public void remove(FloodlightContext bc) {
+        bc.remove(boundSlot());
     }
 }
@@ -23,6 +23,7 @@ import java.util.Map;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.util.LoadMonitor;
 
 import org.jboss.netty.util.Timer;
 
@@ -58,10 +59,11 @@ public interface IFloodlightProviderService extends
 
     /**
      * A FloodlightContextStore object that can be used to retrieve the
-     * packet-in payload
+     * packet-in payload. It is bound to CONTEXT_PI_PAYLOAD, so the
+     * payload is simply bcStore.get(cntx).
      */
     public static final FloodlightContextStore<Ethernet> bcStore =
-            new FloodlightContextStore<Ethernet>();
+            new FloodlightContextStore<Ethernet>(CONTEXT_PI_PAYLOAD);
 
     /**
      * Service name used in the service directory representing
@@ -226,6 +228,13 @@ public interface IFloodlightProviderService extends
     */
    public RoleManager getRoleManager();
 
+   /**
+    * Gets the load monitor, which only runs when the controller is started
+    * with -Doverload_drop=true
+    * @return the running load monitor, or null if load monitoring is off
+    */
+   public LoadMonitor getLoadMonitor();
+
    /**
     * Gets the current module loading state.
     * @return the current module loading state.
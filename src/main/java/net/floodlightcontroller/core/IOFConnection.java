@@ -22,8 +22,9 @@ public interface IOFConnection extends IOFMessageWriter {
     Date getConnectedSince();
 
     /**
-     * Flush all flows queued for this switch in the current thread.
-     * NOTE: The contract is limited to the current thread
+     * Write out the packet-outs and flow-mods that are queued for this
+     * connection, by any thread. Queued messages are written out after a
+     * short delay in any case; call this to not wait for it.
      */
     void flush();
 
@@ -283,9 +283,8 @@ public interface IOFSwitch extends IOFMessageWriter {
     OFFactory getOFFactory();
 
     /**
-     * Flush all flows queued for this switch on all connections that were written by the current thread.
-     *
-     *
+     * Flush all flows queued for this switch on all connections, by any thread.
+     * Queued messages are written out after a short delay in any case.
      */
     void flush();
 
@@ -37,9 +37,12 @@ import org.projectfloodlight.openflow.types.DatapathId;
  * a switchAdded() (which happens if the switch has been added and then
  * removed and the remove hasn't been dispatched yet).
  *
- * These lifecycle notification methods are called by a single thread and they
- * will always be called by the same thread.
- * The calls are always in order.
+ * The notifications for one switch are always called in order, by the same
+ * thread. By default, that is a single thread for all switches. If
+ * FloodlightProvider.updateThreads is set above 0, switches are spread over
+ * that many threads instead, and the notifications for different switches
+ * may be called concurrently. Listeners that keep state across switches
+ * must then be thread-safe.
  *
  */
 public interface IOFSwitchListener {
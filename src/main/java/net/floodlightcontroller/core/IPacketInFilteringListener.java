@@ -0,0 +1,18 @@
+package net.floodlightcontroller.core;
+
+/**
+ * A packet-in listener that only wants to see some packet-ins. The
+ * controller doesn't call it for the others, which saves it from
+ * decoding and dismissing them itself.
+ *
+ * Listeners that don't implement this see every packet-in. The filter
+ * only saves work; while listeners are being added or removed, a listener
+ * may still see a packet-in its filter doesn't match.
+ */
+public interface IPacketInFilteringListener extends IOFMessageListener {
+    /**
+     * Called when the listener is added, not per packet.
+     * @return the packet-ins this listener wants to see
+     */
+    public PacketInFilter getPacketInFilter();
+}
@@ -44,6 +44,7 @@ import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import org.projectfloodlight.openflow.protocol.OFErrorMsg;
 import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
 import org.projectfloodlight.openflow.protocol.OFRequest;
 import org.projectfloodlight.openflow.protocol.OFStatsReply;
 import org.projectfloodlight.openflow.protocol.OFStatsReplyFlags;
@@ -74,13 +75,36 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
     private final Channel channel;
     private final OFAuxId auxId;
     private final Timer timer;
+    private final Timer flushTimer;
 
     private final Date connectedSince;
 
     private final Map<Long, Deliverable<?>> xidDeliverableMap;
 
-    protected final static ThreadLocal<List<OFMessage>> localMsgBuffer =
-            new ThreadLocal<List<OFMessage>>();
+    /*
+     * Packet-outs and flow-mods are coalesced into one channel write (and
+     * usually one TCP segment). The batch is written when it reaches
+     * Controller.BATCH_MAX_SIZE messages or about Controller.BATCH_MAX_BYTES,
+     * when any other message is written, when flush() is called (the controller
+     * does so after dispatching each message), or at the latest
+     * Controller.BATCH_MAX_DELAY_MS after its first message was queued. The
+     * latter is kept by a timer of its own, since it needs a much finer tick
+     * than the request timeouts.
+     */
+    private final Object writeLock = new Object();
+    /* All below guarded by writeLock */
+    private List<OFMessage> writeBuffer = new ArrayList<OFMessage>();
+    private int writeBufferBytes;
+    private boolean flushScheduled;
+    private final TimerTask flushTask = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            synchronized (writeLock) {
+                flushScheduled = false;
+                flushWriteBuffer();
+            }
+        }
+    };
 
     private static final long DELIVERABLE_TIME_OUT = 60;
     private static final TimeUnit DELIVERABLE_TIME_OUT_UNIT = TimeUnit.SECONDS;
@@ -95,10 +119,21 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
                         @Nonnull OFAuxId auxId,
                         @Nonnull IDebugCounterService debugCounters,
                         @Nonnull Timer timer) {
+        this(dpid, factory, channel, auxId, debugCounters, timer, timer);
+    }
+
+    public OFConnection(@Nonnull DatapathId dpid,
+                        @Nonnull OFFactory factory,
+                        @Nonnull Channel channel,
+                        @Nonnull OFAuxId auxId,
+                        @Nonnull IDebugCounterService debugCounters,
+                        @Nonnull Timer timer,
+                        @Nonnull Timer flushTimer) {
         Preconditions.checkNotNull(dpid, "dpid");
         Preconditions.checkNotNull(factory, "factory");
         Preconditions.checkNotNull(channel, "channel");
         Preconditions.checkNotNull(timer, "timer");
+        Preconditions.checkNotNull(flushTimer, "flushTimer");
         Preconditions.checkNotNull(debugCounters);
 
         this.listener = NullConnectionListener.INSTANCE;
@@ -110,6 +145,7 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
         this.xidDeliverableMap = new ConcurrentHashMap<>();
         this.counters = new OFConnectionCounters(debugCounters, dpid, this.auxId);
         this.timer = timer;
+        this.flushTimer = flushTimer;
     }
 
     @Override
@@ -121,19 +157,59 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
         }
         if (logger.isDebugEnabled())
             logger.debug("{}: send {}", this, m);
-        List<OFMessage> msgBuffer = localMsgBuffer.get();
-        if (msgBuffer == null) {
-            msgBuffer = new ArrayList<OFMessage>();
-            localMsgBuffer.set(msgBuffer);
+
+        synchronized (writeLock) {
+            writeBuffer.add(m);
+            writeBufferBytes += estimateLength(m);
+            if (!isBatchable(m)
+                    || writeBuffer.size() >= Controller.BATCH_MAX_SIZE
+                    || writeBufferBytes >= Controller.BATCH_MAX_BYTES) {
+                flushWriteBuffer();
+            } else if (!flushScheduled) {
+                /*
+                 * A timeout left over from an earlier batch might flush this
+                 * one sooner, which is fine. We just never hold it longer.
+                 */
+                flushScheduled = true;
+                flushTimer.newTimeout(flushTask, Controller.BATCH_MAX_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
         }
+    }
 
-        counters.updateWriteStats(m);
-        msgBuffer.add(m);
+    private static boolean isBatchable(OFMessage m) {
+        return m.getType() == OFType.PACKET_OUT || m.getType() == OFType.FLOW_MOD;
+    }
 
-        if ((msgBuffer.size() >= Controller.BATCH_MAX_SIZE) || ((m.getType() != OFType.PACKET_OUT) && (m.getType() != OFType.FLOW_MOD))) {
-            this.write(msgBuffer);
-            localMsgBuffer.set(null);
+    /**
+     * Cheap estimate of the encoded length of a batchable message. The
+     * payload of packet-outs is the only part that can be large, so we
+     * count that and assume a fixed size for everything else.
+     */
+    private static int estimateLength(OFMessage m) {
+        if (m.getType() == OFType.PACKET_OUT) {
+            return 64 + ((OFPacketOut) m).getData().length;
+        }
+        return 128;
+    }
+
+    /* Call with writeLock held */
+    private void flushWriteBuffer() {
+        if (writeBuffer.isEmpty()) {
+            return;
+        }
+        /*
+         * Swap in a new buffer first, in case the channel calls back into
+         * us (e.g. on a change of writability) while we write.
+         */
+        List<OFMessage> batch = writeBuffer;
+        writeBuffer = new ArrayList<OFMessage>(batch.size());
+        writeBufferBytes = 0;
+        if (!isConnected()) {
+            if (logger.isDebugEnabled())
+                logger.debug("{}: not connected - dropping {} queued messages", this, batch.size());
+            return;
         }
+        writeToChannel(batch);
     }
 
     @Override
@@ -163,6 +239,19 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
                         String.valueOf(msglist).substring(0, 80));
             return;
         }
+        synchronized (writeLock) {
+            if (writeBuffer.isEmpty()) {
+                writeToChannel(msglist);
+            } else {
+                /* Keep the order, and still use one write */
+                Iterables.addAll(writeBuffer, msglist);
+                flushWriteBuffer();
+            }
+        }
+    }
+
+    /* Call with writeLock held, so that writes reach the channel in order */
+    private void writeToChannel(Iterable<OFMessage> msglist) {
         for (OFMessage m : msglist) {
             if (logger.isTraceEnabled())
                 logger.trace("{}: send {}", this, m);
@@ -288,10 +377,8 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
     @Override
     public void flush() {
-        List<OFMessage> msglist = localMsgBuffer.get();
-        if ((msglist != null) && (msglist.size() > 0)) {
-            this.write(msglist);
-            localMsgBuffer.set(null);
+        synchronized (writeLock) {
+            flushWriteBuffer();
         }
     }
 
@@ -0,0 +1,364 @@
+package net.floodlightcontroller.core;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import net.floodlightcontroller.core.util.ListenerDispatcher;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPacket;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.LazyEthernet;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.packet.UDP;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+/**
+ * The packet-ins a listener wants to see, declared by implementing
+ * {@link IPacketInFilteringListener}.
+ *
+ * The controller sorts each packet-in into a {@link PacketClass} after
+ * reading its headers, and only calls the listeners interested in that
+ * class. Filters on things finer than the class (L4 ports, unusual
+ * ethertypes or IP protocols) are checked per packet, but only for
+ * listeners that have them. For a {@link LazyEthernet}, none of this
+ * decodes the payload.
+ *
+ * Filters are immutable. Combine them with {@link #or(PacketInFilter)}.
+ */
+public final class PacketInFilter {
+    /**
+     * Coarse packet classes. Listener chains are precomputed for each.
+     */
+    public enum PacketClass {
+        LLDP, BDDP, ARP, IPV4_TCP, IPV4_UDP, IPV4_ICMP, IPV4_OTHER, IPV6, OTHER;
+
+        private static final PacketClass[] VALUES = values();
+    }
+
+    private static final short BDDP_VALUE = Ethernet.TYPE_BSN;
+
+    /** A check finer than the packet class */
+    private interface Check {
+        boolean matches(Ethernet eth);
+    }
+
+    /** Matches everything */
+    public static final PacketInFilter ALL;
+
+    static {
+        Map<PacketClass, Check> m = new EnumMap<PacketClass, Check>(PacketClass.class);
+        for (PacketClass c : PacketClass.VALUES) {
+            m.put(c, null);
+        }
+        ALL = new PacketInFilter(m);
+    }
+
+    /* The classes of interest; a null check means the whole class */
+    private final Map<PacketClass, Check> checks;
+
+    private PacketInFilter(Map<PacketClass, Check> checks) {
+        this.checks = checks;
+    }
+
+    /**
+     * @return a filter for LLDP and BDDP (link discovery) packets only
+     */
+    public static PacketInFilter lldpOnly() {
+        return of(null, PacketClass.LLDP, PacketClass.BDDP);
+    }
+
+    /**
+     * @param ethTypes
+     * @return a filter for packets with any of the given ethertypes
+     */
+    public static PacketInFilter ethTypes(EthType... ethTypes) {
+        Map<PacketClass, Check> m = new EnumMap<PacketClass, Check>(PacketClass.class);
+        final Set<Integer> others = new HashSet<Integer>();
+        for (EthType t : ethTypes) {
+            int v = t.getValue();
+            if (v == EthType.LLDP.getValue()) {
+                m.put(PacketClass.LLDP, null);
+            } else if (v == (BDDP_VALUE & 0xffff)) {
+                m.put(PacketClass.BDDP, null);
+            } else if (v == EthType.ARP.getValue()) {
+                m.put(PacketClass.ARP, null);
+            } else if (v == EthType.IPv4.getValue()) {
+                m.put(PacketClass.IPV4_TCP, null);
+                m.put(PacketClass.IPV4_UDP, null);
+                m.put(PacketClass.IPV4_ICMP, null);
+                m.put(PacketClass.IPV4_OTHER, null);
+            } else if (v == EthType.IPv6.getValue()) {
+                m.put(PacketClass.IPV6, null);
+            } else {
+                others.add(v);
+            }
+        }
+        if (!others.isEmpty()) {
+            m.put(PacketClass.OTHER, new Check() {
+                @Override
+                public boolean matches(Ethernet eth) {
+                    return others.contains(etherType(eth));
+                }
+            });
+        }
+        return new PacketInFilter(m);
+    }
+
+    /**
+     * @param protocols
+     * @return a filter for IPv4 packets with any of the given protocols
+     */
+    public static PacketInFilter ipProtocols(IpProtocol... protocols) {
+        Map<PacketClass, Check> m = new EnumMap<PacketClass, Check>(PacketClass.class);
+        final Set<Short> others = new HashSet<Short>();
+        for (IpProtocol p : protocols) {
+            if (p.equals(IpProtocol.TCP)) {
+                m.put(PacketClass.IPV4_TCP, null);
+            } else if (p.equals(IpProtocol.UDP)) {
+                m.put(PacketClass.IPV4_UDP, null);
+            } else if (p.equals(IpProtocol.ICMP)) {
+                m.put(PacketClass.IPV4_ICMP, null);
+            } else {
+                others.add(p.getIpProtocolNumber());
+            }
+        }
+        if (!others.isEmpty()) {
+            m.put(PacketClass.IPV4_OTHER, new Check() {
+                @Override
+                public boolean matches(Ethernet eth) {
+                    return others.contains(ipProtocol(eth));
+                }
+            });
+        }
+        return new PacketInFilter(m);
+    }
+
+    /**
+     * @param ports
+     * @return a filter for IPv4 TCP packets from or to any of the given ports
+     */
+    public static PacketInFilter tcpPorts(TransportPort... ports) {
+        return of(new PortCheck(ports), PacketClass.IPV4_TCP);
+    }
+
+    /**
+     * @param ports
+     * @return a filter for IPv4 UDP packets from or to any of the given ports
+     */
+    public static PacketInFilter udpPorts(TransportPort... ports) {
+        return of(new PortCheck(ports), PacketClass.IPV4_UDP);
+    }
+
+    /**
+     * @param ports
+     * @return a filter for IPv4 TCP and UDP packets from or to any of the given ports
+     */
+    public static PacketInFilter l4Ports(TransportPort... ports) {
+        return of(new PortCheck(ports), PacketClass.IPV4_TCP, PacketClass.IPV4_UDP);
+    }
+
+    private static PacketInFilter of(Check check, PacketClass... classes) {
+        Map<PacketClass, Check> m = new EnumMap<PacketClass, Check>(PacketClass.class);
+        for (PacketClass c : classes) {
+            m.put(c, check);
+        }
+        return new PacketInFilter(m);
+    }
+
+    /**
+     * @param other
+     * @return a filter that matches what either this or the other filter matches
+     */
+    public PacketInFilter or(PacketInFilter other) {
+        Map<PacketClass, Check> m = new EnumMap<PacketClass, Check>(checks);
+        for (Entry<PacketClass, Check> e : other.checks.entrySet()) {
+            PacketClass c = e.getKey();
+            if (!m.containsKey(c)) {
+                m.put(c, e.getValue());
+            } else if (m.get(c) == null || e.getValue() == null) {
+                m.put(c, null);
+            } else {
+                m.put(c, new AnyCheck(m.get(c), e.getValue()));
+            }
+        }
+        return new PacketInFilter(m);
+    }
+
+    /**
+     * @param c
+     * @return true if this filter matches some or all packets of the class
+     */
+    public boolean isInterested(PacketClass c) {
+        return checks.containsKey(c);
+    }
+
+    /**
+     * @param c
+     * @return true if packets of the class must also be checked with {@link #matches}
+     */
+    public boolean needsCheck(PacketClass c) {
+        return checks.get(c) != null;
+    }
+
+    /**
+     * @param c, the class of the packet
+     * @param eth, the packet
+     * @return true if this filter matches the packet
+     */
+    public boolean matches(PacketClass c, Ethernet eth) {
+        if (!checks.containsKey(c))
+            return false;
+        Check check = checks.get(c);
+        return check == null || check.matches(eth);
+    }
+
+    /**
+     * @param eth, a decoded packet
+     * @return the class of the packet
+     */
+    public static PacketClass classify(Ethernet eth) {
+        int t = etherType(eth);
+        if (t == EthType.IPv4.getValue()) {
+            switch (ipProtocol(eth)) {
+            case 6:
+                return PacketClass.IPV4_TCP;
+            case 17:
+                return PacketClass.IPV4_UDP;
+            case 1:
+                return PacketClass.IPV4_ICMP;
+            default:
+                return PacketClass.IPV4_OTHER;
+            }
+        }
+        if (t == EthType.ARP.getValue())
+            return PacketClass.ARP;
+        if (t == EthType.LLDP.getValue())
+            return PacketClass.LLDP;
+        if (t == (BDDP_VALUE & 0xffff))
+            return PacketClass.BDDP;
+        if (t == EthType.IPv6.getValue())
+            return PacketClass.IPV6;
+        return PacketClass.OTHER;
+    }
+
+    /* The helpers below read a LazyEthernet without decoding its payload */
+
+    private static int etherType(Ethernet eth) {
+        if (eth instanceof LazyEthernet)
+            return ((LazyEthernet) eth).getEtherTypeValue();
+        return eth.getEtherType().getValue();
+    }
+
+    /* -1 if not IPv4 */
+    private static short ipProtocol(Ethernet eth) {
+        if (eth instanceof LazyEthernet)
+            return ((LazyEthernet) eth).getIpProtocolNumber();
+        IPacket p = eth.getPayload();
+        return p instanceof IPv4 ? ((IPv4) p).getProtocol().getIpProtocolNumber() : -1;
+    }
+
+    /**
+     * @param listener
+     * @return the filter of the listener, or {@link #ALL} if it doesn't have one
+     */
+    public static PacketInFilter of(IOFMessageListener listener) {
+        if (listener instanceof IPacketInFilteringListener) {
+            PacketInFilter f = ((IPacketInFilteringListener) listener).getPacketInFilter();
+            if (f != null)
+                return f;
+        }
+        return ALL;
+    }
+
+    /**
+     * Sorts packet-in listeners into one chain per {@link PacketClass}, and
+     * keeps each listener's filter with the chain for the per-packet checks.
+     */
+    public static final ListenerDispatcher.IChainClassifier<IOFMessageListener, PacketInFilter> CLASSIFIER =
+            new ListenerDispatcher.IChainClassifier<IOFMessageListener, PacketInFilter>() {
+        @Override
+        public int getChainCount() {
+            return PacketClass.VALUES.length;
+        }
+
+        @Override
+        public PacketInFilter getFilter(IOFMessageListener listener) {
+            return of(listener);
+        }
+
+        @Override
+        public boolean isInterested(PacketInFilter filter, int chain) {
+            return filter.isInterested(PacketClass.VALUES[chain]);
+        }
+
+        @Override
+        public boolean needsCheck(PacketInFilter filter, int chain) {
+            return filter.needsCheck(PacketClass.VALUES[chain]);
+        }
+    };
+
+    private static class PortCheck implements Check {
+        private final int[] ports;
+
+        PortCheck(TransportPort... ports) {
+            this.ports = new int[ports.length];
+            for (int i = 0; i < ports.length; i++) {
+                this.ports[i] = ports[i].getPort();
+            }
+        }
+
+        private boolean contains(int port) {
+            for (int p : ports) {
+                if (p == port)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean matches(Ethernet eth) {
+            if (eth instanceof LazyEthernet) {
+                LazyEthernet lazy = (LazyEthernet) eth;
+                /* -1 for a fragment, which has no L4 header */
+                return contains(lazy.getTransportSource()) || contains(lazy.getTransportDestination());
+            }
+            IPacket l4 = eth.getPayload().getPayload();
+            if (l4 instanceof TCP) {
+                TCP tcp = (TCP) l4;
+                return contains(tcp.getSourcePort().getPort()) || contains(tcp.getDestinationPort().getPort());
+            }
+            if (l4 instanceof UDP) {
+                UDP udp = (UDP) l4;
+                return contains(udp.getSourcePort().getPort()) || contains(udp.getDestinationPort().getPort());
+            }
+            /* e.g. a fragment, which has no L4 header */
+            return false;
+        }
+    }
+
+    private static class AnyCheck implements Check {
+        private final List<Check> checks = new ArrayList<Check>(2);
+
+        AnyCheck(Check a, Check b) {
+            checks.add(a);
+            checks.add(b);
+        }
+
+        @Override
+        public boolean matches(Ethernet eth) {
+            for (Check c : checks) {
+                if (c.matches(eth))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
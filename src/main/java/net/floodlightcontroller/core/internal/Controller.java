@@ -50,6 +50,8 @@ import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitchListener;
 import net.floodlightcontroller.core.LogicalOFMessageCategory;
+import net.floodlightcontroller.core.PacketInFilter;
+import net.floodlightcontroller.core.PacketInFilter.PacketClass;
 import net.floodlightcontroller.core.PortChangeType;
 import net.floodlightcontroller.core.RoleInfo;
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
@@ -57,6 +59,7 @@ import net.floodlightcontroller.core.annotations.LogMessageDocs;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.FloodlightModuleLoader;
 import net.floodlightcontroller.core.util.ListenerDispatcher;
+import net.floodlightcontroller.core.util.ListenerDispatcher.Chain;
 import net.floodlightcontroller.core.web.CoreWebRoutable;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugevent.IDebugEventService;
@@ -70,6 +73,7 @@ import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.types.DatapathId;
 
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.LazyEthernet;
 import net.floodlightcontroller.perfmon.IPktInProcessingTimeService;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.storage.IResultSet;
@@ -112,6 +116,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     protected ListenerDispatcher<HAListenerTypeMarker,IHAListener> haListeners;
     protected Map<String, List<IInfoProvider>> providerMap;
     protected BlockingQueue<IUpdate> updates;
+    // Switch updates, if dispatched on their own threads
+    protected SwitchUpdateQueue switchUpdates;
+    protected int updateThreads = 0;
     protected ControllerCounters counters;
     protected Timer timer;
     
@@ -181,7 +188,13 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     
     // Perf. related configuration
     protected static final int SEND_BUFFER_SIZE = 128 * 1024;
-    public static final int BATCH_MAX_SIZE = 1; //TODO @Ryan this was 100. Causes packet_out messages to stall until 100 accumulated...
+    // Packet-outs and flow-mods are batched per connection, see OFConnection.
+    // A batch is written when it is full or has waited BATCH_MAX_DELAY_MS,
+    // whichever comes first, and after each dispatched message. The delay is
+    // kept by the switch manager's batch flush timer, which ticks that often.
+    public static final int BATCH_MAX_SIZE = 100;
+    public static final int BATCH_MAX_BYTES = SEND_BUFFER_SIZE / 2;
+    public static final int BATCH_MAX_DELAY_MS = 2;
     protected static final boolean ALWAYS_DECODE_ETH = true;
 
     // Set of port name prefixes that will be classified as uplink ports,
@@ -247,6 +260,31 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
          */
         public void dispatch();
     }
+
+    /**
+     * Updates about a single switch. If update threads are configured,
+     * these are dispatched on them, in order for each switch, and may be
+     * coalesced with the queued updates of the same switch.
+     */
+    public interface ISwitchUpdate extends IUpdate {
+        /**
+         * @return the switch this update is about
+         */
+        public DatapathId getSwitchId();
+
+        /**
+         * @param queued an update for the same switch that is still queued
+         * @return true if this update cancels out the queued one and every
+         * update queued after it, so none of them need be dispatched
+         */
+        public boolean cancels(ISwitchUpdate queued);
+
+        /**
+         * @param queued the last update for the same switch that is still queued
+         * @return true if this update adds nothing to the queued one
+         */
+        public boolean isDuplicateOf(ISwitchUpdate queued);
+    }
         
     /**
      * Update message indicating
@@ -400,7 +438,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @param flcontext
      */
     protected void flcontext_free(FloodlightContext flcontext) {
-        flcontext.getStorage().clear();
+        flcontext.clear();
         flcontext_cache.get().push(flcontext);
     }
 
@@ -457,16 +495,33 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                 }
 
                 if (Controller.ALWAYS_DECODE_ETH) {
-                    eth = new Ethernet();
-                    eth.deserialize(pi.getData(), 0, pi.getData().length);
+                    // Headers and payload are decoded when listeners ask for them
+                    eth = new LazyEthernet(pi.getData(), 0, pi.getData().length);
                 }
                 // fall through to default case...
 
             default:
 
                 List<IOFMessageListener> listeners = null;
-                if (messageListeners.containsKey(m.getType())) {
-                    listeners = messageListeners.get(m.getType()).getOrderedListeners();
+                PacketClass packetClass = null;
+                // The filters of the listeners, if some must check the packet
+                List<?> filters = null;
+                ListenerDispatcher<OFType, IOFMessageListener> ldd = messageListeners.get(m.getType());
+                if (ldd != null) {
+                    Chain<IOFMessageListener> chain = null;
+                    if (eth != null) {
+                        // Only the listeners interested in this kind of packet
+                        packetClass = PacketInFilter.classify(eth);
+                        chain = ldd.getChain(packetClass.ordinal());
+                    }
+                    if (chain != null) {
+                        listeners = chain.getListeners();
+                        if (chain.needsCheck()) {
+                            filters = chain.getFilters();
+                        }
+                    } else {
+                        listeners = ldd.getOrderedListeners();
+                    }
                 }
 
                 FloodlightContext bc = null;
@@ -480,18 +535,19 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                         bc = bContext;
                     }
                     if (eth != null) {
-                        IFloodlightProviderService.bcStore.put(bc,
-                                IFloodlightProviderService.CONTEXT_PI_PAYLOAD,
-                                eth);
+                        IFloodlightProviderService.bcStore.put(bc, eth);
                     }
 
                     // Get the starting time (overall and per-component) of
                     // the processing chain for this packet if performance
                     // monitoring is turned on
-                    pktinProcTimeService.bootstrap(listeners);
                     pktinProcTimeService.recordStartTimePktIn();
                     Command cmd;
-                    for (IOFMessageListener listener : listeners) {
+                    for (int i = 0; i < listeners.size(); i++) {
+                        IOFMessageListener listener = listeners.get(i);
+                        if (filters != null && !((PacketInFilter) filters.get(i)).matches(packetClass, eth)) {
+                            continue;
+                        }
                         pktinProcTimeService.recordStartTimeComp(listener);
                         cmd = listener.receive(sw, m, bc);
                         pktinProcTimeService.recordEndTimeComp(listener);
@@ -501,6 +557,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                         }
                     }
                     pktinProcTimeService.recordEndTimePktIn(sw, m, bc);
+
+                    // Don't make what the listeners wrote wait for the batch deadline
+                    sw.flush();
                 } else {
                     if (m.getType() != OFType.BARRIER_REPLY)
                         log.warn("Unhandled OF Message: {} from {}", m, sw);
@@ -545,6 +604,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             messageListeners.get(type);
         if (ldd == null) {
             ldd = new ListenerDispatcher<OFType, IOFMessageListener>();
+            if (type == OFType.PACKET_IN) {
+                ldd.setChainClassifier(PacketInFilter.CLASSIFIER);
+            }
             messageListeners.put(type, ldd);
         }
         ldd.addListener(type, listener);
@@ -696,6 +758,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             logListeners();
         }
 
+        if (switchUpdates != null) {
+            switchUpdates.start();
+        }
         while (true) {
             try {
                 IUpdate update = updates.take();
@@ -733,6 +798,18 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             this.workerThreads = Integer.parseInt(threads);
         }
         log.debug("Number of worker threads set to {}", this.workerThreads);
+
+        String updateThreads = configParams.get("updateThreads");
+        if (!Strings.isNullOrEmpty(updateThreads)) {
+            try {
+                this.updateThreads = Integer.parseInt(updateThreads);
+            } catch (NumberFormatException e) {
+                log.error("Invalid number of update threads {}. Dispatching switch " +
+                          "updates on the main loop.", updateThreads);
+                this.updateThreads = 0;
+            }
+        }
+        log.debug("Number of switch update threads set to {}", this.updateThreads);
     }
 
     /**
@@ -766,8 +843,22 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         this.switchService.addOFSwitchListener(new NotificationSwitchListener());
 
         this.counters = new ControllerCounters(debugCounterService);
+        if (this.updateThreads > 0) {
+            this.switchUpdates = new SwitchUpdateQueue(this.counters, this.debugCounterService,
+                                                      this.updateThreads);
+        }
      }
 
+    /**
+     * Stop the switch update threads, if there are any. Updates still
+     * queued are not dispatched.
+     */
+    void stopSwitchUpdates() {
+        if (switchUpdates != null) {
+            switchUpdates.stop();
+        }
+    }
+
     /**
      * Startup all of the controller's components
      * @param floodlightModuleLoader
@@ -1014,6 +1105,10 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             recommendation=LogMessageDoc.REPORT_CONTROLLER_BUG)
     @Override
     public void addUpdateToQueue(IUpdate update) {
+        if (switchUpdates != null && update instanceof ISwitchUpdate) {
+            switchUpdates.add((ISwitchUpdate) update);
+            return;
+        }
         try {
             this.updates.put(update);
         } catch (InterruptedException e) {
@@ -1027,11 +1122,15 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * Dispatch all updates in the update queue until queue is empty
      */
     void processUpdateQueueForTesting() {
-        while(!updates.isEmpty()) {
-            IUpdate update = updates.poll();
-            if (update != null)
-                update.dispatch();
-        }
+        do {
+            while(!updates.isEmpty()) {
+                IUpdate update = updates.poll();
+                if (update != null)
+                    update.dispatch();
+            }
+            if (switchUpdates != null)
+                switchUpdates.processAllForTesting();
+        } while (!isUpdateQueueEmptyForTesting());
     }
 
     /**
@@ -1039,7 +1138,8 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * check if update queue is empty
      */
     boolean isUpdateQueueEmptyForTesting() {
-        return this.updates.isEmpty();
+        return this.updates.isEmpty() &&
+                (switchUpdates == null || switchUpdates.isEmpty());
     }
 
     /**
@@ -1076,6 +1176,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         return this.roleManager;
     }
 
+    @Override
+    public LoadMonitor getLoadMonitor() {
+        return overload_drop ? this.loadmonitor : null;
+    }
+
     public Optional<ControllerId> getId() {
         short nodeId = this.syncService.getLocalNodeId();
         if(nodeId == ClusterConfig.NODE_ID_UNCONFIGURED)
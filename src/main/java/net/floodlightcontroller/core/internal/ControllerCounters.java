@@ -19,6 +19,12 @@ public class ControllerCounters {
     public final IDebugCounter dispatchMessageWhileStandby;
     public final IDebugCounter dispatchMessage;
     public final IDebugCounter packetIn;
+    public final IDebugCounter updatesQueued;
+    public final IDebugCounter updatesCoalesced;
+    public final IDebugCounter updatesDispatched;
+    public final IDebugCounter updateWaitMicros;
+    public final IDebugCounter updateDispatchMicros;
+    public final IDebugCounter updateDispatchSlow;
 
     public ControllerCounters(IDebugCounterService debugCounters) {
         debugCounters.registerModule(prefix);
@@ -46,5 +52,26 @@ public class ControllerCounters {
                                                            MetaData.ERROR);
         
         packetIn = debugCounters.registerCounter(prefix, "packet-in", "Number of packet_in's seen");
+
+        updatesQueued = debugCounters.registerCounter(prefix, "switch-updates-queued",
+                                                      "Number of switch updates queued for "
+                                                              + "the update threads");
+        updatesCoalesced = debugCounters.registerCounter(prefix, "switch-updates-coalesced",
+                                                         "Number of switch updates never dispatched "
+                                                                 + "because a later update made them "
+                                                                 + "redundant");
+        updatesDispatched = debugCounters.registerCounter(prefix, "switch-updates-dispatched",
+                                                          "Number of switch updates dispatched "
+                                                                  + "by the update threads");
+        updateWaitMicros = debugCounters.registerCounter(prefix, "switch-update-wait-us",
+                                                         "Total microseconds switch updates "
+                                                                 + "spent queued");
+        updateDispatchMicros = debugCounters.registerCounter(prefix, "switch-update-dispatch-us",
+                                                             "Total microseconds spent dispatching "
+                                                                     + "switch updates to the listeners");
+        updateDispatchSlow = debugCounters.registerCounter(prefix, "switch-update-dispatch-slow",
+                                                           "Number of switch updates whose listeners "
+                                                                   + "took over 100ms",
+                                                           MetaData.WARN);
     }
 }
@@ -28,6 +28,8 @@ import net.floodlightcontroller.core.module.Run;
 import org.sdnplatform.sync.ISyncService;
 
 import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IShutdownListener;
+import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
@@ -79,6 +81,7 @@ public class FloodlightProvider implements IFloodlightModule {
         dependencies.add(IOFSwitchService.class);
         dependencies.add(IThreadPoolService.class);
         dependencies.add(ISyncService.class);
+        dependencies.add(IShutdownService.class);
         return dependencies;
     }
 
@@ -107,6 +110,12 @@ public class FloodlightProvider implements IFloodlightModule {
     public void startUp(FloodlightModuleContext context)
             throws FloodlightModuleException {
         controller.startupComponents(context.getModuleLoader());
+        context.getServiceImpl(IShutdownService.class).registerShutdownListener(new IShutdownListener() {
+            @Override
+            public void floodlightIsShuttingDown() {
+                controller.stopSwitchUpdates();
+            }
+        });
     }
     
     @Run(mainLoop=true)
@@ -61,6 +61,7 @@ class OFChannelHandler extends IdleStateAwareChannelHandler {
 	private final SwitchManagerCounters counters;
 	private Channel channel;
 	private final Timer timer;
+	private final Timer flushTimer;
 	private volatile OFChannelState state;
 	private OFFactory factory = OFFactories.getFactory(OFVersion.OF_14);
 	private OFFeaturesReply featuresReply;
@@ -365,11 +366,11 @@ class OFChannelHandler extends IdleStateAwareChannelHandler {
 
 			// Handle non 1.3 connections
 			if(featuresReply.getVersion().compareTo(OFVersion.OF_13) < 0){
-				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, OFAuxId.MAIN, debugCounters, timer);
+				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, OFAuxId.MAIN, debugCounters, timer, flushTimer);
 			}
 			// Handle 1.3 connections
 			else{
-				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, featuresReply.getAuxiliaryId(), debugCounters, timer);
+				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, featuresReply.getAuxiliaryId(), debugCounters, timer, flushTimer);
 
 				// If this is an aux connection, we set a longer echo idle time
 				if (!featuresReply.getAuxiliaryId().equals(OFAuxId.MAIN)) {
@@ -403,11 +404,25 @@ class OFChannelHandler extends IdleStateAwareChannelHandler {
 			@Nonnull ChannelPipeline pipeline,
 			@Nonnull IDebugCounterService debugCounters,
 			@Nonnull Timer timer) {
+		this(switchManager, newConnectionListener, pipeline, debugCounters, timer, timer);
+	}
+
+	/**
+	 * Creates a handler whose connections flush their write batches
+	 * on flushTimer, see {@link OFConnection}.
+	 */
+	OFChannelHandler(@Nonnull IOFSwitchManager switchManager,
+			@Nonnull INewOFConnectionListener newConnectionListener,
+			@Nonnull ChannelPipeline pipeline,
+			@Nonnull IDebugCounterService debugCounters,
+			@Nonnull Timer timer,
+			@Nonnull Timer flushTimer) {
 
 		Preconditions.checkNotNull(switchManager, "switchManager");
 		Preconditions.checkNotNull(newConnectionListener, "connectionOpenedListener");
 		Preconditions.checkNotNull(pipeline, "pipeline");
 		Preconditions.checkNotNull(timer, "timer");
+		Preconditions.checkNotNull(flushTimer, "flushTimer");
 		Preconditions.checkNotNull(debugCounters, "debugCounters");
 
 		this.pipeline = pipeline;
@@ -416,6 +431,7 @@ class OFChannelHandler extends IdleStateAwareChannelHandler {
 		this.counters = switchManager.getCounters();
 		this.state = new InitState();
 		this.timer = timer;
+		this.flushTimer = flushTimer;
 
 		log.debug("constructor on OFChannelHandler {}", String.format("%08x", System.identityHashCode(this)));
 	}
@@ -0,0 +1,240 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nonnull;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitchBackend;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.ICounterSource;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Hands messages received from switches to a fixed set of worker threads,
+ * which run the message listeners, so that the Netty I/O threads only read
+ * and decode. Each switch is always served by the same worker, so the
+ * messages of a switch are dispatched in the order they were received.
+ *
+ * Each worker has a bounded queue. When it's full, packet-ins are dropped
+ * or the I/O thread waits, depending on the {@link QueueFullPolicy}. Other
+ * messages (port status, flow removed, errors, ...) and LLDP/BDDP
+ * packet-ins are never dropped.
+ *
+ * While running, the depth of each worker's queue is exported as the debug
+ * counter dispatch-queue-depth/&lt;worker&gt; of the switch manager.
+ */
+public class OFMessageDispatcher implements ICounterSource {
+    private static final Logger log = LoggerFactory.getLogger(OFMessageDispatcher.class);
+    private static final long DROP_WARN_INTERVAL_MS = 10000;
+    private static final String DEPTH_HIERARCHY = "dispatch-queue-depth";
+
+    public enum QueueFullPolicy {
+        /** drop packet-ins except LLDP/BDDP, wait for room for anything else */
+        DROP_PACKET_IN,
+        /** wait for room, which in turn stops reading from the switch */
+        BLOCK
+    }
+
+    /** Does the actual dispatching, on a worker thread */
+    public interface Handler {
+        void handleMessage(IOFSwitchBackend sw, OFMessage m, FloodlightContext bContext);
+    }
+
+    private static class Item {
+        final IOFSwitchBackend sw;
+        final OFMessage m;
+        final FloodlightContext bContext;
+
+        Item(IOFSwitchBackend sw, OFMessage m, FloodlightContext bContext) {
+            this.sw = sw;
+            this.m = m;
+            this.bContext = bContext;
+        }
+    }
+
+    private final Handler handler;
+    private final SwitchManagerCounters counters;
+    private final IDebugCounterService debugCounterService;
+    private final QueueFullPolicy policy;
+    private final int queueSize;
+    private final BlockingQueue<Item>[] queues;
+    private final Thread[] workers;
+    private IDebugCounter[] depthCounters; /* guarded by this */
+    private volatile boolean running;
+    private volatile long lastDropWarning;
+
+    @SuppressWarnings("unchecked")
+    public OFMessageDispatcher(@Nonnull Handler handler,
+                               @Nonnull SwitchManagerCounters counters,
+                               @Nonnull IDebugCounterService debugCounterService,
+                               int threads, int queueSize,
+                               @Nonnull QueueFullPolicy policy) {
+        Preconditions.checkNotNull(handler, "handler");
+        Preconditions.checkNotNull(counters, "counters");
+        Preconditions.checkNotNull(debugCounterService, "debugCounterService");
+        Preconditions.checkNotNull(policy, "policy");
+        Preconditions.checkArgument(threads > 0, "threads must be > 0");
+        Preconditions.checkArgument(queueSize > 0, "queueSize must be > 0");
+        this.handler = handler;
+        this.counters = counters;
+        this.debugCounterService = debugCounterService;
+        this.policy = policy;
+        this.queueSize = queueSize;
+        this.queues = new BlockingQueue[threads];
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            queues[i] = new ArrayBlockingQueue<Item>(queueSize);
+        }
+    }
+
+    /** Start the worker threads */
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        if (depthCounters == null) {
+            depthCounters = new IDebugCounter[queues.length];
+            debugCounterService.registerCounter(counters.prefix, DEPTH_HIERARCHY,
+                    "Number of messages waiting to be dispatched, per worker");
+            for (int i = 0; i < queues.length; i++) {
+                depthCounters[i] = debugCounterService.registerCounter(counters.prefix,
+                        DEPTH_HIERARCHY + "/" + i,
+                        "Number of messages waiting for dispatcher worker " + i);
+            }
+        }
+        debugCounterService.registerCounterSource(this);
+        for (int i = 0; i < workers.length; i++) {
+            final BlockingQueue<Item> queue = queues[i];
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(queue);
+                }
+            }, "OFMessageDispatcher-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        log.info("Dispatching switch messages on {} threads with queues of {} ({})",
+                 new Object[] { workers.length, queueSize, policy });
+    }
+
+    /** Stop the worker threads. Queued messages are discarded. */
+    public synchronized void stop() {
+        if (running) {
+            debugCounterService.removeCounterSource(this);
+        }
+        running = false;
+        for (Thread t : workers) {
+            if (t != null)
+                t.interrupt();
+        }
+        for (BlockingQueue<Item> q : queues) {
+            q.clear();
+        }
+    }
+
+    /**
+     * Queue a message for dispatching. Called from the I/O threads.
+     * Once the dispatcher is stopped, every message is dropped.
+     * @return false if the message was dropped
+     */
+    public boolean dispatch(IOFSwitchBackend sw, OFMessage m, FloodlightContext bContext) {
+        if (!running) {
+            /* Nothing drains the queues anymore, so don't fill them, let alone wait */
+            counters.dispatchDropped.increment();
+            return false;
+        }
+        BlockingQueue<Item> queue = queues[partition(sw)];
+        Item item = new Item(sw, m, bContext);
+        if (queue.offer(item)) {
+            counters.dispatchQueued.increment();
+            if (queue.size() >= queueSize / 2)
+                counters.dispatchQueueHalfFull.increment();
+            return true;
+        }
+
+        if (policy == QueueFullPolicy.DROP_PACKET_IN && m.getType() == OFType.PACKET_IN
+                && !PacketInAdmission.isPriority((OFPacketIn) m)) {
+            counters.dispatchDropped.increment();
+            long now = System.currentTimeMillis();
+            if (now - lastDropWarning > DROP_WARN_INTERVAL_MS) {
+                lastDropWarning = now;
+                log.warn("Dispatch queue for {} is full. Dropping packet-ins.", sw);
+            }
+            return false;
+        }
+
+        counters.dispatchBlocked.increment();
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            counters.dispatchDropped.increment();
+            return false;
+        }
+        counters.dispatchQueued.increment();
+        return true;
+    }
+
+    /**
+     * @return the number of messages waiting in the queue of each worker
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[queues.length];
+        for (int i = 0; i < queues.length; i++) {
+            depths[i] = queues[i].size();
+        }
+        return depths;
+    }
+
+    /**
+     * Set the depth counters to the current depth of each queue. They are
+     * gauges rather than counts: each export starts them over.
+     */
+    @Override
+    public synchronized void exportCounters() {
+        if (depthCounters == null)
+            return;
+        for (int i = 0; i < queues.length; i++) {
+            depthCounters[i].reset();
+            depthCounters[i].add(queues[i].size());
+        }
+    }
+
+    private int partition(IOFSwitchBackend sw) {
+        int h = sw.getId().hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % queues.length;
+    }
+
+    private void work(BlockingQueue<Item> queue) {
+        while (running) {
+            Item item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                handler.handleMessage(item.sw, item.m, item.bContext);
+            } catch (Throwable t) {
+                /*
+                 * Keep going, even on an Error. Otherwise nothing drains the
+                 * queue, and the I/O threads of its switches block in put().
+                 */
+                counters.dispatchError.increment();
+                log.error("Exception while dispatching " + item.m.getType() + " from " + item.sw, t);
+            }
+        }
+    }
+}
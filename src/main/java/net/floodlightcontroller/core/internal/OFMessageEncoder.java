@@ -27,9 +27,26 @@ import org.projectfloodlight.openflow.protocol.OFMessage;
 /**
  * Encode an openflow message for output into a ChannelBuffer, for use in a
  * netty pipeline
+ *
+ * Messages are first serialized into a scratch buffer that each thread keeps
+ * and reuses, since their length isn't known before they're serialized. The
+ * result is then copied into a buffer of exactly the right size from the
+ * channel's buffer factory, which is the only allocation per write. This
+ * beats growing a fresh dynamic buffer, which reallocates and copies several
+ * times for a large batch.
  * @author readams
  */
 public class OFMessageEncoder extends OneToOneEncoder {
+    private static final int SCRATCH_INITIAL_SIZE = 16 * 1024;
+    /* Don't hold on to scratch buffers that an unusually large batch grew */
+    private static final int SCRATCH_MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ChannelBuffer> scratch = new ThreadLocal<ChannelBuffer>() {
+        @Override
+        protected ChannelBuffer initialValue() {
+            return ChannelBuffers.dynamicBuffer(SCRATCH_INITIAL_SIZE);
+        }
+    };
 
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel,
@@ -40,10 +57,19 @@ public class OFMessageEncoder extends OneToOneEncoder {
         @SuppressWarnings("unchecked")
         Iterable<OFMessage> msgList = (Iterable<OFMessage>)msg;
 
-        ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
-        for (OFMessage ofm :  msgList) {
-            ofm.writeTo(buf);
+        ChannelBuffer buf = scratch.get();
+        buf.clear();
+        try {
+            for (OFMessage ofm :  msgList) {
+                ofm.writeTo(buf);
+            }
+            ChannelBuffer out = channel.getConfig().getBufferFactory().getBuffer(buf.readableBytes());
+            out.writeBytes(buf);
+            return out;
+        } finally {
+            if (buf.capacity() > SCRATCH_MAX_RETAINED_SIZE) {
+                scratch.remove();
+            }
         }
-        return buf;
     }
 }
@@ -3,6 +3,7 @@ package net.floodlightcontroller.core.internal;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +25,7 @@ import net.floodlightcontroller.core.SwitchDescription;
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
 import net.floodlightcontroller.core.annotations.LogMessageDocs;
 import net.floodlightcontroller.core.internal.OFSwitchAppHandshakePlugin.PluginResultType;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 
 import org.projectfloodlight.openflow.protocol.OFBadRequestCode;
 import org.projectfloodlight.openflow.protocol.OFBarrierReply;
@@ -120,6 +122,39 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 
 	protected OFPortDescStatsReply portDescStats;
 
+	/*
+	 * Replies to handshake requests that arrived before the handshake
+	 * reached their phase, in the order they arrived
+	 */
+	private final List<OFMessage> earlyReplies = new ArrayList<OFMessage>();
+	/* The phase of each handshake request, by xid */
+	private final Map<Long, HandshakePhase> requestPhases = new HashMap<Long, HandshakePhase>();
+	private long handshakeStartNs;
+	private long stateEnteredNs;
+
+	/**
+	 * The timed phases of the handshake, in order. The requests of the
+	 * pipelined phases don't depend on each other's replies, so they are
+	 * all sent when the handshake begins. The states still handle the
+	 * replies one phase at a time, so a reply that arrives before the
+	 * handshake reaches its phase is held until then.
+	 */
+	enum HandshakePhase {
+		PORT_DESC(true),
+		CONFIG(true),
+		DESCRIPTION(true),
+		TABLE_FEATURES(true),
+		DRIVER(false),
+		APP(false),
+		ROLE(false);
+
+		final boolean pipelined;
+
+		HandshakePhase(boolean pipelined) {
+			this.pipelined = pipelined;
+		}
+	}
+
 	/**
 	 * When we remove a pending role request and set the role on the switch
 	 * we use this enum to indicate how we arrived at the decision.
@@ -609,6 +644,14 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		void enterState(){
 		}
 
+		/**
+		 * @return the handshake phase of this state, or null if it isn't
+		 * timed as part of the handshake
+		 */
+		HandshakePhase getPhase() {
+			return null;
+		}
+
 		/**
 		 * Is this a state in which the handshake has completed?
 		 * @return true if the handshake is complete
@@ -887,9 +930,10 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	}
 
 	/**
-	 * We are waiting for a features reply message. Once we receive it
-	 * we send a SetConfig request, barrier, and GetConfig request.
-	 * Next stats is WAIT_CONFIG_REPLY or WAIT_SET_L2_TABLE_REPLY
+	 * We are waiting for a port description stats reply message. The
+	 * requests of the later phases have already been sent along with
+	 * the port description request.
+	 * Next state is WAIT_CONFIG_REPLY
 	 */
 	public class WaitPortDescStatsReplyState extends OFSwitchHandshakeState {
 		WaitPortDescStatsReplyState() {
@@ -897,8 +941,8 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		}
 
 		@Override
-		void enterState(){
-			sendPortDescRequest();
+		HandshakePhase getPhase() {
+			return HandshakePhase.PORT_DESC;
 		}
 
 		@Override
@@ -914,8 +958,8 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	}
 
 	/**
-	 * We are waiting for a config reply message. Once we receive it
-	 * we send a DescriptionStatsRequest to the switch.
+	 * We are waiting for a config reply message. The DescriptionStatsRequest
+	 * was sent along with the config requests.
 	 * Next state: WAIT_DESCRIPTION_STAT_REPLY
 	 */
 	public class WaitConfigReplyState extends OFSwitchHandshakeState {
@@ -976,8 +1020,8 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		} 
 
 		@Override
-		void enterState() {
-			sendHandshakeSetConfig();
+		HandshakePhase getPhase() {
+			return HandshakePhase.CONFIG;
 		}
 	}
 
@@ -1047,8 +1091,8 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		}
 
 		@Override
-		void enterState() {
-			sendHandshakeDescriptionStatsRequest();
+		HandshakePhase getPhase() {
+			return HandshakePhase.DESCRIPTION;
 		}
 	}
 	
@@ -1114,13 +1158,16 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		
 		@Override
 		void enterState() {
+			// The request was sent when the handshake began, if the switch has table features
 			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) < 0) {
 				nextState();
-			} else {
-				sendHandshakeTableFeaturesRequest();
 			}
 		}
-		
+
+		@Override
+		HandshakePhase getPhase() {
+			return HandshakePhase.TABLE_FEATURES;
+		}
 	}
 
 	public class WaitSwitchDriverSubHandshakeState extends OFSwitchHandshakeState {
@@ -1129,6 +1176,11 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 			super(false);
 		}
 
+		@Override
+		HandshakePhase getPhase() {
+			return HandshakePhase.DRIVER;
+		}
+
 		@Override
 		void processOFMessage(OFMessage m) {
 			// FIXME: other message to handle here?
@@ -1233,6 +1285,11 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 			return plugin;
 		}
 
+		@Override
+		HandshakePhase getPhase() {
+			return HandshakePhase.APP;
+		}
+
 	}
 
 	/**
@@ -1312,6 +1369,11 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		void enterState(){
 			sendRoleRequest(roleManager.getOFControllerRole());
 		}
+
+		@Override
+		HandshakePhase getPhase() {
+			return HandshakePhase.ROLE;
+		}
 	}
 
 	/**
@@ -1612,10 +1674,12 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 					getSwitchInfoString());
 		}
 
+		handshakeStartNs = System.nanoTime();
+		sendHandshakeRequests();
 		if (this.featuresReply.getVersion().compareTo(OFVersion.OF_13) < 0) {
 			setState(new WaitConfigReplyState());
 		} else {
-			// OF 1.3. Ask for Port Descriptions
+			// OF 1.3. Wait for Port Descriptions
 			setState(new WaitPortDescStatsReplyState());
 		}
 	}
@@ -1718,69 +1782,207 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	 * @param state
 	 */
 	private void setState(OFSwitchHandshakeState state) {
+		recordPhaseTime(this.state, state);
 		this.state = state;
 		state.logState();
 		state.enterState();
+		processEarlyReplies(state);
 	}
 
 	public void processOFMessage(OFMessage m) {
+		if (isEarlyReply(m)) {
+			earlyReplies.add(m);
+			switchManagerCounters.handshakeEarlyReply.increment();
+			return;
+		}
 		state.processOFMessage(m);
 	}
 
+	/**
+	 * @return the handshake phase a message is a reply for, or null if
+	 * it isn't a reply to a pipelined handshake request
+	 */
+	private HandshakePhase getReplyPhase(OFMessage m) {
+		switch (m.getType()) {
+		case GET_CONFIG_REPLY:
+			return HandshakePhase.CONFIG;
+		case STATS_REPLY:
+			switch (((OFStatsReply) m).getStatsType()) {
+			case PORT_DESC:
+				return HandshakePhase.PORT_DESC;
+			case DESC:
+				return HandshakePhase.DESCRIPTION;
+			case TABLE_FEATURES:
+				return HandshakePhase.TABLE_FEATURES;
+			default:
+				return null;
+			}
+		case BARRIER_REPLY:
+		case ERROR:
+			return requestPhases.get(m.getXid());
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the message is a reply for a later phase of the
+	 * handshake than the current one, and must be held until then
+	 */
+	private boolean isEarlyReply(OFMessage m) {
+		HandshakePhase current = state.getPhase();
+		if (current == null || !current.pipelined)
+			return false;
+		HandshakePhase phase = getReplyPhase(m);
+		return phase != null && phase.ordinal() > current.ordinal();
+	}
+
+	/**
+	 * Hand the held replies for the phase of a state that was just
+	 * entered to it, until it moves on
+	 */
+	private void processEarlyReplies(OFSwitchHandshakeState entered) {
+		if (earlyReplies.isEmpty() || this.state != entered)
+			return;
+		HandshakePhase phase = entered.getPhase();
+		if (phase == null || !phase.pipelined) {
+			// The switch replied to a request it already answered
+			log.debug("[{}] - Switch Handshake - dropping {} unexpected replies",
+					getDpid(), earlyReplies.size());
+			earlyReplies.clear();
+			return;
+		}
+		int i = 0;
+		// Processing a reply may enter the next state, which takes over
+		while (this.state == entered && i < earlyReplies.size()) {
+			OFMessage m = earlyReplies.get(i);
+			if (getReplyPhase(m) == phase) {
+				earlyReplies.remove(i);
+				entered.processOFMessage(m);
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Count the time spent in the handshake phase that is left, and the
+	 * whole handshake once it is complete
+	 */
+	private void recordPhaseTime(OFSwitchHandshakeState left, OFSwitchHandshakeState entered) {
+		long now = System.nanoTime();
+		if (left != null && left.getPhase() != null) {
+			getPhaseCounter(left.getPhase()).add(TimeUnit.NANOSECONDS.toMicros(now - stateEnteredNs));
+		}
+		stateEnteredNs = now;
+		if (handshakeStartNs != 0 && entered.isHandshakeComplete()) {
+			switchManagerCounters.handshakeTotalMicros.add(TimeUnit.NANOSECONDS.toMicros(now - handshakeStartNs));
+			switchManagerCounters.handshakeCompleted.increment();
+			handshakeStartNs = 0;
+		}
+	}
+
+	private IDebugCounter getPhaseCounter(HandshakePhase phase) {
+		switch (phase) {
+		case PORT_DESC:
+			return switchManagerCounters.handshakePortDescMicros;
+		case CONFIG:
+			return switchManagerCounters.handshakeConfigMicros;
+		case DESCRIPTION:
+			return switchManagerCounters.handshakeDescriptionMicros;
+		case TABLE_FEATURES:
+			return switchManagerCounters.handshakeTableFeaturesMicros;
+		case DRIVER:
+			return switchManagerCounters.handshakeDriverMicros;
+		case APP:
+			return switchManagerCounters.handshakeAppMicros;
+		default:
+			return switchManagerCounters.handshakeRoleMicros;
+		}
+	}
+
 	public void processWrittenOFMessage(OFMessage m) {
 		state.processWrittenOFMessage(m);
 	}
 
 	/**
-	 * Send the configuration requests to tell the switch we want full
+	 * Send the requests of all the pipelined handshake phases at once:
+	 * port descriptions (OF1.3+), config, description stats and table
+	 * features (OF1.3+)
+	 */
+	private void sendHandshakeRequests() {
+		boolean of13 = factory.getVersion().compareTo(OFVersion.OF_13) >= 0;
+		List<OFMessage> msgList = new ArrayList<OFMessage>();
+		if (of13) {
+			addPortDescRequest(msgList);
+		}
+		addHandshakeSetConfig(msgList);
+		addHandshakeDescriptionStatsRequest(msgList);
+		if (of13) {
+			addHandshakeTableFeaturesRequest(msgList);
+		}
+		mainConnection.write(msgList);
+	}
+
+	private long nextHandshakeXid(HandshakePhase phase) {
+		long xid = handshakeTransactionIds--;
+		requestPhases.put(xid, phase);
+		return xid;
+	}
+
+	/**
+	 * Add the configuration requests to tell the switch we want full
 	 * packets
-	 * @throws IOException
 	 */
-	private void sendHandshakeSetConfig() {
+	private void addHandshakeSetConfig(List<OFMessage> msgList) {
 		// Ensure we receive the full packet via PacketIn
 		// FIXME: We don't set the reassembly flags.
 		OFSetConfig configSet = factory.buildSetConfig()
-				.setXid(handshakeTransactionIds--)
+				.setXid(nextHandshakeXid(HandshakePhase.CONFIG))
 				.setMissSendLen(0xffff)
 				.build();
 
 		// Barrier
 		OFBarrierRequest barrier = factory.buildBarrierRequest()
-				.setXid(handshakeTransactionIds--)
+				.setXid(nextHandshakeXid(HandshakePhase.CONFIG))
 				.build();
 
 		// Verify (need barrier?)
 		OFGetConfigRequest configReq = factory.buildGetConfigRequest()
-				.setXid(handshakeTransactionIds--)
+				.setXid(nextHandshakeXid(HandshakePhase.CONFIG))
 				.build();
-		List<OFMessage> msgList = ImmutableList.<OFMessage>of(configSet, barrier, configReq);
-		mainConnection.write(msgList);
+		msgList.add(configSet);
+		msgList.add(barrier);
+		msgList.add(configReq);
 	}
 
-	protected void sendPortDescRequest() {
-		mainConnection.write(factory.portDescStatsRequest(ImmutableSet.<OFStatsRequestFlags>of()));
+	protected void addPortDescRequest(List<OFMessage> msgList) {
+		msgList.add(factory.buildPortDescStatsRequest()
+				.setXid(nextHandshakeXid(HandshakePhase.PORT_DESC))
+				.setFlags(ImmutableSet.<OFStatsRequestFlags>of())
+				.build());
 	}
 
 	/**
-	 * send a description state request
+	 * add a description state request
 	 */
-	private void sendHandshakeDescriptionStatsRequest() {
+	private void addHandshakeDescriptionStatsRequest(List<OFMessage> msgList) {
 		// Send description stats request to set switch-specific flags
 		OFDescStatsRequest descStatsRequest = factory.buildDescStatsRequest()
-				.setXid(handshakeTransactionIds--)
+				.setXid(nextHandshakeXid(HandshakePhase.DESCRIPTION))
 				.build();
-		mainConnection.write(descStatsRequest);
+		msgList.add(descStatsRequest);
 	}
 	
 	/**
-	 * send a table features request
+	 * add a table features request
 	 */
-	private void sendHandshakeTableFeaturesRequest() {
+	private void addHandshakeTableFeaturesRequest(List<OFMessage> msgList) {
 		OFTableFeaturesStatsRequest tfsr = factory.buildTableFeaturesStatsRequest()
 				/* leave entries blank --> just ask, don't set */
-				.setXid(handshakeTransactionIds--)
+				.setXid(nextHandshakeXid(HandshakePhase.TABLE_FEATURES))
 				.build();
-		mainConnection.write(tfsr);
+		msgList.add(tfsr);
 	}
 
 	OFSwitchHandshakeState getStateForTesting() {
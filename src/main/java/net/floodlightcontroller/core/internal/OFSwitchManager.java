@@ -14,12 +14,14 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HAListenerTypeMarker;
@@ -32,12 +34,15 @@ import net.floodlightcontroller.core.IOFSwitch.SwitchStatus;
 import net.floodlightcontroller.core.IOFSwitchBackend;
 import net.floodlightcontroller.core.IOFSwitchDriver;
 import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.IShutdownListener;
+import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.PortChangeType;
 import net.floodlightcontroller.core.SwitchDescription;
 import net.floodlightcontroller.core.SwitchSyncRepresentation;
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
 import net.floodlightcontroller.core.annotations.LogMessageDocs;
+import net.floodlightcontroller.core.internal.Controller.ISwitchUpdate;
 import net.floodlightcontroller.core.internal.Controller.IUpdate;
 import net.floodlightcontroller.core.internal.Controller.ModuleLoaderState;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -50,12 +55,15 @@ import net.floodlightcontroller.debugevent.IDebugEventService;
 import net.floodlightcontroller.debugevent.IDebugEventService.EventType;
 import net.floodlightcontroller.debugevent.IEventCategory;
 import net.floodlightcontroller.debugevent.MockDebugEventService;
+import net.floodlightcontroller.util.LoadMonitor;
 
 import org.projectfloodlight.openflow.protocol.OFControllerRole;
 import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
@@ -117,6 +125,26 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	private Set<LogicalOFMessageCategory> logicalOFMessageCategories = new CopyOnWriteArraySet<LogicalOFMessageCategory>();
 	private final List<IAppHandshakePluginFactory> handshakePlugins = new CopyOnWriteArrayList<IAppHandshakePluginFactory>();
 	private int numRequiredConnections = -1;
+
+	/*
+	 * Passes received messages to the listeners on its own threads, if
+	 * configured. Otherwise, the Netty I/O threads do so themselves.
+	 */
+	private OFMessageDispatcher dispatcher;
+	/*
+	 * Flushes the connections' write batches. It ticks every
+	 * Controller.BATCH_MAX_DELAY_MS, which is far too often for the
+	 * controller's shared timer, so it has one of its own.
+	 */
+	private HashedWheelTimer batchFlushTimer;
+	private static final int DEFAULT_DISPATCHER_QUEUE_SIZE = 1024;
+
+	/*
+	 * Drops packet-ins over the configured rates before they are
+	 * dispatched, or null if packet-ins are not limited.
+	 */
+	private PacketInAdmission admission;
+	private static final int DEFAULT_PACKET_IN_BURST_MS = 100;
 	// Event IDs for debug events
 	protected IEventCategory<SwitchEvent> evSwitch;
 
@@ -127,6 +155,7 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	IFloodlightProviderService floodlightProvider;
 	IDebugEventService debugEventService;
 	IDebugCounterService debugCounterService;
+	IShutdownService shutdownService;
 
 	/** IHAListener Implementation **/
 	@Override
@@ -267,6 +296,9 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 
 		counters.switchDisconnected.increment();
 		this.switches.remove(dpid);
+		if (admission != null) {
+			admission.removeSwitch(dpid);
+		}
 	}
 
 	@Override public void handshakeDisconnected(DatapathId dpid) {
@@ -335,7 +367,7 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	/**
 	 * Update message indicating a switch was added or removed
 	 */
-	class SwitchUpdate implements IUpdate {
+	class SwitchUpdate implements ISwitchUpdate {
 		private final DatapathId swId;
 		private final SwitchUpdateType switchUpdateType;
 		private final OFPortDesc port;
@@ -411,6 +443,43 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 				}
 			}
 		}
+
+		@Override
+		public DatapathId getSwitchId() {
+			return swId;
+		}
+
+		@Override
+		public boolean cancels(ISwitchUpdate queued) {
+			// Nobody has heard of the switch yet, so they needn't hear it's gone
+			return switchUpdateType == SwitchUpdateType.REMOVED
+					&& queued instanceof SwitchUpdate
+					&& ((SwitchUpdate) queued).switchUpdateType == SwitchUpdateType.ADDED;
+		}
+
+		@Override
+		public boolean isDuplicateOf(ISwitchUpdate queued) {
+			if (!(queued instanceof SwitchUpdate))
+				return false;
+			SwitchUpdate other = (SwitchUpdate) queued;
+			if (switchUpdateType != other.switchUpdateType)
+				return false;
+			switch (switchUpdateType) {
+			case OTHERCHANGE:
+				return true;
+			case PORTCHANGED:
+				return changeType == other.changeType && port.equals(other.port);
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "SwitchUpdate [swId=" + swId + ", type=" + switchUpdateType
+					+ (port == null ? "" : ", port=" + port.getPortNo() + ", changeType=" + changeType)
+					+ "]";
+		}
 	}
 
 	/**
@@ -501,7 +570,15 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 
 	@Override
 	public void handleMessage(IOFSwitchBackend sw, OFMessage m, FloodlightContext bContext) {
-		floodlightProvider.handleMessage(sw, m, bContext);
+		if (m.getType() == OFType.PACKET_IN && admission != null
+				&& !admission.admit(sw, (OFPacketIn) m)) {
+			return;
+		}
+		if (dispatcher != null) {
+			dispatcher.dispatch(sw, m, bContext);
+		} else {
+			floodlightProvider.handleMessage(sw, m, bContext);
+		}
 	}
 
 	@Override
@@ -642,6 +719,7 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		l.add(IDebugEventService.class);
 		l.add(IDebugCounterService.class);
 		l.add(ISyncService.class);
+		l.add(IShutdownService.class);
 
 		return l;
 	}
@@ -653,6 +731,7 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		debugEventService = context.getServiceImpl(IDebugEventService.class);
 		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 		syncService = context.getServiceImpl(ISyncService.class);
+		shutdownService = context.getServiceImpl(IShutdownService.class);
 
 		// Module variables
 		switchHandlers = new ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler>();
@@ -765,6 +844,109 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		 * By default, 
 		 */
 		forwardToControllerFlowsUpToTableByDpid = jsonToSwitchTableIdMap(configParams.get("maxTableToReceiveTableMissFlowPerDpid"));
+
+		/*
+		 * Get config for dispatching messages to listeners off of the
+		 * Netty I/O threads. With no threads configured (the default),
+		 * the I/O threads run the listeners themselves.
+		 */
+		dispatcher = createDispatcher(configParams.get("dispatcherThreads"),
+				configParams.get("dispatcherQueueSize"),
+				configParams.get("dispatcherQueueFullPolicy"));
+
+		/*
+		 * Get config for packet-in admission. Rates are packet-ins per
+		 * second; 0 (the default) means no limit.
+		 */
+		admission = createAdmission(configParams.get("packetInRatePerSwitch"),
+				configParams.get("packetInRatePerPort"),
+				configParams.get("packetInBurstMs"),
+				configParams.get("packetInShedOnLoad"));
+	}
+
+	private PacketInAdmission createAdmission(String switchRate, String portRate, String burstMs, String shedOnLoad) {
+		int perSwitch = 0;
+		int perPort = 0;
+		int burst = DEFAULT_PACKET_IN_BURST_MS;
+		try {
+			if (switchRate != null && !switchRate.trim().isEmpty()) {
+				perSwitch = Integer.parseInt(switchRate.trim());
+			}
+			if (portRate != null && !portRate.trim().isEmpty()) {
+				perPort = Integer.parseInt(portRate.trim());
+			}
+			if (burstMs != null && !burstMs.trim().isEmpty()) {
+				burst = Integer.parseInt(burstMs.trim());
+			}
+		} catch (NumberFormatException e) {
+			log.error("Invalid packet-in rates {}/{} or burst {}. Not limiting packet-ins.",
+					new Object[] { switchRate, portRate, burstMs });
+			return null;
+		}
+		boolean shed = shedOnLoad != null && (shedOnLoad.trim().equalsIgnoreCase("yes")
+				|| shedOnLoad.trim().equalsIgnoreCase("true"));
+		if (perSwitch < 0 || perPort < 0 || burst <= 0) {
+			log.error("Invalid packet-in rates {}/{} or burst {}. Not limiting packet-ins.",
+					new Object[] { switchRate, portRate, burstMs });
+			return null;
+		}
+		LoadMonitor loadMonitor = null;
+		if (shed) {
+			// Share the controller's monitor rather than sampling the CPU twice
+			loadMonitor = floodlightProvider.getLoadMonitor();
+			if (loadMonitor == null) {
+				log.warn("packetInShedOnLoad needs the load monitor, which runs with -Doverload_drop=true. Not shedding packet-ins.");
+				shed = false;
+			}
+		}
+		if (perSwitch == 0 && perPort == 0 && !shed) {
+			log.info("Not limiting packet-ins");
+			return null;
+		}
+		log.info("Packet-in rate per switch {}, per port {}, burst {} ms, shedding on load {}",
+				new Object[] { perSwitch, perPort, burst, shed });
+		return new PacketInAdmission(counters, loadMonitor, perSwitch, perPort, burst);
+	}
+
+	private OFMessageDispatcher createDispatcher(String threads, String queueSize, String policy) {
+		int numThreads = 0;
+		int size = DEFAULT_DISPATCHER_QUEUE_SIZE;
+		OFMessageDispatcher.QueueFullPolicy p = OFMessageDispatcher.QueueFullPolicy.DROP_PACKET_IN;
+		try {
+			if (threads != null && !threads.trim().isEmpty()) {
+				numThreads = Integer.parseInt(threads.trim());
+			}
+			if (queueSize != null && !queueSize.trim().isEmpty()) {
+				size = Integer.parseInt(queueSize.trim());
+			}
+		} catch (NumberFormatException e) {
+			log.error("Invalid dispatcher threads {} or queue size {}. Dispatching on the I/O threads.", threads, queueSize);
+			return null;
+		}
+		if (policy != null && !policy.trim().isEmpty()) {
+			try {
+				p = OFMessageDispatcher.QueueFullPolicy.valueOf(policy.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				log.error("Invalid dispatcher queue full policy {}. Using {}.", policy, p);
+			}
+		}
+		if (numThreads <= 0 || size <= 0) {
+			log.info("Dispatching switch messages on the I/O threads");
+			return null;
+		}
+		return new OFMessageDispatcher(new OFMessageDispatcher.Handler() {
+			@Override
+			public void handleMessage(IOFSwitchBackend sw, OFMessage m, FloodlightContext bContext) {
+				floodlightProvider.handleMessage(sw, m, bContext);
+			}
+		}, counters, debugCounterService, numThreads, size, p);
+	}
+
+	/**
+	 * @return the dispatcher, or null if the I/O threads dispatch messages themselves
+	 */
+	OFMessageDispatcher getDispatcher() {
+		return dispatcher;
 	}
 
 	private static Map<DatapathId, TableId> jsonToSwitchTableIdMap(String json) {
@@ -834,6 +1016,19 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	@Override
 	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
 		startUpBase(context);
+		if (dispatcher != null) {
+			dispatcher.start();
+		}
+		batchFlushTimer = new HashedWheelTimer(Controller.BATCH_MAX_DELAY_MS, TimeUnit.MILLISECONDS);
+		shutdownService.registerShutdownListener(new IShutdownListener() {
+			@Override
+			public void floodlightIsShuttingDown() {
+				if (dispatcher != null) {
+					dispatcher.stop();
+				}
+				batchFlushTimer.stop();
+			}
+		});
 		bootstrapNetty();
 	}
 
@@ -867,8 +1062,8 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 			bootstrap.setOption("child.tcpNoDelay", true);
 			bootstrap.setOption("child.sendBufferSize", Controller.SEND_BUFFER_SIZE);
 
-			ChannelPipelineFactory pfact = useSsl ? new OpenflowPipelineFactory(this, floodlightProvider.getTimer(), this, debugCounterService, keyStore, keyStorePassword) :
-				new OpenflowPipelineFactory(this, floodlightProvider.getTimer(), this, debugCounterService);
+			ChannelPipelineFactory pfact = useSsl ? new OpenflowPipelineFactory(this, floodlightProvider.getTimer(), batchFlushTimer, this, debugCounterService, keyStore, keyStorePassword) :
+				new OpenflowPipelineFactory(this, floodlightProvider.getTimer(), batchFlushTimer, this, debugCounterService);
 
 			bootstrap.setPipelineFactory(pfact);
 			InetSocketAddress sa = new InetSocketAddress(floodlightProvider.getOFPort());
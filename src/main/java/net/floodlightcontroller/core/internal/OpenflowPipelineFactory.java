@@ -51,18 +51,20 @@ implements ChannelPipelineFactory, ExternalResourceReleasable {
 	protected IOFSwitchManager switchManager;
 	protected INewOFConnectionListener connectionListener;
 	protected Timer timer;
+	protected Timer flushTimer;
 	protected IdleStateHandler idleHandler;
 	protected ReadTimeoutHandler readTimeoutHandler;
 	protected IDebugCounterService debugCounters;
 	private String keyStore;
 	private String keyStorePassword;
 
-	private void init(IOFSwitchManager switchManager, Timer timer,
+	private void init(IOFSwitchManager switchManager, Timer timer, Timer flushTimer,
 			INewOFConnectionListener connectionListener,
 			IDebugCounterService debugCounters) {
 		this.switchManager = switchManager;
 		this.connectionListener = connectionListener;
 		this.timer = timer;
+		this.flushTimer = flushTimer;
 		this.debugCounters = debugCounters;
 		this.idleHandler = new IdleStateHandler(
 				timer,
@@ -72,21 +74,25 @@ implements ChannelPipelineFactory, ExternalResourceReleasable {
 		this.readTimeoutHandler = new ReadTimeoutHandler(timer, 30);
 	}
 
-	public OpenflowPipelineFactory(IOFSwitchManager switchManager, Timer timer,
+	/**
+	 * @param timer, for idle, read and handshake timeouts
+	 * @param flushTimer, for flushing the connections' write batches
+	 */
+	public OpenflowPipelineFactory(IOFSwitchManager switchManager, Timer timer, Timer flushTimer,
 			INewOFConnectionListener connectionListener,
 			IDebugCounterService debugCounters) {
 		super();
-		init(switchManager,timer, connectionListener, debugCounters);
+		init(switchManager,timer, flushTimer, connectionListener, debugCounters);
 		this.keyStore = null;
 		this.keyStorePassword = null;
 	}
 
-	public OpenflowPipelineFactory(IOFSwitchManager switchManager, Timer timer,
+	public OpenflowPipelineFactory(IOFSwitchManager switchManager, Timer timer, Timer flushTimer,
 			INewOFConnectionListener connectionListener,
 			IDebugCounterService debugCounters,
 			@Nonnull String keyStore, @Nonnull String keyStorePassword) {
 		super();
-		init(switchManager,timer, connectionListener, debugCounters);   
+		init(switchManager,timer, flushTimer, connectionListener, debugCounters);   
 		this.keyStore = keyStore;
 		this.keyStorePassword = keyStorePassword;
 	}
@@ -98,7 +104,8 @@ implements ChannelPipelineFactory, ExternalResourceReleasable {
 				connectionListener,
 				pipeline,
 				debugCounters,
-				timer);
+				timer,
+				flushTimer);
 
 		if (keyStore != null && keyStorePassword != null) {
 			try {
@@ -0,0 +1,243 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.util.LoadMonitor;
+import net.floodlightcontroller.util.LoadMonitor.LoadLevel;
+
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+/**
+ * Decides which packet-ins are passed on to the message listeners, before
+ * they are queued, so that one switch flooding packet-ins can't starve the
+ * others.
+ *
+ * Packet-ins fall into three classes:
+ * <ul>
+ * <li>LLDP and BDDP, which topology depends on, are always admitted.
+ * <li>ARP is limited per switch, by a bucket of its own, so a storm of
+ * other packet-ins doesn't stop hosts from being resolved.
+ * <li>Everything else is limited by a token bucket per switch and one per
+ * ingress port. Under high load (see {@link LoadMonitor}) each packet-in
+ * costs two tokens, and under very high load they are all dropped.
+ * </ul>
+ * A rate of 0 means no limit.
+ */
+public class PacketInAdmission {
+    private static final int ETH_TYPE_VLAN = 0x8100;
+    private static final int ETH_TYPE_ARP = 0x0806;
+    private static final int ETH_TYPE_LLDP = 0x88cc;
+    private static final int ETH_TYPE_BDDP = 0x8942;
+
+    private final SwitchManagerCounters counters;
+    private final LoadMonitor loadMonitor;
+    private final Ticker ticker;
+    private final int switchRate;
+    private final int portRate;
+    private final long burstNanos;
+    private final ConcurrentMap<DatapathId, SwitchBuckets> switches =
+            new ConcurrentHashMap<DatapathId, SwitchBuckets>();
+
+    /**
+     * @param counters
+     * @param loadMonitor drives shedding, or null not to shed
+     * @param switchRate packet-ins per second per switch, or 0
+     * @param portRate packet-ins per second per port, or 0
+     * @param burstMs how many milliseconds worth of packet-ins may come at once
+     */
+    public PacketInAdmission(@Nonnull SwitchManagerCounters counters,
+                             @Nullable LoadMonitor loadMonitor,
+                             int switchRate, int portRate, int burstMs) {
+        this(counters, loadMonitor, switchRate, portRate, burstMs, Ticker.systemTicker());
+    }
+
+    PacketInAdmission(@Nonnull SwitchManagerCounters counters,
+                      @Nullable LoadMonitor loadMonitor,
+                      int switchRate, int portRate, int burstMs,
+                      @Nonnull Ticker ticker) {
+        Preconditions.checkNotNull(counters, "counters");
+        Preconditions.checkNotNull(ticker, "ticker");
+        Preconditions.checkArgument(switchRate >= 0, "switchRate must be >= 0");
+        Preconditions.checkArgument(portRate >= 0, "portRate must be >= 0");
+        Preconditions.checkArgument(burstMs > 0, "burstMs must be > 0");
+        this.counters = counters;
+        this.loadMonitor = loadMonitor;
+        this.ticker = ticker;
+        this.switchRate = switchRate;
+        this.portRate = portRate;
+        this.burstNanos = burstMs * 1000000L;
+    }
+
+    /**
+     * @return true if the packet-in is a priority (LLDP or BDDP) packet-in
+     */
+    public static boolean isPriority(OFPacketIn pi) {
+        int type = getEtherType(pi.getData());
+        return type == ETH_TYPE_LLDP || type == ETH_TYPE_BDDP;
+    }
+
+    /* The ethertype of a frame, after a VLAN tag, or -1 if it's too short */
+    private static int getEtherType(byte[] data) {
+        if (data.length < 14)
+            return -1;
+        int type = ((data[12] & 0xff) << 8) | (data[13] & 0xff);
+        if (type == ETH_TYPE_VLAN) {
+            if (data.length < 18)
+                return -1;
+            type = ((data[16] & 0xff) << 8) | (data[17] & 0xff);
+        }
+        return type;
+    }
+
+    /**
+     * Called for each packet-in before it is queued for the listeners
+     * @return true to pass the packet-in on, false to drop it
+     */
+    public boolean admit(IOFSwitch sw, OFPacketIn pi) {
+        int type = getEtherType(pi.getData());
+        if (type == ETH_TYPE_LLDP || type == ETH_TYPE_BDDP) {
+            counters.packetInPriority.increment();
+            return true;
+        }
+        if (switchRate == 0 && portRate == 0 && loadMonitor == null)
+            return true;
+
+        SwitchBuckets buckets = getBuckets(sw.getId());
+        long now = ticker.read();
+        if (type == ETH_TYPE_ARP) {
+            if (buckets.takeArp(now))
+                return true;
+            counters.packetInOverArpLimit.increment();
+            return false;
+        }
+
+        int cost = 1;
+        if (loadMonitor != null) {
+            LoadLevel level = loadMonitor.getLoadLevel();
+            if (level == LoadLevel.VERYHIGH) {
+                counters.packetInShed.increment();
+                return false;
+            }
+            if (level == LoadLevel.HIGH)
+                cost = 2;
+        }
+        OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
+        switch (buckets.take(inPort, cost, now)) {
+        case SWITCH:
+            counters.packetInOverSwitchLimit.increment();
+            return false;
+        case PORT:
+            counters.packetInOverPortLimit.increment();
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Forget the buckets of a switch that is gone
+     */
+    public void removeSwitch(DatapathId dpid) {
+        switches.remove(dpid);
+    }
+
+    private SwitchBuckets getBuckets(DatapathId dpid) {
+        SwitchBuckets b = switches.get(dpid);
+        if (b == null) {
+            SwitchBuckets created = new SwitchBuckets(ticker.read());
+            b = switches.putIfAbsent(dpid, created);
+            if (b == null)
+                b = created;
+        }
+        return b;
+    }
+
+    private enum Limit { NONE, SWITCH, PORT }
+
+    /* Guarded by itself. A switch is normally served by one thread, so the lock is uncontended. */
+    private class SwitchBuckets {
+        private final TokenBucket data;
+        private final TokenBucket arp;
+        private final Map<OFPort, TokenBucket> ports = new HashMap<OFPort, TokenBucket>();
+
+        SwitchBuckets(long now) {
+            data = switchRate == 0 ? null : new TokenBucket(switchRate, burstNanos, now);
+            arp = switchRate == 0 ? null : new TokenBucket(switchRate, burstNanos, now);
+        }
+
+        synchronized boolean takeArp(long now) {
+            return arp == null || arp.take(1, now);
+        }
+
+        synchronized Limit take(OFPort inPort, int cost, long now) {
+            TokenBucket port = null;
+            if (portRate != 0 && inPort != null) {
+                port = ports.get(inPort);
+                if (port == null) {
+                    port = new TokenBucket(portRate, burstNanos, now);
+                    ports.put(inPort, port);
+                }
+            }
+            // Only take tokens if both buckets have them
+            if (data != null && !data.has(cost, now))
+                return Limit.SWITCH;
+            if (port != null && !port.has(cost, now))
+                return Limit.PORT;
+            if (data != null)
+                data.take(cost, now);
+            if (port != null)
+                port.take(cost, now);
+            return Limit.NONE;
+        }
+    }
+
+    static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long last;
+
+        TokenBucket(int ratePerSecond, long burstNanos, long now) {
+            tokensPerNano = ratePerSecond / 1e9;
+            // Room for at least one packet-in at double cost, however low the rate
+            capacity = Math.max(2.0, tokensPerNano * burstNanos);
+            tokens = capacity;
+            last = now;
+        }
+
+        private void refill(long now) {
+            long elapsed = now - last;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+                last = now;
+            }
+        }
+
+        boolean has(int cost, long now) {
+            refill(now);
+            return tokens >= cost;
+        }
+
+        boolean take(int cost, long now) {
+            refill(now);
+            if (tokens < cost)
+                return false;
+            tokens -= cost;
+            return true;
+        }
+    }
+}
@@ -32,6 +32,26 @@ public class SwitchManagerCounters {
     public final IDebugCounter roleReplyReceived;
     public final IDebugCounter roleReplyErrorUnsupported;
     public final IDebugCounter switchSslConfigurationError;
+    public final IDebugCounter dispatchQueued;
+    public final IDebugCounter dispatchQueueHalfFull;
+    public final IDebugCounter dispatchBlocked;
+    public final IDebugCounter dispatchDropped;
+    public final IDebugCounter dispatchError;
+    public final IDebugCounter packetInPriority;
+    public final IDebugCounter packetInOverSwitchLimit;
+    public final IDebugCounter packetInOverPortLimit;
+    public final IDebugCounter packetInOverArpLimit;
+    public final IDebugCounter packetInShed;
+    public final IDebugCounter handshakePortDescMicros;
+    public final IDebugCounter handshakeConfigMicros;
+    public final IDebugCounter handshakeDescriptionMicros;
+    public final IDebugCounter handshakeTableFeaturesMicros;
+    public final IDebugCounter handshakeDriverMicros;
+    public final IDebugCounter handshakeAppMicros;
+    public final IDebugCounter handshakeRoleMicros;
+    public final IDebugCounter handshakeTotalMicros;
+    public final IDebugCounter handshakeCompleted;
+    public final IDebugCounter handshakeEarlyReply;
 
     public SwitchManagerCounters(IDebugCounterService debugCounters) {
         debugCounters.registerModule(prefix);
@@ -209,6 +229,117 @@ public class SwitchManagerCounters {
                                         "IllegalArgumentException, which is likely " +
                                         "due to the switch trying to speak SSL whereas " +
                                         "the controller wants to use vanilla TCP.");
+
+                    dispatchQueued =
+                            debugCounters.registerCounter(
+                                        prefix, "dispatch-queued",
+                                        "Number of messages queued for a dispatcher " +
+                                        "thread to pass to the message listeners");
+                    dispatchQueueHalfFull =
+                            debugCounters.registerCounter(
+                                        prefix, "dispatch-queue-half-full",
+                                        "Number of messages queued when their dispatcher " +
+                                        "queue was at least half full. A growing count " +
+                                        "means the listeners can't keep up.",
+                                        MetaData.WARN);
+                    dispatchBlocked =
+                            debugCounters.registerCounter(
+                                        prefix, "dispatch-blocked",
+                                        "Number of times reading from a switch paused " +
+                                        "because its dispatcher queue was full",
+                                        MetaData.WARN);
+                    dispatchDropped =
+                            debugCounters.registerCounter(
+                                        prefix, "dispatch-dropped",
+                                        "Number of packet-ins dropped because their " +
+                                        "dispatcher queue was full",
+                                        MetaData.DROP);
+                    dispatchError =
+                            debugCounters.registerCounter(
+                                        prefix, "dispatch-error",
+                                        "Number of messages whose listeners threw an " +
+                                        "exception on a dispatcher thread",
+                                        MetaData.ERROR);
+                    packetInPriority =
+                            debugCounters.registerCounter(
+                                        prefix, "packet-in-priority",
+                                        "Number of LLDP and BDDP packet-ins, which are " +
+                                        "always admitted");
+                    packetInOverSwitchLimit =
+                            debugCounters.registerCounter(
+                                        prefix, "packet-in-over-switch-limit",
+                                        "Number of packet-ins dropped because their switch " +
+                                        "was over its packet-in rate",
+                                        MetaData.DROP);
+                    packetInOverPortLimit =
+                            debugCounters.registerCounter(
+                                        prefix, "packet-in-over-port-limit",
+                                        "Number of packet-ins dropped because their ingress " +
+                                        "port was over its packet-in rate",
+                                        MetaData.DROP);
+                    packetInOverArpLimit =
+                            debugCounters.registerCounter(
+                                        prefix, "packet-in-over-arp-limit",
+                                        "Number of ARP packet-ins dropped because their " +
+                                        "switch was over its ARP rate",
+                                        MetaData.DROP);
+                    packetInShed =
+                            debugCounters.registerCounter(
+                                        prefix, "packet-in-shed",
+                                        "Number of packet-ins dropped because the " +
+                                        "controller was very heavily loaded",
+                                        MetaData.DROP);
+                    handshakePortDescMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-port-desc-us",
+                                        "Total microseconds switch handshakes " +
+                                        "spent waiting in the port description phase");
+                    handshakeConfigMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-config-us",
+                                        "Total microseconds switch handshakes " +
+                                        "spent waiting in the config phase");
+                    handshakeDescriptionMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-description-us",
+                                        "Total microseconds switch handshakes " +
+                                        "spent waiting in the description stats phase");
+                    handshakeTableFeaturesMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-table-features-us",
+                                        "Total microseconds switch handshakes " +
+                                        "spent waiting in the table features phase");
+                    handshakeDriverMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-driver-us",
+                                        "Total microseconds switch handshakes " +
+                                        "spent waiting in the switch driver phase");
+                    handshakeAppMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-app-us",
+                                        "Total microseconds switch handshakes " +
+                                        "spent waiting in the app plugin phase");
+                    handshakeRoleMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-role-us",
+                                        "Total microseconds switch handshakes " +
+                                        "spent waiting in the initial role phase");
+                    handshakeTotalMicros =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-total-us",
+                                        "Total microseconds from the start of a " +
+                                        "switch handshake until it completed");
+                    handshakeCompleted =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-completed",
+                                        "Number of switch handshakes completed, " +
+                                        "for averaging the handshake times");
+                    handshakeEarlyReply =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-early-reply",
+                                        "Number of handshake replies held because " +
+                                        "they arrived before the handshake reached " +
+                                        "their phase");
     }
 
     public String getPrefix(){
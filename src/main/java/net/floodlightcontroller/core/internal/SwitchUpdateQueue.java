@@ -0,0 +1,300 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import net.floodlightcontroller.core.internal.Controller.ISwitchUpdate;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.ICounterSource;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Dispatches switch updates on a small pool of threads. Switches are
+ * partitioned across the threads by DPID, so the updates of a switch are
+ * dispatched in the order they were added, but a burst of updates for
+ * some switches doesn't hold up the others.
+ *
+ * Updates for a switch that are still queued are coalesced when a new one
+ * makes them redundant (see {@link ISwitchUpdate#cancels} and
+ * {@link ISwitchUpdate#isDuplicateOf}). During a mass reconnect, a switch
+ * that was added and removed again before anyone was told is then never
+ * reported at all.
+ *
+ * While running, the number of updates queued for each thread is exported
+ * as the debug counter switch-update-queue-depth/&lt;thread&gt; of the
+ * controller.
+ */
+public class SwitchUpdateQueue implements ICounterSource {
+    private static final Logger log = LoggerFactory.getLogger(SwitchUpdateQueue.class);
+    private static final long SLOW_DISPATCH_NS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final String DEPTH_HIERARCHY = "switch-update-queue-depth";
+
+    private static class Entry {
+        final ISwitchUpdate update;
+        final long queuedAt;
+
+        Entry(ISwitchUpdate update, long queuedAt) {
+            this.update = update;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /*
+     * The queued updates of the switches of one thread. Switches with
+     * updates take turns, one update at a time.
+     */
+    private static class Partition {
+        final Map<DatapathId, ArrayDeque<Entry>> bySwitch = new HashMap<DatapathId, ArrayDeque<Entry>>();
+        final ArrayDeque<DatapathId> ready = new ArrayDeque<DatapathId>();
+        int size;
+    }
+
+    private final ControllerCounters counters;
+    private final IDebugCounterService debugCounterService;
+    private final Partition[] partitions;
+    private final Thread[] workers;
+    private IDebugCounter[] depthCounters; /* guarded by this */
+    private volatile boolean running;
+
+    public SwitchUpdateQueue(@Nonnull ControllerCounters counters,
+                             @Nonnull IDebugCounterService debugCounterService,
+                             int threads) {
+        Preconditions.checkNotNull(counters, "counters");
+        Preconditions.checkNotNull(debugCounterService, "debugCounterService");
+        Preconditions.checkArgument(threads > 0, "threads must be > 0");
+        this.counters = counters;
+        this.debugCounterService = debugCounterService;
+        this.partitions = new Partition[threads];
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            partitions[i] = new Partition();
+        }
+    }
+
+    /** Start the threads */
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        if (depthCounters == null) {
+            depthCounters = new IDebugCounter[partitions.length];
+            debugCounterService.registerCounter(counters.prefix, DEPTH_HIERARCHY,
+                    "Number of switch updates waiting to be dispatched, per thread");
+            for (int i = 0; i < partitions.length; i++) {
+                depthCounters[i] = debugCounterService.registerCounter(counters.prefix,
+                        DEPTH_HIERARCHY + "/" + i,
+                        "Number of switch updates waiting for update thread " + i);
+            }
+        }
+        debugCounterService.registerCounterSource(this);
+        for (int i = 0; i < workers.length; i++) {
+            final Partition p = partitions[i];
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(p);
+                }
+            }, "SwitchUpdates-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /** Stop the threads. Queued updates are kept. */
+    public synchronized void stop() {
+        if (running) {
+            debugCounterService.removeCounterSource(this);
+        }
+        running = false;
+        for (Thread t : workers) {
+            if (t != null)
+                t.interrupt();
+        }
+    }
+
+    /**
+     * Queue an update, or coalesce it with the queued updates of its switch
+     */
+    public void add(ISwitchUpdate update) {
+        Partition p = partitions[partition(update.getSwitchId())];
+        synchronized (p) {
+            ArrayDeque<Entry> queued = p.bySwitch.get(update.getSwitchId());
+            if (queued != null && coalesce(p, queued, update)) {
+                if (queued.isEmpty()) {
+                    p.bySwitch.remove(update.getSwitchId());
+                    p.ready.remove(update.getSwitchId());
+                }
+                return;
+            }
+            if (queued == null) {
+                queued = new ArrayDeque<Entry>();
+                p.bySwitch.put(update.getSwitchId(), queued);
+                p.ready.add(update.getSwitchId());
+            }
+            queued.add(new Entry(update, System.nanoTime()));
+            p.size++;
+            counters.updatesQueued.increment();
+            p.notify();
+        }
+    }
+
+    /* @return true if the update was coalesced and must not be queued */
+    private boolean coalesce(Partition p, ArrayDeque<Entry> queued, ISwitchUpdate update) {
+        Entry last = queued.peekLast();
+        if (last != null && update.isDuplicateOf(last.update)) {
+            counters.updatesCoalesced.increment();
+            return true;
+        }
+        // Find the newest update this one cancels; drop it and all after it
+        int keep = -1;
+        int i = 0;
+        for (Entry e : queued) {
+            if (update.cancels(e.update))
+                keep = i;
+            i++;
+        }
+        if (keep < 0)
+            return false;
+        int dropped = 0;
+        i = 0;
+        for (Iterator<Entry> it = queued.iterator(); it.hasNext(); i++) {
+            it.next();
+            if (i >= keep) {
+                it.remove();
+                dropped++;
+            }
+        }
+        p.size -= dropped;
+        // The new update is dropped too
+        counters.updatesCoalesced.add(dropped + 1);
+        return true;
+    }
+
+    private int partition(DatapathId dpid) {
+        int h = dpid.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % partitions.length;
+    }
+
+    /* @return the next update of the partition, or null if there is none */
+    private Entry poll(Partition p) {
+        DatapathId dpid = p.ready.poll();
+        if (dpid == null)
+            return null;
+        ArrayDeque<Entry> queued = p.bySwitch.get(dpid);
+        Entry e = queued.poll();
+        if (queued.isEmpty()) {
+            p.bySwitch.remove(dpid);
+        } else {
+            p.ready.add(dpid);
+        }
+        p.size--;
+        return e;
+    }
+
+    private void dispatch(Entry e) {
+        long start = System.nanoTime();
+        counters.updateWaitMicros.add(TimeUnit.NANOSECONDS.toMicros(start - e.queuedAt));
+        try {
+            e.update.dispatch();
+        } catch (Throwable ex) {
+            // Keep the thread, or the switches of this partition are never updated again
+            log.error("Exception dispatching switch update " + e.update, ex);
+        }
+        long took = System.nanoTime() - start;
+        counters.updatesDispatched.increment();
+        counters.updateDispatchMicros.add(TimeUnit.NANOSECONDS.toMicros(took));
+        if (took > SLOW_DISPATCH_NS)
+            counters.updateDispatchSlow.increment();
+    }
+
+    private void work(Partition p) {
+        while (running) {
+            Entry e;
+            synchronized (p) {
+                while ((e = poll(p)) == null) {
+                    try {
+                        p.wait();
+                    } catch (InterruptedException ex) {
+                        if (!running)
+                            return;
+                    }
+                }
+            }
+            dispatch(e);
+        }
+    }
+
+    /**
+     * @return true if no updates are queued
+     */
+    public boolean isEmpty() {
+        for (Partition p : partitions) {
+            synchronized (p) {
+                if (p.size > 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of updates queued for each thread
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            synchronized (partitions[i]) {
+                depths[i] = partitions[i].size;
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Set the depth counters to the current depth of each partition. They
+     * are gauges rather than counts: each export starts them over.
+     */
+    @Override
+    public synchronized void exportCounters() {
+        if (depthCounters == null)
+            return;
+        int[] depths = getQueueDepths();
+        for (int i = 0; i < depths.length; i++) {
+            depthCounters[i].reset();
+            depthCounters[i].add(depths[i]);
+        }
+    }
+
+    /**
+     * FOR TESTING ONLY.
+     * Dispatch all queued updates on the calling thread
+     */
+    void processAllForTesting() {
+        // Dispatching may queue more updates, in partitions already drained
+        while (!isEmpty()) {
+            for (Partition p : partitions) {
+                for (;;) {
+                    Entry e;
+                    synchronized (p) {
+                        e = poll(p);
+                    }
+                    if (e == null)
+                        break;
+                    dispatch(e);
+                }
+            }
+        }
+    }
+}
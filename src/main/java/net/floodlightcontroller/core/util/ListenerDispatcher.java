@@ -18,6 +18,7 @@
 package net.floodlightcontroller.core.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 
@@ -29,6 +30,13 @@ import org.slf4j.LoggerFactory;
 /**
  * Maintain lists of listeners ordered by dependency.
  *
+ * Optionally, listeners can be sorted into several chains by an
+ * {@link IChainClassifier}, e.g. one per class of packet. Each chain keeps
+ * the dependency order and is recomputed when the listeners change, so
+ * picking the chain for a message is an array lookup. The classifier's
+ * filter for each listener is computed at the same time and kept next to
+ * the chain, so it isn't asked for again per message.
+ *
  * @author readams
  *
  */
@@ -37,6 +45,108 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
             LoggerFactory.getLogger(ListenerDispatcher.class);
     volatile List<T> listeners = new ArrayList<T>();
 
+    /**
+     * Decides which chains a listener belongs to.
+     *
+     * @param <T> the listener type
+     * @param <F> the filter the classifier derives from a listener
+     */
+    public interface IChainClassifier<T, F> {
+        /** @return the number of chains */
+        int getChainCount();
+
+        /** @return the filter of the listener; called only when the chains are rebuilt */
+        F getFilter(T listener);
+
+        /** @return true if a listener with the filter belongs to the chain */
+        boolean isInterested(F filter, int chain);
+
+        /** @return true if a listener with the filter must still check each message of the chain */
+        boolean needsCheck(F filter, int chain);
+    }
+
+    /**
+     * One chain: its listeners in dependency order, the classifier's filter
+     * of each, and whether any of them must still check each message.
+     * Immutable, so the three always agree.
+     */
+    public static final class Chain<T> {
+        private final List<T> listeners;
+        private final List<?> filters;
+        private final boolean needsCheck;
+
+        Chain(List<T> listeners, List<?> filters, boolean needsCheck) {
+            this.listeners = listeners;
+            this.filters = filters;
+            this.needsCheck = needsCheck;
+        }
+
+        /** @return the listeners of the chain, ordered by dependencies */
+        public List<T> getListeners() {
+            return listeners;
+        }
+
+        /** @return the filters, index for index with {@link #getListeners()} */
+        public List<?> getFilters() {
+            return filters;
+        }
+
+        /** @return true if some listeners of the chain must check each message themselves */
+        public boolean needsCheck() {
+            return needsCheck;
+        }
+    }
+
+    private volatile IChainClassifier<T, ?> classifier;
+    /* Replaced as a whole on every change */
+    private volatile List<Chain<T>> chains;
+
+    /**
+     * Sort the listeners into chains with the given classifier
+     * @param classifier
+     */
+    public synchronized void setChainClassifier(IChainClassifier<T, ?> classifier) {
+        this.classifier = classifier;
+        updateChains();
+    }
+
+    private synchronized void setListeners(List<T> newlisteners) {
+        listeners = newlisteners;
+        updateChains();
+    }
+
+    private void updateChains() {
+        IChainClassifier<T, ?> c = classifier;
+        chains = c == null ? null : buildChains(c, listeners);
+    }
+
+    private static <T, F> List<Chain<T>> buildChains(IChainClassifier<T, F> c, List<T> all) {
+        /* Ask for each filter once, not once per chain or per message */
+        List<F> allFilters = new ArrayList<F>(all.size());
+        for (T l : all) {
+            allFilters.add(c.getFilter(l));
+        }
+        int n = c.getChainCount();
+        List<Chain<T>> result = new ArrayList<Chain<T>>(n);
+        for (int i = 0; i < n; i++) {
+            List<T> chain = new ArrayList<T>();
+            List<F> chainFilters = new ArrayList<F>();
+            boolean needsCheck = false;
+            for (int j = 0; j < all.size(); j++) {
+                F f = allFilters.get(j);
+                if (c.isInterested(f, i)) {
+                    chain.add(all.get(j));
+                    chainFilters.add(f);
+                    needsCheck |= c.needsCheck(f, i);
+                }
+            }
+            result.add(new Chain<T>(Collections.unmodifiableList(chain),
+                                    Collections.unmodifiableList(chainFilters),
+                                    needsCheck));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
     private void visit(List<T> newlisteners, U type, HashSet<T> visited,
                        List<T> ordering, T listener) {
         if (!visited.contains(listener)) {
@@ -92,7 +202,7 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
         if (terminals.size() == 0) {
             logger.error("No listener dependency solution: " +
                          "No listeners without incoming dependencies");
-            listeners = newlisteners;
+            setListeners(newlisteners);
             return;
         }
 
@@ -103,7 +213,7 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
         for (T term : terminals) {
             visit(newlisteners, type, visited, ordering, term);
         }
-        listeners = ordering;
+        setListeners(ordering);
     }
 
     /**
@@ -115,7 +225,7 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
             List<T> newlisteners = new ArrayList<T>();
             newlisteners.addAll(listeners);
             newlisteners.remove(listener);
-            listeners = newlisteners;
+            setListeners(newlisteners);
         }
     }
 
@@ -123,7 +233,7 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
      * Clear all listeners
      */
     public void clearListeners() {
-        listeners = new ArrayList<T>();
+        setListeners(new ArrayList<T>());
     }
 
     /**
@@ -133,4 +243,14 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
     public List<T> getOrderedListeners() {
         return listeners;
     }
+
+    /**
+     * Get a chain built by the classifier
+     * @param chain
+     * @return the chain, or null if there is no classifier
+     */
+    public Chain<T> getChain(int chain) {
+        List<Chain<T>> c = chains;
+        return c == null ? null : c.get(chain);
+    }
 }
@@ -17,31 +17,41 @@
 
 package net.floodlightcontroller.core.web;
 
-import java.lang.Thread.State;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.annotations.LogMessageDoc;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 
-import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
-import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFStatsType;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.restlet.resource.Get;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
- * Return switch statistics information for all switches
+ * Return switch statistics information for all switches. The requests go
+ * to all switches at once and the replies are collected as they arrive,
+ * so the response takes as long as the slowest switch, up to a deadline.
  * @author readams
  */
 public class AllSwitchStatisticsResource extends SwitchResourceBase {
 	protected static Logger log =
 			LoggerFactory.getLogger(AllSwitchStatisticsResource.class);
 
+	/* How long to wait for the slowest switch; as long as for one switch */
+	protected static final long STATS_DEADLINE_MS = 10000;
+	public static final String TIMEOUT = "Timed out waiting for the switch to reply";
+
 	@Get("json")
 	public Map<String, StatsReply> retrieve() {
 		String statType = (String) getRequestAttributes().get(CoreWebRoutable.STR_STAT_TYPE);
@@ -123,89 +133,74 @@ public class AllSwitchStatisticsResource extends SwitchResourceBase {
 		IOFSwitchService switchService = (IOFSwitchService) getContext().getAttributes().
 				get(IOFSwitchService.class.getCanonicalName());
 
-		Set<DatapathId> switchDpids = switchService.getAllSwitchDpids();
-		List<GetConcurrentStatsThread> activeThreads = new ArrayList<GetConcurrentStatsThread>(switchDpids.size());
-		List<GetConcurrentStatsThread> pendingRemovalThreads = new ArrayList<GetConcurrentStatsThread>();
-		GetConcurrentStatsThread t;
-		for (DatapathId l : switchDpids) {
-			t = new GetConcurrentStatsThread(l, rType, type);
-			activeThreads.add(t);
-			t.start();
-		}
-
-		// Join all the threads after the timeout. Set a hard timeout
-		// of 12 seconds for the threads to finish. If the thread has not
-		// finished the switch has not replied yet and therefore we won't
-		// add the switch's stats to the reply.
-		for (int iSleepCycles = 0; iSleepCycles < 12; iSleepCycles++) {
-			for (GetConcurrentStatsThread curThread : activeThreads) {
-				if (curThread.getState() == State.TERMINATED) {
-					if (rType == REQUESTTYPE.OFSTATS) {
-						model.put(curThread.getSwitchId().toString(), new StatsReply(curThread.getSwitchId(), curThread.getStatisticsReply(), type));
-					} else if (rType == REQUESTTYPE.OFFEATURES) {
-						model.put(curThread.getSwitchId().toString(), new StatsReply(curThread.getSwitchId(), curThread.getFeaturesReply(), type));
-					}
-					pendingRemovalThreads.add(curThread);
-				}
-			}
-
-			// remove the threads that have completed the queries to the switches
-			for (GetConcurrentStatsThread curThread : pendingRemovalThreads) {
-				activeThreads.remove(curThread);
+		// Send all the requests before waiting for any reply
+		Map<DatapathId, ListenableFuture<?>> futures = new HashMap<DatapathId, ListenableFuture<?>>();
+		for (DatapathId dpid : switchService.getAllSwitchDpids()) {
+			IOFSwitch sw = switchService.getSwitch(dpid);
+			if (sw == null) {
+				continue; // disconnected since
 			}
-			// clear the list so we don't try to double remove them
-			pendingRemovalThreads.clear();
-
-			// if we are done finish early so we don't always get the worst case
-			if (activeThreads.isEmpty()) {
-				break;
-			}
-
-			// sleep for 1 s here
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.error("Interrupted while waiting for statistics", e);
+			if (rType == REQUESTTYPE.OFSTATS) {
+				OFStatsRequest<?> req = buildStatsRequest(sw, type);
+				futures.put(dpid, req != null
+						? sw.writeStatsRequest(req)
+						: Futures.immediateFuture(null));
+			} else {
+				futures.put(dpid, sw.writeRequest(sw.getOFFactory().buildFeaturesRequest().build()));
 			}
 		}
 
-		return model;
+		return collectReplies(futures, type, STATS_DEADLINE_MS);
 	}
 
-	protected class GetConcurrentStatsThread extends Thread {
-		private List<OFStatsReply> switchReply;
-		private DatapathId switchId;
-		private OFStatsType statType;
-		private REQUESTTYPE requestType;
-		private OFFeaturesReply featuresReply;
-
-		public GetConcurrentStatsThread(DatapathId switchId, REQUESTTYPE requestType, OFStatsType statType) {
-			this.switchId = switchId;
-			this.requestType = requestType;
-			this.statType = statType;
-			this.switchReply = null;
-			this.featuresReply = null;
-		}
-
-		public List<OFStatsReply> getStatisticsReply() {
-			return switchReply;
-		}
-
-		public OFFeaturesReply getFeaturesReply() {
-			return featuresReply;
+	/**
+	 * Wait for the replies of the switches until the last one arrives or
+	 * the deadline passes, whichever is first. A switch that has not replied
+	 * by then gets a StatsReply with the error TIMEOUT; one whose request
+	 * failed or was not supported gets one without values, as before.
+	 * @param futures the replies to come, by switch
+	 * @param type the type of statistics, or null for features replies
+	 * @param deadlineMs how long to wait at most
+	 * @return the replies by switch
+	 */
+	@LogMessageDoc(level="ERROR",
+			message="Failure retrieving statistics from switch {switch}",
+			explanation="An error occurred while retrieving statistics" +
+					"from the switch",
+			recommendation=LogMessageDoc.CHECK_SWITCH + " " +
+					LogMessageDoc.GENERIC_ACTION)
+	static Map<String, StatsReply> collectReplies(Map<DatapathId, ? extends ListenableFuture<?>> futures,
+			OFStatsType type, long deadlineMs) {
+		try {
+			Futures.successfulAsList(futures.values()).get(deadlineMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// The switches that have not replied are marked below
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// successfulAsList does not fail, it has nulls for failures
 		}
 
-		public DatapathId getSwitchId() {
-			return switchId;
-		}
-
-		@Override
-		public void run() {
-			if ((requestType == REQUESTTYPE.OFSTATS) && (statType != null)) {
-				switchReply = getSwitchStatistics(switchId, statType);
-			} else if (requestType == REQUESTTYPE.OFFEATURES) {
-				featuresReply = getSwitchFeaturesReply(switchId);
+		Map<String, StatsReply> model = new HashMap<String, StatsReply>();
+		for (Map.Entry<DatapathId, ? extends ListenableFuture<?>> entry : futures.entrySet()) {
+			DatapathId dpid = entry.getKey();
+			ListenableFuture<?> future = entry.getValue();
+			StatsReply reply;
+			if (future.isDone()) {
+				Object values = null;
+				try {
+					values = future.get();
+				} catch (ExecutionException | CancellationException | InterruptedException e) {
+					log.error("Failure retrieving statistics from switch " + dpid, e);
+				}
+				reply = new StatsReply(dpid, values, type);
+			} else {
+				future.cancel(false);
+				reply = new StatsReply(dpid, null, type);
+				reply.setError(TIMEOUT);
 			}
+			model.put(dpid.toString(), reply);
 		}
+		return model;
 	}
 }
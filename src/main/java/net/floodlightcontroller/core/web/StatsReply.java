@@ -13,6 +13,7 @@ public class StatsReply {
     private DatapathId datapath;
     private Object values;
     private OFStatsType statType;
+    private String error;
 
     public StatsReply() {}
 
@@ -39,6 +40,16 @@ public class StatsReply {
     public OFStatsType getStatType(){
         return statType;
     }
+    /**
+     * @param error why there are no values, e.g. the switch did not reply
+     * in time; shown instead of them
+     */
+    public void setError(String error){
+        this.error = error;
+    }
+    public String getError(){
+        return error;
+    }
     
 }
 
@@ -0,0 +1,42 @@
+package net.floodlightcontroller.debugcounter;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The time in milliseconds, to a resolution of TICK_MS.
+ *
+ * Counters stamp their last-modified time from here rather than from the
+ * system clock. Reading it is one volatile read, and since it only moves
+ * once a tick a counter's timestamp changes at most once a tick, however
+ * hot the counter.
+ */
+final class CounterClock {
+    static final long TICK_MS = 10;
+
+    private static volatile long now = System.currentTimeMillis();
+
+    static {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                    .setNameFormat("DebugCounterClock")
+                    .setDaemon(true)
+                    .build());
+        ticker.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                now = System.currentTimeMillis();
+            }
+        }, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private CounterClock() {
+    }
+
+    static long now() {
+        return now;
+    }
+}
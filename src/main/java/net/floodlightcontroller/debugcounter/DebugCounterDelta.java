@@ -0,0 +1,57 @@
+package net.floodlightcontroller.debugcounter;
+
+/**
+ * How much a counter changed since an epoch began.
+ * @see IDebugCounterService#markEpoch()
+ */
+public class DebugCounterDelta {
+    private final String moduleName;
+    private final String counterHierarchy;
+    private final long delta;
+    private final long intervalMs;
+
+    public DebugCounterDelta(String moduleName, String counterHierarchy,
+                             long delta, long intervalMs) {
+        this.moduleName = moduleName;
+        this.counterHierarchy = counterHierarchy;
+        this.delta = delta;
+        this.intervalMs = intervalMs;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public String getCounterHierarchy() {
+        return counterHierarchy;
+    }
+
+    /**
+     * @return the change of the counter since the epoch began. If the
+     * counter was reset since, only what it counted after the reset.
+     */
+    public long getDelta() {
+        return delta;
+    }
+
+    /**
+     * @return the time since the epoch began, in milliseconds
+     */
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * @return the delta per second over the interval
+     */
+    public double getRate() {
+        return intervalMs == 0 ? 0 : delta * 1000.0 / intervalMs;
+    }
+
+    @Override
+    public String toString() {
+        return "DebugCounterDelta [moduleName=" + moduleName
+                + ", counterHierarchy=" + counterHierarchy
+                + ", delta=" + delta + ", intervalMs=" + intervalMs + "]";
+    }
+}
@@ -1,8 +1,6 @@
 package net.floodlightcontroller.debugcounter;
 
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nonnull;
 
@@ -12,15 +10,24 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 
+/**
+ * Counters are updated on hot paths by many threads and read rarely, so
+ * the value is a {@link StripedCounter} and the last-modified time comes
+ * from the coarse {@link CounterClock}, written only when it has moved.
+ */
 class DebugCounterImpl implements IDebugCounter {
     private final String moduleName;
     private final String counterHierarchy;
     private final String description;
     private final ImmutableSet<IDebugCounterService.MetaData> metaData;
 
-    private final AtomicLong value = new AtomicLong();
+    private final StripedCounter value = new StripedCounter();
 
-    private final Date lastModified = new Date(); // should return long ms to ensure immutability
+    private volatile long lastModified;
+
+    /* Bumped before each reset, so readers can tell a reset from a value
+     * that merely counted back past an earlier one */
+    private volatile int resets;
 
     DebugCounterImpl(@Nonnull String moduleName,
                      @Nonnull String counterHierarchy,
@@ -30,7 +37,7 @@ class DebugCounterImpl implements IDebugCounter {
         this.counterHierarchy = counterHierarchy;
         this.description = description;
         this.metaData = Sets.immutableEnumSet(metaData);
-        this.lastModified.setTime(System.currentTimeMillis());
+        this.lastModified = CounterClock.now();
     }
 
     @Nonnull
@@ -55,16 +62,32 @@ class DebugCounterImpl implements IDebugCounter {
         return metaData;
     }
 
+    /**
+     * @return how often the counter was reset. Read it before the value to
+     * snapshot a start, and after the value to compare against one.
+     */
+    int getResetCount() {
+        return resets;
+    }
+
     @Override
-    public void reset() {
-        value.set(0);
-        lastModified.setTime(System.currentTimeMillis());
+    public synchronized void reset() {
+        resets++;
+        value.reset();
+        lastModified = CounterClock.now();
+    }
+
+    private void touch() {
+        long now = CounterClock.now();
+        if (lastModified != now) {
+            lastModified = now;
+        }
     }
 
     @Override
     public void increment() {
-        value.incrementAndGet();
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(1);
+        touch();
     }
 
     @Override
@@ -73,18 +96,18 @@ class DebugCounterImpl implements IDebugCounter {
             throw new IllegalArgumentException("increment must be > 0. Was "
                     + increment);
         }
-        value.addAndGet(increment);
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(increment);
+        touch();
     }
 
     @Override
     public long getCounterValue() {
-        return value.get();
+        return value.sum();
     }
     
 	@Override
 	public long getLastModified() {
-		return lastModified.getTime();
+		return lastModified;
 	}
 
     @Override
@@ -101,7 +124,6 @@ class DebugCounterImpl implements IDebugCounter {
                  + ((metaData == null) ? 0 : metaData.hashCode());
         result = prime * result
                  + ((moduleName == null) ? 0 : moduleName.hashCode());
-        result = prime * result + ((value == null) ? 0 : value.hashCode());
         return result;
     }
 
@@ -124,9 +146,7 @@ class DebugCounterImpl implements IDebugCounter {
         if (moduleName == null) {
             if (other.moduleName != null) return false;
         } else if (!moduleName.equals(other.moduleName)) return false;
-        if (value == null) {
-            if (other.value != null) return false;
-        } else if (value.get() != other.value.get()) return false;
+        if (getCounterValue() != other.getCounterValue()) return false;
         return true;
     }
 
@@ -142,7 +162,7 @@ class DebugCounterImpl implements IDebugCounter {
         builder.append(", metaData=");
         builder.append(metaData);
         builder.append(", value=");
-        builder.append(value);
+        builder.append(getCounterValue());
         builder.append("]");
         return builder.toString();
     }
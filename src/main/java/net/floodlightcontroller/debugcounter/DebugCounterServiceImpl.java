@@ -5,8 +5,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
@@ -37,6 +41,14 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
      */
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    /**
+     * Counters kept outside the tree. They are exported before counters are
+     * read or reset, without holding the lock, since exporting may register
+     * counters.
+     */
+    private final Set<ICounterSource> sources =
+            Collections.newSetFromMap(new ConcurrentHashMap<ICounterSource, Boolean>());
+
     static void verifyStringSanity(String str, String name) {
         if (str == null) {
             if (name == null) {
@@ -117,6 +129,122 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
         return counter;
     }
 
+    private void exportSources() {
+        for (ICounterSource source : sources) {
+            source.exportCounters();
+        }
+    }
+
+    @Override
+    public void registerCounterSource(@Nonnull ICounterSource source) {
+        sources.add(source);
+    }
+
+    @Override
+    public void removeCounterSource(@Nonnull ICounterSource source) {
+        sources.remove(source);
+    }
+
+    /**
+     * The values of the counters when an epoch began
+     */
+    private static class Epoch {
+        final long startMs;
+        final IdentityHashMap<DebugCounterImpl, Start> values;
+
+        Epoch(long startMs, IdentityHashMap<DebugCounterImpl, Start> values) {
+            this.startMs = startMs;
+            this.values = values;
+        }
+    }
+
+    /**
+     * A counter's value and reset count when an epoch began
+     */
+    private static class Start {
+        final long value;
+        final int resets;
+
+        Start(long value, int resets) {
+            this.value = value;
+            this.resets = resets;
+        }
+    }
+
+    private static final int MAX_EPOCHS = 8;
+
+    @GuardedBy("epochs")
+    private final LinkedHashMap<Long, Epoch> epochs = new LinkedHashMap<Long, Epoch>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Epoch> eldest) {
+            return size() > MAX_EPOCHS;
+        }
+    };
+    @GuardedBy("epochs")
+    private long lastEpoch;
+
+    @Override
+    public long markEpoch() {
+        exportSources();
+        IdentityHashMap<DebugCounterImpl, Start> values = new IdentityHashMap<>();
+        long startMs;
+        lock.readLock().lock();
+        try {
+            startMs = System.currentTimeMillis();
+            for (DebugCounterImpl counter: root.getCountersInHierarchy()) {
+                /* A reset racing with this shows up as a changed count later */
+                int resets = counter.getResetCount();
+                values.put(counter, new Start(counter.getCounterValue(), resets));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (epochs) {
+            epochs.put(++lastEpoch, new Epoch(startMs, values));
+            return lastEpoch;
+        }
+    }
+
+    @Override
+    public List<DebugCounterDelta>
+    getCounterDeltas(long epoch, String moduleName, String counterHierarchy) {
+        verifyModuleNameSanity(moduleName);
+        Epoch e;
+        synchronized (epochs) {
+            e = epochs.get(epoch);
+        }
+        if (e == null) {
+            return Collections.emptyList();
+        }
+        List<String> hierarchyElements =
+                CounterNode.getHierarchyElements(moduleName, counterHierarchy);
+        exportSources();
+        lock.readLock().lock();
+        try {
+            CounterNode node = root.lookup(hierarchyElements);
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            long intervalMs = System.currentTimeMillis() - e.startMs;
+            List<DebugCounterDelta> ret = new ArrayList<>();
+            for (DebugCounterImpl counter: node.getCountersInHierarchy()) {
+                long value = counter.getCounterValue();
+                Start start = e.values.get(counter);
+                /* After a reset only what was counted since is known */
+                long delta = (start == null || counter.getResetCount() != start.resets)
+                        ? value : value - start.value;
+                ret.add(new DebugCounterDelta(counter.getModuleName(),
+                                              counter.getCounterHierarchy(),
+                                              delta, intervalMs));
+            }
+            return ret;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @GuardedBy("lock.readLock")
     private boolean resetInternal(List<String> hierarchyElements) {
         CounterNode node = root.lookup(hierarchyElements);
@@ -142,6 +270,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
                                          String counterHierarchy) {
         verifyModuleNameSanity(moduleName);
         verifyStringSanity(counterHierarchy, "counterHierarchy");
+        exportSources();
         lock.readLock().lock();
         try {
             return resetInternal(CounterNode.getHierarchyElements(moduleName, counterHierarchy));
@@ -152,6 +281,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
 
     @Override
     public void resetAllCounters() {
+        exportSources();
         lock.readLock().lock();
         try {
             root.resetHierarchy();
@@ -164,6 +294,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
     @Override
     public boolean resetAllModuleCounters(String moduleName) {
         verifyModuleNameSanity(moduleName);
+        exportSources();
         lock.readLock().lock();
         try {
             return resetInternal(Collections.singletonList(moduleName));
@@ -204,6 +335,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
         verifyStringSanity(counterHierarchy, "counterHierarchy");
         List<String> hierarchyElements =
                 CounterNode.getHierarchyElements(moduleName, counterHierarchy);
+        exportSources();
         lock.readLock().lock();
         try {
             return getCountersFromNode(root.lookup(hierarchyElements));
@@ -214,6 +346,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
 
     @Override
     public List<DebugCounterResource> getAllCounterValues() {
+        exportSources();
         lock.readLock().lock();
         try {
             return getCountersFromNode(root);
@@ -226,6 +359,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
     public List<DebugCounterResource> getModuleCounterValues(String moduleName) {
         verifyModuleNameSanity(moduleName);
         List<String> hierarchyElements = Collections.singletonList(moduleName);
+        exportSources();
         lock.readLock().lock();
         try {
             return getCountersFromNode(root.lookup(hierarchyElements));
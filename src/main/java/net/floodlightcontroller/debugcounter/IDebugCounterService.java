@@ -11,6 +11,20 @@ public interface IDebugCounterService extends IFloodlightService {
         ERROR
     }
 
+    /**
+     * Counters that are kept outside the service, in a form that is cheaper
+     * to update than an IDebugCounter, and copied into registered counters
+     * when they are read.
+     */
+    public interface ICounterSource {
+        /**
+         * Bring the registered counters up to date, registering them first
+         * if need be. Called by the service, from any thread, before it
+         * reads or resets counters.
+         */
+        public void exportCounters();
+    }
+
     /**
      * All modules that wish to have the DebugCounterService count for them, must
      * register themselves. If a module is registered multiple times subsequent
@@ -92,6 +106,41 @@ public interface IDebugCounterService extends IFloodlightService {
      */
     public boolean removeCounterHierarchy(String moduleName, String counterHierarchy);
 
+    /**
+     * Begin a new epoch: remember the value of every counter now, so that
+     * {@link #getCounterDeltas} can later tell how much each changed since,
+     * without resetting any. Only the most recent epochs are remembered.
+     * @return the epoch
+     */
+    public long markEpoch();
+
+    /**
+     * Get the change since the epoch began of the counters at and below
+     * the given level of the counter hierarchy. Counters registered since
+     * the epoch began count from 0.
+     *
+     * @param epoch as returned by markEpoch()
+     * @param moduleName
+     * @param counterHierarchy the level, or null or empty for the whole module
+     * @return the deltas, or an empty list if the epoch is no longer (or
+     * was never) remembered, or the module or hierarchy is not registered
+     */
+    public List<DebugCounterDelta>
+    getCounterDeltas(long epoch, String moduleName, String counterHierarchy);
+
+    /**
+     * Add a source of counters to export before counters are read.
+     * @param source
+     */
+    public void registerCounterSource(ICounterSource source);
+
+    /**
+     * Stop exporting a source of counters. Its registered counters stay
+     * until their hierarchy is removed.
+     * @param source
+     */
+    public void removeCounterSource(ICounterSource source);
+
 
     /**
      * Get counter value and associated information for the specified counterHierarchy.
@@ -127,4 +127,23 @@ public class MockDebugCounterService implements IFloodlightModule, IDebugCounter
 		return true;
 	}
 
+	@Override
+	public long markEpoch() {
+		return 0;
+	}
+
+	@Override
+	public List<DebugCounterDelta>
+	getCounterDeltas(long epoch, String moduleName, String counterHierarchy) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void registerCounterSource(ICounterSource source) {
+	}
+
+	@Override
+	public void removeCounterSource(ICounterSource source) {
+	}
+
 }
@@ -0,0 +1,76 @@
+package net.floodlightcontroller.debugcounter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum that many threads can add to without contending, in the manner of
+ * Java 8's LongAdder.
+ *
+ * Adds go to a base value by CAS. The first time a CAS fails, i.e. two
+ * threads collided, the counter grows cells, each on its own cache line,
+ * and from then on a thread adds to the cell its id picks. Reading sums
+ * the base and the cells, so reads cost more than adds; that is the
+ * point. Counters that are never contended never grow cells.
+ */
+class StripedCounter {
+    /* Longs per cache line: cells are this far apart */
+    private static final int PAD = 8;
+    private static final int CELLS;
+    static {
+        int n = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (n < cpus && n < 16) {
+            n <<= 1;
+        }
+        CELLS = n;
+    }
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile AtomicLongArray cells;
+
+    void add(long x) {
+        AtomicLongArray cs = cells;
+        if (cs == null) {
+            long b = base.get();
+            if (base.compareAndSet(b, b + x))
+                return;
+            cs = grow();
+        }
+        cs.addAndGet(((int) Thread.currentThread().getId() & (CELLS - 1)) * PAD, x);
+    }
+
+    private synchronized AtomicLongArray grow() {
+        if (cells == null) {
+            cells = new AtomicLongArray(CELLS * PAD);
+        }
+        return cells;
+    }
+
+    /**
+     * @return the sum; adds that race with the call may or may not be in it
+     */
+    long sum() {
+        long sum = base.get();
+        AtomicLongArray cs = cells;
+        if (cs != null) {
+            for (int i = 0; i < CELLS; i++) {
+                sum += cs.get(i * PAD);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Set the sum to 0. Adds that race with the call may or may not be lost.
+     */
+    void reset() {
+        base.set(0);
+        AtomicLongArray cs = cells;
+        if (cs != null) {
+            for (int i = 0; i < CELLS; i++) {
+                cs.set(i * PAD, 0);
+            }
+        }
+    }
+}
@@ -1,18 +1,16 @@
 package net.floodlightcontroller.debugevent;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 import net.floodlightcontroller.core.IShutdownListener;
 import net.floodlightcontroller.core.IShutdownService;
@@ -25,7 +23,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 
 /**
  * This class implements a central store for all events used for debugging the
@@ -44,14 +41,6 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
      */
     private final AtomicInteger eventIdCounter = new AtomicInteger();
 
-    /**
-     * Unique Event Instance Id for ack-ing
-     */
-    private final AtomicLong eventInstanceId = new AtomicLong(Long.MAX_VALUE);
-
-    private static final int PCT_LOCAL_CAP = 10; // % of global capacity
-    private static final int MIN_LOCAL_CAPACITY = 10; // elements
-
     /**
      * EnumMap from {@link EventFieldType} to {@link CustomFormatter}
      */
@@ -150,15 +139,17 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
 
     /**
      * Event history for a particular event-id is stored in a circular buffer
+     * that all threads write to directly
      */
     protected static class DebugEventHistory {
-        EventInfo einfo;
-        LinkedBlockingDeque<Event> circularEventBuffer;
+        final EventInfo einfo;
+        final EventRing eventRing;
+        /* How the flight recorder records the events, if it does */
+        volatile FlightRecorder.EventSchema recorderSchema;
 
         public DebugEventHistory(EventInfo einfo, int capacity) {
             this.einfo = einfo;
-            this.circularEventBuffer = new LinkedBlockingDeque<Event>(
-                                                                      capacity);
+            this.eventRing = new EventRing(capacity);
         }
     }
 
@@ -187,76 +178,14 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
      */
     protected final Set<Integer> currentEvents = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
 
-    // ******************
-    // Thread local stores
-    // ******************
-
-    /**
-     * Thread local storage for events
-     */
-    protected static class LocalEventHistory {
-        private boolean enabled;
-        private final int capacity;
-        private ArrayList<Event> eventList;
-
-        public LocalEventHistory(boolean enabled, int maxCapacity) {
-            this.enabled = enabled;
-            this.eventList = new ArrayList<Event>(maxCapacity);
-            this.capacity = maxCapacity;
-        }
-
-        public boolean add(Event e) {
-            if (this.eventList.size() < capacity) {
-                this.eventList.add(e);
-                return true;
-            }
-            return false;
-        }
-
-        public int drainTo(List<Event> eventList) {
-            int size = this.eventList.size();
-            Iterator<Event> iter = this.eventList.iterator();
-            while (iter.hasNext()) {
-                eventList.add(iter.next());
-            }
-            this.eventList.clear();
-            return size;
-        }
-
-        public boolean isFull() {
-            if (eventList.size() == capacity) return true;
-            return false;
-        }
-
-        public boolean isEmpty() {
-            return this.eventList.isEmpty();
-        }
-    }
-
     /**
-     * Thread local event buffers used for maintaining event history local to a
-     * thread. Eventually this locally maintained information is flushed into
-     * the global event buffers. <br/>
-     * It is a <b>Map</b> with <br/>
-     * <b>Key</b> Integer eventId <br/>
-     * <b>Value</b> LocalEventHistory
+     * Where events are also recorded to survive a crash, if configured with
+     * the flightRecorderFile parameter. flightRecorderSizeMb sets the size
+     * of the recording and flightRecorderMessages=true has OpenFlow message
+     * headers recorded too.
      */
-    protected final ThreadLocal<Map<Integer, LocalEventHistory>> threadlocalEvents = new ThreadLocal<Map<Integer, LocalEventHistory>>() {
-        @Override
-        protected Map<Integer, LocalEventHistory> initialValue() {
-            return new HashMap<Integer, LocalEventHistory>();
-        }
-    };
-
-    /**
-     * Thread local cache for event-ids that are currently active.
-     */
-    protected final ThreadLocal<Set<Integer>> threadlocalCurrentEvents = new ThreadLocal<Set<Integer>>() {
-        @Override
-        protected Set<Integer> initialValue() {
-            return new HashSet<Integer>();
-        }
-    };
+    private volatile FlightRecorder flightRecorder;
+    private static final long DEFAULT_FLIGHT_RECORDER_SIZE_MB = 16;
 
     // *******************************
     // IEventCategory
@@ -264,6 +193,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
 
     protected class EventCategory<T> implements IEventCategory<T> {
         private final int eventId;
+        private DebugEventHistory history;
 
         public EventCategory(int evId) {
             this.eventId = evId;
@@ -272,13 +202,13 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         @Override
         public void newEventNoFlush(Object event) {
             if (!validEventId()) return;
-            newEvent(eventId, false, event);
+            newEvent(event);
         }
 
         @Override
         public void newEventWithFlush(Object event) {
             if (!validEventId()) return;
-            newEvent(eventId, true, event);
+            newEvent(event);
         }
 
         private boolean validEventId() {
@@ -287,6 +217,31 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
             }
             return true;
         }
+
+        private void newEvent(Object eventData) {
+            DebugEventHistory de = history;
+            if (de == null) {
+                // A duplicate registration may get here before the first
+                // one has created the storage
+                de = allEvents.get(eventId);
+                if (de == null) {
+                    log.error("updateEvent seen for event {} but no global "
+                              + "storage exists for it yet .. not updating",
+                              eventId);
+                    return;
+                }
+                history = de;
+            }
+            if (de.einfo.enabled) {
+                long now = System.currentTimeMillis();
+                de.eventRing.add(now, Thread.currentThread(), eventData);
+                FlightRecorder fr = flightRecorder;
+                FlightRecorder.EventSchema schema = de.recorderSchema;
+                if (fr != null && schema != null) {
+                    fr.recordEvent(schema, now, eventData);
+                }
+            }
+        }
     }
 
     public class EventCategoryBuilder<T> {
@@ -377,7 +332,9 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
             EventInfo ei = new EventInfo(eventId, enabled, ackable,
                                          bufferCapacity, eventType, eventClass,
                                          eventDescription, eventName, moduleName);
-            allEvents.put(eventId, new DebugEventHistory(ei, bufferCapacity));
+            DebugEventHistory de = new DebugEventHistory(ei, bufferCapacity);
+            allEvents.put(eventId, de);
+            describeToFlightRecorder(de);
             if (enabled) {
                 currentEvents.add(eventId);
             }
@@ -395,106 +352,9 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         return new EventCategoryBuilder<T>(evClass);
     }
 
-    private void flushLocalToGlobal(int eventId, LocalEventHistory le) {
-        DebugEventHistory de = allEvents.get(eventId);
-        if (de.einfo.enabled) {
-            List<Event> transferEvents = new ArrayList<Event>();
-            // drain local buffer to Collection
-            int size = le.drainTo(transferEvents);
-            // if global buffer doesn't have enough space, clear
-            // some space
-            int requiredSpace = size
-                                - de.circularEventBuffer.remainingCapacity();
-            if (requiredSpace > 0) {
-                for (int i = 0; i < requiredSpace; i++) {
-                    de.circularEventBuffer.removeFirst();
-                }
-            }
-            de.circularEventBuffer.addAll(transferEvents);
-        } else {
-            le.enabled = false;
-            this.threadlocalCurrentEvents.get().remove(eventId);
-        }
-    }
-
-    private void newEvent(int eventId, boolean flushNow, Object eventData) {
-        if (eventId < 0) {
-            throw new IllegalStateException("Invalid eventId");
-        }
-
-        Map<Integer, LocalEventHistory> thishist = this.threadlocalEvents.get();
-        if (!thishist.containsKey(eventId)) {
-            // seeing this event for the first time in this thread - create
-            // local
-            // store by consulting global store
-            if (allEvents.containsKey(eventId)) {
-                DebugEventHistory de = allEvents.get(eventId);
-                boolean enabled = de.einfo.enabled;
-                int localCapacity = de.einfo.bufferCapacity * PCT_LOCAL_CAP
-                                    / 100;
-                if (localCapacity < 10) localCapacity = MIN_LOCAL_CAPACITY;
-                thishist.put(eventId, new LocalEventHistory(enabled,
-                                                            localCapacity));
-                if (enabled) {
-                    Set<Integer> thisset = this.threadlocalCurrentEvents.get();
-                    thisset.add(eventId);
-                }
-            } else {
-                log.error("updateEvent seen locally for event {} but no global"
-                                  + "storage exists for it yet .. not updating",
-                          eventId);
-                return;
-            }
-        }
-
-        // update local store if enabled locally for updating
-        LocalEventHistory le = thishist.get(eventId);
-        if (le.enabled) {
-            try {
-                le.add(new Event(System.currentTimeMillis(),
-                                 Thread.currentThread().getId(),
-                                 Thread.currentThread().getName(),
-                                 eventData,
-                                 /*
-                                  * the eventInstanceId is started in reverse
-                                  * order so BigDB gets the values in ascending
-                                  * order Initialization in startUp()
-                                  */
-                                 eventInstanceId.decrementAndGet()));
-
-                if (le.isFull() || flushNow) {
-                    flushLocalToGlobal(eventId, le);
-                }
-            } catch (IllegalStateException ise) {
-                log.debug("Exception while adding event locally: "
-                          + ise.getMessage());
-            }
-        }
-    }
-
     @Override
     public void flushEvents() {
-        Map<Integer, LocalEventHistory> thishist = this.threadlocalEvents.get();
-        Set<Integer> thisset = this.threadlocalCurrentEvents.get();
-
-        for (int eventId : thisset) {
-            if (thishist.containsKey(eventId)) {
-                LocalEventHistory le = thishist.get(eventId);
-                if (!le.isEmpty()) {
-                    flushLocalToGlobal(eventId, le);
-                }
-            }
-        }
-
-        // sync thread local currently enabled set of eventIds with global set.
-        Sets.SetView<Integer> sv = Sets.difference(currentEvents, thisset);
-        for (int eventId : sv) {
-            if (thishist.containsKey(eventId)) {
-                thishist.get(eventId).enabled = true;
-                thisset.add(eventId);
-            }
-        }
-
+        // Events are written to the global buffers as they happen
     }
 
     @Override
@@ -521,9 +381,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
 
                     List<EventResource> eventData = new ArrayList<EventResource>();
                     // take snapshot and iterate
-                    Iterator<Event> iter = de.circularEventBuffer.descendingIterator();
-                    while (iter.hasNext()) {
-                        Event e = iter.next();
+                    for (Event e : de.eventRing.snapshot(de.einfo.bufferCapacity)) {
                         eventData.add(e.getFormattedEvent(de.einfo.eventClass,
                                                           de.einfo.moduleEventName));
                     }
@@ -547,9 +405,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
 
                 List<EventResource> eventData = new ArrayList<EventResource>();
                 // take snapshot and iterate
-                Iterator<Event> iter = de.circularEventBuffer.descendingIterator();
-                while (iter.hasNext()) {
-                    Event e = iter.next();
+                for (Event e : de.eventRing.snapshot(de.einfo.bufferCapacity)) {
                     eventData.add(e.getFormattedEvent(de.einfo.eventClass,
                                                       de.einfo.moduleEventName));
                 }
@@ -575,16 +431,11 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         if (numOfEvents == 0) numOfEvents = de.einfo.bufferCapacity;
 
         de.einfo.numOfEvents = numOfEvents;
-        int num = 1;
         List<EventResource> eventData = new ArrayList<EventResource>();
         // take snapshot and iterate
-        Iterator<Event> iter = de.circularEventBuffer.descendingIterator();
-        while (iter.hasNext()) {
-            Event e = iter.next();
-            if (num > numOfEvents) break;
+        for (Event e : de.eventRing.snapshot(numOfEvents)) {
             eventData.add(e.getFormattedEvent(de.einfo.eventClass,
                                               de.einfo.moduleEventName));
-            num++;
         }
         EventInfoResource ret = new EventInfoResource(de.einfo, eventData);
         traceLogDebugHistory(Collections.singletonList(ret));
@@ -595,7 +446,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
     public void resetAllEvents() {
         for (Map<String, Integer> eventMap : moduleEvents.values()) {
             for (Integer evId : eventMap.values()) {
-                allEvents.get(evId).circularEventBuffer.clear();
+                allEvents.get(evId).eventRing.clear();
             }
         }
     }
@@ -605,7 +456,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         if (!moduleEvents.containsKey(moduleName)) return;
         Map<String, Integer> modEvents = moduleEvents.get(moduleName);
         for (Integer evId : modEvents.values()) {
-            allEvents.get(evId).circularEventBuffer.clear();
+            allEvents.get(evId).eventRing.clear();
         }
     }
 
@@ -616,18 +467,15 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         if (eventId == null) return;
 
         if (allEvents.containsKey(eventId)) {
-            allEvents.get(eventId).circularEventBuffer.clear();
+            allEvents.get(eventId).eventRing.clear();
         }
     }
 
     @Override
     public void setAck(int eventId, long eventInstanceId, boolean ack) {
-        if (allEvents.containsKey(eventId)) {
-            for (Event e : allEvents.get(eventId).circularEventBuffer) {
-                if (e.getEventInstanceId() == eventInstanceId) {
-                    e.setAcked(ack);
-                }
-            }
+        DebugEventHistory de = allEvents.get(eventId);
+        if (de != null) {
+            de.eventRing.setAck(eventInstanceId, ack);
         }
     }
 
@@ -667,6 +515,11 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
                     log.info("{}", der);
                 }
             }
+            FlightRecorder fr = flightRecorder;
+            if (fr != null) {
+                flightRecorder = null;
+                fr.close();
+            }
         }
     }
 
@@ -700,6 +553,51 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
 
     @Override
     public void init(FloodlightModuleContext context) {
+        Map<String, String> configOptions = context.getConfigParams(this);
+        String file = configOptions.get("flightRecorderFile");
+        if (file == null || file.isEmpty()) {
+            return;
+        }
+        long sizeMb = DEFAULT_FLIGHT_RECORDER_SIZE_MB;
+        String tmp = configOptions.get("flightRecorderSizeMb");
+        if (tmp != null) {
+            try {
+                sizeMb = Long.parseLong(tmp.trim());
+            } catch (NumberFormatException e) {
+                sizeMb = -1;
+            }
+            if (sizeMb <= 0) {
+                log.warn("Invalid flightRecorderSizeMb {}. Using {}.",
+                         tmp, DEFAULT_FLIGHT_RECORDER_SIZE_MB);
+                sizeMb = DEFAULT_FLIGHT_RECORDER_SIZE_MB;
+            }
+        }
+        try {
+            FlightRecorder fr = new FlightRecorder(new File(file), sizeMb * 1024 * 1024);
+            flightRecorder = fr;
+            for (DebugEventHistory de : allEvents.values()) {
+                describeToFlightRecorder(de);
+            }
+            if (Boolean.parseBoolean(configOptions.get("flightRecorderMessages"))) {
+                FlightRecorder.setMessageRecorder(fr);
+            }
+            log.info("Recording debug events{} to {}",
+                     FlightRecorder.getMessageRecorder() == fr
+                     ? " and OpenFlow messages" : "", file);
+        } catch (IOException e) {
+            log.error("Could not create flight recording {}: {}",
+                      file, e.getMessage());
+        }
+    }
+
+    private void describeToFlightRecorder(DebugEventHistory de) {
+        FlightRecorder fr = flightRecorder;
+        if (fr != null) {
+            de.recorderSchema = fr.addCategory(de.einfo.eventId,
+                                               de.einfo.moduleName,
+                                               de.einfo.eventName,
+                                               de.einfo.eventClass);
+        }
     }
 
     @Override
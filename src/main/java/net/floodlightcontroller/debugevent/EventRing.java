@@ -0,0 +1,157 @@
+package net.floodlightcontroller.debugevent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The history of one event category: a circular buffer of preallocated
+ * slots that any number of threads write without locking.
+ *
+ * A writer claims the next sequence number, then takes the slot the number
+ * maps to by marking it busy, fills in the slot's fields and publishes the
+ * sequence number on it. Nothing is allocated per event. Readers copy a
+ * slot out and keep the copy only if the slot still holds the same sequence
+ * number afterwards, so a slot overwritten while read is skipped rather
+ * than torn.
+ *
+ * A writer finding its slot already holding a newer event drops its event:
+ * it was overtaken by a whole lap of the buffer. A writer finding its slot
+ * still busy drops its event as well, even though it is the newer one: the
+ * slot is busy only while an older writer stalled for a whole lap is still
+ * filling it, or while an ack is set on it, and taking it over would tear
+ * the other write where waiting would block.
+ */
+class EventRing {
+    /* published[] value of a slot never written */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static class Slot {
+        long timeMs;
+        long threadId;
+        String threadName;
+        Object eventData;
+        volatile boolean acked;
+    }
+
+    private final int capacity;
+    private final Slot[] slots;
+    /* The sequence number held by each slot, or -(seq + 1) while written */
+    private final AtomicLongArray published;
+    /* The next sequence number to claim */
+    private final AtomicLong cursor = new AtomicLong();
+    /* Sequence numbers below this were cleared */
+    private volatile long floor;
+
+    EventRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Event buffer capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.slots = new Slot[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            published.set(i, EMPTY);
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /*
+     * Event instance ids count down from Long.MAX_VALUE as the sequence
+     * numbers count up, so BigDB gets them in ascending order
+     */
+    private static long instanceIdOf(long seq) {
+        return Long.MAX_VALUE - 1 - seq;
+    }
+
+    private int indexOf(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    /**
+     * Add an event, overwriting the oldest if the buffer is full
+     * @return whether the event was added; false if it was dropped
+     */
+    boolean add(long timeMs, Thread thread, Object eventData) {
+        long seq = cursor.getAndIncrement();
+        int i = indexOf(seq);
+        long prev;
+        do {
+            prev = published.get(i);
+            if ((prev < 0 && prev != EMPTY) || prev > seq) {
+                return false;
+            }
+        } while (!published.compareAndSet(i, prev, -(seq + 1)));
+
+        Slot slot = slots[i];
+        slot.timeMs = timeMs;
+        slot.threadId = thread.getId();
+        slot.threadName = thread.getName();
+        slot.eventData = eventData;
+        slot.acked = false;
+        published.lazySet(i, seq);
+        return true;
+    }
+
+    /**
+     * @return the number of events in the buffer, counting events still
+     * being written
+     */
+    int size() {
+        return (int) Math.min(capacity, cursor.get() - floor);
+    }
+
+    /**
+     * @param max the most events to return
+     * @return copies of the events in the buffer, newest first
+     */
+    List<Event> snapshot(int max) {
+        long end = cursor.get();
+        long start = Math.max(floor, end - Math.min(capacity, Math.max(0, max)));
+        List<Event> events = new ArrayList<Event>((int) Math.max(0, end - start));
+        for (long seq = end - 1; seq >= start; seq--) {
+            int i = indexOf(seq);
+            if (published.get(i) != seq) {
+                continue;
+            }
+            Slot slot = slots[i];
+            Event e = new Event(slot.timeMs, slot.threadId, slot.threadName,
+                                slot.eventData, instanceIdOf(seq));
+            e.setAcked(slot.acked);
+            // Also orders the reads above before the check
+            if (published.compareAndSet(i, seq, seq)) {
+                events.add(e);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Set the ack of an event if it is still in the buffer. The slot is
+     * marked busy meanwhile, so the ack cannot land on an event that
+     * overwrote it.
+     */
+    void setAck(long eventInstanceId, boolean ack) {
+        long seq = instanceIdOf(eventInstanceId);
+        if (seq < floor || seq < 0) {
+            return;
+        }
+        int i = indexOf(seq);
+        if (published.compareAndSet(i, seq, -(seq + 1))) {
+            slots[i].acked = ack;
+            published.set(i, seq);
+        }
+    }
+
+    /**
+     * Forget all events added so far
+     */
+    void clear() {
+        floor = cursor.get();
+    }
+}
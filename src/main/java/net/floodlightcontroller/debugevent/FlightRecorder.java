@@ -0,0 +1,422 @@
+package net.floodlightcontroller.debugevent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.debugevent.IDebugEventService.EventColumn;
+import net.floodlightcontroller.debugevent.IDebugEventService.EventFieldType;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records debug events, and optionally the headers of OpenFlow messages,
+ * as compact binary records in a fixed-size memory-mapped file, so that
+ * they outlive a crash or restart of the controller. The file is a ring:
+ * once it is full the oldest records are overwritten. Nothing is formatted
+ * when recording; {@link FlightRecorderReader} decodes the file offline.
+ *
+ * The file starts with a header of HEADER_SIZE bytes:
+ * <pre>
+ *  0 int   MAGIC
+ *  4 int   VERSION
+ *  8 int   slot size
+ * 12 int   slot count
+ * 16 long  time the file was created, ms
+ * 24 int   catalog length, bytes
+ * 32       catalog: per event category
+ *          int event id, UTF module name, UTF event name,
+ *          byte column count, UTF column name per column
+ * </pre>
+ * followed by the slots, one record each:
+ * <pre>
+ *  0 long  sequence number + 1; 0 if never written, -1 while written
+ *  8 long  time, ms
+ * 16 long  thread id
+ * 24 byte  KIND_EVENT, KIND_MESSAGE_IN or KIND_MESSAGE_OUT
+ * 25 byte  FLAG_TRUNCATED if the payload did not fit
+ * 26 short payload length
+ * 28 int   event id; for messages the connection's aux id
+ * 32 int   checksum of bytes 0-31 and the payload, see checksum()
+ * 36       payload
+ * </pre>
+ * An event's payload is its columns in the catalog's order, each a tag
+ * byte and a value. A message's payload is the datapath id (long), the
+ * OpenFlow version wire value (byte), the ordinal of the OFType (byte)
+ * and the xid (int).
+ *
+ * A record is marked as being written before it is filled in and its
+ * checksum is written last. Writes to the mapped file may reach it in any
+ * order, so a crash in the middle of a record can leave it torn rather
+ * than marked; the reader leaves out records whose checksum does not
+ * match. Writers claim slots with one atomic increment and never wait for
+ * each other.
+ */
+public class FlightRecorder {
+    protected static final Logger log = LoggerFactory.getLogger(FlightRecorder.class);
+
+    static final int MAGIC = 0x464c5246; // "FLRF"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64 * 1024;
+    static final int SLOT_SIZE = 128;
+    static final int SLOT_HEADER_SIZE = 36;
+    static final int MAX_PAYLOAD = SLOT_SIZE - SLOT_HEADER_SIZE;
+
+    static final int OFF_SLOT_SIZE = 8;
+    static final int OFF_SLOT_COUNT = 12;
+    static final int OFF_CREATED = 16;
+    static final int OFF_CATALOG_LENGTH = 24;
+    static final int OFF_CATALOG = 32;
+
+    static final int OFF_SEQ = 0;
+    static final int OFF_TIME = 8;
+    static final int OFF_THREAD = 16;
+    static final int OFF_KIND = 24;
+    static final int OFF_FLAGS = 25;
+    static final int OFF_LENGTH = 26;
+    static final int OFF_ID = 28;
+    static final int OFF_CHECKSUM = 32;
+    static final int OFF_PAYLOAD = SLOT_HEADER_SIZE;
+
+    static final byte KIND_EVENT = 1;
+    static final byte KIND_MESSAGE_IN = 2;
+    static final byte KIND_MESSAGE_OUT = 3;
+    static final byte FLAG_TRUNCATED = 1;
+
+    /* Tags of event column values */
+    static final byte TAG_NULL = 0;
+    static final byte TAG_LONG = 1;
+    static final byte TAG_DOUBLE = 2;
+    static final byte TAG_BOOLEAN = 3;
+    static final byte TAG_DPID = 4;
+    static final byte TAG_MAC = 5;
+    static final byte TAG_IPV4 = 6;
+    static final byte TAG_STRING = 7;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_STRING = 255;
+
+    /* The recorder OpenFlow connections record their messages to, if any */
+    private static volatile FlightRecorder messageRecorder;
+
+    /**
+     * How the columns of an event class are read and recorded
+     */
+    static class EventSchema {
+        final int eventId;
+        final Field[] columns;
+        final EventFieldType[] types;
+
+        EventSchema(int eventId, Class<?> eventClass) {
+            this.eventId = eventId;
+            List<Field> fields = new ArrayList<Field>();
+            List<EventFieldType> fieldTypes = new ArrayList<EventFieldType>();
+            if (eventClass != null) {
+                for (Field f : eventClass.getDeclaredFields()) {
+                    EventColumn ec = f.getAnnotation(EventColumn.class);
+                    if (ec == null) continue;
+                    f.setAccessible(true);
+                    fields.add(f);
+                    fieldTypes.add(ec.description());
+                }
+            }
+            this.columns = fields.toArray(new Field[fields.size()]);
+            this.types = fieldTypes.toArray(new EventFieldType[fieldTypes.size()]);
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final AtomicLong cursor = new AtomicLong();
+    /* Guarded by this */
+    private int catalogLength;
+
+    /**
+     * Create the recording file, keeping a file left by an earlier run as
+     * &lt;file&gt;.prev, and map it.
+     * @param file the file to record to
+     * @param sizeBytes the size of the file; at least one slot is kept
+     * @throws IOException
+     */
+    public FlightRecorder(File file, long sizeBytes) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            File prev = new File(file.getPath() + ".prev");
+            if (prev.exists() && !prev.delete()) {
+                log.warn("Could not delete {}", prev);
+            }
+            if (!file.renameTo(prev)) {
+                log.warn("Could not keep the previous flight recording {}", file);
+            }
+        }
+        long slots = Math.max(1, (sizeBytes - HEADER_SIZE) / SLOT_SIZE);
+        this.slotCount = (int) Math.min(slots, (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE);
+        long length = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+        this.raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        buffer.putInt(OFF_SLOT_SIZE, SLOT_SIZE);
+        buffer.putInt(OFF_SLOT_COUNT, slotCount);
+        buffer.putLong(OFF_CREATED, System.currentTimeMillis());
+        buffer.putInt(OFF_CATALOG_LENGTH, 0);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(0, MAGIC);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the recorder for OpenFlow messages, or null if messages are
+     * not recorded
+     */
+    public static FlightRecorder getMessageRecorder() {
+        return messageRecorder;
+    }
+
+    /**
+     * Have OpenFlow connections record their messages to a recorder
+     * @param recorder the recorder, or null to stop recording messages
+     */
+    public static void setMessageRecorder(FlightRecorder recorder) {
+        messageRecorder = recorder;
+    }
+
+    /**
+     * Describe an event category in the file's catalog. If the catalog is
+     * full the category's events are still recorded, without column names.
+     * @return the schema to record the category's events with
+     */
+    synchronized EventSchema addCategory(int eventId, String moduleName,
+                                         String eventName, Class<?> eventClass) {
+        EventSchema schema = new EventSchema(eventId, eventClass);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(eventId);
+            out.writeUTF(moduleName);
+            out.writeUTF(eventName);
+            out.writeByte(schema.columns.length);
+            for (Field f : schema.columns) {
+                out.writeUTF(f.getAnnotation(EventColumn.class).name());
+            }
+        } catch (IOException e) {
+            // not from a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        byte[] entry = bytes.toByteArray();
+        if (OFF_CATALOG + catalogLength + entry.length > HEADER_SIZE) {
+            log.warn("Flight recorder catalog is full; events of {}/{} "
+                     + "will be recorded without column names",
+                     moduleName, eventName);
+            return schema;
+        }
+        ByteBuffer catalog = buffer.duplicate();
+        catalog.position(OFF_CATALOG + catalogLength);
+        catalog.put(entry);
+        catalogLength += entry.length;
+        buffer.putInt(OFF_CATALOG_LENGTH, catalogLength);
+        return schema;
+    }
+
+    private int offsetOf(long seq) {
+        return HEADER_SIZE + (int) (seq % slotCount) * SLOT_SIZE;
+    }
+
+    /* Claim a slot and mark it as being written; returns its sequence number */
+    private long begin(long timeMs, byte kind, int id) {
+        long seq = cursor.getAndIncrement();
+        int offset = offsetOf(seq);
+        buffer.putLong(offset + OFF_SEQ, -1);
+        buffer.putLong(offset + OFF_TIME, timeMs);
+        buffer.putLong(offset + OFF_THREAD, Thread.currentThread().getId());
+        buffer.put(offset + OFF_KIND, kind);
+        buffer.putInt(offset + OFF_ID, id);
+        return seq;
+    }
+
+    /* Publish a record filled in since begin */
+    private void end(long seq, int payloadLength, boolean truncated) {
+        int offset = offsetOf(seq);
+        buffer.put(offset + OFF_FLAGS, truncated ? FLAG_TRUNCATED : 0);
+        buffer.putShort(offset + OFF_LENGTH, (short) payloadLength);
+        buffer.putLong(offset + OFF_SEQ, seq + 1);
+        buffer.putInt(offset + OFF_CHECKSUM, checksum(buffer, offset, payloadLength));
+    }
+
+    /**
+     * FNV-1a over the slot header before the checksum and the payload.
+     * It covers the sequence number, so a checksum left from an earlier
+     * lap of the ring does not match.
+     * @param offset where the slot starts
+     */
+    static int checksum(ByteBuffer buf, int offset, int payloadLength) {
+        int h = 0x811c9dc5;
+        for (int i = offset; i < offset + OFF_CHECKSUM; i++) {
+            h = (h ^ (buf.get(i) & 0xff)) * 0x01000193;
+        }
+        int payload = offset + OFF_PAYLOAD;
+        for (int i = payload; i < payload + payloadLength; i++) {
+            h = (h ^ (buf.get(i) & 0xff)) * 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * Record an event
+     * @param schema the schema of the event's category from addCategory
+     * @param timeMs when the event happened
+     * @param eventData the event
+     */
+    void recordEvent(EventSchema schema, long timeMs, Object eventData) {
+        long seq = begin(timeMs, KIND_EVENT, schema.eventId);
+        int start = offsetOf(seq) + OFF_PAYLOAD;
+        int limit = start + MAX_PAYLOAD;
+        int p = start;
+        boolean truncated = false;
+        for (int c = 0; c < schema.columns.length; c++) {
+            Object value;
+            try {
+                value = schema.columns[c].get(eventData);
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                value = null;
+            }
+            int next = putColumn(p, limit, schema.types[c], value);
+            if (next < 0) {
+                truncated = true;
+                break;
+            }
+            p = next;
+        }
+        end(seq, p - start, truncated);
+    }
+
+    /**
+     * Write a column value at p
+     * @return where the next value goes, or -1 if the value did not fit
+     * before limit
+     */
+    private int putColumn(int p, int limit, EventFieldType type, Object value) {
+        if (value instanceof SoftReference) {
+            value = ((SoftReference<?>) value).get();
+        }
+        if (value == null) {
+            if (p + 1 > limit) return -1;
+            buffer.put(p, TAG_NULL);
+            return p + 1;
+        }
+        switch (type) {
+            case DPID:
+                if (value instanceof DatapathId || value instanceof Long) {
+                    return putLong(p, limit, TAG_DPID, value instanceof Long
+                            ? (Long) value : ((DatapathId) value).getLong());
+                }
+                break;
+            case MAC:
+                if (value instanceof Long) {
+                    return putLong(p, limit, TAG_MAC, (Long) value);
+                }
+                break;
+            case IPv4:
+                if (value instanceof Integer || value instanceof IPv4Address) {
+                    if (p + 5 > limit) return -1;
+                    buffer.put(p, TAG_IPV4);
+                    buffer.putInt(p + 1, value instanceof Integer
+                            ? (Integer) value : ((IPv4Address) value).getInt());
+                    return p + 5;
+                }
+                break;
+            case PRIMITIVE:
+                if (value instanceof Long || value instanceof Integer
+                        || value instanceof Short || value instanceof Byte) {
+                    return putLong(p, limit, TAG_LONG, ((Number) value).longValue());
+                }
+                if (value instanceof Double || value instanceof Float) {
+                    return putLong(p, limit, TAG_DOUBLE,
+                                   Double.doubleToRawLongBits(((Number) value).doubleValue()));
+                }
+                if (value instanceof Boolean) {
+                    if (p + 2 > limit) return -1;
+                    buffer.put(p, TAG_BOOLEAN);
+                    buffer.put(p + 1, (byte) ((Boolean) value ? 1 : 0));
+                    return p + 2;
+                }
+                break;
+            default:
+                break;
+        }
+        // Strings, collections and anything else as its string
+        byte[] bytes = value.toString().getBytes(UTF8);
+        int n = Math.min(bytes.length, Math.min(MAX_STRING, limit - p - 2));
+        if (n < 0) return -1;
+        buffer.put(p, TAG_STRING);
+        buffer.put(p + 1, (byte) n);
+        for (int b = 0; b < n; b++) {
+            buffer.put(p + 2 + b, bytes[b]);
+        }
+        return n < bytes.length ? -1 : p + 2 + n;
+    }
+
+    private int putLong(int p, int limit, byte tag, long value) {
+        if (p + 9 > limit) return -1;
+        buffer.put(p, tag);
+        buffer.putLong(p + 1, value);
+        return p + 9;
+    }
+
+    /**
+     * Record the header of an OpenFlow message
+     * @param dpid the switch the message is to or from
+     * @param auxId the aux id of the connection
+     * @param outbound whether the message is to the switch
+     * @param m the message
+     */
+    public void recordMessage(long dpid, short auxId, boolean outbound, OFMessage m) {
+        long seq = begin(System.currentTimeMillis(),
+                         outbound ? KIND_MESSAGE_OUT : KIND_MESSAGE_IN, auxId);
+        int p = offsetOf(seq) + OFF_PAYLOAD;
+        buffer.putLong(p, dpid);
+        buffer.put(p + 8, (byte) m.getVersion().getWireVersion());
+        buffer.put(p + 9, (byte) m.getType().ordinal());
+        buffer.putInt(p + 10, (int) m.getXid());
+        end(seq, 14, false);
+    }
+
+    /**
+     * Write what was recorded out to the file and stop recording
+     */
+    public void close() {
+        if (messageRecorder == this) {
+            messageRecorder = null;
+        }
+        buffer.force();
+        try {
+            raf.close();
+        } catch (IOException e) {
+            log.warn("Error closing flight recording {}: {}", file, e.getMessage());
+        }
+    }
+}
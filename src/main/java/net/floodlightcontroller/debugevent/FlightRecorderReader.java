@@ -0,0 +1,235 @@
+package net.floodlightcontroller.debugevent;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+
+/**
+ * Prints a recording of a {@link FlightRecorder}, oldest record first, one
+ * record a line. Run it on a recording left by a controller that crashed
+ * or was restarted (then the recording is &lt;file&gt;.prev):
+ * <pre>
+ * java -cp target/floodlight.jar net.floodlightcontroller.debugevent.FlightRecorderReader &lt;file&gt;
+ * </pre>
+ */
+public class FlightRecorderReader {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /* A category of the catalog */
+    private static class Category {
+        String name;
+        String[] columns;
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int slotSize;
+    private final int slotCount;
+    private final long createdMs;
+    private final Map<Integer, Category> catalog = new HashMap<Integer, Category>();
+    private final SimpleDateFormat dateFormat =
+            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    public FlightRecorderReader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        if (buffer.capacity() < FlightRecorder.HEADER_SIZE
+                || buffer.getInt(0) != FlightRecorder.MAGIC) {
+            throw new IOException(file + " is not a flight recording");
+        }
+        if (buffer.getInt(4) != FlightRecorder.VERSION) {
+            throw new IOException(file + " is a flight recording of version "
+                                  + buffer.getInt(4) + "; this reads version "
+                                  + FlightRecorder.VERSION);
+        }
+        slotSize = buffer.getInt(FlightRecorder.OFF_SLOT_SIZE);
+        slotCount = buffer.getInt(FlightRecorder.OFF_SLOT_COUNT);
+        createdMs = buffer.getLong(FlightRecorder.OFF_CREATED);
+        readCatalog();
+    }
+
+    private void readCatalog() throws IOException {
+        int length = buffer.getInt(FlightRecorder.OFF_CATALOG_LENGTH);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(FlightRecorder.OFF_CATALOG + i);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        while (in.available() > 0) {
+            int eventId = in.readInt();
+            Category c = new Category();
+            c.name = in.readUTF() + "/" + in.readUTF();
+            c.columns = new String[in.readUnsignedByte()];
+            for (int i = 0; i < c.columns.length; i++) {
+                c.columns[i] = in.readUTF();
+            }
+            catalog.put(eventId, c);
+        }
+    }
+
+    /**
+     * Print the records, oldest first
+     * @return the number of records printed
+     */
+    public int print(PrintStream out) {
+        out.println("# recording started " + formatTime(createdMs) + ", "
+                    + slotCount + " records of " + slotSize + " bytes");
+        // The sequence numbers of the records; a record's slot follows
+        long[] records = new long[slotCount];
+        int n = 0;
+        int unfinished = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            long seqPlusOne = buffer.getLong(offsetOf(slot) + FlightRecorder.OFF_SEQ);
+            if (seqPlusOne > 0 && isWhole(slot)) {
+                records[n++] = seqPlusOne - 1;
+            } else if (seqPlusOne != 0) {
+                unfinished++;
+            }
+        }
+        Arrays.sort(records, 0, n);
+        for (int r = 0; r < n; r++) {
+            out.println(format((int) (records[r] % slotCount)));
+        }
+        if (unfinished > 0) {
+            out.println("# " + unfinished + " records were being written and are left out");
+        }
+        return n;
+    }
+
+    private int offsetOf(int slot) {
+        return FlightRecorder.HEADER_SIZE + slot * slotSize;
+    }
+
+    /* Whether a record's checksum matches, i.e. it was not torn by a crash */
+    private boolean isWhole(int slot) {
+        int offset = offsetOf(slot);
+        int length = buffer.getShort(offset + FlightRecorder.OFF_LENGTH);
+        if (length < 0 || length > slotSize - FlightRecorder.OFF_PAYLOAD) {
+            return false;
+        }
+        return buffer.getInt(offset + FlightRecorder.OFF_CHECKSUM)
+                == FlightRecorder.checksum(buffer, offset, length);
+    }
+
+    private String formatTime(long timeMs) {
+        return dateFormat.format(new Date(timeMs));
+    }
+
+    private String format(int slot) {
+        int offset = offsetOf(slot);
+        StringBuilder sb = new StringBuilder();
+        sb.append(formatTime(buffer.getLong(offset + FlightRecorder.OFF_TIME)));
+        sb.append(" thread=").append(buffer.getLong(offset + FlightRecorder.OFF_THREAD));
+        byte kind = buffer.get(offset + FlightRecorder.OFF_KIND);
+        int id = buffer.getInt(offset + FlightRecorder.OFF_ID);
+        int p = offset + FlightRecorder.OFF_PAYLOAD;
+        int end = p + buffer.getShort(offset + FlightRecorder.OFF_LENGTH);
+        if (kind == FlightRecorder.KIND_EVENT) {
+            Category c = catalog.get(id);
+            sb.append(' ').append(c != null ? c.name : "event-" + id);
+            for (int column = 0; p < end; column++) {
+                sb.append(' ');
+                if (c != null && column < c.columns.length) {
+                    sb.append(c.columns[column]);
+                } else {
+                    sb.append("column-").append(column);
+                }
+                sb.append('=');
+                p = formatColumn(sb, p);
+            }
+            if (buffer.get(offset + FlightRecorder.OFF_FLAGS) == FlightRecorder.FLAG_TRUNCATED) {
+                sb.append(" ...");
+            }
+        } else if (kind == FlightRecorder.KIND_MESSAGE_IN
+                   || kind == FlightRecorder.KIND_MESSAGE_OUT) {
+            sb.append(kind == FlightRecorder.KIND_MESSAGE_IN ? " OF in " : " OF out ");
+            sb.append(DatapathId.of(buffer.getLong(p))).append('/').append(id);
+            sb.append(' ').append(versionName(buffer.get(p + 8)));
+            int type = buffer.get(p + 9) & 0xff;
+            sb.append(' ').append(type < OFType.values().length
+                                  ? OFType.values()[type].toString() : "type-" + type);
+            sb.append(" xid=").append(buffer.getInt(p + 10) & 0xffffffffL);
+        } else {
+            sb.append(" unknown record kind ").append(kind);
+        }
+        return sb.toString();
+    }
+
+    private static String versionName(byte wireVersion) {
+        for (OFVersion v : OFVersion.values()) {
+            if (v.getWireVersion() == wireVersion) {
+                return v.toString();
+            }
+        }
+        return "version-" + wireVersion;
+    }
+
+    /* Append the column value at p; returns where the next one is */
+    private int formatColumn(StringBuilder sb, int p) {
+        byte tag = buffer.get(p);
+        switch (tag) {
+            case FlightRecorder.TAG_NULL:
+                sb.append("null");
+                return p + 1;
+            case FlightRecorder.TAG_LONG:
+                sb.append(buffer.getLong(p + 1));
+                return p + 9;
+            case FlightRecorder.TAG_DOUBLE:
+                sb.append(Double.longBitsToDouble(buffer.getLong(p + 1)));
+                return p + 9;
+            case FlightRecorder.TAG_BOOLEAN:
+                sb.append(buffer.get(p + 1) != 0);
+                return p + 2;
+            case FlightRecorder.TAG_DPID:
+                sb.append(DatapathId.of(buffer.getLong(p + 1)));
+                return p + 9;
+            case FlightRecorder.TAG_MAC:
+                sb.append(MacAddress.of(buffer.getLong(p + 1)));
+                return p + 9;
+            case FlightRecorder.TAG_IPV4:
+                sb.append(IPv4Address.of(buffer.getInt(p + 1)));
+                return p + 5;
+            case FlightRecorder.TAG_STRING:
+                int length = buffer.get(p + 1) & 0xff;
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = buffer.get(p + 2 + i);
+                }
+                sb.append('"').append(new String(bytes, UTF8)).append('"');
+                return p + 2 + length;
+            default:
+                sb.append("?tag-").append(tag);
+                return Integer.MAX_VALUE;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: FlightRecorderReader <file>");
+            System.exit(1);
+        }
+        try {
+            new FlightRecorderReader(new File(args[0])).print(System.out);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
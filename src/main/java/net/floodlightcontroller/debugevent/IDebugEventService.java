@@ -86,10 +86,9 @@ public interface IDebugEventService extends IFloodlightService {
     public <T> EventCategoryBuilder<T> buildEvent(Class<T> evClass);
 
     /**
-     * Update the global event stores with values from the thread local stores.
-     * This method is not typically intended for use by any module. It's typical
-     * usage is from floodlight core for events that happen in the packet
-     * processing pipeline. For other rare events, flushEvents should be called.
+     * Events used to be held in thread local stores until flushed to the
+     * global event stores. They are now written to the global stores as they
+     * are logged, so this does nothing; it is kept for existing callers.
      */
     public void flushEvents();
 
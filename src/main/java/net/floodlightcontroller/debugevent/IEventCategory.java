@@ -6,10 +6,11 @@ package net.floodlightcontroller.debugevent;
 public interface IEventCategory<T> {
 
     /**
-     * Logs the instance of the event thread-locally. Flushing to the global
-     * circular buffer for this event is delayed resulting in better
-     * performance. This method should typically be used by those events that
-     * happen in the packet processing pipeline
+     * Logs the instance of the event to the global circular buffer for this
+     * event. The buffer takes events from many threads without locking, so
+     * this is cheap enough for events that happen in the packet processing
+     * pipeline. Kept for compatibility; events are no longer held
+     * thread-locally, so it is the same as newEventWithFlush.
      *
      * @param event
      *            an instance of the user-defined event of type T
@@ -17,10 +18,8 @@ public interface IEventCategory<T> {
     public void newEventNoFlush(T event);
 
     /**
-     * Logs the instance of the event thread-locally and immediately flushes to
-     * the global circular buffer for this event. This method should typically
-     * be used by those events that happen outside the packet processing
-     * pipeline
+     * Logs the instance of the event to the global circular buffer for this
+     * event.
      *
      * @param event
      *            an instance of the user-defined event of type T
@@ -71,6 +71,18 @@ public interface IDeviceService extends IFloodlightService {
     public static final FloodlightContextStore<IDevice> fcStore = 
         new FloodlightContextStore<IDevice>();
 
+    /**
+     * Bound to CONTEXT_SRC_DEVICE; the same as fcStore with that key.
+     */
+    public static final FloodlightContextStore<IDevice> srcDeviceStore =
+        new FloodlightContextStore<IDevice>(CONTEXT_SRC_DEVICE);
+
+    /**
+     * Bound to CONTEXT_DST_DEVICE; the same as fcStore with that key.
+     */
+    public static final FloodlightContextStore<IDevice> dstDeviceStore =
+        new FloodlightContextStore<IDevice>(CONTEXT_DST_DEVICE);
+
     /**
      * Get the device with the given device key.
      * 
@@ -1071,7 +1071,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	// ****************
 
 	protected Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
 		// Extract source entity information
 		Entity srcEntity = getSourceEntityFromPacket(eth, sw.getId(), inPort);
@@ -1096,7 +1096,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		}
 
 		// Store the source device in the context
-		fcStore.put(cntx, CONTEXT_SRC_DEVICE, srcDevice);
+		srcDeviceStore.put(cntx, srcDevice);
 
 		// Find the device matching the destination from the entity
 		// classes of the source.
@@ -1109,7 +1109,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (dstEntity != null) {
 			dstDevice = findDestByEntity(srcDevice.getEntityClass(), dstEntity);
 			if (dstDevice != null)
-				fcStore.put(cntx, CONTEXT_DST_DEVICE, dstDevice);
+				dstDeviceStore.put(cntx, dstDevice);
 			else
 				cntNoDest.increment();
 		} else {
@@ -26,8 +26,9 @@ import org.slf4j.LoggerFactory;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
-import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IPacketInFilteringListener;
+import net.floodlightcontroller.core.PacketInFilter;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -89,7 +90,7 @@ import net.floodlightcontroller.packet.DHCPOption;
  * 
  * 
  */
-public class DHCPServer implements IOFMessageListener, IFloodlightModule  {
+public class DHCPServer implements IPacketInFilteringListener, IFloodlightModule  {
 	protected static Logger log;
 	protected static IFloodlightProviderService floodlightProvider;
 	protected static IOFSwitchService switchService;
@@ -104,6 +105,10 @@ public class DHCPServer implements IOFMessageListener, IFloodlightModule  {
 	// Tracks the lease status and duration of DHCP bindings
 	private static volatile DHCPPool theDHCPPool;
 
+	// We only need to see DHCP packet-ins
+	private static final PacketInFilter DHCP_FILTER =
+			PacketInFilter.udpPorts(UDP.DHCP_SERVER_PORT, UDP.DHCP_CLIENT_PORT);
+
 	/** START CONFIG FILE VARIABLES **/
 
 	// These variables are set using the floodlightdefault.properties file
@@ -332,6 +337,11 @@ public class DHCPServer implements IOFMessageListener, IFloodlightModule  {
 		return DHCPServer.class.getSimpleName();
 	}
 
+	@Override
+	public PacketInFilter getPacketInFilter() {
+		return DHCP_FILTER;
+	}
+
 	@Override
 	public boolean isCallbackOrderingPrereq(OFType type, String name) {
 		return false;
@@ -820,8 +830,7 @@ public class DHCPServer implements IOFMessageListener, IFloodlightModule  {
 			return Command.CONTINUE;
 		}
 
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
-				IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 
 		if (eth.getEtherType() == EthType.IPv4) { /* shallow compare is okay for EthType */
 			log.debug("Got IPv4 Packet");
@@ -0,0 +1,110 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * The forwarding decision a single switch makes for a single destination
+ * switch: the link that is used while it is up (the primary) and, if one
+ * exists, a loop-free link that does not share the primary link, which the
+ * switch falls back to on its own when the primary port goes down (the backup).
+ *
+ * Instances are immutable and are produced by the FailoverPathComputer.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class FailoverNextHop {
+	private final DatapathId sw;
+	private final DatapathId dst;
+	private final Link primary;
+	private final Link backup;
+
+	public FailoverNextHop(DatapathId sw, DatapathId dst, Link primary, Link backup) {
+		if (sw == null || dst == null || primary == null) {
+			throw new IllegalArgumentException("Switch, destination, and primary link must be set");
+		}
+		this.sw = sw;
+		this.dst = dst;
+		this.primary = primary;
+		this.backup = backup;
+	}
+
+	/**
+	 * @return the switch this decision is installed on
+	 */
+	public DatapathId getSwitch() {
+		return sw;
+	}
+
+	/**
+	 * @return the destination switch traffic is being forwarded towards
+	 */
+	public DatapathId getDestination() {
+		return dst;
+	}
+
+	/**
+	 * @return the link leaving getSwitch() that is on a shortest path to getDestination()
+	 */
+	public Link getPrimary() {
+		return primary;
+	}
+
+	/**
+	 * @return the link leaving getSwitch() to use if the primary goes down, or null if
+	 * the topology does not offer a loop-free alternate
+	 */
+	public Link getBackup() {
+		return backup;
+	}
+
+	/**
+	 * @return true if a backup link was found
+	 */
+	public boolean isProtected() {
+		return backup != null;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((backup == null) ? 0 : backup.hashCode());
+		result = prime * result + dst.hashCode();
+		result = prime * result + primary.hashCode();
+		result = prime * result + sw.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		FailoverNextHop other = (FailoverNextHop) obj;
+		if (backup == null) {
+			if (other.backup != null)
+				return false;
+		} else if (!backup.equals(other.backup))
+			return false;
+		if (!dst.equals(other.dst))
+			return false;
+		if (!primary.equals(other.primary))
+			return false;
+		if (!sw.equals(other.sw))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "FailoverNextHop [sw=" + sw.toString() + ", dst=" + dst.toString()
+				+ ", primary=" + primary.toString() + ", backup="
+				+ (backup == null ? "none" : backup.toString()) + "]";
+	}
+}
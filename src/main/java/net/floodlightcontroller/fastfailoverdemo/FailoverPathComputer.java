@@ -0,0 +1,217 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Computes, for every (switch, destination switch) pair in a fabric, the
+ * primary next hop and a backup next hop that can be programmed into a
+ * fast-failover group. The switch then fails over in its own data plane
+ * without waiting on the controller.
+ *
+ * The primary is the first link of a shortest (hop count) path. The backup
+ * is any other link leaving the switch whose far end N is a loop-free
+ * alternate for destination T, i.e. dist(N, T) < dist(N, S) + dist(S, T).
+ * That condition guarantees N will not hand the packet straight back to S
+ * once the primary has failed, so the backup never shares the primary link
+ * and never introduces a forwarding loop. If no such link exists, the pair
+ * is left unprotected and only the primary is returned.
+ *
+ * The computation is a breadth-first search towards each destination over
+ * the directed link set, so it is O(V * (V + E)) for the whole fabric.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class FailoverPathComputer {
+
+	/*
+	 * Link.compareTo() does not take the port into account, so sort outgoing
+	 * links on our own to make sure ties are always broken the same way. This
+	 * keeps the chosen next hops (and thus the groups we push) stable across
+	 * recomputations of an unchanged topology.
+	 */
+	private static final Comparator<Link> LINK_ORDER = new Comparator<Link>() {
+		@Override
+		public int compare(Link a, Link b) {
+			int c = a.getDst().compareTo(b.getDst());
+			if (c != 0) {
+				return c;
+			}
+			c = Integer.compare(a.getSrcPort().getPortNumber(), b.getSrcPort().getPortNumber());
+			if (c != 0) {
+				return c;
+			}
+			return Integer.compare(a.getDstPort().getPortNumber(), b.getDstPort().getPortNumber());
+		}
+	};
+
+	private final Map<DatapathId, List<Link>> outLinks;
+	private final Map<DatapathId, List<Link>> inLinks;
+
+	/**
+	 * Build a computer over the provided (directed) links. Links from a switch
+	 * to itself are ignored.
+	 * @param links, all links in the fabric, e.g. ILinkDiscoveryService.getLinks().keySet()
+	 */
+	public FailoverPathComputer(Collection<Link> links) {
+		outLinks = new HashMap<DatapathId, List<Link>>();
+		inLinks = new HashMap<DatapathId, List<Link>>();
+		for (Link link : links) {
+			if (link.getSrc().equals(link.getDst())) {
+				continue;
+			}
+			getOrCreate(outLinks, link.getSrc()).add(link);
+			getOrCreate(inLinks, link.getDst()).add(link);
+			getOrCreate(outLinks, link.getDst());
+			getOrCreate(inLinks, link.getSrc());
+		}
+		for (List<Link> l : outLinks.values()) {
+			Collections.sort(l, LINK_ORDER);
+		}
+	}
+
+	private static List<Link> getOrCreate(Map<DatapathId, List<Link>> map, DatapathId key) {
+		List<Link> l = map.get(key);
+		if (l == null) {
+			l = new ArrayList<Link>();
+			map.put(key, l);
+		}
+		return l;
+	}
+
+	/**
+	 * @return all switches that have at least one link
+	 */
+	public Set<DatapathId> getSwitches() {
+		return Collections.unmodifiableSet(outLinks.keySet());
+	}
+
+	/**
+	 * Compute the hop count from every switch to the destination
+	 * by walking incoming links backwards from the destination.
+	 * Unreachable switches are absent from the returned Map.
+	 */
+	private Map<DatapathId, Integer> distancesTo(DatapathId dst) {
+		Map<DatapathId, Integer> dist = new HashMap<DatapathId, Integer>();
+		Queue<DatapathId> queue = new ArrayDeque<DatapathId>();
+		dist.put(dst, 0);
+		queue.add(dst);
+		while (!queue.isEmpty()) {
+			DatapathId node = queue.remove();
+			int d = dist.get(node);
+			List<Link> in = inLinks.get(node);
+			if (in == null) {
+				continue;
+			}
+			for (Link link : in) {
+				if (!dist.containsKey(link.getSrc())) {
+					dist.put(link.getSrc(), d + 1);
+					queue.add(link.getSrc());
+				}
+			}
+		}
+		return dist;
+	}
+
+	/**
+	 * Compute the primary and backup next hops of every switch towards every
+	 * other reachable switch.
+	 * @return switch -> (destination switch -> next hops)
+	 */
+	public Map<DatapathId, Map<DatapathId, FailoverNextHop>> compute() {
+		/*
+		 * The loop-free alternate check needs the distance between any two
+		 * switches, so gather all of the BFS trees first.
+		 */
+		Map<DatapathId, Map<DatapathId, Integer>> distTo = new HashMap<DatapathId, Map<DatapathId, Integer>>(outLinks.size());
+		for (DatapathId dst : outLinks.keySet()) {
+			distTo.put(dst, distancesTo(dst));
+		}
+
+		Map<DatapathId, Map<DatapathId, FailoverNextHop>> result = new HashMap<DatapathId, Map<DatapathId, FailoverNextHop>>(outLinks.size());
+		for (DatapathId sw : outLinks.keySet()) {
+			Map<DatapathId, FailoverNextHop> hops = new HashMap<DatapathId, FailoverNextHop>();
+			for (DatapathId dst : outLinks.keySet()) {
+				if (sw.equals(dst)) {
+					continue;
+				}
+				FailoverNextHop hop = computeNextHop(sw, dst, distTo);
+				if (hop != null) {
+					hops.put(dst, hop);
+				}
+			}
+			result.put(sw, hops);
+		}
+		return result;
+	}
+
+	private FailoverNextHop computeNextHop(DatapathId sw, DatapathId dst, Map<DatapathId, Map<DatapathId, Integer>> distTo) {
+		Map<DatapathId, Integer> toDst = distTo.get(dst);
+		Map<DatapathId, Integer> toSw = distTo.get(sw);
+		Integer swToDst = toDst.get(sw);
+		if (swToDst == null) {
+			return null; /* unreachable */
+		}
+
+		Link primary = null;
+		for (Link link : outLinks.get(sw)) {
+			Integer d = toDst.get(link.getDst());
+			if (d != null && d.intValue() == swToDst.intValue() - 1) {
+				primary = link;
+				break;
+			}
+		}
+		if (primary == null) {
+			return null;
+		}
+
+		Link backup = null;
+		int backupDist = Integer.MAX_VALUE;
+		for (Link link : outLinks.get(sw)) {
+			if (link.equals(primary) || link.getSrcPort().equals(primary.getSrcPort())) {
+				continue;
+			}
+			Integer nToDst = toDst.get(link.getDst());
+			Integer nToSw = toSw.get(link.getDst());
+			if (nToDst == null || nToSw == null) {
+				continue;
+			}
+			/* Loop-free alternate condition (RFC 5286) */
+			if (nToDst.intValue() < nToSw.intValue() + swToDst.intValue()
+					&& nToDst.intValue() < backupDist) {
+				backup = link;
+				backupDist = nToDst.intValue();
+			}
+		}
+		return new FailoverNextHop(sw, dst, primary, backup);
+	}
+
+	/**
+	 * Convenience for callers that have the per-switch link Map from
+	 * ILinkDiscoveryService.getSwitchLinks(), in which each link appears
+	 * under both its source and destination switch.
+	 * @param switchLinks
+	 * @return the de-duplicated set of links
+	 */
+	public static Set<Link> flatten(Map<DatapathId, Set<Link>> switchLinks) {
+		Set<Link> links = new HashSet<Link>();
+		for (Set<Link> s : switchLinks.values()) {
+			links.addAll(s);
+		}
+		return links;
+	}
+}
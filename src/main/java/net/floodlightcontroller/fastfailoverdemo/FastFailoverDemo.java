@@ -5,23 +5,25 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.Set;
 
-import org.projectfloodlight.openflow.protocol.OFBarrierReply;
-import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
 import org.projectfloodlight.openflow.protocol.OFBucket;
 import org.projectfloodlight.openflow.protocol.OFFlowAdd;
-import org.projectfloodlight.openflow.protocol.OFFlowDelete;
 import org.projectfloodlight.openflow.protocol.OFGroupAdd;
-import org.projectfloodlight.openflow.protocol.OFGroupDelete;
 import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFPortConfig;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.protocol.OFPortMod;
+import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.protocol.ver10.OFPortConfigSerializerVer10;
@@ -37,10 +39,15 @@ import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.IShutdownListener;
+import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.PortChangeType;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -65,6 +72,12 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 	private static IOFSwitchService switchService;
 	private static IRestApiService restApiService;
 	private static ILinkDiscoveryService linkDiscoveryService;
+	private static IShutdownService shutdownService;
+
+	/*
+	 * Toggles are run one at a time off of the REST threads.
+	 */
+	private static ToggleJobQueue toggleJobs;
 
 	/*
 	 * The Logger that we'll use for debug output.
@@ -75,6 +88,17 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 	 * To more easily identify our flows, we will use a cookie.
 	 */
 	private static final U64 cookie = U64.ofRaw(0x11223344);
+
+	/*
+	 * Remembers which of our flows and groups are on each switch so
+	 * that we only send what changed. We own group 1 only.
+	 */
+	private static final OFTableReconciler reconciler = new OFTableReconciler(cookie, 1, 1);
+
+	/*
+	 * Backup flows for edge switches that can't do fast-failover groups.
+	 */
+	private static final FastRerouteTable fastReroute = new FastRerouteTable(reconciler);
 	
 	/*
 	 * The path we're currently using. This will be used to determine
@@ -153,12 +177,15 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 		 * We also have a REST API, so we need to have the IRestApiService loaded 
 		 * before us as well. Lastly, we look at the discovered links in order to
 		 * learn the ports for use in our flows. Thus, we depend on information
-		 * from the ILinkDiscoveryService.
+		 * from the ILinkDiscoveryService. Path toggles run in the background on
+		 * a thread of our own, which we stop when the IShutdownService tells us
+		 * the controller is shutting down.
 		 */
 		Collection<Class<? extends IFloodlightService>> deps = new ArrayList<Class<? extends IFloodlightService>>();
 		deps.add(IOFSwitchService.class);
 		deps.add(IRestApiService.class);
 		deps.add(ILinkDiscoveryService.class);
+		deps.add(IShutdownService.class);
 		return deps;
 	}
 
@@ -183,6 +210,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 		switchService = context.getServiceImpl(IOFSwitchService.class);
 		restApiService = context.getServiceImpl(IRestApiService.class);
 		linkDiscoveryService = context.getServiceImpl(ILinkDiscoveryService.class);
+		shutdownService = context.getServiceImpl(IShutdownService.class);
 
 		/*
 		 * Note, at this point, it still is not safe to call any functions defined
@@ -211,6 +239,27 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 		 */
 		restApiService.addRestletRoutable(new FastFailoverDemoRoutable());
 
+		/*
+		 * The REST API only queues toggles. They are carried out here, on a
+		 * thread of their own, since a toggle can wait on switches for a while.
+		 */
+		final ExecutorService toggleExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("FastFailoverToggle")
+				.setDaemon(true)
+				.build());
+		toggleJobs = new ToggleJobQueue(toggleExecutor, new ToggleJobQueue.Worker() {
+			@Override
+			public String run(ToggleJob job) {
+				return runToggle(job);
+			}
+		}, 100);
+		shutdownService.registerShutdownListener(new IShutdownListener() {
+			@Override
+			public void floodlightIsShuttingDown() {
+				toggleExecutor.shutdownNow();
+			}
+		});
+
 		/*
 		 * And lastly, we also use the ILinkDiscoveryService; however, we don't register
 		 * with it for anything. We will ask it for links when a REST API call is made.
@@ -259,6 +308,8 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 		if (switchConnected.keySet().contains(switchId)) {
 			switchConnected.put(switchId, false);
 			allSwitchesConnected = false;
+			reconciler.forget(switchId);
+			fastReroute.clear(switchId);
 			if (dpid1.equals(switchId)) {
 				dpid1_has_flows = false;
 				link_dpid1_to_dpid2a = null;
@@ -293,10 +344,14 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 	public void switchPortChanged(DatapathId switchId, OFPortDesc port,
 			PortChangeType type) {
 		/*
-		 * We won't react to switch port change events. We will be the
-		 * cause of switch port changes by bringing them up and down
-		 * administratively.
+		 * We are usually the cause of switch port changes by bringing them up
+		 * and down administratively. Switches with fast-failover groups handle
+		 * a port going down on their own. For those without, we push the backup
+		 * flows we computed ahead of time, as soon as the switch tells us.
 		 */
+		if (type == PortChangeType.DOWN) {
+			fastReroute.onPortDown(switchService.getSwitch(switchId), port.getPortNo());
+		}
 	}
 
 	@Override
@@ -307,27 +362,43 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 	}
 
 	@Override
-	public synchronized Map<String, String> handleToggleRequest(String json) {
+	public ToggleJob toggle(String json) {
 		/*
 		 * We don't care about the String as input, since we
 		 * randomly toggle between the paths, but this is how you
 		 * would provide your module with the HTTP payload of a 
 		 * POST or PUT. (Again, we will ignore the argument though
 		 * in this demonstration.)
+		 *
+		 * The toggle itself can take seconds (waiting on switches),
+		 * so we only queue it here and return right away. The caller
+		 * gets a job it can use to follow the progress.
 		 */
+		return toggleJobs.submit();
+	}
 
-		/*
-		 * Our return Map, which is readily converted to JSON.
-		 */
-		Map<String, String> message = new HashMap<String, String>();
+	@Override
+	public ToggleJob getToggleJob(long id) {
+		return toggleJobs.get(id);
+	}
+
+	@Override
+	public List<ToggleJob> getToggleJobs() {
+		return toggleJobs.getJobs();
+	}
 
+	/**
+	 * Carry out a toggle. Runs on the toggle thread, one job at a time.
+	 * @param job, to report progress to
+	 * @return the path we're using now
+	 */
+	private String runToggle(ToggleJob job) {
 		/*
 		 * First, let's make sure everyone's connected.
 		 */
 		if (!allSwitchesConnected) {
 			log.error("Not all switches are connected. Status: {}", switchConnected.toString());
-			message.put("ERROR", "Not all switches are connected. Status: " + switchConnected.toString());
-			return message;
+			throw new IllegalStateException("Not all switches are connected. Status: " + switchConnected.toString());
 		}
 
 		/*
@@ -335,29 +406,34 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 		 */
 		if (!learnLinks()) {
 			log.error("Have not learned all links yet.");
-			message.put("ERROR", "Have not learned all links in topology. Try again after a few moments. "
+			throw new IllegalStateException("Have not learned all links in topology. Try again after a few moments. "
 					+ "Make sure all ports are set up to enable LLDP to discover missing links.");
-			return message;
 		}
+		job.progress(null, "links-learned", null);
 
 		/*
 		 * Next, insert flows if they haven't been already.
 		 */
-		insertFlows();
-		message.put("test", "some string");
+		insertFlows(job);
 
 		/*
-		 * Now, toggle the path.
+		 * Now, toggle the path. The ports have been told to change either
+		 * way, so we consider the path toggled even if a switch didn't confirm.
 		 */
+		boolean confirmed;
+		String path;
 		if (usingPath1) {
-			usePathA();
-			usingPath1 = !usingPath1;
+			confirmed = usePathA(job);
+			path = "sw1--sw2a--sw3";
 		} else {
-			usePathB();
-			usingPath1 = !usingPath1;
+			confirmed = usePathB(job);
+			path = "sw1--sw2b--sw3";
 		}
-
-		return message;
+		usingPath1 = !usingPath1;
+		if (!confirmed) {
+			throw new IllegalStateException("Switched to path " + path + ", but not all switches confirmed in time");
+		}
+		return "Using path " + path;
 	}
 
 	private boolean learnLinks() {
@@ -421,29 +497,74 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 		}
 	}
 
-	private void sendBarrier(IOFSwitch sw) {
-		OFBarrierRequest barrierRequest = sw.getOFFactory().buildBarrierRequest()
-				.build();
-		ListenableFuture<OFBarrierReply> future = sw.writeRequest(barrierRequest);
+	private boolean hasFlows(DatapathId dpid) {
+		if (dpid1.equals(dpid)) {
+			return dpid1_has_flows;
+		} else if (dpid2a.equals(dpid)) {
+			return dpid2a_has_flows;
+		} else if (dpid2b.equals(dpid)) {
+			return dpid2b_has_flows;
+		} else if (dpid3.equals(dpid)) {
+			return dpid3_has_flows;
+		}
+		return false;
+	}
+
+	/**
+	 * Wait for the replies of many switches at once. Since all the
+	 * requests are already in flight, the time spent here is bounded by
+	 * the slowest switch rather than the sum over all of them.
+	 * @param job, to report each switch's reply (or lack thereof) to
+	 * @param replies, the outstanding replies of each switch
+	 */
+	private void waitForReplies(ToggleJob job, Map<DatapathId, ? extends ListenableFuture<?>> replies) {
+		if (replies.isEmpty()) {
+			return;
+		}
 		try {
-			future.get(10, TimeUnit.SECONDS); /* If successful, we can discard the reply. */
-		} catch (InterruptedException | ExecutionException
-				| TimeoutException e) {
-			log.error("Switch {} doesn't support barrier messages? OVS should.", sw.toString());
+			Futures.successfulAsList(replies.values()).get(10, TimeUnit.SECONDS); /* The reconciler consumes the replies. */
+		} catch (InterruptedException e) {
+			log.error("Interrupted waiting on replies from switches {}", replies.keySet().toString());
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.error("Failed waiting on replies from switches " + replies.keySet().toString(), e.getCause());
+		} catch (TimeoutException e) {
+			log.error("Timed out waiting on replies from switches {}", replies.keySet().toString());
+		}
+		for (Entry<DatapathId, ? extends ListenableFuture<?>> e : replies.entrySet()) {
+			if (!e.getValue().isDone()) {
+				e.getValue().cancel(false);
+				log.error("Switch {} did not report its flows and groups. They will be replaced.", e.getKey().toString());
+				job.progress(e.getKey(), "seed-timeout", null);
+			} else {
+				job.progress(e.getKey(), "seeded", null);
+			}
 		}
 	}
 
-	private void insertFlows() {
+	private void insertFlows(ToggleJob job) {
+		/*
+		 * Ask all switches that need flows what they already have, at once. This
+		 * lets the reconciler send only what is missing or different instead of
+		 * wiping and re-adding everything (which would drop traffic in between).
+		 * We wait for all of the replies together instead of one switch at a time.
+		 */
+		Map<DatapathId, ListenableFuture<List<Object>>> seeds = new HashMap<DatapathId, ListenableFuture<List<Object>>>(4);
+		for (DatapathId dpid : new DatapathId[] { dpid2a, dpid2b, dpid1, dpid3 }) {
+			if (!hasFlows(dpid) && !reconciler.isKnown(dpid)) {
+				seeds.put(dpid, reconciler.seed(switchService.getSwitch(dpid)));
+			}
+		}
+		waitForReplies(job, seeds);
 
+		/*
+		 * Now, push the new flows (and groups) to all of them. Anything not
+		 * already there is added, and anything of ours that's stale is removed.
+		 */
 		if (!dpid2a_has_flows) {
 			IOFSwitch sw2a = switchService.getSwitch(dpid2a);
-			OFFlowDelete flowDelete = sw2a.getOFFactory().buildFlowDelete()
-					.setCookie(cookie)
-					.setCookieMask(U64.NO_MASK)
-					.build();
-			sw2a.write(flowDelete);
-
-			sendBarrier(sw2a);
+			List<OFGroupAdd> groups = new ArrayList<OFGroupAdd>(1);
+			List<OFFlowAdd> flows = new ArrayList<OFFlowAdd>(6);
 
 			/* ARP and IPv4 from sw2a to sw3 */
 			OFFlowAdd flowAdd = sw2a.getOFFactory().buildFlowAdd()
@@ -456,11 +577,11 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2a.getDstPort())
 							.build())
 							.setActions(Collections.singletonList((OFAction) sw2a.getOFFactory().actions().buildOutput()
-									.setMaxLen(0xffFFffFF)
+									.setMaxLen(0xffff)
 									.setPort(link_dpid2a_to_dpid3.getSrcPort())
 									.build()))
 									.build();
-			sw2a.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw2a.getOFFactory().buildMatch()
@@ -468,7 +589,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2a.getDstPort())
 							.build())
 							.build();
-			sw2a.write(flowAdd);
+			flows.add(flowAdd);
 
 			/* ARP and IPv4 from sw3 to sw2a */
 			flowAdd = flowAdd.createBuilder()
@@ -477,11 +598,11 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2a_to_dpid3.getSrcPort())
 							.build())
 							.setActions(Collections.singletonList((OFAction) sw2a.getOFFactory().actions().buildOutput()
-									.setMaxLen(0xffFFffFF)
+									.setMaxLen(0xffff)
 									.setPort(link_dpid1_to_dpid2a.getDstPort())
 									.build()))
 									.build();
-			sw2a.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw2a.getOFFactory().buildMatch()
@@ -489,21 +610,18 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2a_to_dpid3.getSrcPort())
 							.build())
 							.build();
-			sw2a.write(flowAdd);
+			flows.add(flowAdd);
 			
-			log.info("Inserted flows for switch {}", dpid2a.toString());
+			int sent = reconciler.reconcile(sw2a, groups, flows);
+			log.info("Inserted flows for switch {} using {} messages", dpid2a.toString(), sent);
+			job.progress(dpid2a, "flows-sent", sent + " messages");
 			dpid2a_has_flows = true;
 		}
 
 		if (!dpid2b_has_flows) {
 			IOFSwitch sw2b = switchService.getSwitch(dpid2b);
-			OFFlowDelete flowDelete = sw2b.getOFFactory().buildFlowDelete()
-					.setCookie(cookie)
-					.setCookieMask(U64.NO_MASK)
-					.build();
-			sw2b.write(flowDelete);
-
-			sendBarrier(sw2b);
+			List<OFGroupAdd> groups = new ArrayList<OFGroupAdd>(1);
+			List<OFFlowAdd> flows = new ArrayList<OFFlowAdd>(6);
 
 			/* ARP and IPv4 from sw2a to sw3 */
 			OFFlowAdd flowAdd = sw2b.getOFFactory().buildFlowAdd()
@@ -516,11 +634,11 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2b.getDstPort())
 							.build())
 							.setActions(Collections.singletonList((OFAction) sw2b.getOFFactory().actions().buildOutput()
-									.setMaxLen(0xffFFffFF)
+									.setMaxLen(0xffff)
 									.setPort(link_dpid2b_to_dpid3.getSrcPort())
 									.build()))
 									.build();
-			sw2b.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw2b.getOFFactory().buildMatch()
@@ -528,7 +646,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2b.getDstPort())
 							.build())
 							.build();
-			sw2b.write(flowAdd);
+			flows.add(flowAdd);
 
 			/* ARP and IPv4 from sw3 to sw2a */
 			flowAdd = flowAdd.createBuilder()
@@ -537,11 +655,11 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2b_to_dpid3.getSrcPort())
 							.build())
 							.setActions(Collections.singletonList((OFAction) sw2b.getOFFactory().actions().buildOutput()
-									.setMaxLen(0xffFFffFF)
+									.setMaxLen(0xffff)
 									.setPort(link_dpid1_to_dpid2b.getDstPort())
 									.build()))
 									.build();
-			sw2b.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw2b.getOFFactory().buildMatch()
@@ -549,52 +667,51 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2b_to_dpid3.getSrcPort())
 							.build())
 							.build();
-			sw2b.write(flowAdd);
+			flows.add(flowAdd);
 
-			log.info("Inserted flows for switch {}", dpid2b.toString());
+			int sent = reconciler.reconcile(sw2b, groups, flows);
+			log.info("Inserted flows for switch {} using {} messages", dpid2b.toString(), sent);
+			job.progress(dpid2b, "flows-sent", sent + " messages");
 			dpid2b_has_flows = true;	
 		}
 
 		if (!dpid1_has_flows) {
 			IOFSwitch sw1 = switchService.getSwitch(dpid1);
-			OFFlowDelete flowDelete = sw1.getOFFactory().buildFlowDelete()
-					.setCookie(cookie)
-					.setCookieMask(U64.NO_MASK)
-					.build();
-			sw1.write(flowDelete);
-
-			OFGroupDelete groupDelete = sw1.getOFFactory().buildGroupDelete()
-					.setGroup(OFGroup.ANY)
-					.setGroupType(OFGroupType.FF)
-					.build();
-			sw1.write(groupDelete);
-
-			sendBarrier(sw1);
-
-			/* Add the group: fast-failover watching ports leading to dpid2a and dpid2b */
-			ArrayList<OFBucket> buckets = new ArrayList<OFBucket>(2);
-			buckets.add(sw1.getOFFactory().buildBucket()
-					.setWatchPort(link_dpid1_to_dpid2a.getSrcPort())
-					.setWatchGroup(OFGroup.ZERO)
-					.setActions(Collections.singletonList((OFAction) sw1.getOFFactory().actions().buildOutput()
-							.setMaxLen(0xffFFffFF)
-							.setPort(link_dpid1_to_dpid2a.getSrcPort())
-							.build()))
-							.build());
-			buckets.add(sw1.getOFFactory().buildBucket()
-					.setWatchPort(link_dpid1_to_dpid2b.getSrcPort())
-					.setWatchGroup(OFGroup.ZERO)
-					.setActions(Collections.singletonList((OFAction) sw1.getOFFactory().actions().buildOutput()
-							.setMaxLen(0xffFFffFF)
-							.setPort(link_dpid1_to_dpid2b.getSrcPort())
-							.build()))
-							.build());
-			OFGroupAdd groupAdd = sw1.getOFFactory().buildGroupAdd()
-					.setGroup(OFGroup.of(1))
-					.setGroupType(OFGroupType.FF)
-					.setBuckets(buckets)
-					.build();
-			sw1.write(groupAdd);
+			List<OFGroupAdd> groups = new ArrayList<OFGroupAdd>(1);
+			List<OFFlowAdd> flows = new ArrayList<OFFlowAdd>(6);
+
+			/*
+			 * Switches without group support (e.g. OF1.0) send host traffic
+			 * straight out the primary port. We protect them from the controller
+			 * instead, with backup flows that are pushed when the port goes down.
+			 */
+			boolean useGroup = supportsGroups(sw1);
+			if (useGroup) {
+				/* Add the group: fast-failover watching ports leading to dpid2a and dpid2b */
+				ArrayList<OFBucket> buckets = new ArrayList<OFBucket>(2);
+				buckets.add(sw1.getOFFactory().buildBucket()
+						.setWatchPort(link_dpid1_to_dpid2a.getSrcPort())
+						.setWatchGroup(OFGroup.ZERO)
+						.setActions(Collections.singletonList((OFAction) sw1.getOFFactory().actions().buildOutput()
+								.setMaxLen(0xffff)
+								.setPort(link_dpid1_to_dpid2a.getSrcPort())
+								.build()))
+								.build());
+				buckets.add(sw1.getOFFactory().buildBucket()
+						.setWatchPort(link_dpid1_to_dpid2b.getSrcPort())
+						.setWatchGroup(OFGroup.ZERO)
+						.setActions(Collections.singletonList((OFAction) sw1.getOFFactory().actions().buildOutput()
+								.setMaxLen(0xffff)
+								.setPort(link_dpid1_to_dpid2b.getSrcPort())
+								.build()))
+								.build());
+				OFGroupAdd groupAdd = sw1.getOFFactory().buildGroupAdd()
+						.setGroup(OFGroup.of(1))
+						.setGroupType(OFGroupType.FF)
+						.setBuckets(buckets)
+						.build();
+				groups.add(groupAdd);
+			}
 
 			/* ARP and IPv4 from sw1 to group1 */
 			OFFlowAdd flowAdd = sw1.getOFFactory().buildFlowAdd()
@@ -606,12 +723,17 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.ETH_TYPE, EthType.ARP)
 							.setExact(MatchField.IN_PORT, getHostPort(sw1))
 							.build())
-							.setActions(Collections.singletonList((OFAction) sw1.getOFFactory().actions().buildGroup()
-									.setGroup(OFGroup.of(1))
-									.build()))
+							.setActions(Collections.singletonList(useGroup
+									? (OFAction) sw1.getOFFactory().actions().buildGroup()
+											.setGroup(OFGroup.of(1))
+											.build()
+									: (OFAction) sw1.getOFFactory().actions().buildOutput()
+											.setMaxLen(0xffff)
+											.setPort(link_dpid1_to_dpid2a.getSrcPort())
+											.build()))
 									.build();
 
-			sw1.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw1.getOFFactory().buildMatch()
@@ -619,7 +741,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, getHostPort(sw1))
 							.build())
 							.build();
-			sw1.write(flowAdd);
+			flows.add(flowAdd);
 
 			/* ARP and IPv4 from sw2a to host */
 			flowAdd = flowAdd.createBuilder()
@@ -628,11 +750,11 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2a.getSrcPort())
 							.build())
 							.setActions(Collections.singletonList((OFAction) sw1.getOFFactory().actions().buildOutput()
-									.setMaxLen(0xffFFffFF)
+									.setMaxLen(0xffff)
 									.setPort(getHostPort(sw1))
 									.build()))
 									.build();
-			sw1.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw1.getOFFactory().buildMatch()
@@ -640,7 +762,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2a.getSrcPort())
 							.build())
 							.build();
-			sw1.write(flowAdd);
+			flows.add(flowAdd);
 
 			/* ARP and IPv4 from sw2b to host */
 			flowAdd = flowAdd.createBuilder()
@@ -649,7 +771,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2b.getSrcPort())
 							.build())
 							.build();
-			sw1.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw1.getOFFactory().buildMatch()
@@ -657,52 +779,54 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid1_to_dpid2b.getSrcPort())
 							.build())
 							.build();
-			sw1.write(flowAdd);
+			flows.add(flowAdd);
 
-			log.info("Inserted flows for switch {}", dpid1.toString());
+			int sent = reconciler.reconcile(sw1, groups, flows);
+			if (!useGroup) {
+				protectUplinks(sw1, getHostPort(sw1), link_dpid1_to_dpid2a.getSrcPort(), link_dpid1_to_dpid2b.getSrcPort());
+			}
+			log.info("Inserted flows for switch {} using {} messages", dpid1.toString(), sent);
+			job.progress(dpid1, "flows-sent", sent + " messages");
 			dpid1_has_flows = true;
 		}
 
 		if (!dpid3_has_flows) {
 			IOFSwitch sw3 = switchService.getSwitch(dpid3);
-			OFFlowDelete flowDelete = sw3.getOFFactory().buildFlowDelete()
-					.setCookie(cookie)
-					.setCookieMask(U64.NO_MASK)
-					.build();
-			sw3.write(flowDelete);
-
-			OFGroupDelete groupDelete = sw3.getOFFactory().buildGroupDelete()
-					.setGroup(OFGroup.ANY)
-					.setGroupType(OFGroupType.FF)
-					.build();
-			sw3.write(groupDelete);
-
-			sendBarrier(sw3);
-
-			/* Add the group: fast-failover watching ports leading to dpid2a and dpid2b */
-			ArrayList<OFBucket> buckets = new ArrayList<OFBucket>(2);
-			buckets.add(sw3.getOFFactory().buildBucket()
-					.setWatchPort(link_dpid2a_to_dpid3.getDstPort())
-					.setWatchGroup(OFGroup.ZERO)
-					.setActions(Collections.singletonList((OFAction) sw3.getOFFactory().actions().buildOutput()
-							.setMaxLen(0xffFFffFF)
-							.setPort(link_dpid2a_to_dpid3.getDstPort())
-							.build()))
-							.build());
-			buckets.add(sw3.getOFFactory().buildBucket()
-					.setWatchPort(link_dpid2b_to_dpid3.getDstPort())
-					.setWatchGroup(OFGroup.ZERO)
-					.setActions(Collections.singletonList((OFAction) sw3.getOFFactory().actions().buildOutput()
-							.setMaxLen(0xffFFffFF)
-							.setPort(link_dpid2b_to_dpid3.getDstPort())
-							.build()))
-							.build());
-			OFGroupAdd groupAdd = sw3.getOFFactory().buildGroupAdd()
-					.setGroup(OFGroup.of(1))
-					.setGroupType(OFGroupType.FF)
-					.setBuckets(buckets)
-					.build();
-			sw3.write(groupAdd);
+			List<OFGroupAdd> groups = new ArrayList<OFGroupAdd>(1);
+			List<OFFlowAdd> flows = new ArrayList<OFFlowAdd>(6);
+
+			/*
+			 * Switches without group support (e.g. OF1.0) send host traffic
+			 * straight out the primary port. We protect them from the controller
+			 * instead, with backup flows that are pushed when the port goes down.
+			 */
+			boolean useGroup = supportsGroups(sw3);
+			if (useGroup) {
+				/* Add the group: fast-failover watching ports leading to dpid2a and dpid2b */
+				ArrayList<OFBucket> buckets = new ArrayList<OFBucket>(2);
+				buckets.add(sw3.getOFFactory().buildBucket()
+						.setWatchPort(link_dpid2a_to_dpid3.getDstPort())
+						.setWatchGroup(OFGroup.ZERO)
+						.setActions(Collections.singletonList((OFAction) sw3.getOFFactory().actions().buildOutput()
+								.setMaxLen(0xffff)
+								.setPort(link_dpid2a_to_dpid3.getDstPort())
+								.build()))
+								.build());
+				buckets.add(sw3.getOFFactory().buildBucket()
+						.setWatchPort(link_dpid2b_to_dpid3.getDstPort())
+						.setWatchGroup(OFGroup.ZERO)
+						.setActions(Collections.singletonList((OFAction) sw3.getOFFactory().actions().buildOutput()
+								.setMaxLen(0xffff)
+								.setPort(link_dpid2b_to_dpid3.getDstPort())
+								.build()))
+								.build());
+				OFGroupAdd groupAdd = sw3.getOFFactory().buildGroupAdd()
+						.setGroup(OFGroup.of(1))
+						.setGroupType(OFGroupType.FF)
+						.setBuckets(buckets)
+						.build();
+				groups.add(groupAdd);
+			}
 
 			/* ARP and IPv4 from sw3 to group1 */
 			OFFlowAdd flowAdd = sw3.getOFFactory().buildFlowAdd()
@@ -714,12 +838,17 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.ETH_TYPE, EthType.ARP)
 							.setExact(MatchField.IN_PORT, getHostPort(sw3))
 							.build())
-							.setActions(Collections.singletonList((OFAction) sw3.getOFFactory().actions().buildGroup()
-									.setGroup(OFGroup.of(1))
-									.build()))
+							.setActions(Collections.singletonList(useGroup
+									? (OFAction) sw3.getOFFactory().actions().buildGroup()
+											.setGroup(OFGroup.of(1))
+											.build()
+									: (OFAction) sw3.getOFFactory().actions().buildOutput()
+											.setMaxLen(0xffff)
+											.setPort(link_dpid2a_to_dpid3.getDstPort())
+											.build()))
 									.build();
 
-			sw3.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw3.getOFFactory().buildMatch()
@@ -727,7 +856,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, getHostPort(sw3))
 							.build())
 							.build();
-			sw3.write(flowAdd);
+			flows.add(flowAdd);
 
 			/* ARP and IPv4 from sw2a to host */
 			flowAdd = flowAdd.createBuilder()
@@ -736,11 +865,11 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2a_to_dpid3.getDstPort())
 							.build())
 							.setActions(Collections.singletonList((OFAction) sw3.getOFFactory().actions().buildOutput()
-									.setMaxLen(0xffFFffFF)
+									.setMaxLen(0xffff)
 									.setPort(getHostPort(sw3))
 									.build()))
 									.build();
-			sw3.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw3.getOFFactory().buildMatch()
@@ -748,7 +877,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2a_to_dpid3.getDstPort())
 							.build())
 							.build();
-			sw3.write(flowAdd);
+			flows.add(flowAdd);
 
 			/* ARP and IPv4 from sw2b to host */
 			flowAdd = flowAdd.createBuilder()
@@ -757,7 +886,7 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2b_to_dpid3.getDstPort())
 							.build())
 							.build();
-			sw3.write(flowAdd);
+			flows.add(flowAdd);
 
 			flowAdd = flowAdd.createBuilder()
 					.setMatch(sw3.getOFFactory().buildMatch()
@@ -765,14 +894,64 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 							.setExact(MatchField.IN_PORT, link_dpid2b_to_dpid3.getDstPort())
 							.build())
 							.build();
-			sw3.write(flowAdd);
+			flows.add(flowAdd);
 			
-			log.info("Inserted flows for switch {}", dpid3.toString());
+			int sent = reconciler.reconcile(sw3, groups, flows);
+			if (!useGroup) {
+				protectUplinks(sw3, getHostPort(sw3), link_dpid2a_to_dpid3.getDstPort(), link_dpid2b_to_dpid3.getDstPort());
+			}
+			log.info("Inserted flows for switch {} using {} messages", dpid3.toString(), sent);
+			job.progress(dpid3, "flows-sent", sent + " messages");
 			dpid3_has_flows = true;
 		}
 
 	}
 
+	private static boolean supportsGroups(IOFSwitch sw) {
+		return sw.getOFFactory().getVersion().compareTo(OFVersion.OF_11) >= 0;
+	}
+
+	/**
+	 * Precompute, for each of the two uplinks of an edge switch, the flows
+	 * that move host traffic to the other uplink, and hand them to the
+	 * FastRerouteTable. Nothing needs to be computed when a port goes down.
+	 * @param sw, the edge switch
+	 * @param hostPort, the port the host is on
+	 * @param uplinkA, the primary uplink
+	 * @param uplinkB, the backup uplink
+	 */
+	private void protectUplinks(IOFSwitch sw, OFPort hostPort, OFPort uplinkA, OFPort uplinkB) {
+		fastReroute.protect(sw.getId(), uplinkA, buildHostFlows(sw, hostPort, uplinkB));
+		fastReroute.protect(sw.getId(), uplinkB, buildHostFlows(sw, hostPort, uplinkA));
+		log.info("Switch {} does not support groups. Protecting ports {} and {} from the controller.",
+				new Object[] { sw.getId().toString(), uplinkA.toString(), uplinkB.toString() });
+	}
+
+	/**
+	 * @return ARP and IPv4 flows from the host port to the given uplink, as
+	 * strict modifies, so that they replace the flows we have there already
+	 */
+	private List<OFMessage> buildHostFlows(IOFSwitch sw, OFPort hostPort, OFPort uplink) {
+		List<OFMessage> flows = new ArrayList<OFMessage>(2);
+		for (EthType ethType : new EthType[] { EthType.ARP, EthType.IPv4 }) {
+			flows.add(sw.getOFFactory().buildFlowModifyStrict()
+					.setCookie(cookie)
+					.setHardTimeout(0)
+					.setIdleTimeout(0)
+					.setPriority(FlowModUtils.PRIORITY_MAX)
+					.setMatch(sw.getOFFactory().buildMatch()
+							.setExact(MatchField.ETH_TYPE, ethType)
+							.setExact(MatchField.IN_PORT, hostPort)
+							.build())
+					.setActions(Collections.singletonList((OFAction) sw.getOFFactory().actions().buildOutput()
+							.setMaxLen(0xffff)
+							.setPort(uplink)
+							.build()))
+					.build());
+		}
+		return flows;
+	}
+
 	private OFPort getHostPort(IOFSwitch sw) {
 		if (sw.getId().equals(dpid1)) {
 			OFPort port = null;
@@ -843,89 +1022,91 @@ public class FastFailoverDemo implements IFloodlightModule, IOFSwitchListener, I
 		return config;
 	}
 
-	private void usePathA() {
-		/*
-		 * Take down path B ports at sw1 and sw3
-		 */
-		IOFSwitch sw = switchService.getSwitch(dpid1);
-		/* Set down */
-		OFPortMod portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid1_to_dpid2b.getSrcPort())
-				.setConfig(portDown(sw))
+	private OFPortMod buildPortMod(IOFSwitch sw, OFPort port, boolean up) {
+		return sw.getOFFactory().buildPortMod()
+				.setPortNo(port)
+				.setConfig(up ? 0 : portDown(sw))
 				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid1_to_dpid2b.getSrcPort()).getHwAddr())
+				.setHwAddr(sw.getPort(port).getHwAddr())
 				.build();
-		sw.write(portMod);
-		/* Set up */
-		portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid1_to_dpid2a.getSrcPort())
-				.setConfig(0)
-				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid1_to_dpid2a.getSrcPort()).getHwAddr())
-				.build();
-		sw.write(portMod);
-		
-		sw = switchService.getSwitch(dpid3);
-		/* Set down */
-		portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid2b_to_dpid3.getDstPort())
-				.setConfig(portDown(sw))
-				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid2b_to_dpid3.getDstPort()).getHwAddr())
-				.build();
-		sw.write(portMod);
-		/* Set up */
-		portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid2a_to_dpid3.getDstPort())
-				.setConfig(0)
-				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid2a_to_dpid3.getDstPort()).getHwAddr())
-				.build();
-		sw.write(portMod);
-		
-		log.info("Took down ports on path sw1--sw2b--sw3 and brought up ports on sw1--sw2a--sw3");
 	}
 
-	private void usePathB() {
+	/**
+	 * Bring up the ports of one path and take down the ports of the other at
+	 * sw1 and sw3. The changes of each switch are sent as one transaction (an
+	 * atomic bundle for OF1.4+ switches), and the new path is brought up before
+	 * the old one goes down, so there's no point at which neither path is up.
+	 * @return true if all switches confirmed the change in time
+	 */
+	private boolean switchPath(final ToggleJob job, OFPort sw1Up, OFPort sw3Up, OFPort sw1Down, OFPort sw3Down) {
+		IOFSwitch sw1 = switchService.getSwitch(dpid1);
+		IOFSwitch sw3 = switchService.getSwitch(dpid3);
+		SwitchoverTransaction txn = new SwitchoverTransaction()
+				.add(sw1, buildPortMod(sw1, sw1Up, true))
+				.add(sw1, buildPortMod(sw1, sw1Down, false))
+				.add(sw3, buildPortMod(sw3, sw3Up, true))
+				.add(sw3, buildPortMod(sw3, sw3Down, false));
+
+		long start = System.nanoTime();
+		ListenableFuture<List<OFMessage>> confirmed = txn.commit();
+		for (final Entry<DatapathId, ListenableFuture<OFMessage>> e : txn.getConfirmations().entrySet()) {
+			job.progress(e.getKey(), "path-sent", null);
+			Futures.addCallback(e.getValue(), new FutureCallback<OFMessage>() {
+				@Override
+				public void onSuccess(OFMessage reply) {
+					job.progress(e.getKey(), "path-confirmed", null);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					job.progress(e.getKey(), "path-failed", t.getMessage());
+				}
+			});
+		}
+		try {
+			confirmed.get(10, TimeUnit.SECONDS);
+			log.info("Path switchover confirmed by all switches in {} ms (bundles: sw1={}, sw3={})",
+					new Object[] { TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+					SwitchoverTransaction.supportsBundles(sw1), SwitchoverTransaction.supportsBundles(sw3) });
+			return true;
+		} catch (InterruptedException e) {
+			log.error("Interrupted waiting for switches to confirm path switchover");
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			log.error("A switch rejected the path switchover after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms", e.getCause());
+			return false;
+		} catch (TimeoutException e) {
+			log.error("Switches did not confirm path switchover after {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			return false;
+		}
+	}
+
+	private boolean usePathA(ToggleJob job) {
 		/*
-		 * Take down path B ports at sw1 and sw3
+		 * Take down path B ports at sw1 and sw3 and bring up path A ports
 		 */
-		IOFSwitch sw = switchService.getSwitch(dpid1);
-		/* Set down */
-		OFPortMod portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid1_to_dpid2a.getSrcPort())
-				.setConfig(portDown(sw))
-				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid1_to_dpid2a.getSrcPort()).getHwAddr())
-				.build();
-		sw.write(portMod);
-		/* Set up */
-		portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid1_to_dpid2b.getSrcPort())
-				.setConfig(0)
-				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid1_to_dpid2b.getSrcPort()).getHwAddr())
-				.build();
-		sw.write(portMod);
-		
-		sw = switchService.getSwitch(dpid3);
-		/* Set down */
-		portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid2a_to_dpid3.getDstPort())
-				.setConfig(portDown(sw))
-				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid2a_to_dpid3.getDstPort()).getHwAddr())
-				.build();
-		sw.write(portMod);
-		/* Set up */
-		portMod = sw.getOFFactory().buildPortMod()
-				.setPortNo(link_dpid2b_to_dpid3.getDstPort())
-				.setConfig(0)
-				.setMask(portDown(sw))
-				.setHwAddr(sw.getPort(link_dpid2b_to_dpid3.getDstPort()).getHwAddr())
-				.build();
-		sw.write(portMod);
-		
-		log.info("Took down ports on path sw1--sw2a--sw3 and brought up ports on sw1--sw2b--sw3");
+		boolean confirmed = switchPath(job, link_dpid1_to_dpid2a.getSrcPort(), link_dpid2a_to_dpid3.getDstPort(),
+				link_dpid1_to_dpid2b.getSrcPort(), link_dpid2b_to_dpid3.getDstPort());
+		if (confirmed) {
+			log.info("Took down ports on path sw1--sw2b--sw3 and brought up ports on sw1--sw2a--sw3");
+		} else {
+			log.warn("Sent switchover from path sw1--sw2b--sw3 to sw1--sw2a--sw3, but it was not confirmed");
+		}
+		return confirmed;
+	}
+
+	private boolean usePathB(ToggleJob job) {
+		/*
+		 * Take down path A ports at sw1 and sw3 and bring up path B ports
+		 */
+		boolean confirmed = switchPath(job, link_dpid1_to_dpid2b.getSrcPort(), link_dpid2b_to_dpid3.getDstPort(),
+				link_dpid1_to_dpid2a.getSrcPort(), link_dpid2a_to_dpid3.getDstPort());
+		if (confirmed) {
+			log.info("Took down ports on path sw1--sw2a--sw3 and brought up ports on sw1--sw2b--sw3");
+		} else {
+			log.warn("Sent switchover from path sw1--sw2a--sw3 to sw1--sw2b--sw3, but it was not confirmed");
+		}
+		return confirmed;
 	}
 }
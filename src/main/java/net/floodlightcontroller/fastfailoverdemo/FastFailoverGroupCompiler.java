@@ -0,0 +1,496 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.projectfloodlight.openflow.protocol.OFBucket;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
+import org.projectfloodlight.openflow.protocol.OFGroupAdd;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.PortChangeType;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.SingletonTask;
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceListener;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.topology.ITopologyListener;
+import net.floodlightcontroller.topology.ITopologyService;
+import net.floodlightcontroller.util.FlowModUtils;
+
+/**
+ * A general form of the FastFailoverDemo. Rather than hard-coding a four
+ * switch diamond, this module watches the topology and, for every switch and
+ * every other switch in the fabric, programs a fast-failover (FF) group whose
+ * first bucket follows the shortest path and whose second bucket follows a
+ * loop-free alternate link (see FailoverPathComputer). Unicast flows matching
+ * the MAC address of each known host then point at the group for the switch
+ * that host is attached to.
+ *
+ * When a watched port goes down, the switch moves to the backup bucket on its
+ * own, so there is no controller round-trip on the failover path. The controller
+ * only gets involved afterwards, when the topology change causes the groups to be
+ * recompiled against the new set of links.
+ *
+ * Switches that do not support groups (OF1.0) get flows out the primary port
+ * instead, along with backup flows that are built ahead of time and pushed by
+ * the FastRerouteTable as soon as the switch reports the primary port down.
+ *
+ * Changes are pushed through an OFTableReconciler, so only the groups and
+ * flows that actually differ are touched on a recompile. This module uses a
+ * different cookie and group range than FastFailoverDemo, but as both install
+ * high priority flows for the same hosts, only one of them should be listed
+ * in floodlight.modules.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class FastFailoverGroupCompiler implements IFloodlightModule, IOFSwitchListener, ITopologyListener, IDeviceListener {
+	private static final Logger log = LoggerFactory.getLogger(FastFailoverGroupCompiler.class);
+
+	private IOFSwitchService switchService;
+	private ILinkDiscoveryService linkDiscoveryService;
+	private ITopologyService topologyService;
+	private IDeviceService deviceService;
+	private IThreadPoolService threadPoolService;
+
+	/*
+	 * Distinct from the FastFailoverDemo cookie so that the two sets
+	 * of flows can be told apart on a switch.
+	 */
+	protected static final U64 cookie = U64.ofRaw(0x11223355);
+
+	/*
+	 * Group IDs are allocated per destination switch and are the same on all
+	 * switches. Start well above the single group used by FastFailoverDemo.
+	 */
+	protected static final int GROUP_ID_BASE = 0x1000;
+	protected static final int GROUP_ID_LAST = 0x0fffffff;
+
+	/*
+	 * Topology and device events tend to arrive in bursts. Wait a little
+	 * so that we compile once per burst instead of once per event.
+	 */
+	protected static final int COMPILE_DELAY_MS = 200;
+
+	/*
+	 * How long to wait for switches to tell us what they have installed.
+	 */
+	protected static final int SEED_TIMEOUT_MS = 5000;
+
+	private final OFTableReconciler reconciler = new OFTableReconciler(cookie, GROUP_ID_BASE, GROUP_ID_LAST);
+	private final FastRerouteTable fastReroute = new FastRerouteTable(reconciler);
+
+	private SingletonTask compileTask;
+
+	/*
+	 * The following are only accessed from within compileTask, which
+	 * is guaranteed to never run concurrently with itself.
+	 */
+	private final Map<DatapathId, OFGroup> groupIds = new HashMap<DatapathId, OFGroup>();
+	private int nextGroupId = GROUP_ID_BASE;
+	private final Map<DatapathId, SwitchProgram> installed = new HashMap<DatapathId, SwitchProgram>();
+
+	/*
+	 * Switches that disconnected since the last compile. Their programs
+	 * are forgotten so that they are checked against the switch again.
+	 */
+	private final Set<DatapathId> disconnected = Collections.newSetFromMap(new ConcurrentHashMap<DatapathId, Boolean>());
+
+	/**
+	 * Everything we need to know to generate the groups and flows for a
+	 * single switch. Two equal programs produce identical OpenFlow state, so
+	 * we only touch a switch when its program changes.
+	 */
+	protected static class SwitchProgram {
+		final Map<DatapathId, FailoverNextHop> hops;
+		final Map<MacAddress, SwitchPort> hosts;
+
+		SwitchProgram(Map<DatapathId, FailoverNextHop> hops, Map<MacAddress, SwitchPort> hosts) {
+			this.hops = hops;
+			this.hosts = hosts;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * hops.hashCode() + hosts.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			SwitchProgram other = (SwitchProgram) obj;
+			return hops.equals(other.hops) && hosts.equals(other.hosts);
+		}
+	}
+
+	@Override
+	public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+		return null;
+	}
+
+	@Override
+	public Map<Class<? extends IFloodlightService>, IFloodlightService> getServiceImpls() {
+		return null;
+	}
+
+	@Override
+	public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+		Collection<Class<? extends IFloodlightService>> deps = new ArrayList<Class<? extends IFloodlightService>>();
+		deps.add(IOFSwitchService.class);
+		deps.add(ILinkDiscoveryService.class);
+		deps.add(ITopologyService.class);
+		deps.add(IDeviceService.class);
+		deps.add(IThreadPoolService.class);
+		return deps;
+	}
+
+	@Override
+	public void init(FloodlightModuleContext context)
+			throws FloodlightModuleException {
+		switchService = context.getServiceImpl(IOFSwitchService.class);
+		linkDiscoveryService = context.getServiceImpl(ILinkDiscoveryService.class);
+		topologyService = context.getServiceImpl(ITopologyService.class);
+		deviceService = context.getServiceImpl(IDeviceService.class);
+		threadPoolService = context.getServiceImpl(IThreadPoolService.class);
+	}
+
+	@Override
+	public void startUp(FloodlightModuleContext context)
+			throws FloodlightModuleException {
+		compileTask = new SingletonTask(threadPoolService.getScheduledExecutor(), new Runnable() {
+			@Override
+			public void run() {
+				compile();
+			}
+		});
+		switchService.addOFSwitchListener(this);
+		topologyService.addListener(this);
+		deviceService.addListener(this);
+		log.info("Fast failover group compiler has successfully started.");
+	}
+
+	private void scheduleCompile() {
+		compileTask.reschedule(COMPILE_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	private OFGroup getGroupId(DatapathId dst) {
+		OFGroup group = groupIds.get(dst);
+		if (group == null) {
+			group = OFGroup.of(nextGroupId++);
+			groupIds.put(dst, group);
+		}
+		return group;
+	}
+
+	/**
+	 * Recompute next hops for the whole fabric and push the
+	 * groups and flows of each switch whose program changed.
+	 */
+	protected void compile() {
+		Iterator<DatapathId> itr = disconnected.iterator();
+		while (itr.hasNext()) {
+			installed.remove(itr.next());
+			itr.remove();
+		}
+
+		Set<Link> links = linkDiscoveryService.getLinks().keySet();
+		Map<DatapathId, Map<DatapathId, FailoverNextHop>> allHops = new FailoverPathComputer(links).compute();
+
+		/*
+		 * Learn where each host is attached. A host with more than one
+		 * attachment point is in the middle of a move; use the first.
+		 */
+		Map<MacAddress, SwitchPort> hosts = new HashMap<MacAddress, SwitchPort>();
+		for (IDevice device : deviceService.getAllDevices()) {
+			SwitchPort[] aps = device.getAttachmentPoints();
+			if (aps != null && aps.length > 0) {
+				hosts.put(device.getMACAddress(), aps[0]);
+			}
+		}
+
+		Map<IOFSwitch, SwitchProgram> changed = new HashMap<IOFSwitch, SwitchProgram>();
+		for (DatapathId dpid : switchService.getAllSwitchDpids()) {
+			IOFSwitch sw = switchService.getActiveSwitch(dpid);
+			if (sw == null) {
+				continue;
+			}
+			Map<DatapathId, FailoverNextHop> hops = allHops.get(dpid);
+			if (hops == null) {
+				hops = Collections.emptyMap();
+			}
+			Map<MacAddress, SwitchPort> reachable = new HashMap<MacAddress, SwitchPort>();
+			for (Map.Entry<MacAddress, SwitchPort> e : hosts.entrySet()) {
+				DatapathId hostSw = e.getValue().getSwitchDPID();
+				if (hostSw.equals(dpid) || hops.containsKey(hostSw)) {
+					reachable.put(e.getKey(), e.getValue());
+				}
+			}
+
+			SwitchProgram program = new SwitchProgram(hops, reachable);
+			if (!program.equals(installed.get(dpid))) {
+				changed.put(sw, program);
+			}
+		}
+
+		/*
+		 * Find out what switches we know nothing about have installed. Ask
+		 * all of them at once so that we wait at most SEED_TIMEOUT_MS total.
+		 */
+		List<ListenableFuture<List<Object>>> seeds = new ArrayList<ListenableFuture<List<Object>>>();
+		for (IOFSwitch sw : changed.keySet()) {
+			if (!reconciler.isKnown(sw.getId())) {
+				seeds.add(reconciler.seed(sw));
+			}
+		}
+		if (!seeds.isEmpty()) {
+			try {
+				Futures.successfulAsList(seeds).get(SEED_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException | ExecutionException | TimeoutException e) {
+				log.warn("Not all switches reported their flows and groups. Those that did not will be reprogrammed in full.");
+			}
+		}
+
+		for (Map.Entry<IOFSwitch, SwitchProgram> e : changed.entrySet()) {
+			install(e.getKey(), e.getValue());
+			installed.put(e.getKey().getId(), e.getValue());
+		}
+	}
+
+	private void install(IOFSwitch sw, SwitchProgram program) {
+		OFFactory factory = sw.getOFFactory();
+		List<OFGroupAdd> groups = new ArrayList<OFGroupAdd>(program.hops.size());
+		List<OFFlowAdd> flows = new ArrayList<OFFlowAdd>(program.hosts.size());
+
+		/*
+		 * One FF group per destination switch. Switches without group support
+		 * (e.g. OF1.0) forward on the primary port directly, and get protected
+		 * by the controller instead, with backup flows that are built here and
+		 * pushed as soon as the primary port goes down.
+		 */
+		boolean useGroups = factory.getVersion().compareTo(OFVersion.OF_11) >= 0;
+		Map<OFPort, List<OFMessage>> backupFlows = new HashMap<OFPort, List<OFMessage>>();
+		for (FailoverNextHop hop : program.hops.values()) {
+			if (!hop.isProtected()) {
+				log.warn("No loop-free backup from {} to {}. Traffic will not be protected.",
+						sw.getId().toString(), hop.getDestination().toString());
+			}
+			if (!useGroups) {
+				continue;
+			}
+			List<OFBucket> buckets = new ArrayList<OFBucket>(2);
+			buckets.add(buildBucket(factory, hop.getPrimary().getSrcPort()));
+			if (hop.isProtected()) {
+				buckets.add(buildBucket(factory, hop.getBackup().getSrcPort()));
+			}
+			groups.add(factory.buildGroupAdd()
+					.setGroup(getGroupId(hop.getDestination()))
+					.setGroupType(OFGroupType.FF)
+					.setBuckets(buckets)
+					.build());
+		}
+
+		/* One flow per host, either to the local port or to the group towards the host's switch */
+		for (Map.Entry<MacAddress, SwitchPort> e : program.hosts.entrySet()) {
+			OFAction action;
+			FailoverNextHop hop = program.hops.get(e.getValue().getSwitchDPID());
+			if (hop == null) {
+				action = factory.actions().buildOutput()
+						.setMaxLen(0xffff)
+						.setPort(e.getValue().getPort())
+						.build();
+			} else if (useGroups) {
+				action = factory.actions().buildGroup()
+						.setGroup(getGroupId(e.getValue().getSwitchDPID()))
+						.build();
+			} else {
+				action = factory.actions().buildOutput()
+						.setMaxLen(0xffff)
+						.setPort(hop.getPrimary().getSrcPort())
+						.build();
+			}
+			OFFlowAdd flowAdd = factory.buildFlowAdd()
+					.setCookie(cookie)
+					.setHardTimeout(0)
+					.setIdleTimeout(0)
+					.setPriority(FlowModUtils.PRIORITY_HIGH)
+					.setMatch(factory.buildMatch()
+							.setExact(MatchField.ETH_DST, e.getKey())
+							.build())
+					.setActions(Collections.singletonList(action))
+					.build();
+			flows.add(flowAdd);
+
+			if (!useGroups && hop != null && hop.isProtected()) {
+				List<OFMessage> l = backupFlows.get(hop.getPrimary().getSrcPort());
+				if (l == null) {
+					l = new ArrayList<OFMessage>();
+					backupFlows.put(hop.getPrimary().getSrcPort(), l);
+				}
+				l.add(FlowModUtils.toFlowModifyStrict(flowAdd.createBuilder()
+						.setActions(Collections.singletonList((OFAction) factory.actions().buildOutput()
+								.setMaxLen(0xffff)
+								.setPort(hop.getBackup().getSrcPort())
+								.build()))
+						.build()));
+			}
+		}
+
+		fastReroute.clear(sw.getId());
+		for (Map.Entry<OFPort, List<OFMessage>> e : backupFlows.entrySet()) {
+			fastReroute.protect(sw.getId(), e.getKey(), e.getValue());
+		}
+
+		/*
+		 * Only what changed since the last compile is sent, so flows
+		 * and groups that are still valid keep forwarding throughout.
+		 */
+		int sent = reconciler.reconcile(sw, groups, flows);
+		log.info("Programmed {} fast-failover groups and {} flows on switch {} using {} messages",
+				new Object[] { groups.size(), flows.size(), sw.getId().toString(), sent });
+	}
+
+	private static OFBucket buildBucket(OFFactory factory, OFPort port) {
+		return factory.buildBucket()
+				.setWatchPort(port)
+				.setWatchGroup(OFGroup.ZERO)
+				.setActions(Collections.singletonList((OFAction) factory.actions().buildOutput()
+						.setMaxLen(0xffff)
+						.setPort(port)
+						.build()))
+				.build();
+	}
+
+	/*
+	 * ITopologyListener
+	 */
+
+	@Override
+	public void topologyChanged(List<LDUpdate> linkUpdates) {
+		scheduleCompile();
+	}
+
+	/*
+	 * IOFSwitchListener
+	 */
+
+	@Override
+	public void switchAdded(DatapathId switchId) {
+	}
+
+	@Override
+	public void switchRemoved(DatapathId switchId) {
+		/*
+		 * Make sure we push everything again when the switch
+		 * reconnects, since its tables may have been cleared.
+		 */
+		disconnected.add(switchId);
+		reconciler.forget(switchId);
+		fastReroute.clear(switchId);
+		scheduleCompile();
+	}
+
+	@Override
+	public void switchActivated(DatapathId switchId) {
+		scheduleCompile();
+	}
+
+	@Override
+	public void switchPortChanged(DatapathId switchId, OFPortDesc port,
+			PortChangeType type) {
+		/*
+		 * The FF groups already handle the port going down. For switches
+		 * without groups, push the backup flows we have ready. Either way,
+		 * we'll pick up the new topology via topologyChanged().
+		 */
+		if (type == PortChangeType.DOWN) {
+			fastReroute.onPortDown(switchService.getActiveSwitch(switchId), port.getPortNo());
+		}
+	}
+
+	@Override
+	public void switchChanged(DatapathId switchId) {
+	}
+
+	/*
+	 * IDeviceListener
+	 */
+
+	@Override
+	public String getName() {
+		return "fastfailovergroupcompiler";
+	}
+
+	@Override
+	public boolean isCallbackOrderingPrereq(String type, String name) {
+		return false;
+	}
+
+	@Override
+	public boolean isCallbackOrderingPostreq(String type, String name) {
+		return false;
+	}
+
+	@Override
+	public void deviceAdded(IDevice device) {
+		scheduleCompile();
+	}
+
+	@Override
+	public void deviceRemoved(IDevice device) {
+		scheduleCompile();
+	}
+
+	@Override
+	public void deviceMoved(IDevice device) {
+		scheduleCompile();
+	}
+
+	@Override
+	public void deviceIPV4AddrChanged(IDevice device) {
+	}
+
+	@Override
+	public void deviceVlanChanged(IDevice device) {
+	}
+}
@@ -0,0 +1,111 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.topology.NodePortTuple;
+
+/**
+ * Controller-assisted fast reroute for switches that do not support
+ * fast-failover groups (e.g. OpenFlow 1.0 switches).
+ *
+ * For every protected port, the flow-mods that move traffic off of that port
+ * are computed and built ahead of time. When the switch reports the port down,
+ * the ready-made messages are written out as-is in a single burst. There is no
+ * path computation or message construction between the port status and the
+ * write, so recovery costs one lookup and one write per affected switch.
+ *
+ * The backup flows replace flows the given OFTableReconciler installed, so
+ * the reconciler's copy of the switch is dropped when they are sent. The
+ * next reconcile of the switch then puts the primary flows back, instead of
+ * assuming they are still there and sending nothing.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class FastRerouteTable {
+	private static final Logger log = LoggerFactory.getLogger(FastRerouteTable.class);
+
+	private final Map<NodePortTuple, List<OFMessage>> backups = new ConcurrentHashMap<NodePortTuple, List<OFMessage>>();
+	private final OFTableReconciler reconciler;
+
+	/**
+	 * @param reconciler, the reconciler of the flows the backup flows replace
+	 */
+	public FastRerouteTable(OFTableReconciler reconciler) {
+		this.reconciler = reconciler;
+	}
+
+	/**
+	 * Set the messages to send to a switch when one of its ports goes down.
+	 * This replaces any messages previously set for the port.
+	 * @param sw, the switch with the protected port
+	 * @param port, the port to protect
+	 * @param backupFlows, the (already built) flow-mods that move traffic off of the port
+	 */
+	public void protect(DatapathId sw, OFPort port, List<? extends OFMessage> backupFlows) {
+		if (backupFlows == null || backupFlows.isEmpty()) {
+			backups.remove(new NodePortTuple(sw, port));
+		} else {
+			backups.put(new NodePortTuple(sw, port), ImmutableList.<OFMessage>copyOf(backupFlows));
+		}
+	}
+
+	/**
+	 * @param sw
+	 * @param port
+	 * @return true if there are backup flows ready for the port
+	 */
+	public boolean isProtected(DatapathId sw, OFPort port) {
+		return backups.containsKey(new NodePortTuple(sw, port));
+	}
+
+	/**
+	 * Remove all protection of a switch, e.g. when it disconnects
+	 * or when its primary flows are recomputed.
+	 * @param sw
+	 */
+	public void clear(DatapathId sw) {
+		Iterator<NodePortTuple> itr = backups.keySet().iterator();
+		while (itr.hasNext()) {
+			if (itr.next().getNodeId().equals(sw)) {
+				itr.remove();
+			}
+		}
+	}
+
+	/**
+	 * Call upon a link-down of the given port. Sends the backup flows of
+	 * the port, if any, to the switch right away, and makes the reconciler
+	 * forget what it knew about the switch.
+	 * @param sw
+	 * @param port
+	 * @return the number of messages sent
+	 */
+	public int onPortDown(IOFSwitch sw, OFPort port) {
+		if (sw == null) {
+			return 0;
+		}
+		List<OFMessage> msgs = backups.get(new NodePortTuple(sw.getId(), port));
+		if (msgs == null) {
+			return 0;
+		}
+		sw.write(msgs);
+		sw.flush();
+		reconciler.forget(sw.getId());
+		log.info("Port {} on switch {} went down. Sent {} backup flows.",
+				new Object[] { port.toString(), sw.getId().toString(), msgs.size() });
+		return msgs.size();
+	}
+}
@@ -1,6 +1,7 @@
 package net.floodlightcontroller.fastfailoverdemo;
 
-import java.util.Map;
+import java.util.List;
+
 import net.floodlightcontroller.core.module.IFloodlightService;
 
 /**
@@ -13,12 +14,29 @@ import net.floodlightcontroller.core.module.IFloodlightService;
  * functions exposed through our interface that extends IFloodlightService.
  * 
  * The FastFailoverDemo class implements this service. So, the
- * handleToggleRequest() function there can be called from our URI handler,
+ * toggle() function there can be called from our URI handler,
  * TogglePathResource in the web package.
  * 
  * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
  *
  */
 public interface IFastFailoverDemoService extends IFloodlightService {
-	Map<String, String> handleToggleRequest(String json);
+	/**
+	 * Request a path toggle. This returns right away; the toggle
+	 * is carried out in the background.
+	 * @param json, the payload of the HTTP request (ignored)
+	 * @return the job that will carry out the toggle
+	 */
+	ToggleJob toggle(String json);
+
+	/**
+	 * @param id
+	 * @return the toggle job with the given ID, or null if it is unknown or has been forgotten
+	 */
+	ToggleJob getToggleJob(long id);
+
+	/**
+	 * @return the recent toggle jobs, oldest first
+	 */
+	List<ToggleJob> getToggleJobs();
 }
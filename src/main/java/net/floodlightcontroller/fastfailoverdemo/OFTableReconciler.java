@@ -0,0 +1,372 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
+import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupAdd;
+import org.projectfloodlight.openflow.protocol.OFGroupDescStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFGroupDescStatsReply;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.util.FlowModUtils;
+import net.floodlightcontroller.util.MatchUtils;
+
+/**
+ * Keeps a per-switch copy of the flows (identified by a cookie) and the
+ * groups (identified by a range of group IDs) that a module has installed,
+ * and brings a switch to a desired state by sending only what differs:
+ * adds for new entries, modifies for changed entries and deletes for entries
+ * that are no longer wanted. Entries that did not change are not touched, so
+ * traffic using them is not interrupted.
+ *
+ * The copy of a switch is seeded by asking the switch for its flow and group
+ * descriptions (see seed()). If that is not possible, e.g. the switch did not
+ * answer in time, we fall back to clearing our flows and groups and adding
+ * everything again.
+ *
+ * Entries are compared as the switch reports them, so desired flows and groups
+ * must be built with wire-exact values. In particular, output actions must use
+ * a maxLen of 0xffff (OFPCML_NO_BUFFER), since maxLen is a u16 on the wire and
+ * anything wider comes back truncated and never matches.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class OFTableReconciler {
+	private static final Logger log = LoggerFactory.getLogger(OFTableReconciler.class);
+
+	private final U64 cookie;
+	private final int firstGroup;
+	private final int lastGroup;
+
+	/*
+	 * What we believe each switch has installed. A switch that is not
+	 * in here has an unknown state and must be seeded or cleared.
+	 */
+	private final Map<DatapathId, SwitchTables> tables = new ConcurrentHashMap<DatapathId, SwitchTables>();
+	private final Map<DatapathId, Seed> seeds = new ConcurrentHashMap<DatapathId, Seed>();
+
+	/**
+	 * Identifies a flow the same way the switch does for a strict modify or delete.
+	 * Matches are compared in their normalized form, since a switch may report an
+	 * equivalent match that is not equal to the one we sent.
+	 */
+	protected static class FlowKey {
+		final TableId table;
+		final int priority;
+		final Match match;
+		final Match normalized;
+
+		FlowKey(TableId table, int priority, Match match) {
+			this.table = table;
+			this.priority = priority;
+			this.match = match;
+			this.normalized = MatchUtils.normalize(match);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new Object[] { table, priority, normalized });
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			FlowKey other = (FlowKey) obj;
+			return priority == other.priority && table.equals(other.table) && normalized.equals(other.normalized);
+		}
+	}
+
+	/**
+	 * What we have installed on a single switch. Flows are stored
+	 * as their cookie and actions (or instructions), and groups as
+	 * their type and buckets.
+	 */
+	protected static class SwitchTables {
+		final Map<FlowKey, List<Object>> flows = new HashMap<FlowKey, List<Object>>();
+		final Map<OFGroup, List<Object>> groups = new HashMap<OFGroup, List<Object>>();
+	}
+
+	private static class Seed {
+		final ListenableFuture<List<OFFlowStatsReply>> flows;
+		final ListenableFuture<List<OFGroupDescStatsReply>> groups;
+
+		Seed(ListenableFuture<List<OFFlowStatsReply>> flows, ListenableFuture<List<OFGroupDescStatsReply>> groups) {
+			this.flows = flows;
+			this.groups = groups;
+		}
+	}
+
+	/**
+	 * @param cookie, the cookie of all flows we own
+	 * @param firstGroup, the lowest group ID we own
+	 * @param lastGroup, the highest group ID we own
+	 */
+	public OFTableReconciler(U64 cookie, int firstGroup, int lastGroup) {
+		this.cookie = cookie;
+		this.firstGroup = firstGroup;
+		this.lastGroup = lastGroup;
+	}
+
+	private boolean ownsGroup(OFGroup group) {
+		return group.getGroupNumber() >= firstGroup && group.getGroupNumber() <= lastGroup;
+	}
+
+	private static TableId tableOf(OFVersion version, TableId table) {
+		/* OF1.0 flow-mods don't carry a table */
+		return version.compareTo(OFVersion.OF_10) == 0 ? TableId.ALL : table;
+	}
+
+	private static FlowKey keyOf(OFFlowMod fm) {
+		/* Don't ask an OF1.0 flow-mod for its table; it'll throw */
+		TableId table = fm.getVersion().compareTo(OFVersion.OF_10) == 0 ? TableId.ALL : fm.getTableId();
+		return new FlowKey(table, fm.getPriority(), fm.getMatch());
+	}
+
+	private static FlowKey keyOf(OFFlowStatsEntry e) {
+		return new FlowKey(tableOf(e.getVersion(), e.getTableId()), e.getPriority(), e.getMatch());
+	}
+
+	private static List<Object> valueOf(OFFlowMod fm) {
+		return Arrays.<Object>asList(fm.getCookie(),
+				fm.getVersion().compareTo(OFVersion.OF_10) == 0 ? fm.getActions() : fm.getInstructions());
+	}
+
+	private static List<Object> valueOf(OFFlowStatsEntry e) {
+		return Arrays.<Object>asList(e.getCookie(),
+				e.getVersion().compareTo(OFVersion.OF_10) == 0 ? e.getActions() : e.getInstructions());
+	}
+
+	private static List<Object> valueOf(OFGroupType type, List<?> buckets) {
+		return Arrays.<Object>asList(type, buckets);
+	}
+
+	/**
+	 * @param dpid
+	 * @return true if we know what is installed on the switch
+	 */
+	public boolean isKnown(DatapathId dpid) {
+		return tables.containsKey(dpid);
+	}
+
+	/**
+	 * Forget what we know about a switch, e.g. when it disconnects.
+	 * @param dpid
+	 */
+	public void forget(DatapathId dpid) {
+		tables.remove(dpid);
+		seeds.remove(dpid);
+	}
+
+	/**
+	 * Ask the switch what it has installed. This does not block. The replies
+	 * are consumed by the next reconcile() of the switch once they have arrived.
+	 * @param sw
+	 * @return a future that is done once all replies are in
+	 */
+	public ListenableFuture<List<Object>> seed(IOFSwitch sw) {
+		OFFactory factory = sw.getOFFactory();
+		OFFlowStatsRequest.Builder b = factory.buildFlowStatsRequest()
+				.setMatch(factory.buildMatch().build())
+				.setOutPort(OFPort.ANY)
+				.setTableId(TableId.ALL);
+		ListenableFuture<List<OFGroupDescStatsReply>> groups = null;
+		if (factory.getVersion().compareTo(OFVersion.OF_10) > 0) {
+			b.setCookie(cookie)
+			.setCookieMask(U64.NO_MASK)
+			.setOutGroup(OFGroup.ANY);
+			groups = sw.writeStatsRequest(factory.buildGroupDescStatsRequest().build());
+		}
+		ListenableFuture<List<OFFlowStatsReply>> flows = sw.writeStatsRequest(b.build());
+
+		tables.remove(sw.getId());
+		seeds.put(sw.getId(), new Seed(flows, groups));
+
+		List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>(2);
+		futures.add(flows);
+		if (groups != null) {
+			futures.add(groups);
+		}
+		return Futures.<Object>successfulAsList(futures);
+	}
+
+	/**
+	 * Turn seed replies that have arrived into a SwitchTables.
+	 * @return null if the replies are incomplete
+	 */
+	private SwitchTables fromSeed(Seed seed) {
+		if (seed == null || !seed.flows.isDone() || (seed.groups != null && !seed.groups.isDone())) {
+			return null;
+		}
+		SwitchTables t = new SwitchTables();
+		try {
+			for (OFFlowStatsReply reply : seed.flows.get()) {
+				for (OFFlowStatsEntry e : reply.getEntries()) {
+					if (e.getCookie().equals(cookie)) { /* OF1.0 can't filter by cookie */
+						t.flows.put(keyOf(e), valueOf(e));
+					}
+				}
+			}
+			if (seed.groups != null) {
+				for (OFGroupDescStatsReply reply : seed.groups.get()) {
+					for (OFGroupDescStatsEntry e : reply.getEntries()) {
+						if (ownsGroup(e.getGroup())) {
+							t.groups.put(e.getGroup(), valueOf(e.getGroupType(), e.getBuckets()));
+						}
+					}
+				}
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			log.warn("Could not read installed flows and groups: {}", e.getMessage());
+			return null;
+		}
+		return t;
+	}
+
+	/**
+	 * Bring the switch to the desired state, sending only the differences
+	 * if we know the current state of the switch. Groups are added before
+	 * the flows that might point at them, with a barrier in between, and
+	 * removed after the flows that might have pointed at them.
+	 *
+	 * @param sw
+	 * @param desiredGroups, all groups the switch should have, each in our group range
+	 * @param desiredFlows, all flows the switch should have, each with our cookie
+	 * @return the number of messages written to the switch
+	 */
+	public int reconcile(IOFSwitch sw, Collection<OFGroupAdd> desiredGroups, Collection<OFFlowAdd> desiredFlows) {
+		OFFactory factory = sw.getOFFactory();
+		SwitchTables current = tables.get(sw.getId());
+		if (current == null) {
+			current = fromSeed(seeds.remove(sw.getId()));
+		}
+
+		List<OFMessage> msgs = new ArrayList<OFMessage>();
+		List<OFMessage> deletes = new ArrayList<OFMessage>();
+		SwitchTables next = new SwitchTables();
+
+		if (current == null) {
+			/*
+			 * We don't know what the switch has, so start over. The barrier
+			 * makes sure the deletes are done before the adds are processed.
+			 */
+			log.info("State of switch {} unknown. Replacing all flows and groups.", sw.getId().toString());
+			current = new SwitchTables();
+			/*
+			 * OF1.0 can't delete by cookie, and deleting everything would take
+			 * other modules' flows with it. There, an add replaces a flow with
+			 * the same match and priority, so only flows we no longer want stay.
+			 */
+			if (factory.getVersion().compareTo(OFVersion.OF_10) > 0) {
+				msgs.add(factory.buildFlowDelete()
+						.setCookie(cookie)
+						.setCookieMask(U64.NO_MASK)
+						.build());
+				for (OFGroupAdd g : desiredGroups) {
+					msgs.add(factory.buildGroupDelete()
+							.setGroup(g.getGroup())
+							.setGroupType(g.getGroupType())
+							.build());
+				}
+				msgs.add(factory.buildBarrierRequest().build());
+			}
+		}
+
+		boolean groupsAdded = false;
+		for (OFGroupAdd g : desiredGroups) {
+			List<Object> value = valueOf(g.getGroupType(), g.getBuckets());
+			List<Object> old = current.groups.get(g.getGroup());
+			if (old == null) {
+				msgs.add(g);
+				groupsAdded = true;
+			} else if (!old.equals(value)) {
+				msgs.add(factory.buildGroupModify()
+						.setGroup(g.getGroup())
+						.setGroupType(g.getGroupType())
+						.setBuckets(g.getBuckets())
+						.build());
+			}
+			next.groups.put(g.getGroup(), value);
+		}
+
+		/* A flow pointing at a group the switch doesn't have yet is rejected */
+		if (groupsAdded && !desiredFlows.isEmpty()) {
+			msgs.add(factory.buildBarrierRequest().build());
+		}
+
+		for (OFFlowAdd f : desiredFlows) {
+			FlowKey key = keyOf(f);
+			List<Object> value = valueOf(f);
+			List<Object> old = current.flows.get(key);
+			if (old == null) {
+				msgs.add(f);
+			} else if (!old.equals(value)) {
+				msgs.add(FlowModUtils.toFlowModifyStrict(f));
+			}
+			next.flows.put(key, value);
+		}
+
+		for (Entry<FlowKey, List<Object>> e : current.flows.entrySet()) {
+			if (!next.flows.containsKey(e.getKey())) {
+				OFFlowDeleteStrict.Builder b = factory.buildFlowDeleteStrict()
+						.setPriority(e.getKey().priority)
+						.setMatch(e.getKey().match)
+						.setOutPort(OFPort.ANY);
+				if (factory.getVersion().compareTo(OFVersion.OF_10) > 0) {
+					b.setTableId(e.getKey().table)
+					.setCookie(cookie)
+					.setCookieMask(U64.NO_MASK)
+					.setOutGroup(OFGroup.ANY);
+				}
+				deletes.add(b.build());
+			}
+		}
+		for (Entry<OFGroup, List<Object>> e : current.groups.entrySet()) {
+			if (!next.groups.containsKey(e.getKey())) {
+				deletes.add(factory.buildGroupDelete()
+						.setGroup(e.getKey())
+						.setGroupType((OFGroupType) e.getValue().get(0))
+						.build());
+			}
+		}
+		msgs.addAll(deletes);
+
+		if (!msgs.isEmpty()) {
+			sw.write(msgs);
+		}
+		tables.put(sw.getId(), next);
+		log.debug("Reconciled switch {} with {} messages", sw.getId().toString(), msgs.size());
+		return msgs.size();
+	}
+}
@@ -0,0 +1,164 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlMsg;
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlType;
+import org.projectfloodlight.openflow.protocol.OFBundleFlags;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.BundleId;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+/**
+ * Groups the messages (typically port-mods and flow-mods) that make up a path
+ * switchover by switch and sends each switch's share as a single unit.
+ *
+ * Switches that speak OpenFlow 1.4 or later receive an atomic, ordered bundle
+ * (open, one add per message, commit), so the switch applies either all or none
+ * of the changes and there is no window in which the old path is down but the
+ * new one is not yet up. Such a switch has applied its share once it answers the
+ * commit with a commit reply; if it rejects the bundle, it answers with an error.
+ * Older switches receive the messages as-is, followed by a barrier, and have
+ * processed their share once they answer the barrier. The future returned by
+ * commit() completes when every switch has confirmed its share this way.
+ *
+ * Atomicity is per switch. Changes to different switches are sent at the same
+ * time but are not applied as one transaction.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class SwitchoverTransaction {
+	private static final Logger log = LoggerFactory.getLogger(SwitchoverTransaction.class);
+
+	private static final AtomicInteger nextBundleId = new AtomicInteger(1);
+	private static final Set<OFBundleFlags> bundleFlags = EnumSet.of(OFBundleFlags.ATOMIC, OFBundleFlags.ORDERED);
+
+	/* Insertion order, so switches are sent to in the order they were added */
+	private final Map<IOFSwitch, List<OFMessage>> messages = new LinkedHashMap<IOFSwitch, List<OFMessage>>();
+	private final Map<DatapathId, ListenableFuture<OFMessage>> confirmations = new LinkedHashMap<DatapathId, ListenableFuture<OFMessage>>();
+
+	/* A switch that rejects a bundle commit answers with an error, which fails the future instead */
+	private static final Function<OFBundleCtrlMsg, OFMessage> checkCommitted = new Function<OFBundleCtrlMsg, OFMessage>() {
+		@Override
+		public OFMessage apply(OFBundleCtrlMsg reply) {
+			if (reply.getBundleCtrlType() != OFBundleCtrlType.COMMIT_REPLY) {
+				throw new IllegalStateException("Expected a bundle commit reply but got " + reply.getBundleCtrlType());
+			}
+			return reply;
+		}
+	};
+	private boolean committed = false;
+
+	/**
+	 * Add a message to the share of the given switch. Messages
+	 * to the same switch are applied in the order they are added.
+	 * @param sw
+	 * @param m
+	 * @return this, for chaining
+	 */
+	public SwitchoverTransaction add(IOFSwitch sw, OFMessage m) {
+		if (committed) {
+			throw new IllegalStateException("Transaction has already been committed");
+		}
+		List<OFMessage> l = messages.get(sw);
+		if (l == null) {
+			l = new ArrayList<OFMessage>();
+			messages.put(sw, l);
+		}
+		l.add(m);
+		return this;
+	}
+
+	/**
+	 * @param sw
+	 * @return true if the switch will receive its share as an atomic bundle
+	 */
+	public static boolean supportsBundles(IOFSwitch sw) {
+		return sw.getOFFactory().getVersion().compareTo(OFVersion.OF_14) >= 0;
+	}
+
+	/**
+	 * Send each switch its share of the transaction. This does not block.
+	 * @return a future that completes once all switches have applied
+	 * their share (or fails if any switch rejected it or failed to reply)
+	 */
+	public ListenableFuture<List<OFMessage>> commit() {
+		if (committed) {
+			throw new IllegalStateException("Transaction has already been committed");
+		}
+		committed = true;
+
+		for (Entry<IOFSwitch, List<OFMessage>> e : messages.entrySet()) {
+			IOFSwitch sw = e.getKey();
+			OFFactory factory = sw.getOFFactory();
+			if (supportsBundles(sw)) {
+				BundleId bundleId = BundleId.of(nextBundleId.getAndIncrement());
+				sw.write(openBundle(factory, bundleId, e.getValue()));
+				ListenableFuture<OFBundleCtrlMsg> reply = sw.writeRequest(factory.buildBundleCtrlMsg()
+						.setBundleId(bundleId)
+						.setBundleCtrlType(OFBundleCtrlType.COMMIT_REQUEST)
+						.setFlags(bundleFlags)
+						.build());
+				confirmations.put(sw.getId(), Futures.transform(reply, checkCommitted));
+			} else {
+				sw.write(e.getValue());
+				ListenableFuture<OFBarrierReply> reply = sw.writeRequest(factory.buildBarrierRequest().build());
+				confirmations.put(sw.getId(), Futures.transform(reply, Functions.<OFMessage>identity()));
+			}
+			log.debug("Sent {} changes to switch {} {}", new Object[] { e.getValue().size(), sw.getId().toString(),
+					supportsBundles(sw) ? "in a bundle" : "followed by a barrier" });
+		}
+		return Futures.allAsList(confirmations.values());
+	}
+
+	/**
+	 * @return the confirmation of each switch (a bundle commit reply or a
+	 * barrier reply), in the order the switches were sent to, to follow the
+	 * switches individually; empty until committed
+	 */
+	public Map<DatapathId, ListenableFuture<OFMessage>> getConfirmations() {
+		return Collections.unmodifiableMap(confirmations);
+	}
+
+	/* The open and adds of a bundle; the commit is sent as a request of its own */
+	private static List<OFMessage> openBundle(OFFactory factory, BundleId bundleId, List<OFMessage> msgs) {
+		List<OFMessage> bundle = new ArrayList<OFMessage>(msgs.size() + 1);
+		bundle.add(factory.buildBundleCtrlMsg()
+				.setBundleId(bundleId)
+				.setBundleCtrlType(OFBundleCtrlType.OPEN_REQUEST)
+				.setFlags(bundleFlags)
+				.build());
+		for (OFMessage m : msgs) {
+			/* The bundled message and the bundle add must share an xid */
+			long xid = factory.nextXid();
+			bundle.add(factory.buildBundleAddMsg()
+					.setXid(xid)
+					.setBundleId(bundleId)
+					.setFlags(bundleFlags)
+					.setData(m.createBuilder().setXid(xid).build())
+					.build());
+		}
+		return bundle;
+	}
+}
@@ -0,0 +1,215 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * One run of a path toggle, as seen by REST clients. A job is created
+ * when a toggle is requested and is updated by the worker as it goes. Every
+ * step is recorded as an event with the time since the job started, so that
+ * clients can follow the progress of each switch by polling for the events
+ * after the last one they have seen.
+ *
+ * Requests that arrive while a job is still queued join that job instead of
+ * queueing another toggle behind it.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class ToggleJob {
+	public enum State {
+		QUEUED, RUNNING, SUCCEEDED, FAILED
+	}
+
+	/**
+	 * A step of the job, optionally on a particular switch.
+	 */
+	public static class Event {
+		private final int seq;
+		private final long elapsedMs;
+		private final DatapathId sw;
+		private final String phase;
+		private final String detail;
+
+		Event(int seq, long elapsedMs, DatapathId sw, String phase, String detail) {
+			this.seq = seq;
+			this.elapsedMs = elapsedMs;
+			this.sw = sw;
+			this.phase = phase;
+			this.detail = detail;
+		}
+
+		public int getSeq() {
+			return seq;
+		}
+
+		public long getElapsedMs() {
+			return elapsedMs;
+		}
+
+		public DatapathId getSwitch() {
+			return sw;
+		}
+
+		public String getPhase() {
+			return phase;
+		}
+
+		public String getDetail() {
+			return detail;
+		}
+
+		Map<String, Object> toMap() {
+			Map<String, Object> m = new LinkedHashMap<String, Object>();
+			m.put("seq", seq);
+			m.put("elapsed_ms", elapsedMs);
+			if (sw != null) {
+				m.put("switch", sw.toString());
+			}
+			m.put("phase", phase);
+			if (detail != null) {
+				m.put("detail", detail);
+			}
+			return m;
+		}
+	}
+
+	private final long id;
+	private final long submittedMs = System.currentTimeMillis();
+	private final AtomicInteger requests = new AtomicInteger(1);
+	private final SettableFuture<ToggleJob> done = SettableFuture.create();
+
+	/* All below guarded by this */
+	private State state = State.QUEUED;
+	private long startedNs;
+	private long startedMs;
+	private long durationMs = -1;
+	private String result;
+	private final List<Event> events = new ArrayList<Event>();
+	private final Map<DatapathId, Event> lastBySwitch = new LinkedHashMap<DatapathId, Event>();
+
+	ToggleJob(long id) {
+		this.id = id;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the outcome if the job succeeded, or the reason it failed
+	 */
+	public synchronized String getResult() {
+		return result;
+	}
+
+	/**
+	 * @return the number of toggle requests this job serves
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return a future that completes with this job once it has finished, successfully or not
+	 */
+	public ListenableFuture<ToggleJob> getFuture() {
+		return done;
+	}
+
+	void coalesce() {
+		requests.incrementAndGet();
+	}
+
+	synchronized void start() {
+		state = State.RUNNING;
+		startedNs = System.nanoTime();
+		startedMs = System.currentTimeMillis();
+		progress(null, "started", null);
+	}
+
+	/**
+	 * Record a step of the job.
+	 * @param sw, the switch the step is about, or null for the job as a whole
+	 * @param phase, a short name of the step
+	 * @param detail, optional
+	 */
+	public synchronized void progress(DatapathId sw, String phase, String detail) {
+		long elapsed = state == State.QUEUED ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNs);
+		Event e = new Event(events.size(), elapsed, sw, phase, detail);
+		events.add(e);
+		if (sw != null) {
+			lastBySwitch.put(sw, e);
+		}
+	}
+
+	void succeed(String result) {
+		finish(State.SUCCEEDED, result);
+	}
+
+	void fail(String reason) {
+		finish(State.FAILED, reason);
+	}
+
+	private void finish(State s, String r) {
+		synchronized (this) {
+			state = s;
+			result = r;
+			durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNs);
+			progress(null, s == State.SUCCEEDED ? "succeeded" : "failed", r);
+		}
+		done.set(this);
+	}
+
+	/**
+	 * @param since, only include events with a sequence number of at least this
+	 * @return the job as a map, ready to be serialized to JSON
+	 */
+	public synchronized Map<String, Object> toMap(int since) {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		m.put("job", id);
+		m.put("state", state.toString());
+		m.put("requests", requests.get());
+		m.put("submitted", submittedMs);
+		if (state != State.QUEUED) {
+			m.put("started", startedMs);
+		}
+		if (durationMs >= 0) {
+			m.put("duration_ms", durationMs);
+		}
+		if (result != null) {
+			m.put("result", result);
+		}
+
+		Map<String, Object> switches = new LinkedHashMap<String, Object>();
+		for (Event e : lastBySwitch.values()) {
+			Map<String, Object> s = new HashMap<String, Object>(2);
+			s.put("phase", e.getPhase());
+			s.put("elapsed_ms", e.getElapsedMs());
+			switches.put(e.getSwitch().toString(), s);
+		}
+		m.put("switches", switches);
+
+		List<Map<String, Object>> l = new ArrayList<Map<String, Object>>();
+		for (int i = Math.max(since, 0); i < events.size(); i++) {
+			l.add(events.get(i).toMap());
+		}
+		m.put("events", l);
+		m.put("next", events.size());
+		return m;
+	}
+}
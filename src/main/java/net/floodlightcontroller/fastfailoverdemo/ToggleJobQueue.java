@@ -0,0 +1,136 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs path toggles one at a time on an executor, without tying up the
+ * threads that request them. At most one job runs and at most one waits:
+ * a request that arrives while a job is waiting joins that job, since
+ * running it twice in a row would not get the network anywhere new.
+ * A request that arrives while a job runs starts a new waiting job, so
+ * that it sees the effect of everything that happened before it.
+ *
+ * Finished jobs are kept, up to a limit, so that clients can look them up.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class ToggleJobQueue {
+	private static final Logger log = LoggerFactory.getLogger(ToggleJobQueue.class);
+
+	/**
+	 * Does the actual work of a job. Throw to fail the job.
+	 */
+	public interface Worker {
+		/**
+		 * @return the outcome, to show to clients
+		 */
+		String run(ToggleJob job) throws Exception;
+	}
+
+	private final Executor executor;
+	private final Worker worker;
+
+	/* All below guarded by this */
+	private long nextId = 1;
+	private ToggleJob waiting;
+	private ToggleJob running;
+	private final Map<Long, ToggleJob> jobs;
+
+	/**
+	 * @param executor, to run the jobs on
+	 * @param worker
+	 * @param history, the number of jobs to remember
+	 */
+	public ToggleJobQueue(Executor executor, Worker worker, final int history) {
+		this.executor = executor;
+		this.worker = worker;
+		this.jobs = new LinkedHashMap<Long, ToggleJob>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, ToggleJob> eldest) {
+				return size() > history;
+			}
+		};
+	}
+
+	/**
+	 * Request a toggle. This does not block.
+	 * @return the job that will carry out the request
+	 */
+	public synchronized ToggleJob submit() {
+		if (waiting != null) {
+			waiting.coalesce();
+			return waiting;
+		}
+		ToggleJob job = new ToggleJob(nextId++);
+		jobs.put(job.getId(), job);
+		waiting = job;
+		if (running == null) {
+			startNext();
+		}
+		return job;
+	}
+
+	/**
+	 * @param id
+	 * @return the job, or null if there is no such job (anymore)
+	 */
+	public synchronized ToggleJob get(long id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * @return the remembered jobs, oldest first
+	 */
+	public synchronized List<ToggleJob> getJobs() {
+		return new ArrayList<ToggleJob>(jobs.values());
+	}
+
+	/* Call with the lock held */
+	private void startNext() {
+		final ToggleJob job = waiting;
+		waiting = null;
+		running = job;
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					runJob(job);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			/* The executor has been shut down; don't leave the job pending forever */
+			running = null;
+			job.start();
+			job.fail("Toggles are no longer accepted; the controller is shutting down");
+		}
+	}
+
+	private void runJob(ToggleJob job) {
+		job.start();
+		try {
+			job.succeed(worker.run(job));
+		} catch (Throwable t) {
+			/* Whatever happened, pollers of the job must learn that it's over */
+			log.error("Toggle job " + job.getId() + " failed", t);
+			job.fail(t.getMessage() == null ? t.toString() : t.getMessage());
+		} finally {
+			synchronized (this) {
+				running = null;
+				if (waiting != null) {
+					startNext();
+				}
+			}
+		}
+	}
+}
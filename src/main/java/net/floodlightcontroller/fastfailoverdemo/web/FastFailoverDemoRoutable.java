@@ -14,7 +14,8 @@ import org.restlet.routing.Router;
  * indicate.
  * 
  * For example, we give the TogglePathResource class as the handler
- * for any requests that are for the URI /toggle-path.
+ * for any requests that are for the URI /toggle-path, and for
+ * /toggle-path/{id} to look up the job carrying out a toggle.
  * 
  * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
  *
@@ -30,6 +31,7 @@ public class FastFailoverDemoRoutable implements RestletRoutable {
 		 */
 		Router router = new Router(context);
 		router.attach("/toggle-path", TogglePathResource.class);
+		router.attach("/toggle-path/{id}", TogglePathResource.class);
 		return router;
 	}
 
@@ -1,9 +1,16 @@
 package net.floodlightcontroller.fastfailoverdemo.web;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.floodlightcontroller.fastfailoverdemo.IFastFailoverDemoService;
+import net.floodlightcontroller.fastfailoverdemo.ToggleJob;
 
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
 import org.restlet.resource.Post;
 import org.restlet.resource.Put;
 import org.restlet.resource.ServerResource;
@@ -18,6 +25,10 @@ import org.restlet.resource.ServerResource;
  */
 public class TogglePathResource extends ServerResource {
 	
+	private IFastFailoverDemoService getService() {
+		return (IFastFailoverDemoService) getContext().getAttributes().get(IFastFailoverDemoService.class.getCanonicalName());
+	}
+
 	/**
 	 * This function is pretty simple. If it has been called,
 	 * then the REST API has matched the URI to the one our
@@ -26,15 +37,61 @@ public class TogglePathResource extends ServerResource {
 	 * can have multiple callback functions for different types of
 	 * HTTP requests (e.g. most commonly GET, PUT, POST, and DELETE).
 	 * 
+	 * The toggle is not done when we return. We reply with 202 Accepted
+	 * and the job carrying out the toggle. Poll /toggle-path/{job} to
+	 * follow it.
+	 * 
 	 * @param json, The payload of the HTTP request. In Floodlight,
 	 * we typically use JSON for ease-of-use. Thus, I call the String
 	 * "json."
-	 * @return A JSON-formatted key:value String denoting the status
-	 * of the operation that was performed.
+	 * @return The job as JSON, including its ID and state.
 	 */
 	@Post
 	@Put
-	public Map<String, String> handleRequest(String json) {
-		return ((IFastFailoverDemoService) getContext().getAttributes().get(IFastFailoverDemoService.class.getCanonicalName())).handleToggleRequest(json);
+	public Map<String, Object> handleRequest(String json) {
+		ToggleJob job = getService().toggle(json);
+		setStatus(Status.SUCCESS_ACCEPTED);
+		return job.toMap(0);
+	}
+
+	/**
+	 * With a job ID, return that job, including its events. Pass ?since=N
+	 * to only get the events from N on; each reply includes the "next" N to
+	 * use. Without a job ID, return a summary of the recent jobs.
+	 * 
+	 * @return The job(s) as JSON.
+	 */
+	@Get("json")
+	public Object handleGet() {
+		IFastFailoverDemoService service = getService();
+		String id = (String) getRequestAttributes().get("id");
+		if (id == null) {
+			List<Map<String, Object>> jobs = new ArrayList<Map<String, Object>>();
+			for (ToggleJob job : service.getToggleJobs()) {
+				Map<String, Object> m = job.toMap(Integer.MAX_VALUE);
+				m.remove("events");
+				m.remove("next");
+				jobs.add(m);
+			}
+			return jobs;
+		}
+
+		ToggleJob job;
+		int since;
+		try {
+			job = service.getToggleJob(Long.parseLong(id));
+			String s = getQueryValue("since");
+			since = s == null ? 0 : Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return Collections.singletonMap("ERROR", "Job ID and 'since' must be numbers");
+		}
+		if (job == null) {
+			setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+			Map<String, Object> m = new LinkedHashMap<String, Object>();
+			m.put("ERROR", "No such job " + id);
+			return m;
+		}
+		return job.toMap(since);
 	}
 }
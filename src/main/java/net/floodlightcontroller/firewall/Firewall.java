@@ -310,7 +310,7 @@ IFloodlightModule {
 		case PACKET_IN:
 			IRoutingDecision decision = null;
 			if (cntx != null) {
-				decision = IRoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+				decision = IRoutingDecision.rtStore.get(cntx);
 				return this.processPacketInMessage(sw, (OFPacketIn) msg, decision, cntx);
 			}
 			break;
@@ -462,7 +462,7 @@ IFloodlightModule {
 	 */
 	protected RuleMatchPair matchWithRule(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
 		FirewallRule matched_rule = null;
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 		AllowDropPair adp = new AllowDropPair(sw.getOFFactory());
 
 		synchronized (rules) {
@@ -540,7 +540,7 @@ IFloodlightModule {
 	}
 
 	public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
 
 		// Allowing L2 broadcast + ARP broadcast request (also deny malformed
@@ -558,7 +558,7 @@ IFloodlightModule {
 				}
 
 				decision = new RoutingDecision(sw.getId(), inPort, 
-						IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE),
+						IDeviceService.srcDeviceStore.get(cntx),
 						IRoutingDecision.RoutingAction.MULTICAST);
 				decision.addToContext(cntx);
 			} else {
@@ -567,7 +567,7 @@ IFloodlightModule {
 				}
 
 				decision = new RoutingDecision(sw.getId(), inPort,
-						IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE),
+						IDeviceService.srcDeviceStore.get(cntx),
 						IRoutingDecision.RoutingAction.DROP);
 				decision.addToContext(cntx);
 			}
@@ -593,7 +593,7 @@ IFloodlightModule {
 			// Drop the packet if we don't have a rule allowing or dropping it or if we explicitly drop it
 			if (rule == null || rule.action == FirewallRule.FirewallAction.DROP) {
 				decision = new RoutingDecision(sw.getId(), inPort, 
-						IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE), 
+						IDeviceService.srcDeviceStore.get(cntx), 
 						IRoutingDecision.RoutingAction.DROP);
 				decision.setMatch(rmp.match);
 				decision.addToContext(cntx);
@@ -607,7 +607,7 @@ IFloodlightModule {
 				// Found a rule and the rule is not a drop, so allow the packet
 			} else {
 				decision = new RoutingDecision(sw.getId(), inPort, 
-						IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE),
+						IDeviceService.srcDeviceStore.get(cntx),
 						IRoutingDecision.RoutingAction.FORWARD_OR_FLOOD);
 				decision.setMatch(rmp.match);
 				decision.addToContext(cntx);
@@ -82,7 +82,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 			"passed to the flow programming component",
 			recommendation=LogMessageDoc.REPORT_CONTROLLER_BUG)
 	public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 		// We found a routing decision (i.e. Firewall is enabled... it's the only thing that makes RoutingDecisions)
 		if (decision != null) {
 			if (log.isTraceEnabled()) {
@@ -158,10 +158,10 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 	protected void doForwardFlow(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
 		// Check if we have the location of the destination
-		IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
+		IDevice dstDevice = IDeviceService.dstDeviceStore.get(cntx);
 
 		if (dstDevice != null) {
-			IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE);
+			IDevice srcDevice = IDeviceService.srcDeviceStore.get(cntx);
 			DatapathId srcIsland = topologyService.getL2DomainId(sw.getId());
 
 			if (srcDevice == null) {
@@ -282,7 +282,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 	protected Match createMatchFromPacket(IOFSwitch sw, OFPort inPort, FloodlightContext cntx) {
 		// The packet in match will only contain the port number.
 		// We need to add in specifics for the hosts we're routing between.
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 		VlanVid vlan = VlanVid.ofVlan(eth.getVlanID());
 		MacAddress srcMac = eth.getSourceMACAddress();
 		MacAddress dstMac = eth.getDestinationMACAddress();
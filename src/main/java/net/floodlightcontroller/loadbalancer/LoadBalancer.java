@@ -181,7 +181,7 @@ public class LoadBalancer implements IFloodlightModule,
 
     private net.floodlightcontroller.core.IListener.Command processPacketIn(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
         
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
         IPacket pkt = eth.getPayload(); 
  
         if (eth.isBroadcast() || eth.isMulticast()) {
@@ -256,8 +256,7 @@ public class LoadBalancer implements IFloodlightModule,
     protected void vipProxyArpReply(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx, String vipId) {
         log.debug("vipProxyArpReply");
             
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
-                                                              IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 
         // retrieve original arp to determine host configured gw IP address                                          
         if (! (eth.getPayload() instanceof ARP))
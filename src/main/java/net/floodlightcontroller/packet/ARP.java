@@ -224,6 +224,19 @@ public class ARP extends BasePacket {
         return data;
     }
 
+    @Override
+    public void serialize(ByteBuffer bb) {
+        bb.putShort(this.hardwareType);
+        bb.putShort(this.protocolType);
+        bb.put(this.hardwareAddressLength);
+        bb.put(this.protocolAddressLength);
+        bb.putShort(this.opCode);
+        bb.put(this.senderHardwareAddress, 0, 0xff & this.hardwareAddressLength);
+        bb.put(this.senderProtocolAddress, 0, 0xff & this.protocolAddressLength);
+        bb.put(this.targetHardwareAddress, 0, 0xff & this.hardwareAddressLength);
+        bb.put(this.targetProtocolAddress, 0, 0xff & this.protocolAddressLength);
+    }
+
     @Override
     public IPacket deserialize(byte[] data, int offset, int length)
             throws PacketParsingException {
@@ -97,6 +97,20 @@ public class BSN extends BasePacket {
         return data;
     }
 
+    @Override
+    public void serialize(ByteBuffer bb) {
+        bb.putInt(BSN_MAGIC);
+        bb.putShort(this.type);
+        bb.putShort(this.version);
+        if (this.payload != null) {
+            payload.setParent(this);
+            payload.serialize(bb);
+        }
+
+        if (this.parent != null && this.parent instanceof Ethernet)
+            ((Ethernet)this.parent).setEtherType(EthType.of(Ethernet.TYPE_BSN & 0xffff)); /* treat as unsigned */
+    }
+
     @Override
     public IPacket deserialize(byte[] data, int offset, int length)
             throws PacketParsingException {
@@ -17,6 +17,8 @@
 
 package net.floodlightcontroller.packet;
 
+import java.nio.ByteBuffer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,6 +66,17 @@ public abstract class BasePacket implements IPacket {
         return this;
     }
     
+    /**
+     * Copies the result of {@link #serialize()}. Packets that can write
+     * themselves in place override this.
+     */
+    @Override
+    public void serialize(ByteBuffer bb) {
+        byte[] data = serialize();
+        if (data != null)
+            bb.put(data);
+    }
+
     @Override
     public void resetChecksum() {
         if (this.parent != null)
@@ -17,6 +17,7 @@
 
 package net.floodlightcontroller.packet;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -41,6 +42,15 @@ public class Ethernet extends BasePacket {
     public static final short DATALAYER_ADDRESS_LENGTH = 6; // bytes
     public static Map<Short, Class<? extends IPacket>> etherTypeClassMap;
 
+    /* Big enough for any IPv4 packet; grown if a payload is bigger */
+    private static final int SCRATCH_SIZE = 65536 + 64;
+    private static final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(SCRATCH_SIZE);
+        }
+    };
+
     static {
         etherTypeClassMap = new HashMap<Short, Class<? extends IPacket>>();
         etherTypeClassMap.put(TYPE_ARP, ARP.class);
@@ -203,32 +213,59 @@ public class Ethernet extends BasePacket {
         return this;
     }
 
+    /**
+     * Serializes the frame in place into a per-thread scratch buffer, so
+     * the only allocation is the returned array.
+     */
     public byte[] serialize() {
-        byte[] payloadData = null;
-        if (payload != null) {
-            payload.setParent(this);
-            payloadData = payload.serialize();
-        }
-        int length = 14 + ((vlanID == VLAN_UNTAGGED) ? 0 : 4) +
-                          ((payloadData == null) ? 0 : payloadData.length);
-        if (pad && length < 60) {
-            length = 60;
+        ByteBuffer bb = scratch.get();
+        // A nested serialize() gets a buffer of its own
+        scratch.set(null);
+        if (bb == null)
+            bb = ByteBuffer.allocate(SCRATCH_SIZE);
+        try {
+            for (;;) {
+                bb.clear();
+                try {
+                    serialize(bb);
+                    break;
+                } catch (BufferOverflowException e) {
+                    bb = ByteBuffer.allocate(bb.capacity() * 2);
+                }
+            }
+            return Arrays.copyOf(bb.array(), bb.position());
+        } finally {
+            if (bb.capacity() == SCRATCH_SIZE)
+                scratch.set(bb);
         }
-        byte[] data = new byte[length];
-        ByteBuffer bb = ByteBuffer.wrap(data);
-        bb.put(destinationMACAddress.getBytes());
-        bb.put(sourceMACAddress.getBytes());
+    }
+
+    @Override
+    public void serialize(ByteBuffer bb) {
+        int start = bb.position();
+        long dst = destinationMACAddress.getLong();
+        long src = sourceMACAddress.getLong();
+        bb.putShort((short) (dst >> 32));
+        bb.putInt((int) dst);
+        bb.putShort((short) (src >> 32));
+        bb.putInt((int) src);
         if (vlanID != VLAN_UNTAGGED) {
             bb.putShort((short) EthType.VLAN_FRAME.getValue());
             bb.putShort((short) ((priorityCode << 13) | (vlanID & 0x0fff)));
         }
-        bb.putShort((short) etherType.getValue());
-        if (payloadData != null)
-            bb.put(payloadData);
+        // The payload may set the ethertype, so it's written afterwards
+        int etherTypePosition = bb.position();
+        bb.putShort((short) 0);
+        if (payload != null) {
+            payload.setParent(this);
+            payload.serialize(bb);
+        }
+        bb.putShort(etherTypePosition, (short) etherType.getValue());
         if (pad) {
-            Arrays.fill(data, bb.position(), data.length, (byte)0x0);
+            while (bb.position() - start < 60) {
+                bb.put((byte) 0);
+            }
         }
-        return data;
     }
 
     @Override
@@ -270,12 +307,24 @@ public class Ethernet extends BasePacket {
         }
         this.etherType = etherType;
         
+        deserializePayload(data, bb.position(), bb.limit() - bb.position());
+        return this;
+    }
+
+    /**
+     * Decode the payload following the Ethernet header, based on the
+     * ethertype, and set it as the payload of this packet
+     * @param data the whole frame
+     * @param offset the offset of the payload
+     * @param length the length of the payload
+     */
+    protected void deserializePayload(byte[] data, int offset, int length) {
         IPacket payload;
         if (Ethernet.etherTypeClassMap.containsKey((short) this.etherType.getValue())) {
             Class<? extends IPacket> clazz = Ethernet.etherTypeClassMap.get((short) this.etherType.getValue());
             try {
                 payload = clazz.newInstance();
-                this.payload = payload.deserialize(data, bb.position(), bb.limit() - bb.position());
+                this.payload = payload.deserialize(data, offset, length);
             } catch (PacketParsingException e) {
                 if (log.isTraceEnabled()) {
                     log.trace("Failed to parse ethernet packet {}->{}" +
@@ -308,7 +357,6 @@ public class Ethernet extends BasePacket {
             this.payload = new Data(data);
         }
         this.payload.setParent(this);
-        return this;
     }
 
     /**
@@ -17,6 +17,8 @@
 
 package net.floodlightcontroller.packet;
 
+import java.nio.ByteBuffer;
+
 /**
 *
 * @author David Erickson (daviderickson@cs.stanford.edu)
@@ -60,6 +62,16 @@ public interface IPacket {
      */
     public byte[] serialize();
 
+    /**
+     * Sets all payloads parent packet if applicable, then serializes this
+     * packet and all payloads into the buffer at its current position,
+     * advancing it. Headers are written in place, without an intermediate
+     * array per layer.
+     * @param bb the buffer, which must have room for the whole packet
+     * @throws java.nio.BufferOverflowException if it doesn't
+     */
+    public void serialize(ByteBuffer bb);
+
     /**
      * Deserializes this packet layer and all possible payloads
      * @param data
@@ -372,6 +372,49 @@ public class IPv4 extends BasePacket {
         return data;
     }
 
+    @Override
+    public void serialize(ByteBuffer bb) {
+        int start = bb.position();
+        int optionsLength = 0;
+        if (this.options != null)
+            optionsLength = this.options.length / 4;
+        this.headerLength = (byte) (5 + optionsLength);
+
+        bb.put((byte) (((this.version & 0xf) << 4) | (this.headerLength & 0xf)));
+        bb.put(this.diffServ);
+        bb.putShort((short) 0); // total length, once the payload is written
+        bb.putShort(this.identification);
+        bb.putShort((short)(((this.flags & IPV4_FLAGS_MASK) << IPV4_FLAGS_SHIFT)
+                | (this.fragmentOffset & IPV4_OFFSET_MASK)));
+        bb.put(this.ttl);
+        bb.put((byte) 0); // protocol, which the payload may set
+        bb.putShort(this.checksum);
+        bb.putInt(this.sourceAddress.getInt());
+        bb.putInt(this.destinationAddress.getInt());
+        if (this.options != null)
+            bb.put(this.options);
+        if (payload != null) {
+            payload.setParent(this);
+            payload.serialize(bb);
+        }
+
+        this.totalLength = (short) (bb.position() - start);
+        bb.putShort(start + 2, this.totalLength);
+        bb.put(start + 9, (byte) this.protocol.getIpProtocolNumber());
+
+        // compute checksum if needed
+        if (this.checksum == 0) {
+            int accumulation = 0;
+            for (int i = 0; i < this.headerLength * 2; ++i) {
+                accumulation += 0xffff & bb.getShort(start + i * 2);
+            }
+            accumulation = ((accumulation >> 16) & 0xffff)
+                    + (accumulation & 0xffff);
+            this.checksum = (short) (~accumulation & 0xffff);
+            bb.putShort(start + 10, this.checksum);
+        }
+    }
+
     @Override
     public IPacket deserialize(byte[] data, int offset, int length)
             throws PacketParsingException {
@@ -127,6 +127,20 @@ public class LLDP extends BasePacket {
         return data;
     }
 
+    @Override
+    public void serialize(ByteBuffer bb) {
+        this.chassisId.serialize(bb);
+        this.portId.serialize(bb);
+        this.ttl.serialize(bb);
+        for (LLDPTLV tlv : this.optionalTLVList) {
+            if (tlv != null) tlv.serialize(bb);
+        }
+        bb.putShort((short) 0); // End of LLDPDU
+
+        if (this.parent != null && this.parent instanceof Ethernet)
+            ((Ethernet)this.parent).setEtherType(ethType);
+    }
+
     @Override
     public IPacket deserialize(byte[] data, int offset, int length) {
         ByteBuffer bb = ByteBuffer.wrap(data, offset, length);
@@ -120,6 +120,11 @@ public class LLDPOrganizationalTLV extends LLDPTLV {
         return super.serialize();
     }
 
+    @Override
+    public void serialize(ByteBuffer bb) {
+        bb.put(serialize());
+    }
+
     @Override
     public LLDPTLV deserialize(ByteBuffer bb) {
         super.deserialize(bb);
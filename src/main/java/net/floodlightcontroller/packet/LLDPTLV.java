@@ -88,6 +88,20 @@ public class LLDPTLV {
         return data;
     }
 
+    /**
+     * Serializes the TLV into the buffer at its current position
+     * @param bb
+     */
+    public void serialize(ByteBuffer bb) {
+        short scratch = (short) (((0x7f & this.type) << 9) | (0x1ff & this.length));
+        int end = bb.position() + 2 + this.length;
+        bb.putShort(scratch);
+        if (this.value != null)
+            bb.put(this.value);
+        while (bb.position() < end)
+            bb.put((byte) 0);
+    }
+
     public LLDPTLV deserialize(ByteBuffer bb) {
         short sscratch;
         sscratch = bb.getShort();
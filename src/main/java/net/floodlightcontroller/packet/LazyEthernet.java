@@ -0,0 +1,361 @@
+package net.floodlightcontroller.packet;
+
+import java.nio.ByteBuffer;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.MacAddress;
+
+/**
+ * An {@link Ethernet} frame that decodes itself on demand.
+ *
+ * The frame is a view over the received bytes. Header fields are read the
+ * first time they are asked for, and the payload object graph (IPv4, TCP,
+ * DHCP, ...) is only built when {@link #getPayload()} is called. The
+ * primitive accessors ({@link #getDestinationMACLong()},
+ * {@link #getEtherTypeValue()}, {@link #getNetworkSource()},
+ * {@link #getTransportDestination()}, ...) don't allocate at all.
+ *
+ * The data array is not copied and must not change while the frame is in
+ * use. Setters work as on {@link Ethernet}.
+ */
+public class LazyEthernet extends Ethernet {
+    private static final int ETH_TYPE_VLAN = 0x8100;
+    private static final int ETH_TYPE_IPV4 = 0x0800;
+    private static final int IP_PROTO_TCP = 6;
+    private static final int IP_PROTO_UDP = 17;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    /* Offset of the L3 header, -1 until the L2 header is parsed */
+    private int l3Offset = -1;
+    private int etherTypeValue;
+
+    /* IPv4 and L4 fields, valid once l3Parsed is set */
+    private boolean l3Parsed;
+    private short ipProtocol = -1;
+    private int networkSource;
+    private int networkDestination;
+    private int transportSource = -1;
+    private int transportDestination = -1;
+
+    private boolean payloadDecoded;
+
+    /**
+     * @param data the frame, which is not copied
+     * @param offset the offset of the frame in data
+     * @param length the length of the frame
+     */
+    public LazyEthernet(byte[] data, int offset, int length) {
+        super();
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        // Same as Ethernet.deserialize(), which ignores runts
+        if (!isValid()) {
+            payloadDecoded = true;
+        }
+    }
+
+    private boolean isValid() {
+        return length > 16;
+    }
+
+    private int getU16(int off) {
+        return ((data[off] & 0xff) << 8) | (data[off + 1] & 0xff);
+    }
+
+    private int getInt(int off) {
+        return ((data[off] & 0xff) << 24) | ((data[off + 1] & 0xff) << 16)
+                | ((data[off + 2] & 0xff) << 8) | (data[off + 3] & 0xff);
+    }
+
+    private long getU48(int off) {
+        return ((long) getU16(off) << 32) | (getInt(off + 2) & 0xffffffffL);
+    }
+
+    private void parseL2() {
+        if (l3Offset >= 0 || !isValid())
+            return;
+        int p = offset + 12;
+        int type = getU16(p);
+        p += 2;
+        if (type == ETH_TYPE_VLAN) {
+            int tci = getU16(p);
+            this.priorityCode = (byte) ((tci >> 13) & 0x07);
+            this.vlanID = (short) (tci & 0x0fff);
+            type = getU16(p + 2);
+            p += 4;
+        } else {
+            this.vlanID = VLAN_UNTAGGED;
+        }
+        etherTypeValue = type;
+        l3Offset = p;
+    }
+
+    private void parseL3() {
+        if (l3Parsed)
+            return;
+        l3Parsed = true;
+        parseL2();
+        if (!isValid() || etherTypeValue != ETH_TYPE_IPV4)
+            return;
+        int end = offset + length;
+        int p = l3Offset;
+        if (end - p < 20)
+            return;
+        int headerLength = (data[p] & 0x0f) * 4;
+        if (headerLength < 20 || end - p < headerLength)
+            return;
+        ipProtocol = (short) (data[p + 9] & 0xff);
+        networkSource = getInt(p + 12);
+        networkDestination = getInt(p + 16);
+
+        // Only the first fragment has the L4 header
+        boolean firstFragment = (getU16(p + 6) & 0x1fff) == 0;
+        p += headerLength;
+        if (firstFragment && end - p >= 4
+                && (ipProtocol == IP_PROTO_TCP || ipProtocol == IP_PROTO_UDP)) {
+            transportSource = getU16(p);
+            transportDestination = getU16(p + 2);
+        }
+    }
+
+    /**
+     * Set the MAC and ethertype fields from the frame, unless they were
+     * already set. Anything that marks the payload as decoded must call
+     * this first, or those fields stay null.
+     */
+    private void decodeHeader() {
+        parseL2();
+        getEtherType();
+        getDestinationMACAddress();
+        getSourceMACAddress();
+    }
+
+    /**
+     * Decode everything, so that all the fields of this frame are set
+     */
+    private void decodeAll() {
+        if (payloadDecoded)
+            return;
+        payloadDecoded = true;
+        decodeHeader();
+        deserializePayload(data, l3Offset, offset + length - l3Offset);
+    }
+
+    /**
+     * @return the destination MAC, without allocating
+     */
+    public long getDestinationMACLong() {
+        if (destinationMACAddress != null)
+            return destinationMACAddress.getLong();
+        return isValid() ? getU48(offset) : 0;
+    }
+
+    /**
+     * @return the source MAC, without allocating
+     */
+    public long getSourceMACLong() {
+        if (sourceMACAddress != null)
+            return sourceMACAddress.getLong();
+        return isValid() ? getU48(offset + 6) : 0;
+    }
+
+    /**
+     * @return the ethertype, without allocating
+     */
+    public int getEtherTypeValue() {
+        if (etherType != null)
+            return etherType.getValue();
+        parseL2();
+        return etherTypeValue;
+    }
+
+    /**
+     * @return the IP protocol number, or -1 if this isn't an IPv4 packet
+     */
+    public short getIpProtocolNumber() {
+        if (payloadDecoded && isValid()) {
+            IPacket p = payload;
+            return p instanceof IPv4 ? ((IPv4) p).getProtocol().getIpProtocolNumber() : -1;
+        }
+        parseL3();
+        return ipProtocol;
+    }
+
+    /**
+     * @return the IPv4 source address; only meaningful if
+     * {@link #getIpProtocolNumber()} isn't -1
+     */
+    public int getNetworkSource() {
+        if (payloadDecoded && payload instanceof IPv4)
+            return ((IPv4) payload).getSourceAddress().getInt();
+        parseL3();
+        return networkSource;
+    }
+
+    /**
+     * @return the IPv4 destination address; only meaningful if
+     * {@link #getIpProtocolNumber()} isn't -1
+     */
+    public int getNetworkDestination() {
+        if (payloadDecoded && payload instanceof IPv4)
+            return ((IPv4) payload).getDestinationAddress().getInt();
+        parseL3();
+        return networkDestination;
+    }
+
+    /**
+     * @return the TCP or UDP source port, or -1 if there is none
+     */
+    public int getTransportSource() {
+        if (payloadDecoded && isValid()) {
+            IPacket l4 = payload == null ? null : payload.getPayload();
+            if (l4 instanceof TCP)
+                return ((TCP) l4).getSourcePort().getPort();
+            if (l4 instanceof UDP)
+                return ((UDP) l4).getSourcePort().getPort();
+            return -1;
+        }
+        parseL3();
+        return transportSource;
+    }
+
+    /**
+     * @return the TCP or UDP destination port, or -1 if there is none
+     */
+    public int getTransportDestination() {
+        if (payloadDecoded && isValid()) {
+            IPacket l4 = payload == null ? null : payload.getPayload();
+            if (l4 instanceof TCP)
+                return ((TCP) l4).getDestinationPort().getPort();
+            if (l4 instanceof UDP)
+                return ((UDP) l4).getDestinationPort().getPort();
+            return -1;
+        }
+        parseL3();
+        return transportDestination;
+    }
+
+    @Override
+    public MacAddress getDestinationMACAddress() {
+        if (destinationMACAddress == null && isValid())
+            destinationMACAddress = MacAddress.of(getU48(offset));
+        return destinationMACAddress;
+    }
+
+    @Override
+    public MacAddress getSourceMACAddress() {
+        if (sourceMACAddress == null && isValid())
+            sourceMACAddress = MacAddress.of(getU48(offset + 6));
+        return sourceMACAddress;
+    }
+
+    @Override
+    public byte getPriorityCode() {
+        parseL2();
+        return priorityCode;
+    }
+
+    @Override
+    public Ethernet setPriorityCode(byte priorityCode) {
+        parseL2();
+        return super.setPriorityCode(priorityCode);
+    }
+
+    @Override
+    public short getVlanID() {
+        parseL2();
+        return vlanID;
+    }
+
+    @Override
+    public Ethernet setVlanID(short vlanID) {
+        parseL2();
+        return super.setVlanID(vlanID);
+    }
+
+    @Override
+    public EthType getEtherType() {
+        if (etherType == null && isValid()) {
+            parseL2();
+            etherType = EthType.of(etherTypeValue);
+        }
+        return etherType;
+    }
+
+    @Override
+    public Ethernet setEtherType(EthType etherType) {
+        // The payload is decoded by ethertype, so decode it with the old one
+        decodeAll();
+        return super.setEtherType(etherType);
+    }
+
+    @Override
+    public boolean isBroadcast() {
+        return getDestinationMACLong() == 0xffffffffffffL;
+    }
+
+    @Override
+    public boolean isMulticast() {
+        long mac = getDestinationMACLong();
+        return mac != 0xffffffffffffL && (mac & (0x01L << 40)) != 0;
+    }
+
+    @Override
+    public IPacket getPayload() {
+        decodeAll();
+        return payload;
+    }
+
+    @Override
+    public IPacket setPayload(IPacket payload) {
+        decodeHeader();
+        payloadDecoded = true;
+        return super.setPayload(payload);
+    }
+
+    @Override
+    public byte[] serialize() {
+        decodeAll();
+        return super.serialize();
+    }
+
+    @Override
+    public void serialize(ByteBuffer bb) {
+        decodeAll();
+        super.serialize(bb);
+    }
+
+    @Override
+    public IPacket deserialize(byte[] data, int offset, int length) {
+        // Replaces the view with an eagerly decoded frame; a runt leaves the old header
+        decodeHeader();
+        payloadDecoded = true;
+        return super.deserialize(data, offset, length);
+    }
+
+    @Override
+    public Object clone() {
+        byte[] frame = serialize();
+        LazyEthernet copy = new LazyEthernet(frame, 0, frame.length);
+        copy.setParent(parent);
+        return copy;
+    }
+
+    @Override
+    public int hashCode() {
+        decodeAll();
+        return super.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        decodeAll();
+        if (obj instanceof LazyEthernet)
+            ((LazyEthernet) obj).decodeAll();
+        return super.equals(obj);
+    }
+}
@@ -238,6 +238,42 @@ public class TCP extends BasePacket {
         return data;
     }
 
+    @Override
+    public void serialize(ByteBuffer bb) {
+        int start = bb.position();
+        if (dataOffset == 0)
+            dataOffset = 5;  // default header length
+
+        bb.putShort((short)this.sourcePort.getPort()); //TCP ports are defined to be 16 bits
+        bb.putShort((short)this.destinationPort.getPort());
+        bb.putInt(this.sequence);
+        bb.putInt(this.acknowledge);
+        bb.putShort((short) (this.flags | (dataOffset << 12)));
+        bb.putShort(this.windowSize);
+        bb.putShort(this.checksum);
+        bb.putShort(this.urgentPointer);
+        if (dataOffset > 5) {
+            int padding;
+            bb.put(options);
+            padding = (dataOffset << 2) - 20 - options.length;
+            for (int i = 0; i < padding; i++)
+                bb.put((byte) 0);
+        }
+        if (payload != null) {
+            payload.setParent(this);
+            payload.serialize(bb);
+        }
+
+        if (this.parent != null && this.parent instanceof IPv4)
+            ((IPv4)this.parent).setProtocol(IpProtocol.TCP);
+
+        // compute checksum if needed
+        if (this.checksum == 0) {
+            this.checksum = UDP.checksum(bb, start, bb.position() - start, this.parent);
+            bb.putShort(start + 16, this.checksum);
+        }
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#hashCode()
      */
@@ -182,6 +182,62 @@ public class UDP extends BasePacket {
         return data;
     }
 
+    @Override
+    public void serialize(ByteBuffer bb) {
+        int start = bb.position();
+        bb.putShort((short)this.sourcePort.getPort()); // UDP packet port numbers are 16 bit
+        bb.putShort((short)this.destinationPort.getPort());
+        bb.putShort((short) 0); // length, once the payload is written
+        bb.putShort(this.checksum);
+        if (payload != null) {
+            payload.setParent(this);
+            payload.serialize(bb);
+        }
+
+        this.length = (short) (bb.position() - start);
+        bb.putShort(start + 4, this.length);
+
+        if (this.parent != null && this.parent instanceof IPv4)
+            ((IPv4)this.parent).setProtocol(IpProtocol.UDP);
+
+        // compute checksum if needed
+        if (this.checksum == 0) {
+            this.checksum = checksum(bb, start, this.length, this.parent);
+            bb.putShort(start + 6, this.checksum);
+        }
+    }
+
+    /**
+     * Computes the checksum of a TCP or UDP segment already written to bb,
+     * including the IPv4 pseudo header if the parent is IPv4
+     */
+    static short checksum(ByteBuffer bb, int start, int length, IPacket parent) {
+        int accumulation = 0;
+
+        // compute pseudo header mac
+        if (parent != null && parent instanceof IPv4) {
+            IPv4 ipv4 = (IPv4) parent;
+            accumulation += ((ipv4.getSourceAddress().getInt() >> 16) & 0xffff)
+                    + (ipv4.getSourceAddress().getInt() & 0xffff);
+            accumulation += ((ipv4.getDestinationAddress().getInt() >> 16) & 0xffff)
+                    + (ipv4.getDestinationAddress().getInt() & 0xffff);
+            accumulation += ipv4.getProtocol().getIpProtocolNumber() & 0xff;
+            accumulation += length & 0xffff;
+        }
+
+        for (int i = 0; i < length / 2; ++i) {
+            accumulation += 0xffff & bb.getShort(start + i * 2);
+        }
+        // pad to an even number of shorts
+        if (length % 2 > 0) {
+            accumulation += (bb.get(start + length - 1) & 0xff) << 8;
+        }
+
+        accumulation = ((accumulation >> 16) & 0xffff)
+                + (accumulation & 0xffff);
+        return (short) (~accumulation & 0xffff);
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#hashCode()
      */
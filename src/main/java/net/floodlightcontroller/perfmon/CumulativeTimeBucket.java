@@ -18,17 +18,22 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import net.floodlightcontroller.core.IOFMessageListener;
 
+/**
+ * Packet-in processing times since the bucket was created or last reset,
+ * in total and per IOFMessageListener. Any thread may record; the
+ * statistics are computed from what was recorded by computeAverages.
+ */
 @JsonSerialize(using=CumulativeTimeBucketJSONSerializer.class)
 public class CumulativeTimeBucket {
     private long startTime_ns; // First pkt time-stamp in this bucket
-    private Map<Integer, OneComponentTime> compStats;
+    private ConcurrentMap<Integer, OneComponentTime> compStats;
     private long totalPktCnt;
     private long totalProcTimeNs; // total processing time for one pkt in
     private long sumSquaredProcTimeNs2;
@@ -36,6 +41,10 @@ public class CumulativeTimeBucket {
     private long minTotalProcTimeNs;
     private long avgTotalProcTimeNs;
     private long sigmaTotalProcTimeNs; // std. deviation
+    private long p50TotalProcTimeNs;
+    private long p99TotalProcTimeNs;
+    private long p999TotalProcTimeNs;
+    private final LatencyRecorder totalProcTimes = new LatencyRecorder();
 
     public long getStartTimeNs() {
         return startTime_ns;
@@ -61,6 +70,18 @@ public class CumulativeTimeBucket {
         return sigmaTotalProcTimeNs;
     }
     
+    public long getP50TotalProcTimeNs() {
+        return p50TotalProcTimeNs;
+    }
+    
+    public long getP99TotalProcTimeNs() {
+        return p99TotalProcTimeNs;
+    }
+    
+    public long getP999TotalProcTimeNs() {
+        return p999TotalProcTimeNs;
+    }
+    
     public int getNumComps() {
         return compStats.values().size();
     }
@@ -75,18 +96,15 @@ public class CumulativeTimeBucket {
             OneComponentTime oct = new OneComponentTime(l);
             compStats.put(oct.hashCode(), oct);
         }
-        startTime_ns = System.nanoTime();
+        reset();
     }
 
-    private void updateSquaredProcessingTime(long curTimeNs) {
-        sumSquaredProcTimeNs2 += (Math.pow(curTimeNs, 2));
-    }
-    
     /**
      * Resets all counters and counters for each component time
      */
     public void reset() {
         startTime_ns = System.nanoTime();
+        totalProcTimes.reset();
         totalPktCnt = 0;
         totalProcTimeNs = 0;
         avgTotalProcTimeNs = 0;
@@ -94,23 +112,36 @@ public class CumulativeTimeBucket {
         maxTotalProcTimeNs = Long.MIN_VALUE;
         minTotalProcTimeNs = Long.MAX_VALUE;
         sigmaTotalProcTimeNs = 0;
+        p50TotalProcTimeNs = 0;
+        p99TotalProcTimeNs = 0;
+        p999TotalProcTimeNs = 0;
         for (OneComponentTime oct : compStats.values()) {
             oct.resetAllCounters();
         }
     }
     
-    private void computeSigma() {
-        // Computes std. deviation from the sum of count numbers and from
-        // the sum of the squares of count numbers
-        double temp = totalProcTimeNs;
-        temp = Math.pow(temp, 2) / totalPktCnt;
-        temp = (sumSquaredProcTimeNs2 - temp) / totalPktCnt;
-        sigmaTotalProcTimeNs = (long) Math.sqrt(temp);
-    }
-    
     public void computeAverages() {
-        // Must be called last to, needs latest info
-        computeSigma();
+        LatencyHistogram h = totalProcTimes.snapshot();
+        totalPktCnt = h.getCount();
+        totalProcTimeNs = h.getSum();
+        sumSquaredProcTimeNs2 = h.getSumSquared();
+        minTotalProcTimeNs = h.getMin();
+        maxTotalProcTimeNs = h.getMax();
+        p50TotalProcTimeNs = h.getValueAtPercentile(50);
+        p99TotalProcTimeNs = h.getValueAtPercentile(99);
+        p999TotalProcTimeNs = h.getValueAtPercentile(99.9);
+        if (totalPktCnt == 0) {
+            avgTotalProcTimeNs = 0;
+            sigmaTotalProcTimeNs = 0;
+        } else {
+            avgTotalProcTimeNs = totalProcTimeNs / totalPktCnt;
+            // Computes std. deviation from the sum of count numbers and from
+            // the sum of the squares of count numbers
+            double temp = totalProcTimeNs;
+            temp = Math.pow(temp, 2) / totalPktCnt;
+            temp = (sumSquaredProcTimeNs2 - temp) / totalPktCnt;
+            sigmaTotalProcTimeNs = (long) Math.sqrt(temp);
+        }
         
         for (OneComponentTime oct : compStats.values()) {
             oct.computeSigma();
@@ -118,21 +149,19 @@ public class CumulativeTimeBucket {
     }
     
     public void updatePerPacketCounters(long procTimeNs) {
-        totalPktCnt++;
-        totalProcTimeNs += procTimeNs;
-        avgTotalProcTimeNs = totalProcTimeNs / totalPktCnt;
-        updateSquaredProcessingTime(procTimeNs);
-        
-        if (procTimeNs > maxTotalProcTimeNs) {
-            maxTotalProcTimeNs = procTimeNs;
-        }
-        
-        if (procTimeNs < minTotalProcTimeNs) {
-            minTotalProcTimeNs = procTimeNs;
-        }
+        totalProcTimes.record(procTimeNs);
     }
     
     public void updateOneComponent(IOFMessageListener l, long procTimeNs) {
-        compStats.get(l.hashCode()).updatePerPacketCounters(procTimeNs);
+        OneComponentTime oct = compStats.get(l.hashCode());
+        if (oct == null) {
+            // A listener added since the bucket was created
+            oct = new OneComponentTime(l);
+            OneComponentTime old = compStats.putIfAbsent(oct.hashCode(), oct);
+            if (old != null) {
+                oct = old;
+            }
+        }
+        oct.updatePerPacketCounters(procTimeNs);
     }
-}
\ No newline at end of file
+}
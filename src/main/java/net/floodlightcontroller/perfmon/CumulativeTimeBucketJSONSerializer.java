@@ -45,6 +45,9 @@ public class CumulativeTimeBucketJSONSerializer
        jGen.writeNumberField("min", ctb.getMinTotalProcTimeNs());
        jGen.writeNumberField("max", ctb.getMaxTotalProcTimeNs());
        jGen.writeNumberField("std-dev", ctb.getTotalSigmaProcTimeNs());
+       jGen.writeNumberField("p50", ctb.getP50TotalProcTimeNs());
+       jGen.writeNumberField("p99", ctb.getP99TotalProcTimeNs());
+       jGen.writeNumberField("p999", ctb.getP999TotalProcTimeNs());
        jGen.writeArrayFieldStart("modules");
        for (OneComponentTime oct : ctb.getModules()) {
            serializer.defaultSerializeValue(oct, jGen);
@@ -0,0 +1,148 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of times in nanoseconds with fixed log-linear buckets: each
+ * power of two is split into SUB_BUCKETS equal buckets, so a percentile
+ * read from it is within 1/SUB_BUCKETS of the recorded time. Times under
+ * SUB_BUCKETS ns get a bucket each; times past 2^MAX_EXPONENT ns all fall
+ * in the last bucket. The count, sum, min and max are exact.
+ *
+ * A histogram has one writer. It records with ordered stores rather than
+ * atomic adds, so recording costs no more than into a plain array, and
+ * other threads can still read and merge it while it is written; they may
+ * see the latest record in some of the totals and not yet in others.
+ * @see LatencyRecorder
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 36; // about 69s
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int SUM_SQUARED = 2;
+    private static final int MIN = 3;
+    private static final int MAX = 4;
+    private static final int FIRST_BUCKET = 5;
+
+    private final AtomicLongArray data = new AtomicLongArray(FIRST_BUCKET + BUCKETS);
+
+    public LatencyHistogram() {
+        data.set(MIN, Long.MAX_VALUE);
+        data.set(MAX, Long.MIN_VALUE);
+    }
+
+    static int bucketOf(long timeNs) {
+        if (timeNs < SUB_BUCKETS) {
+            return timeNs < 0 ? 0 : (int) timeNs;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(timeNs);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (timeNs >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest time that falls in the bucket
+     */
+    static long highestTimeOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Record a time. Only the histogram's writer may call this.
+     * @param timeNs the time in nanoseconds
+     */
+    public void record(long timeNs) {
+        int i = FIRST_BUCKET + bucketOf(timeNs);
+        data.lazySet(i, data.get(i) + 1);
+        data.lazySet(SUM, data.get(SUM) + timeNs);
+        data.lazySet(SUM_SQUARED, data.get(SUM_SQUARED) + timeNs * timeNs);
+        if (timeNs < data.get(MIN)) {
+            data.lazySet(MIN, timeNs);
+        }
+        if (timeNs > data.get(MAX)) {
+            data.lazySet(MAX, timeNs);
+        }
+        data.lazySet(COUNT, data.get(COUNT) + 1);
+    }
+
+    /**
+     * Add the records of another histogram to this one. Only the writer of
+     * this histogram may call this; the other may be written meanwhile.
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = FIRST_BUCKET; i < data.length(); i++) {
+            long c = other.data.get(i);
+            if (c != 0) {
+                data.lazySet(i, data.get(i) + c);
+            }
+        }
+        data.lazySet(SUM, data.get(SUM) + other.data.get(SUM));
+        data.lazySet(SUM_SQUARED, data.get(SUM_SQUARED) + other.data.get(SUM_SQUARED));
+        data.lazySet(MIN, Math.min(data.get(MIN), other.data.get(MIN)));
+        data.lazySet(MAX, Math.max(data.get(MAX), other.data.get(MAX)));
+        data.lazySet(COUNT, data.get(COUNT) + other.data.get(COUNT));
+    }
+
+    public long getCount() {
+        return data.get(COUNT);
+    }
+
+    public long getSum() {
+        return data.get(SUM);
+    }
+
+    public long getSumSquared() {
+        return data.get(SUM_SQUARED);
+    }
+
+    /**
+     * @return the least time recorded, or Long.MAX_VALUE if none was
+     */
+    public long getMin() {
+        return data.get(MIN);
+    }
+
+    /**
+     * @return the greatest time recorded, or Long.MIN_VALUE if none was
+     */
+    public long getMax() {
+        return data.get(MAX);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the time that percentile of the records are at or under,
+     * to the resolution of the buckets; 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            total += data.get(FIRST_BUCKET + b);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += data.get(FIRST_BUCKET + b);
+            if (seen >= rank) {
+                return b == BUCKETS - 1 ? getMax() : Math.min(highestTimeOf(b), getMax());
+            }
+        }
+        return getMax();
+    }
+}
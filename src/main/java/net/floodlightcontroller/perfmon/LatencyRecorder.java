@@ -0,0 +1,51 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Times recorded from many threads. Each thread records into a histogram
+ * of its own, so threads never share a cache line while recording; the
+ * histograms are merged when read.
+ */
+public class LatencyRecorder {
+    /* A thread's histogram; reset swaps in a new one */
+    private static class Slot {
+        volatile LatencyHistogram histogram = new LatencyHistogram();
+    }
+
+    private final Queue<Slot> slots = new ConcurrentLinkedQueue<Slot>();
+    private final ThreadLocal<Slot> localSlot = new ThreadLocal<Slot>() {
+        @Override
+        protected Slot initialValue() {
+            Slot slot = new Slot();
+            slots.add(slot);
+            return slot;
+        }
+    };
+
+    public void record(long timeNs) {
+        localSlot.get().histogram.record(timeNs);
+    }
+
+    /**
+     * @return the records of all threads merged
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Slot slot : slots) {
+            merged.add(slot.histogram);
+        }
+        return merged;
+    }
+
+    /**
+     * Forget all records. Records that race with the call may or may not
+     * be forgotten.
+     */
+    public void reset() {
+        for (Slot slot : slots) {
+            slot.histogram = new LatencyHistogram();
+        }
+    }
+}
@@ -35,6 +35,11 @@ public class OneComponentTime {
     private long minProcTimeNs;
     private long avgProcTimeNs;
     private long sigmaProcTimeNs;  // std. deviation
+    private long p50ProcTimeNs;
+    private long p99ProcTimeNs;
+    private long p999ProcTimeNs;
+    // what the fields above are computed from
+    private final LatencyRecorder procTimes = new LatencyRecorder();
 
     public OneComponentTime(IOFMessageListener module) {
         compId = module.hashCode();
@@ -43,6 +48,7 @@ public class OneComponentTime {
     }
     
     public void resetAllCounters() {
+        procTimes.reset();
         maxProcTimeNs = Long.MIN_VALUE;
         minProcTimeNs = Long.MAX_VALUE;
         pktCnt = 0;
@@ -50,6 +56,9 @@ public class OneComponentTime {
         sumSquaredProcTimeNs2 = 0;
         avgProcTimeNs = 0;
         sigmaProcTimeNs = 0;
+        p50ProcTimeNs = 0;
+        p99ProcTimeNs = 0;
+        p999ProcTimeNs = 0;
     }
     
     @JsonProperty("module-name")
@@ -92,35 +101,43 @@ public class OneComponentTime {
         return sumSquaredProcTimeNs2;
     }
 
-    // Methods used to update the counters
-    
-    private void increasePktCount() {
-        pktCnt++;
-    }
-    
-    private void updateTotalProcessingTime(long procTimeNs) {
-        totalProcTimeNs += procTimeNs;
-    }
-    
-    private void updateAvgProcessTime() {
-        avgProcTimeNs = totalProcTimeNs / pktCnt;
-    }
-    
-    private void updateSquaredProcessingTime(long procTimeNs) {
-        sumSquaredProcTimeNs2 += (Math.pow(procTimeNs, 2));
+    @JsonProperty("p50")
+    public long getP50ProcTimeNs() {
+        return p50ProcTimeNs;
     }
-    
-    private void calculateMinProcTime(long curTimeNs) {
-        if (curTimeNs < minProcTimeNs)
-            minProcTimeNs = curTimeNs;
+
+    @JsonProperty("p99")
+    public long getP99ProcTimeNs() {
+        return p99ProcTimeNs;
     }
-    
-    private void calculateMaxProcTime(long curTimeNs) {
-        if (curTimeNs > maxProcTimeNs)
-            maxProcTimeNs = curTimeNs;
+
+    @JsonProperty("p999")
+    public long getP999ProcTimeNs() {
+        return p999ProcTimeNs;
     }
+
+    // Methods used to update the counters
     
+    /**
+     * Computes the counters from the times recorded so far; the getters
+     * return what was computed at the last call.
+     */
     public void computeSigma() {
+        LatencyHistogram h = procTimes.snapshot();
+        pktCnt = (int) h.getCount();
+        totalProcTimeNs = h.getSum();
+        sumSquaredProcTimeNs2 = h.getSumSquared();
+        minProcTimeNs = h.getMin();
+        maxProcTimeNs = h.getMax();
+        p50ProcTimeNs = h.getValueAtPercentile(50);
+        p99ProcTimeNs = h.getValueAtPercentile(99);
+        p999ProcTimeNs = h.getValueAtPercentile(99.9);
+        if (pktCnt == 0) {
+            avgProcTimeNs = 0;
+            sigmaProcTimeNs = 0;
+            return;
+        }
+        avgProcTimeNs = totalProcTimeNs / pktCnt;
         // Computes std. deviation from the sum of count numbers and from
         // the sum of the squares of count numbers
         double temp = totalProcTimeNs;
@@ -129,13 +146,11 @@ public class OneComponentTime {
         sigmaProcTimeNs = (long) Math.sqrt(temp);
     }
     
+    /**
+     * Records the time of one packet. Safe to call from any thread.
+     */
     public void updatePerPacketCounters(long procTimeNs) {
-        increasePktCount();
-        updateTotalProcessingTime(procTimeNs);
-        calculateMinProcTime(procTimeNs);
-        calculateMaxProcTime(procTimeNs);
-        updateAvgProcessTime();
-        updateSquaredProcessingTime(procTimeNs);
+        procTimes.record(procTimeNs);
     }
     
     @Override
@@ -85,11 +85,11 @@ public class PktInProcessingTime
     protected static  Logger  logger = 
         LoggerFactory.getLogger(PktInProcessingTime.class);
     
-    protected boolean isEnabled = false;
+    protected volatile boolean isEnabled = false;
     protected boolean isInited = false;
     // Maintains the time when the last packet was processed
     protected long lastPktTime_ns;
-    private CumulativeTimeBucket ctb = null;
+    private volatile CumulativeTimeBucket ctb = null;
 
     
     /***
@@ -124,27 +124,43 @@ public class PktInProcessingTime
         return ctb;
     }
     
-    private long startTimePktNs;
-    private long startTimeCompNs;
+    /*
+     * The start times of the packet-in and of the listener a thread is
+     * processing. Many threads process packet-ins at once, so each keeps
+     * its own; 0 means not started, as when monitoring was enabled midway.
+     */
+    private static final int PKT = 0;
+    private static final int COMP = 1;
+    private final ThreadLocal<long[]> startTimesNs = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
     @Override
     public void recordStartTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
+            startTimesNs.get()[COMP] = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
-            ctb.updateOneComponent(listener, procTime);
+            long[] start = startTimesNs.get();
+            if (start[COMP] != 0) {
+                long procTime = System.nanoTime() - start[COMP];
+                start[COMP] = 0;
+                ctb.updateOneComponent(listener, procTime);
+            }
         }
     }
     
     @Override
     public void recordStartTimePktIn() {
         if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+            startTimesNs.get()[PKT] = System.nanoTime();
         }
     }
     
@@ -156,7 +172,12 @@ public class PktInProcessingTime
             recommendation=LogMessageDoc.CHECK_CONTROLLER)
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
+            long[] start = startTimesNs.get();
+            if (start[PKT] == 0) {
+                return;
+            }
+            long procTimeNs = System.nanoTime() - start[PKT];
+            start[PKT] = 0;
             ctb.updatePerPacketCounters(procTimeNs);
             
             if (ptWarningThresholdInNano > 0 && 
@@ -172,7 +172,7 @@ public abstract class ForwardingBase implements IOFMessageListener {
 		case PACKET_IN:
 			IRoutingDecision decision = null;
 			if (cntx != null) {
-				decision = RoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+				decision = RoutingDecision.rtStore.get(cntx);
 			}
 
 			return this.processPacketInMessage(sw, (OFPacketIn) msg, decision, cntx);
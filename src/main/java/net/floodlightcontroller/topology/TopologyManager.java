@@ -1079,8 +1079,7 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	protected Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
 		// get the packet-in switch.
 		Ethernet eth =
-				IFloodlightProviderService.bcStore.
-				get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+				IFloodlightProviderService.bcStore.get(cntx);
 
 		if (eth.getPayload() instanceof BSN) {
 			BSN bsn = (BSN) eth.getPayload();
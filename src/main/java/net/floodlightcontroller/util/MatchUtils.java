@@ -11,16 +11,20 @@ import org.projectfloodlight.openflow.types.ArpOpcode;
 import org.projectfloodlight.openflow.types.EthType;
 import org.projectfloodlight.openflow.types.ICMPv4Code;
 import org.projectfloodlight.openflow.types.ICMPv4Type;
+import org.projectfloodlight.openflow.types.IPv4Address;
 import org.projectfloodlight.openflow.types.IPv4AddressWithMask;
+import org.projectfloodlight.openflow.types.IPv6Address;
 import org.projectfloodlight.openflow.types.IPv6AddressWithMask;
 import org.projectfloodlight.openflow.types.IPv6FlowLabel;
 import org.projectfloodlight.openflow.types.IpDscp;
 import org.projectfloodlight.openflow.types.IpEcn;
 import org.projectfloodlight.openflow.types.IpProtocol;
 import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.Masked;
 import org.projectfloodlight.openflow.types.OFBooleanValue;
 import org.projectfloodlight.openflow.types.OFMetadata;
 import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.OFValueType;
 import org.projectfloodlight.openflow.types.OFVlanVidMatch;
 import org.projectfloodlight.openflow.types.OFVlanVidMatchWithMask;
 import org.projectfloodlight.openflow.types.TransportPort;
@@ -199,6 +203,93 @@ public class MatchUtils {
 		return mb;
 	}
 
+	/**
+	 * Bring Match m into a canonical form, so that two Matches that match
+	 * the same packets are equal. Switches tend to report a flow's match
+	 * in a form different from the one the flow was added with, e.g.:
+	 * 		a field masked with all bits set is reported as exact
+	 * 		the bits of a masked value outside the mask are cleared
+	 * 		prerequisites, such as ETH_TYPE for IPV4_DST, are filled in
+	 * 
+	 * The canonical form uses exact fields instead of all-ones masks, clears
+	 * the bits of masked values outside their mask, and leaves out ETH_TYPE
+	 * and IP_PROTO where another field already implies their value.
+	 * 
+	 * The returned Match is for comparing only. It might not be valid
+	 * to send to a switch; use the original for that.
+	 * 
+	 * @param m; the match to normalize
+	 * @return Match; the canonical form of Match m
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static Match normalize(Match m) {
+		Match.Builder mb = createForgetfulBuilder(m);
+		Iterator<MatchField<?>> itr = m.getMatchFields().iterator(); // only get exact or masked fields (not fully wildcarded)
+		while(itr.hasNext()) {
+			MatchField mf = itr.next();
+			if (isImplied(m, mf)) {
+				continue;
+			}
+			if (m.isExact(mf)) {
+				OFValueType value = m.get(mf);
+				if (value != null) { // null if the field's prerequisites are missing
+					mb.setExact(mf, value);
+				}
+			} else if (m.isPartiallyMasked(mf)) {
+				Masked masked = m.getMasked(mf);
+				if (isNoMask(masked.getMask())) {
+					mb.setExact(mf, masked.getValue());
+				} else {
+					mb.setMasked(mf, masked.getValue().applyMask(masked.getMask()), masked.getMask());
+				}
+			}
+		}
+		return mb.build();
+	}
+
+	private static boolean isNoMask(Object mask) {
+		return mask.equals(IPv4Address.NO_MASK) || mask.equals(IPv6Address.NO_MASK)
+				|| mask.equals(MacAddress.NO_MASK) || mask.equals(OFMetadata.NO_MASK)
+				|| mask.equals(U64.NO_MASK) || mask.equals(OFVlanVidMatch.NO_MASK);
+	}
+
+	private static boolean isSet(Match m, MatchField<?> mf) {
+		return m.isExact(mf) || m.isPartiallyMasked(mf);
+	}
+
+	/*
+	 * Is mf a prerequisite whose (exact) value follows from the other fields?
+	 */
+	private static boolean isImplied(Match m, MatchField<?> mf) {
+		if (mf.equals(MatchField.ETH_TYPE) && m.isExact(MatchField.ETH_TYPE)) {
+			EthType ethType = m.get(MatchField.ETH_TYPE);
+			if (isSet(m, MatchField.IPV4_SRC) || isSet(m, MatchField.IPV4_DST)
+					|| isSet(m, MatchField.ICMPV4_TYPE) || isSet(m, MatchField.ICMPV4_CODE)) {
+				return EthType.IPv4.equals(ethType);
+			} else if (isSet(m, MatchField.IPV6_SRC) || isSet(m, MatchField.IPV6_DST) || isSet(m, MatchField.IPV6_FLABEL)
+					|| isSet(m, MatchField.ICMPV6_TYPE) || isSet(m, MatchField.ICMPV6_CODE)) {
+				return EthType.IPv6.equals(ethType);
+			} else if (isSet(m, MatchField.ARP_OP) || isSet(m, MatchField.ARP_SPA) || isSet(m, MatchField.ARP_TPA)
+					|| isSet(m, MatchField.ARP_SHA) || isSet(m, MatchField.ARP_THA)) {
+				return EthType.ARP.equals(ethType);
+			}
+		} else if (mf.equals(MatchField.IP_PROTO) && m.isExact(MatchField.IP_PROTO)) {
+			IpProtocol ipProto = m.get(MatchField.IP_PROTO);
+			if (isSet(m, MatchField.TCP_SRC) || isSet(m, MatchField.TCP_DST)) {
+				return IpProtocol.TCP.equals(ipProto);
+			} else if (isSet(m, MatchField.UDP_SRC) || isSet(m, MatchField.UDP_DST)) {
+				return IpProtocol.UDP.equals(ipProto);
+			} else if (isSet(m, MatchField.SCTP_SRC) || isSet(m, MatchField.SCTP_DST)) {
+				return IpProtocol.SCTP.equals(ipProto);
+			} else if (isSet(m, MatchField.ICMPV4_TYPE) || isSet(m, MatchField.ICMPV4_CODE)) {
+				return IpProtocol.ICMP.equals(ipProto);
+			} else if (isSet(m, MatchField.ICMPV6_TYPE) || isSet(m, MatchField.ICMPV6_CODE)) {
+				return IpProtocol.IPv6_ICMP.equals(ipProto);
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Create a Match builder the same OF version as Match m. The returned builder
 	 * will not retain any MatchField information from Match m and will
@@ -414,8 +414,7 @@ implements IFloodlightModule, IVirtualNetworkService, IOFMessageListener {
 	 * @return Command.CONTINUE if processing should be continued, Command.STOP otherwise.
 	 */
 	protected Command processPacketIn(IOFSwitch sw, OFPacketIn msg, FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
-				IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx);
 		Command ret = Command.STOP;
 		String srcNetwork = macToGuid.get(eth.getSourceMACAddress());
 		// If the host is on an unknown network we deny it.
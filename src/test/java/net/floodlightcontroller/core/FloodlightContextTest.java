@@ -0,0 +1,66 @@
+package net.floodlightcontroller.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FloodlightContextTest {
+    private static final String KEY_A = "net.floodlightcontroller.core.FloodlightContextTest.a";
+    private static final String KEY_B = "net.floodlightcontroller.core.FloodlightContextTest.b";
+
+    private final FloodlightContextStore<String> store = new FloodlightContextStore<String>();
+    private final FloodlightContextStore<String> boundStore = new FloodlightContextStore<String>(KEY_A);
+
+    @Test
+    public void testPutGetRemove() {
+        FloodlightContext bc = new FloodlightContext();
+        assertNull(store.get(bc, KEY_A));
+
+        store.put(bc, KEY_A, "a");
+        store.put(bc, KEY_B, "b");
+        assertEquals("a", store.get(bc, KEY_A));
+        assertEquals("b", store.get(bc, KEY_B));
+        /* A key that is equal but not the same String finds the same value */
+        assertEquals("a", store.get(bc, new String(KEY_A)));
+        /* The bound store shares the slot of its key */
+        assertEquals("a", boundStore.get(bc));
+
+        boundStore.put(bc, "a2");
+        assertEquals("a2", store.get(bc, KEY_A));
+
+        store.remove(bc, KEY_B);
+        assertNull(store.get(bc, KEY_B));
+        assertEquals("a2", boundStore.get(bc));
+    }
+
+    @Test
+    public void testClear() {
+        FloodlightContext bc = new FloodlightContext();
+        store.put(bc, KEY_A, "a");
+        bc.clear();
+        assertNull(store.get(bc, KEY_A));
+        assertTrue(bc.getStorage().isEmpty());
+
+        store.put(bc, KEY_A, "again");
+        assertEquals("again", store.get(bc, KEY_A));
+    }
+
+    @Test
+    public void testKeyRegisteredAfterContextCreated() {
+        FloodlightContext bc = new FloodlightContext();
+        String late = "net.floodlightcontroller.core.FloodlightContextTest.late";
+        assertNull(store.get(bc, late));
+        store.put(bc, late, "late");
+        assertEquals("late", store.get(bc, late));
+        assertEquals("late", bc.getStorage().get(late));
+    }
+
+    @Test
+    public void testUnboundStore() {
+        try {
+            store.get(new FloodlightContext());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+}
@@ -7,18 +7,22 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.Timer;
 import org.junit.Before;
 import org.junit.Test;
 
+import net.floodlightcontroller.core.internal.Controller;
 import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 
@@ -29,6 +33,7 @@ import org.projectfloodlight.openflow.protocol.OFErrorMsg;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFHello;
 import org.projectfloodlight.openflow.protocol.OFHelloElem;
@@ -216,17 +221,23 @@ public class OFConnectionTest {
                 conn.getPendingRequestIds().isEmpty(), equalTo(true));
     }
 
-    /** write a packetOut, which is buffered */
+    private OFPacketOut buildPacketOut() {
+        return factory.buildPacketOut()
+                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+    }
+
+    /** write a packetOut, which is buffered until flushed */
     @Test(timeout = 5000)
     public void testSingleMessageWrite() throws InterruptedException, ExecutionException {
         Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
 
-        OFPacketOut packetOut = factory.buildPacketOut()
-                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
-                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
-                .build();
+        OFPacketOut packetOut = buildPacketOut();
         
         conn.write(packetOut);
+        assertThat("Write should have been buffered", cMsgList.hasCaptured(), equalTo(false));
+        conn.flush();
         assertThat("Write should have been flushed", cMsgList.hasCaptured(), equalTo(true));
         
         List<OFMessage> value = cMsgList.getValue();
@@ -235,6 +246,59 @@ public class OFConnectionTest {
                 Matchers.<OFMessage> contains(packetOut));
     }
 
+    /** buffered messages go out, in order, with the next message that isn't buffered */
+    @Test(timeout = 5000)
+    public void testBufferedWriteFlushedByOtherMessage() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        OFPacketOut packetOut = buildPacketOut();
+        OFFlowMod flowMod = factory.buildFlowAdd().build();
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+
+        conn.write(packetOut);
+        conn.write(flowMod);
+        assertThat("Writes should have been buffered", cMsgList.hasCaptured(), equalTo(false));
+        conn.writeRequest(echoRequest);
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(packetOut, flowMod, echoRequest));
+    }
+
+    /** a full buffer is written right away */
+    @Test(timeout = 5000)
+    public void testBufferedWriteFlushedWhenFull() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        for (int i = 0; i < Controller.BATCH_MAX_SIZE - 1; i++) {
+            conn.write(buildPacketOut());
+        }
+        assertThat("Writes should have been buffered", cMsgList.hasCaptured(), equalTo(false));
+        conn.write(buildPacketOut());
+        assertThat("Full buffer should have been written", cMsgList.getValue().size(),
+                equalTo(Controller.BATCH_MAX_SIZE));
+    }
+
+    /** buffered messages are written after a short delay without a flush */
+    @Test(timeout = 5000)
+    public void testBufferedWriteFlushedAfterDelay() throws InterruptedException, ExecutionException {
+        EasyMock.expect(channel.isConnected()).andReturn(Boolean.TRUE).anyTimes();
+        final CountDownLatch written = new CountDownLatch(1);
+        Capture<List<OFMessage>> cMsgList = new Capture<>();
+        expect(channel.write(capture(cMsgList))).andAnswer(new IAnswer<ChannelFuture>() {
+            @Override
+            public ChannelFuture answer() throws Throwable {
+                written.countDown();
+                return null;
+            }
+        }).once();
+        replay(channel);
+
+        OFPacketOut packetOut = buildPacketOut();
+        conn.write(packetOut);
+        written.await();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(packetOut));
+    }
+
     /** write a list of messages */
     @Test(timeout = 5000)
     public void testMessageWriteList() throws InterruptedException, ExecutionException {
@@ -0,0 +1,146 @@
+package net.floodlightcontroller.core;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.floodlightcontroller.core.PacketInFilter.PacketClass;
+import net.floodlightcontroller.core.util.ListenerDispatcher;
+import net.floodlightcontroller.packet.ARP;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.packet.UDP;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+public class PacketInFilterTest {
+    private static Ethernet ipv4(IpProtocol proto, Object l4) {
+        IPv4 ip = new IPv4()
+            .setSourceAddress(IPv4Address.of("10.0.0.1"))
+            .setDestinationAddress(IPv4Address.of("10.0.0.2"))
+            .setTtl((byte) 64)
+            .setProtocol(proto);
+        if (l4 instanceof UDP)
+            ip.setPayload((UDP) l4);
+        else if (l4 instanceof TCP)
+            ip.setPayload((TCP) l4);
+        else
+            ip.setPayload(new Data(new byte[] { 1 }));
+        return (Ethernet) new Ethernet()
+            .setSourceMACAddress(MacAddress.of(1))
+            .setDestinationMACAddress(MacAddress.of(2))
+            .setEtherType(EthType.IPv4)
+            .setPayload(ip);
+    }
+
+    private static Ethernet udp(int src, int dst) {
+        UDP udp = new UDP();
+        udp.setSourcePort(TransportPort.of(src));
+        udp.setDestinationPort(TransportPort.of(dst));
+        udp.setPayload(new Data(new byte[] { 1 }));
+        return ipv4(IpProtocol.UDP, udp);
+    }
+
+    private static Ethernet tcp(int src, int dst) {
+        TCP tcp = new TCP();
+        tcp.setSourcePort(TransportPort.of(src));
+        tcp.setDestinationPort(TransportPort.of(dst));
+        tcp.setPayload(new Data(new byte[] { 1 }));
+        return ipv4(IpProtocol.TCP, tcp);
+    }
+
+    private static Ethernet ethType(EthType type) {
+        return (Ethernet) new Ethernet()
+            .setSourceMACAddress(MacAddress.of(1))
+            .setDestinationMACAddress(MacAddress.of(2))
+            .setEtherType(type)
+            .setPayload(type.equals(EthType.ARP) ? new ARP() : new Data(new byte[] { 1 }));
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(PacketClass.IPV4_UDP, PacketInFilter.classify(udp(68, 67)));
+        assertEquals(PacketClass.IPV4_TCP, PacketInFilter.classify(tcp(1234, 80)));
+        assertEquals(PacketClass.IPV4_ICMP, PacketInFilter.classify(ipv4(IpProtocol.ICMP, null)));
+        assertEquals(PacketClass.IPV4_OTHER, PacketInFilter.classify(ipv4(IpProtocol.of((short) 47), null)));
+        assertEquals(PacketClass.ARP, PacketInFilter.classify(ethType(EthType.ARP)));
+        assertEquals(PacketClass.LLDP, PacketInFilter.classify(ethType(EthType.LLDP)));
+        assertEquals(PacketClass.OTHER, PacketInFilter.classify(ethType(EthType.of(0x1234))));
+    }
+
+    @Test
+    public void testPortFilter() {
+        PacketInFilter f = PacketInFilter.udpPorts(UDP.DHCP_SERVER_PORT, UDP.DHCP_CLIENT_PORT);
+        assertTrue(f.isInterested(PacketClass.IPV4_UDP));
+        assertTrue(f.needsCheck(PacketClass.IPV4_UDP));
+        assertFalse(f.isInterested(PacketClass.IPV4_TCP));
+        assertFalse(f.isInterested(PacketClass.ARP));
+
+        assertTrue(f.matches(PacketClass.IPV4_UDP, udp(68, 67)));
+        assertFalse(f.matches(PacketClass.IPV4_UDP, udp(5000, 53)));
+        assertFalse(f.matches(PacketClass.IPV4_TCP, tcp(68, 67)));
+    }
+
+    @Test
+    public void testOr() {
+        PacketInFilter f = PacketInFilter.ethTypes(EthType.ARP, EthType.of(0x1234))
+            .or(PacketInFilter.tcpPorts(TransportPort.of(80)))
+            .or(PacketInFilter.tcpPorts(TransportPort.of(443)));
+        assertTrue(f.matches(PacketClass.ARP, ethType(EthType.ARP)));
+        assertFalse(f.needsCheck(PacketClass.ARP));
+        assertTrue(f.matches(PacketClass.OTHER, ethType(EthType.of(0x1234))));
+        assertFalse(f.matches(PacketClass.OTHER, ethType(EthType.of(0x4321))));
+        assertTrue(f.matches(PacketClass.IPV4_TCP, tcp(1234, 80)));
+        assertTrue(f.matches(PacketClass.IPV4_TCP, tcp(443, 1234)));
+        assertFalse(f.matches(PacketClass.IPV4_TCP, tcp(1234, 22)));
+        assertFalse(f.isInterested(PacketClass.IPV4_UDP));
+
+        /* A whole class wins over a finer check */
+        PacketInFilter all = f.or(PacketInFilter.ipProtocols(IpProtocol.TCP));
+        assertFalse(all.needsCheck(PacketClass.IPV4_TCP));
+        assertTrue(all.matches(PacketClass.IPV4_TCP, tcp(1234, 22)));
+    }
+
+    @Test
+    public void testChains() {
+        IOFMessageListener plain = createNiceMock(IOFMessageListener.class);
+        expect(plain.getName()).andReturn("plain").anyTimes();
+        IPacketInFilteringListener dhcp = createNiceMock(IPacketInFilteringListener.class);
+        expect(dhcp.getName()).andReturn("dhcp").anyTimes();
+        expect(dhcp.getPacketInFilter())
+            .andReturn(PacketInFilter.udpPorts(UDP.DHCP_SERVER_PORT, UDP.DHCP_CLIENT_PORT)).anyTimes();
+        /* dhcp goes first */
+        expect(plain.isCallbackOrderingPrereq(OFType.PACKET_IN, "dhcp")).andReturn(true).anyTimes();
+        replay(plain, dhcp);
+
+        ListenerDispatcher<OFType, IOFMessageListener> ld =
+                new ListenerDispatcher<OFType, IOFMessageListener>();
+        ld.addListener(OFType.PACKET_IN, plain);
+        ld.addListener(OFType.PACKET_IN, dhcp);
+        /* Without a classifier there are no chains, only the full list */
+        assertNull(ld.getChain(PacketClass.ARP.ordinal()));
+
+        ld.setChainClassifier(PacketInFilter.CLASSIFIER);
+        assertEquals(Arrays.<IOFMessageListener>asList(dhcp, plain),
+                     ld.getChain(PacketClass.IPV4_UDP.ordinal()).getListeners());
+        assertTrue(ld.getChain(PacketClass.IPV4_UDP.ordinal()).needsCheck());
+        assertEquals(Collections.singletonList(plain),
+                     ld.getChain(PacketClass.ARP.ordinal()).getListeners());
+        assertFalse(ld.getChain(PacketClass.ARP.ordinal()).needsCheck());
+
+        ld.removeListener(plain);
+        assertEquals(Collections.emptyList(), ld.getChain(PacketClass.ARP.ordinal()).getListeners());
+        assertEquals(Collections.singletonList(dhcp),
+                     ld.getChain(PacketClass.IPV4_UDP.ordinal()).getListeners());
+    }
+}
@@ -0,0 +1,342 @@
+package net.floodlightcontroller.core.bench;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowModCommand;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.core.emulator.EmulatedSwitch;
+
+/**
+ * An emulated OpenFlow 1.0 or 1.3 switch that loads the controller with
+ * packet-ins, in the manner of cbench.
+ *
+ * The handshake and the control channel are those of {@link EmulatedSwitch}.
+ * Once connected, the switch sends the packet-ins of a {@link Workload}
+ * from a thread of its own: either as fast as the connection takes them
+ * (throughput mode), or one at a time, each once the controller has
+ * answered the one before (latency mode). Flow-mod adds and packet-outs are answers. Packet-ins carry
+ * buffer ids. An answer that names another buffer than the one in flight
+ * is late and doesn't count; an answer without a buffer counts for the one
+ * in flight. Flow-mods aren't installed, so the flow table stays empty.
+ *
+ * LLDPs and BDDPs the controller sends out of a link port cross the emulated
+ * link and come back in on the neighbor's port, so link discovery sees a
+ * ring of switches. They aren't answers.
+ */
+public class BenchSwitch extends EmulatedSwitch {
+    /* Buffer ids wrap well below OFBufferId.NO_BUFFER */
+    private static final int MAX_BUFFER_ID = 1 << 24;
+    private static final int ETH_TYPE_LLDP = 0x88cc;
+    private static final int ETH_TYPE_BDDP = 0x8942;
+
+    private final FrameGenerator frames;
+    private final OFPort previousPort;
+    private final OFPort nextPort;
+    /* The last LLDP that came in on each link port, for the LLDP workload */
+    private volatile byte[] lldpFromPrevious;
+    private volatile byte[] lldpFromNext;
+
+    private final AtomicLong packetIns = new AtomicLong();
+    private final AtomicLong flowMods = new AtomicLong();
+    private final AtomicLong packetOuts = new AtomicLong();
+    private final AtomicLong lldpsEchoed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /* Latency mode. Guarded by latencyLock. */
+    private final Object latencyLock = new Object();
+    private volatile boolean latencyMode;
+    private boolean pending;
+    private int pendingBufferId;
+    private long pendingSince;
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+
+    /* Only used by the sender thread */
+    private int nextBufferId;
+    private boolean lldpToggle;
+
+    private volatile Thread sender;
+
+    /**
+     * @param index the position of the switch in the ring, from 0
+     * @param numSwitches the size of the ring
+     * @param hosts the number of host ports
+     * @param version OpenFlow 1.0 or 1.3
+     */
+    public BenchSwitch(int index, int numSwitches, int hosts, OFVersion version) {
+        super(DatapathId.of(index + 1), version);
+        this.frames = new FrameGenerator(index, numSwitches, hosts, index);
+        for (int p = 1; p <= hosts + 2; p++) {
+            addPort(p);
+        }
+        this.previousPort = OFPort.of(hosts + 1);
+        this.nextPort = OFPort.of(hosts + 2);
+    }
+
+    /**
+     * Link the switches into a ring, each one's next port to the
+     * following one's previous port.
+     */
+    public static void ring(List<BenchSwitch> switches) {
+        int n = switches.size();
+        if (n < 2)
+            return;
+        for (int i = 0; i < n; i++) {
+            BenchSwitch a = switches.get(i);
+            BenchSwitch b = switches.get((i + 1) % n);
+            link(a, a.nextPort, b, b.previousPort);
+        }
+    }
+
+    public long getPacketIns() {
+        return packetIns.get();
+    }
+
+    public long getFlowMods() {
+        return flowMods.get();
+    }
+
+    public long getPacketOuts() {
+        return packetOuts.get();
+    }
+
+    public long getLldpsEchoed() {
+        return lldpsEchoed.get();
+    }
+
+    /**
+     * @return the number of packet-ins the controller didn't answer in time
+     * in latency mode
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the latencies measured since the last call, in nanoseconds
+     */
+    public long[] drainLatencies() {
+        synchronized (latencyLock) {
+            long[] l = Arrays.copyOf(latencies, latencyCount);
+            latencyCount = 0;
+            return l;
+        }
+    }
+
+    /*
+     * Answers and LLDP echo
+     */
+
+    @Override
+    public void disconnect() {
+        stopLoad();
+        super.disconnect();
+    }
+
+    @Override
+    protected long getBufferCount() {
+        return MAX_BUFFER_ID;
+    }
+
+    @Override
+    protected void handleFlowMod(OFFlowMod fm) {
+        if (fm.getCommand() == OFFlowModCommand.ADD) {
+            flowMods.incrementAndGet();
+            answered(fm.getBufferId());
+        }
+    }
+
+    @Override
+    protected void handlePacketOut(OFPacketOut po) {
+        if (isDiscovery(po.getData())) {
+            super.handlePacketOut(po);
+        } else {
+            packetOuts.incrementAndGet();
+            answered(po.getBufferId());
+        }
+    }
+
+    @Override
+    protected void receive(OFPort inPort, byte[] frame, Trace trace) {
+        if (isDiscovery(frame)) {
+            if (inPort.equals(previousPort)) {
+                lldpFromPrevious = frame;
+            } else if (inPort.equals(nextPort)) {
+                lldpFromNext = frame;
+            }
+            lldpsEchoed.incrementAndGet();
+        }
+        super.receive(inPort, frame, trace);
+    }
+
+    private static boolean isDiscovery(byte[] frame) {
+        if (frame == null || frame.length < 14)
+            return false;
+        int type = ((frame[12] & 0xff) << 8) | (frame[13] & 0xff);
+        return type == ETH_TYPE_LLDP || type == ETH_TYPE_BDDP;
+    }
+
+    /*
+     * Load
+     */
+
+    /*
+     * @return the next packet-in of the workload, with the next buffer id
+     * unless it's a replayed LLDP, or null if there is no LLDP to replay yet
+     */
+    private OFPacketIn nextPacketIn(Workload workload) {
+        if (workload == Workload.LLDP) {
+            lldpToggle = !lldpToggle;
+            byte[] frame = lldpToggle ? lldpFromPrevious : lldpFromNext;
+            OFPort port = lldpToggle ? previousPort : nextPort;
+            if (frame == null) {
+                frame = lldpToggle ? lldpFromNext : lldpFromPrevious;
+                port = lldpToggle ? nextPort : previousPort;
+            }
+            return frame == null ? null : buildPacketIn(port, frame, OFBufferId.NO_BUFFER, OFPacketInReason.NO_MATCH);
+        }
+        byte[] frame = frames.next(workload);
+        int bufferId = nextBufferId;
+        nextBufferId = (nextBufferId + 1) % MAX_BUFFER_ID;
+        return buildPacketIn(frames.getInPort(), frame, OFBufferId.of(bufferId), OFPacketInReason.NO_MATCH);
+    }
+
+    /**
+     * Start sending packet-ins.
+     * @param workload what to send
+     * @param latency latency mode, rather than throughput mode
+     * @param batch packet-ins per write in throughput mode
+     * @param rate packet-ins per second in throughput mode, or 0 for as fast as possible
+     * @param timeoutMs how long to wait for an answer in latency mode
+     */
+    public void startLoad(final Workload workload, final boolean latency, final int batch,
+                          final int rate, long timeoutMs) {
+        if (latency && workload == Workload.LLDP) {
+            throw new IllegalArgumentException("The controller doesn't answer LLDPs; use throughput mode");
+        }
+        final long timeoutNs = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        latencyMode = latency;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (latency) {
+                        sendOneAtATime(workload, timeoutNs);
+                    } else {
+                        sendAsFastAsPossible(workload, batch, rate);
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        }, "bench-load-" + getId().toString());
+        t.setDaemon(true);
+        sender = t;
+        t.start();
+    }
+
+    public void stopLoad() {
+        Thread t = sender;
+        sender = null;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    private boolean isLoading() {
+        return sender == Thread.currentThread() && isConnected();
+    }
+
+    private void sendAsFastAsPossible(Workload workload, int batch, int rate) throws InterruptedException {
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer(batch * 128);
+        long nsPerPacketIn = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long due = System.nanoTime();
+        while (isLoading()) {
+            buf.clear();
+            int n = 0;
+            for (; n < batch; n++) {
+                OFPacketIn pi = nextPacketIn(workload);
+                if (pi == null)
+                    break;
+                pi.writeTo(buf);
+            }
+            if (n == 0) {
+                /* No LLDP to replay yet */
+                Thread.sleep(10);
+                continue;
+            }
+            write(buf, n);
+            packetIns.addAndGet(n);
+            if (nsPerPacketIn > 0) {
+                due += n * nsPerPacketIn;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else if (wait < -TimeUnit.SECONDS.toNanos(1)) {
+                    /* Fell behind; don't burst to catch up */
+                    due = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    private void sendOneAtATime(Workload workload, long timeoutNs) throws InterruptedException {
+        while (isLoading()) {
+            OFPacketIn pi;
+            synchronized (latencyLock) {
+                while (pending) {
+                    long left = pendingSince + timeoutNs - System.nanoTime();
+                    if (left <= 0) {
+                        timeouts.incrementAndGet();
+                        pending = false;
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(latencyLock, left);
+                }
+                pi = nextPacketIn(workload);
+                pending = true;
+                pendingBufferId = pi.getBufferId().getInt();
+                pendingSince = System.nanoTime();
+            }
+            send(pi);
+            packetIns.incrementAndGet();
+        }
+    }
+
+    private void answered(OFBufferId bufferId) {
+        if (!latencyMode)
+            return;
+        long now = System.nanoTime();
+        synchronized (latencyLock) {
+            if (!pending)
+                return;
+            if (!bufferId.equals(OFBufferId.NO_BUFFER) && bufferId.getInt() != pendingBufferId)
+                return;
+            pending = false;
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = now - pendingSince;
+            latencyLock.notifyAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BenchSwitch [dpid=" + getId().toString() + ", version=" + getVersion().toString() + "]";
+    }
+}
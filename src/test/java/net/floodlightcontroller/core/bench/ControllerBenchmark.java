@@ -0,0 +1,416 @@
+package net.floodlightcontroller.core.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.FloodlightModuleLoader;
+import net.floodlightcontroller.core.module.IFloodlightModuleContext;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.test.BenchmarkReport;
+
+/**
+ * Measures controller throughput and latency, in the manner of cbench.
+ *
+ * Emulated switches (see {@link BenchSwitch}) connect to the controller
+ * over loopback, go through the handshake, and then load it with the
+ * packet-ins of a {@link Workload}. The controller runs in this JVM with
+ * the chosen application, unless the address of a running one is given.
+ *
+ * Modes:
+ *   throughput - every switch sends packet-ins as fast as the connection
+ *                takes them; the controller's answers per second are reported
+ *   latency    - every switch has one packet-in in flight at a time; the
+ *                time to the answer is reported as percentiles
+ *
+ * The run is split into loops. The first ones warm up and are left out of
+ * the summary. Results are written as JSON.
+ *
+ * Run with "ant bench-controller", or directly on the test classpath, e.g.
+ *   ControllerBenchmark -mode latency -workload mixed -switches 32 -of 1.0 -out latency.json
+ */
+public class ControllerBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(ControllerBenchmark.class);
+
+    private static final long SETUP_TIMEOUT_S = 60;
+    /* Time for link discovery and table-miss flows after the handshakes */
+    private static final long SETTLE_MS = 1000;
+
+    public static class Settings {
+        @Option(name="-controller", usage="host:port of a running controller (default: start one in this JVM)")
+        private String controller = null;
+
+        @Option(name="-app", usage="application of the in-JVM controller: forwarding, learningswitch or hub")
+        private String app = "forwarding";
+
+        @Option(name="-config", usage="properties overriding floodlightdefault.properties for the in-JVM controller")
+        private String config = null;
+
+        @Option(name="-of", usage="OpenFlow version of the emulated switches: 1.0 or 1.3")
+        private String version = "1.3";
+
+        @Option(name="-switches", usage="number of emulated switches")
+        private int switches = 16;
+
+        @Option(name="-hosts", usage="hosts per switch, at most 254")
+        private int hosts = 16;
+
+        @Option(name="-mode", usage="throughput or latency")
+        private String mode = "throughput";
+
+        @Option(name="-workload", usage="newmac, arp, lldp or mixed")
+        private String workload = "newmac";
+
+        @Option(name="-loops", usage="measured loops")
+        private int loops = 10;
+
+        @Option(name="-warmup", usage="loops before the measured ones")
+        private int warmup = 1;
+
+        @Option(name="-duration", usage="length of a loop in milliseconds")
+        private long durationMs = 1000;
+
+        @Option(name="-batch", usage="packet-ins per write in throughput mode")
+        private int batch = 32;
+
+        @Option(name="-rate", usage="packet-ins per second per switch in throughput mode, 0 for as fast as possible")
+        private int rate = 0;
+
+        @Option(name="-timeout", usage="time to wait for an answer in latency mode in milliseconds")
+        private long timeoutMs = 1000;
+
+        @Option(name="-out", usage="JSON output file (default stdout)")
+        private String out = null;
+    }
+
+    /**
+     * What one loop measured.
+     */
+    private static class Loop {
+        long durationNs;
+        long packetIns;
+        long flowMods;
+        long packetOuts;
+        long lldpsEchoed;
+        long timeouts;
+        long[] latencyNs;
+
+        double perSecond(long count) {
+            return count * 1e9 / durationNs;
+        }
+    }
+
+    private final Settings settings;
+    private final OFVersion version;
+    private final Workload workload;
+    private final boolean latencyMode;
+    private IFloodlightModuleContext context;
+
+    public ControllerBenchmark(Settings settings) {
+        this.settings = settings;
+        if ("1.0".equals(settings.version)) {
+            this.version = OFVersion.OF_10;
+        } else if ("1.3".equals(settings.version)) {
+            this.version = OFVersion.OF_13;
+        } else {
+            throw new IllegalArgumentException("Unsupported OpenFlow version " + settings.version);
+        }
+        this.workload = Workload.of(settings.workload);
+        if ("latency".equals(settings.mode)) {
+            this.latencyMode = true;
+        } else if ("throughput".equals(settings.mode)) {
+            this.latencyMode = false;
+        } else {
+            throw new IllegalArgumentException("Unknown mode " + settings.mode);
+        }
+        if (latencyMode && workload == Workload.LLDP) {
+            throw new IllegalArgumentException("The controller doesn't answer LLDPs; use throughput mode");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = new Settings();
+        CmdLineParser parser = new CmdLineParser(settings);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        int status = 0;
+        try {
+            new ControllerBenchmark(settings).run();
+        } catch (Exception e) {
+            log.error("Benchmark failed", e);
+            status = 1;
+        }
+        /* The controller has no clean shutdown; take it down with us */
+        System.exit(status);
+    }
+
+    public void run() throws Exception {
+        InetSocketAddress controller;
+        if (settings.controller == null) {
+            controller = startController();
+        } else {
+            String[] hp = settings.controller.split(":");
+            controller = new InetSocketAddress(hp[0], hp.length > 1 ? Integer.parseInt(hp[1]) : 6653);
+        }
+
+        List<BenchSwitch> switches = new ArrayList<BenchSwitch>(settings.switches);
+        for (int i = 0; i < settings.switches; i++) {
+            switches.add(new BenchSwitch(i, settings.switches, settings.hosts, version));
+        }
+        BenchSwitch.ring(switches);
+        connect(switches, controller);
+        Thread.sleep(SETTLE_MS);
+
+        for (BenchSwitch sw : switches) {
+            sw.startLoad(workload, latencyMode, settings.batch, settings.rate, settings.timeoutMs);
+        }
+        List<Loop> loops = new ArrayList<Loop>(settings.loops);
+        for (int i = 0; i < settings.warmup + settings.loops; i++) {
+            Loop l = runLoop(switches);
+            boolean warmup = i < settings.warmup;
+            log.info("{}loop {}: {} switches, {} packet-ins/s, {} flow-mods/s, {} packet-outs/s{}",
+                    new Object[] { warmup ? "warmup " : "", i, switches.size(),
+                    Math.round(l.perSecond(l.packetIns)), Math.round(l.perSecond(l.flowMods)),
+                    Math.round(l.perSecond(l.packetOuts)),
+                    latencyMode ? ", median latency " + TimeUnit.NANOSECONDS.toMicros(median(l.latencyNs)) + " us" : "" });
+            if (!warmup) {
+                loops.add(l);
+            }
+        }
+        for (BenchSwitch sw : switches) {
+            sw.stopLoad();
+            sw.disconnect();
+        }
+        writeResults(loops);
+    }
+
+    /*
+     * Controller
+     */
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private InetSocketAddress startController() throws Exception {
+        List<String> modules = new ArrayList<String>(Arrays.asList(
+                "net.floodlightcontroller.storage.memory.MemoryStorageSource",
+                "net.floodlightcontroller.core.internal.FloodlightProvider",
+                "net.floodlightcontroller.core.internal.OFSwitchManager",
+                "net.floodlightcontroller.threadpool.ThreadPool",
+                "org.sdnplatform.sync.internal.SyncManager",
+                "net.floodlightcontroller.debugcounter.DebugCounterServiceImpl",
+                "net.floodlightcontroller.debugevent.DebugEventService",
+                "net.floodlightcontroller.perfmon.PktInProcessingTime",
+                "net.floodlightcontroller.restserver.RestApiServer",
+                "net.floodlightcontroller.topology.TopologyManager",
+                "net.floodlightcontroller.linkdiscovery.internal.LinkDiscoveryManager",
+                "net.floodlightcontroller.devicemanager.internal.DeviceManagerImpl"));
+        if ("forwarding".equals(settings.app)) {
+            modules.add("net.floodlightcontroller.forwarding.Forwarding");
+        } else if ("learningswitch".equals(settings.app)) {
+            modules.add("net.floodlightcontroller.learningswitch.LearningSwitch");
+        } else if ("hub".equals(settings.app)) {
+            modules.add("net.floodlightcontroller.hub.Hub");
+        } else {
+            throw new IllegalArgumentException("Unknown application " + settings.app);
+        }
+
+        Properties props = new Properties();
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("floodlightdefault.properties")) {
+            props.load(is);
+        }
+        if (settings.config != null) {
+            try (InputStream is = new FileInputStream(settings.config)) {
+                props.load(is);
+            }
+        }
+        props.remove("floodlight.modules");
+        int ofPort = freePort();
+        props.setProperty("net.floodlightcontroller.core.internal.FloodlightProvider.openflowPort", Integer.toString(ofPort));
+        props.setProperty("net.floodlightcontroller.restserver.RestApiServer.httpPort", Integer.toString(freePort()));
+        props.setProperty("org.sdnplatform.sync.internal.SyncManager.port", Integer.toString(freePort()));
+        props.setProperty("org.sdnplatform.sync.internal.SyncManager.authScheme", "NO_AUTH");
+        props.setProperty("org.sdnplatform.sync.internal.SyncManager.persistenceEnabled", "false");
+
+        final FloodlightModuleLoader fml = new FloodlightModuleLoader();
+        context = fml.loadModulesFromList(modules, props);
+        context.getServiceImpl(IRestApiService.class).run();
+        Thread controller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fml.runModules();
+                } catch (FloodlightModuleException e) {
+                    log.error("Failed to run controller modules", e);
+                }
+            }
+        }, "floodlight-main");
+        controller.setDaemon(true);
+        controller.start();
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", ofPort);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SETUP_TIMEOUT_S);
+        while (true) {
+            try (Socket s = new Socket()) {
+                s.connect(address);
+                return address;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("Controller is not listening on " + address.toString(), e);
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private void connect(List<BenchSwitch> switches, InetSocketAddress controller) throws Exception {
+        long start = System.nanoTime();
+        for (BenchSwitch sw : switches) {
+            sw.connect(controller);
+        }
+        IOFSwitchService switchService = context == null ? null : context.getServiceImpl(IOFSwitchService.class);
+        long deadline = start + TimeUnit.SECONDS.toNanos(SETUP_TIMEOUT_S);
+        for (BenchSwitch sw : switches) {
+            while (!sw.isRoleAssigned()
+                    || (switchService != null && switchService.getActiveSwitch(sw.getId()) == null)) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Switch " + sw.getId().toString() + " did not complete its handshake");
+                }
+                Thread.sleep(10);
+            }
+        }
+        log.info("{} switches connected in {} ms", switches.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Loop runLoop(List<BenchSwitch> switches) throws InterruptedException {
+        Loop l = new Loop();
+        long start = System.nanoTime();
+        for (BenchSwitch sw : switches) {
+            l.packetIns -= sw.getPacketIns();
+            l.flowMods -= sw.getFlowMods();
+            l.packetOuts -= sw.getPacketOuts();
+            l.lldpsEchoed -= sw.getLldpsEchoed();
+            l.timeouts -= sw.getTimeouts();
+            sw.drainLatencies();
+        }
+        Thread.sleep(settings.durationMs);
+        List<long[]> latencies = new ArrayList<long[]>(switches.size());
+        int count = 0;
+        for (BenchSwitch sw : switches) {
+            l.packetIns += sw.getPacketIns();
+            l.flowMods += sw.getFlowMods();
+            l.packetOuts += sw.getPacketOuts();
+            l.lldpsEchoed += sw.getLldpsEchoed();
+            l.timeouts += sw.getTimeouts();
+            long[] lat = sw.drainLatencies();
+            latencies.add(lat);
+            count += lat.length;
+        }
+        l.durationNs = System.nanoTime() - start;
+        l.latencyNs = new long[count];
+        int i = 0;
+        for (long[] lat : latencies) {
+            System.arraycopy(lat, 0, l.latencyNs, i, lat.length);
+            i += lat.length;
+        }
+        Arrays.sort(l.latencyNs);
+        return l;
+    }
+
+    /*
+     * Results
+     */
+
+    private void writeResults(List<Loop> loops) throws IOException {
+        BenchmarkReport report = new BenchmarkReport(settings.out);
+        JsonGenerator jGen = report.getGenerator();
+        jGen.writeStartObject();
+        jGen.writeStringField("controller", settings.controller == null ? "in-jvm " + settings.app : settings.controller);
+        jGen.writeStringField("openflow", version.toString());
+        jGen.writeStringField("mode", settings.mode);
+        jGen.writeStringField("workload", workload.toString().toLowerCase());
+        jGen.writeNumberField("switches", settings.switches);
+        jGen.writeNumberField("hostsPerSwitch", settings.hosts);
+        jGen.writeNumberField("loopMs", settings.durationMs);
+
+        long[] flowMods = new long[loops.size()];
+        long[] answers = new long[loops.size()];
+        int latencies = 0;
+        jGen.writeArrayFieldStart("loops");
+        for (int i = 0; i < loops.size(); i++) {
+            Loop l = loops.get(i);
+            flowMods[i] = Math.round(l.perSecond(l.flowMods));
+            answers[i] = Math.round(l.perSecond(l.flowMods + l.packetOuts));
+            latencies += l.latencyNs.length;
+            jGen.writeStartObject();
+            jGen.writeNumberField("packetInsPerSec", Math.round(l.perSecond(l.packetIns)));
+            jGen.writeNumberField("flowModsPerSec", flowMods[i]);
+            jGen.writeNumberField("packetOutsPerSec", Math.round(l.perSecond(l.packetOuts)));
+            jGen.writeNumberField("lldpsEchoedPerSec", Math.round(l.perSecond(l.lldpsEchoed)));
+            if (latencyMode) {
+                jGen.writeNumberField("timeouts", l.timeouts);
+                BenchmarkReport.writePercentiles(jGen, "latencyUs", toMicros(l.latencyNs));
+            }
+            jGen.writeEndObject();
+        }
+        jGen.writeEndArray();
+
+        /* Over all the measured loops */
+        jGen.writeObjectFieldStart("summary");
+        BenchmarkReport.writePercentiles(jGen, "flowModsPerSec", flowMods);
+        BenchmarkReport.writePercentiles(jGen, "answersPerSec", answers);
+        if (latencyMode) {
+            long[] all = new long[latencies];
+            int i = 0;
+            for (Loop l : loops) {
+                System.arraycopy(l.latencyNs, 0, all, i, l.latencyNs.length);
+                i += l.latencyNs.length;
+            }
+            BenchmarkReport.writePercentiles(jGen, "latencyUs", toMicros(all));
+        }
+        jGen.writeEndObject();
+
+        jGen.writeEndObject();
+        report.close();
+    }
+
+    private static long[] toMicros(long[] ns) {
+        long[] us = new long[ns.length];
+        for (int i = 0; i < ns.length; i++) {
+            us[i] = TimeUnit.NANOSECONDS.toMicros(ns[i]);
+        }
+        return us;
+    }
+
+    private static long median(long[] sorted) {
+        return sorted.length == 0 ? 0 : BenchmarkReport.percentile(sorted, 50);
+    }
+}
@@ -0,0 +1,200 @@
+package net.floodlightcontroller.core.bench;
+
+import java.util.Random;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.packet.ARP;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.TCP;
+
+/**
+ * Makes the frames one benchmark switch sends for the {@link Workload}s
+ * other than LLDP.
+ *
+ * Every switch has the same number of hosts, one per port starting at 1.
+ * Host h of switch s has MAC 02:00:ss:ss:hh:hh and IP 10.s.s.(h+1). Frames
+ * are patched copies of a TCP and an ARP template, so making one costs an
+ * array copy rather than a packet serialization. Not thread-safe.
+ */
+public class FrameGenerator {
+    static final long HOST_MAC_BASE = 0x020000000000L;
+    /* Locally administered, and distinct from the hosts */
+    static final long NEW_MAC_BASE = 0x060000000000L;
+    static final int MAX_HOSTS = 254;
+
+    /* Offsets in the templates */
+    private static final int ETH_DST = 0;
+    private static final int ETH_SRC = 6;
+    private static final int IP_HEADER = 14;
+    private static final int IP_CHECKSUM = 24;
+    private static final int IP_SRC = 26;
+    private static final int IP_DST = 30;
+    private static final int TCP_SRC = 34;
+    private static final int ARP_SHA = 22;
+    private static final int ARP_SPA = 28;
+    private static final int ARP_TPA = 38;
+
+    private final int switchIndex;
+    private final int numSwitches;
+    private final int hostsPerSwitch;
+    private final Random random;
+    private final byte[] tcpTemplate;
+    private final byte[] arpTemplate;
+    private int newMacs;
+    private int flows;
+    private int mixed;
+    private OFPort inPort;
+
+    public FrameGenerator(int switchIndex, int numSwitches, int hostsPerSwitch, long seed) {
+        if (hostsPerSwitch < 1 || hostsPerSwitch > MAX_HOSTS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_HOSTS + " hosts per switch, not " + hostsPerSwitch);
+        }
+        this.switchIndex = switchIndex;
+        this.numSwitches = numSwitches;
+        this.hostsPerSwitch = hostsPerSwitch;
+        this.random = new Random(seed);
+
+        TCP tcp = new TCP()
+            .setDestinationPort(80)
+            .setFlags((short) 0x02); /* SYN */
+        tcp.setPayload(new Data(new byte[6]));
+        tcpTemplate = new Ethernet()
+            .setSourceMACAddress(MacAddress.of(HOST_MAC_BASE))
+            .setDestinationMACAddress(MacAddress.of(HOST_MAC_BASE))
+            .setEtherType(EthType.IPv4)
+            .setPayload(new IPv4()
+                .setTtl((byte) 64)
+                .setProtocol(IpProtocol.TCP)
+                .setSourceAddress(IPv4Address.of(0))
+                .setDestinationAddress(IPv4Address.of(0))
+                .setPayload(tcp))
+            .serialize();
+        arpTemplate = new Ethernet()
+            .setSourceMACAddress(MacAddress.of(HOST_MAC_BASE))
+            .setDestinationMACAddress(MacAddress.BROADCAST)
+            .setEtherType(EthType.ARP)
+            .setPayload(new ARP()
+                .setHardwareType(ARP.HW_TYPE_ETHERNET)
+                .setProtocolType(ARP.PROTO_TYPE_IP)
+                .setHardwareAddressLength((byte) 6)
+                .setProtocolAddressLength((byte) 4)
+                .setOpCode(ARP.OP_REQUEST)
+                .setSenderHardwareAddress(new byte[6])
+                .setSenderProtocolAddress(0)
+                .setTargetHardwareAddress(new byte[6])
+                .setTargetProtocolAddress(0))
+            .serialize();
+    }
+
+    public static long hostMac(int switchIndex, int host) {
+        return HOST_MAC_BASE | ((long) (switchIndex & 0xffff) << 16) | host;
+    }
+
+    public static int hostIp(int switchIndex, int host) {
+        return (10 << 24) | ((switchIndex & 0xffff) << 8) | (host + 1);
+    }
+
+    /**
+     * @return the port the last frame came in on
+     */
+    public OFPort getInPort() {
+        return inPort;
+    }
+
+    /**
+     * @return the next frame of the workload
+     */
+    public byte[] next(Workload workload) {
+        switch (workload) {
+        case NEWMAC:
+            return newMac();
+        case ARP:
+            return arp();
+        case MIXED:
+            int i = mixed++ % 10;
+            if (i < 6)
+                return flow();
+            return i < 8 ? arp() : newMac();
+        default:
+            throw new IllegalArgumentException(workload.toString() + " frames are not generated");
+        }
+    }
+
+    private int localHost() {
+        int h = random.nextInt(hostsPerSwitch);
+        inPort = OFPort.of(h + 1);
+        return h;
+    }
+
+    /* A remote host if there are other switches, otherwise another local one */
+    private int otherSwitch() {
+        if (numSwitches == 1)
+            return switchIndex;
+        int s = random.nextInt(numSwitches - 1);
+        return s >= switchIndex ? s + 1 : s;
+    }
+
+    private byte[] flow() {
+        int h = localHost();
+        int ds = otherSwitch();
+        int dh = random.nextInt(hostsPerSwitch);
+        byte[] f = tcpTemplate.clone();
+        putMac(f, ETH_SRC, hostMac(switchIndex, h));
+        putMac(f, ETH_DST, hostMac(ds, dh));
+        putInt(f, IP_SRC, hostIp(switchIndex, h));
+        putInt(f, IP_DST, hostIp(ds, dh));
+        putShort(f, TCP_SRC, 1024 + (flows++ & 0x7fff));
+        fixIpChecksum(f);
+        return f;
+    }
+
+    private byte[] newMac() {
+        byte[] f = flow();
+        putMac(f, ETH_SRC, NEW_MAC_BASE | ((long) (switchIndex & 0xffff) << 24) | (newMacs++ & 0xffffff));
+        return f;
+    }
+
+    private byte[] arp() {
+        int h = localHost();
+        byte[] f = arpTemplate.clone();
+        long mac = hostMac(switchIndex, h);
+        putMac(f, ETH_SRC, mac);
+        putMac(f, ARP_SHA, mac);
+        putInt(f, ARP_SPA, hostIp(switchIndex, h));
+        putInt(f, ARP_TPA, hostIp(otherSwitch(), random.nextInt(hostsPerSwitch)));
+        return f;
+    }
+
+    private static void putShort(byte[] f, int off, int v) {
+        f[off] = (byte) (v >> 8);
+        f[off + 1] = (byte) v;
+    }
+
+    private static void putInt(byte[] f, int off, int v) {
+        putShort(f, off, v >>> 16);
+        putShort(f, off + 2, v);
+    }
+
+    private static void putMac(byte[] f, int off, long mac) {
+        putShort(f, off, (int) (mac >>> 32));
+        putInt(f, off + 2, (int) mac);
+    }
+
+    private static void fixIpChecksum(byte[] f) {
+        putShort(f, IP_CHECKSUM, 0);
+        int sum = 0;
+        for (int i = IP_HEADER; i < IP_HEADER + 20; i += 2) {
+            sum += ((f[i] & 0xff) << 8) | (f[i + 1] & 0xff);
+        }
+        sum = (sum >>> 16) + (sum & 0xffff);
+        sum += sum >>> 16;
+        putShort(f, IP_CHECKSUM, ~sum);
+    }
+}
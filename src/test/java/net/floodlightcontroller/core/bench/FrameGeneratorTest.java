@@ -0,0 +1,86 @@
+package net.floodlightcontroller.core.bench;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+
+import net.floodlightcontroller.packet.ARP;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.TCP;
+
+public class FrameGeneratorTest {
+
+    private static Ethernet decode(byte[] frame) {
+        Ethernet eth = new Ethernet();
+        eth.deserialize(frame, 0, frame.length);
+        return eth;
+    }
+
+    /* Ones' complement sum of the IPv4 header, checksum included */
+    private static int ipHeaderSum(byte[] frame) {
+        int sum = 0;
+        for (int i = 14; i < 34; i += 2) {
+            sum += ((frame[i] & 0xff) << 8) | (frame[i + 1] & 0xff);
+        }
+        sum = (sum >>> 16) + (sum & 0xffff);
+        return sum + (sum >>> 16);
+    }
+
+    private static boolean isHost(MacAddress mac, int switchIndex, int hosts) {
+        for (int h = 0; h < hosts; h++) {
+            if (mac.getLong() == FrameGenerator.hostMac(switchIndex, h))
+                return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void testMixed() {
+        FrameGenerator gen = new FrameGenerator(2, 4, 8, 0);
+        int flows = 0, arps = 0, newMacs = 0;
+        for (int i = 0; i < 100; i++) {
+            byte[] frame = gen.next(Workload.MIXED);
+            Ethernet eth = decode(frame);
+            int port = gen.getInPort().getPortNumber();
+            assertTrue(port >= 1 && port <= 8);
+            if (eth.getPayload() instanceof ARP) {
+                ARP arp = (ARP) eth.getPayload();
+                assertTrue(eth.isBroadcast());
+                assertEquals(FrameGenerator.hostMac(2, port - 1), eth.getSourceMACAddress().getLong());
+                assertEquals(FrameGenerator.hostIp(2, port - 1), IPv4Address.of(arp.getSenderProtocolAddress()).getInt());
+                arps++;
+                continue;
+            }
+            IPv4 ip = (IPv4) eth.getPayload();
+            assertTrue(ip.getPayload() instanceof TCP);
+            assertEquals(0xffff, ipHeaderSum(frame));
+            assertFalse(isHost(eth.getDestinationMACAddress(), 2, 8));
+            assertEquals(FrameGenerator.hostIp(2, port - 1), ip.getSourceAddress().getInt());
+            if (isHost(eth.getSourceMACAddress(), 2, 8)) {
+                flows++;
+            } else {
+                newMacs++;
+            }
+        }
+        assertEquals(60, flows);
+        assertEquals(20, arps);
+        assertEquals(20, newMacs);
+    }
+
+    @Test
+    public void testNewMacsAreNew() {
+        FrameGenerator gen = new FrameGenerator(0, 1, 1, 0);
+        MacAddress first = decode(gen.next(Workload.NEWMAC)).getSourceMACAddress();
+        MacAddress second = decode(gen.next(Workload.NEWMAC)).getSourceMACAddress();
+        assertFalse(first.equals(second));
+        assertFalse(isHost(first, 0, 1));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoLldp() {
+        new FrameGenerator(0, 1, 1, 0).next(Workload.LLDP);
+    }
+}
@@ -0,0 +1,22 @@
+package net.floodlightcontroller.core.bench;
+
+/**
+ * The packet-ins benchmark switches send to the controller.
+ */
+public enum Workload {
+    /** Every frame comes from a MAC the controller has never seen, towards a known host */
+    NEWMAC,
+    /** ARP requests between known hosts */
+    ARP,
+    /**
+     * The switches replay the LLDPs the controller sent to their neighbors.
+     * Link discovery doesn't answer, so only throughput mode makes sense.
+     */
+    LLDP,
+    /** TCP flows between known hosts, with some ARP and new MACs mixed in */
+    MIXED;
+
+    public static Workload of(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
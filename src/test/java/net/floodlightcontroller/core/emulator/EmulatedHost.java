@@ -0,0 +1,133 @@
+package net.floodlightcontroller.core.emulator;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.UDP;
+
+/**
+ * A host on a port of an emulated switch. It sends and receives the
+ * sequence-numbered UDP probes the benchmark uses to detect delivery.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class EmulatedHost {
+	/* UDP discard port; the probe sequence number is the first 8 bytes of the payload */
+	static final int PROBE_PORT = 9;
+	private static final int SEQ_OFFSET = 14 + 20 + 8; /* Ethernet, IPv4 (no options), UDP */
+
+	/**
+	 * Called for every probe a host receives, on the thread that sent it.
+	 */
+	public interface ProbeListener {
+		void probeReceived(EmulatedHost host, long seq);
+	}
+
+	private final MacAddress mac;
+	private final IPv4Address ip;
+	private volatile EmulatedSwitch sw;
+	private volatile OFPort port;
+	private volatile ProbeListener listener;
+
+	public EmulatedHost(MacAddress mac, IPv4Address ip) {
+		this.mac = mac;
+		this.ip = ip;
+	}
+
+	public MacAddress getMac() {
+		return mac;
+	}
+
+	public IPv4Address getIp() {
+		return ip;
+	}
+
+	public EmulatedSwitch getSwitch() {
+		return sw;
+	}
+
+	public OFPort getPort() {
+		return port;
+	}
+
+	public void setProbeListener(ProbeListener listener) {
+		this.listener = listener;
+	}
+
+	void attachTo(EmulatedSwitch sw, OFPort port) {
+		this.sw = sw;
+		this.port = port;
+	}
+
+	/**
+	 * @return a probe frame addressed to the given host; send() fills in the sequence number
+	 */
+	public byte[] buildProbe(EmulatedHost dst) {
+		UDP udp = new UDP();
+		udp.setSourcePort(TransportPort.of(PROBE_PORT));
+		udp.setDestinationPort(TransportPort.of(PROBE_PORT));
+		udp.setPayload(new Data(new byte[8]));
+
+		IPv4 ipv4 = new IPv4()
+				.setSourceAddress(ip)
+				.setDestinationAddress(dst.getIp())
+				.setProtocol(IpProtocol.UDP)
+				.setTtl((byte) 64);
+		ipv4.setPayload(udp);
+
+		Ethernet eth = new Ethernet()
+				.setSourceMACAddress(mac)
+				.setDestinationMACAddress(dst.getMac())
+				.setEtherType(EthType.IPv4);
+		eth.setPayload(ipv4);
+		return eth.serialize();
+	}
+
+	/**
+	 * Send a copy of the probe with the given sequence number into the network.
+	 * Delivery is synchronous: by the time this returns, the probe has either
+	 * reached its destination, been dropped, or been sent to the controller.
+	 * @return the path the probe took
+	 */
+	public EmulatedSwitch.Trace send(byte[] probe, long seq) {
+		byte[] frame = probe.clone();
+		for (int i = 0; i < 8; i++) {
+			frame[SEQ_OFFSET + i] = (byte) (seq >>> (56 - 8 * i));
+		}
+		EmulatedSwitch.Trace trace = new EmulatedSwitch.Trace();
+		sw.receive(port, frame, trace);
+		return trace;
+	}
+
+	/**
+	 * A frame arrives from the switch. Anything that isn't a probe
+	 * (e.g. LLDP sent out of every port) is ignored.
+	 */
+	void deliver(byte[] frame) {
+		ProbeListener l = listener;
+		if (l == null || frame.length < SEQ_OFFSET + 8
+				|| ((frame[12] & 0xff) << 8 | (frame[13] & 0xff)) != EthType.IPv4.getValue()
+				|| frame[23] != IpProtocol.UDP.getIpProtocolNumber()
+				|| ((frame[36] & 0xff) << 8 | (frame[37] & 0xff)) != PROBE_PORT) {
+			return;
+		}
+		long seq = 0;
+		for (int i = 0; i < 8; i++) {
+			seq = seq << 8 | (frame[SEQ_OFFSET + i] & 0xff);
+		}
+		l.probeReceived(this, seq);
+	}
+
+	@Override
+	public String toString() {
+		return "EmulatedHost [mac=" + mac.toString() + ", ip=" + ip.toString() + "]";
+	}
+}
@@ -0,0 +1,892 @@
+package net.floodlightcontroller.core.emulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.projectfloodlight.openflow.protocol.OFActionType;
+import org.projectfloodlight.openflow.protocol.OFBadRequestCode;
+import org.projectfloodlight.openflow.protocol.OFBucket;
+import org.projectfloodlight.openflow.protocol.OFCapabilities;
+import org.projectfloodlight.openflow.protocol.OFEchoRequest;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowModCommand;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupDescStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFGroupMod;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFMessageReader;
+import org.projectfloodlight.openflow.protocol.OFNiciraControllerRoleRequest;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFPortConfig;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFPortFeatures;
+import org.projectfloodlight.openflow.protocol.OFPortMod;
+import org.projectfloodlight.openflow.protocol.OFPortReason;
+import org.projectfloodlight.openflow.protocol.OFPortState;
+import org.projectfloodlight.openflow.protocol.OFRoleRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionGroup;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionApplyActions;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionWriteActions;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFErrorCauseData;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.topology.NodePortTuple;
+
+/**
+ * A software OpenFlow switch for benchmarks. It speaks just enough OpenFlow
+ * 1.0 and 1.3 to get through the Floodlight handshake over a real TCP connection,
+ * and it forwards frames through a single flow table and a group table the way
+ * a hardware switch would: highest priority match first, output and group actions,
+ * and fast-failover groups that skip buckets whose watch port is down.
+ *
+ * Frames travel between emulated switches by direct method calls, so the data
+ * plane adds no latency of its own. Only exact matches on IN_PORT, ETH_SRC,
+ * ETH_DST and ETH_TYPE are emulated; header rewrites are ignored.
+ *
+ * Not thread-safe to configure: add all ports and attach all hosts before
+ * calling connect().
+ *
+ * Subclasses can take over flow-mods, packet-outs and frames arriving on a
+ * port, and send packet-ins of their own, e.g. to load the controller with
+ * packet-ins (see {@link net.floodlightcontroller.core.bench.BenchSwitch}).
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class EmulatedSwitch {
+	private static final Logger log = LoggerFactory.getLogger(EmulatedSwitch.class);
+
+	/* Frames looping between switches are dropped after this many hops */
+	private static final int MAX_HOPS = 64;
+	/* OFPPC_PORT_DOWN is bit 0 of the port config in all OpenFlow versions */
+	private static final long PORT_DOWN = 1;
+
+	private final DatapathId dpid;
+	private final OFFactory factory;
+	private final Map<OFPort, Port> ports = new LinkedHashMap<OFPort, Port>();
+	private final Map<OFGroup, OFGroupMod> groups = new ConcurrentHashMap<OFGroup, OFGroupMod>();
+	private final Object tableLock = new Object();
+	/* Copy-on-write, sorted by descending priority, so lookups don't lock */
+	private volatile List<OFFlowMod> flows = Collections.emptyList();
+
+	private final AtomicLongArray fromController = new AtomicLongArray(OFType.values().length);
+	private final AtomicLong toController = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile Socket socket;
+	private OutputStream out;
+	private volatile boolean roleAssigned;
+
+	/**
+	 * One end of a link, or the port a host is on.
+	 */
+	static class Port {
+		final OFPort number;
+		final MacAddress hwAddr;
+		volatile boolean adminDown;
+		volatile boolean linkDown;
+		volatile EmulatedSwitch peer;
+		volatile OFPort peerPort;
+		volatile EmulatedHost host;
+
+		Port(OFPort number, MacAddress hwAddr) {
+			this.number = number;
+			this.hwAddr = hwAddr;
+		}
+
+		boolean isLive() {
+			return !adminDown && !linkDown;
+		}
+	}
+
+	private static final Comparator<OFFlowMod> BY_PRIORITY = new Comparator<OFFlowMod>() {
+		@Override
+		public int compare(OFFlowMod a, OFFlowMod b) {
+			return b.getPriority() - a.getPriority();
+		}
+	};
+
+	/**
+	 * Follows a frame through the data plane.
+	 */
+	public static class Trace {
+		private int hops = MAX_HOPS;
+		private final List<NodePortTuple> links = new ArrayList<NodePortTuple>();
+
+		/**
+		 * @return the switch ports the frame left through towards other switches, in order
+		 */
+		public List<NodePortTuple> getLinks() {
+			return links;
+		}
+	}
+
+	public EmulatedSwitch(DatapathId dpid, OFVersion version) {
+		if (version != OFVersion.OF_10 && version != OFVersion.OF_13) {
+			throw new IllegalArgumentException("Only OpenFlow 1.0 and 1.3 are emulated, not " + version.toString());
+		}
+		this.dpid = dpid;
+		this.factory = OFFactories.getFactory(version);
+	}
+
+	public DatapathId getId() {
+		return dpid;
+	}
+
+	public OFVersion getVersion() {
+		return factory.getVersion();
+	}
+
+	/**
+	 * @return true once the controller has told the switch its role,
+	 * which is the last step of the handshake
+	 */
+	public boolean isRoleAssigned() {
+		return roleAssigned;
+	}
+
+	public Collection<OFPort> getPorts() {
+		return Collections.unmodifiableCollection(ports.keySet());
+	}
+
+	public OFPort addPort(int number) {
+		OFPort p = OFPort.of(number);
+		ports.put(p, new Port(p, MacAddress.of((dpid.getLong() << 16 | number) & 0xffFFffFFffFFL)));
+		return p;
+	}
+
+	Port getPort(OFPort port) {
+		return ports.get(port);
+	}
+
+	/**
+	 * Connect two ports with a cable.
+	 */
+	public static void link(EmulatedSwitch a, OFPort aPort, EmulatedSwitch b, OFPort bPort) {
+		Port pa = a.ports.get(aPort);
+		Port pb = b.ports.get(bPort);
+		pa.peer = b;
+		pa.peerPort = bPort;
+		pb.peer = a;
+		pb.peerPort = aPort;
+	}
+
+	public void attach(OFPort port, EmulatedHost host) {
+		ports.get(port).host = host;
+		host.attachTo(this, port);
+	}
+
+	/**
+	 * Physically bring the link on a port up or down, as when a cable is pulled.
+	 * Both ends see the change and report it to the controller.
+	 */
+	public void setLinkDown(OFPort port, boolean down) {
+		Port p = ports.get(port);
+		p.linkDown = down;
+		sendPortStatus(p);
+		if (p.peer != null) {
+			Port pp = p.peer.ports.get(p.peerPort);
+			pp.linkDown = down;
+			p.peer.sendPortStatus(pp);
+		}
+	}
+
+	/**
+	 * Administratively bring a port up or down from the switch itself,
+	 * i.e. without a port-mod from the controller.
+	 */
+	public void setAdminDown(OFPort port, boolean down) {
+		Port p = ports.get(port);
+		p.adminDown = down;
+		sendPortStatus(p);
+	}
+
+	public boolean isLive(OFPort port) {
+		Port p = ports.get(port);
+		return p != null && p.isLive();
+	}
+
+	/**
+	 * @return the number of messages of the given type received from the controller
+	 */
+	public long getMessagesFromController(OFType type) {
+		return fromController.get(type.ordinal());
+	}
+
+	public long getMessagesFromController() {
+		long total = 0;
+		for (int i = 0; i < fromController.length(); i++) {
+			total += fromController.get(i);
+		}
+		return total;
+	}
+
+	public long getMessagesToController() {
+		return toController.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public int getFlowCount() {
+		return flows.size();
+	}
+
+	public int getGroupCount() {
+		return groups.size();
+	}
+
+	/*
+	 * Control channel
+	 */
+
+	public void connect(InetSocketAddress controller) throws IOException {
+		Socket s = new Socket();
+		s.setTcpNoDelay(true);
+		s.connect(controller);
+		socket = s;
+		out = s.getOutputStream();
+		send(factory.buildHello().build());
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readLoop();
+			}
+		}, "emu-" + dpid.toString());
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	public boolean isConnected() {
+		Socket s = socket;
+		return s != null && !s.isClosed();
+	}
+
+	public void disconnect() {
+		Socket s = socket;
+		socket = null;
+		if (s != null) {
+			try {
+				s.close();
+			} catch (IOException e) {
+				log.debug("Error closing connection of switch {}", dpid.toString(), e);
+			}
+		}
+	}
+
+	private void readLoop() {
+		OFMessageReader<OFMessage> reader = OFFactories.getGenericReader();
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		byte[] chunk = new byte[64 * 1024];
+		try {
+			InputStream in = socket.getInputStream();
+			int n;
+			while ((n = in.read(chunk)) > 0) {
+				buf.writeBytes(chunk, 0, n);
+				OFMessage m;
+				while ((m = reader.readFrom(buf)) != null) {
+					handle(m);
+				}
+				buf.discardReadBytes();
+			}
+		} catch (Exception e) {
+			if (isConnected()) {
+				log.warn("Switch {} lost its connection to the controller", dpid.toString(), e);
+			}
+		} finally {
+			disconnect();
+		}
+	}
+
+	protected void send(OFMessage m) {
+		if (socket == null) {
+			return;
+		}
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		m.writeTo(buf);
+		write(buf, 1);
+	}
+
+	/**
+	 * Send messages that are already encoded, e.g. a batch of packet-ins
+	 * @param buf the messages
+	 * @param messages the number of messages in buf
+	 */
+	protected void write(ChannelBuffer buf, int messages) {
+		Socket s = socket;
+		if (s == null) {
+			return;
+		}
+		try {
+			synchronized (this) {
+				out.write(buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes());
+			}
+			toController.addAndGet(messages);
+		} catch (IOException e) {
+			log.debug("Switch {} failed to write to the controller", dpid.toString());
+		}
+	}
+
+	private void sendError(OFMessage m, OFBadRequestCode code) {
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		m.writeTo(buf);
+		byte[] data = new byte[buf.readableBytes()];
+		buf.readBytes(data);
+		send(factory.errorMsgs().buildBadRequestErrorMsg()
+				.setXid(m.getXid())
+				.setCode(code)
+				.setData(OFErrorCauseData.of(data, factory.getVersion()))
+				.build());
+	}
+
+	private void sendPortStatus(Port p) {
+		send(factory.buildPortStatus()
+				.setReason(OFPortReason.MODIFY)
+				.setDesc(describe(p))
+				.build());
+	}
+
+	protected void handle(OFMessage m) {
+		fromController.incrementAndGet(m.getType().ordinal());
+		switch (m.getType()) {
+		case HELLO:
+		case SET_CONFIG:
+		case ECHO_REPLY:
+			break;
+		case ECHO_REQUEST:
+			send(factory.buildEchoReply()
+					.setXid(m.getXid())
+					.setData(((OFEchoRequest) m).getData())
+					.build());
+			break;
+		case FEATURES_REQUEST:
+			send(featuresReply(m.getXid()));
+			break;
+		case GET_CONFIG_REQUEST:
+			send(factory.buildGetConfigReply()
+					.setXid(m.getXid())
+					.setMissSendLen(0xffff)
+					.build());
+			break;
+		case BARRIER_REQUEST:
+			send(factory.buildBarrierReply().setXid(m.getXid()).build());
+			break;
+		case ROLE_REQUEST:
+			send(factory.buildRoleReply()
+					.setXid(m.getXid())
+					.setRole(((OFRoleRequest) m).getRole())
+					.setGenerationId(((OFRoleRequest) m).getGenerationId())
+					.build());
+			roleAssigned = true;
+			break;
+		case EXPERIMENTER:
+			if (m instanceof OFNiciraControllerRoleRequest) {
+				send(factory.buildNiciraControllerRoleReply()
+						.setXid(m.getXid())
+						.setRole(((OFNiciraControllerRoleRequest) m).getRole())
+						.build());
+				roleAssigned = true;
+			} else {
+				sendError(m, OFBadRequestCode.BAD_EXPERIMENTER);
+			}
+			break;
+		case STATS_REQUEST:
+			handleStatsRequest((OFStatsRequest<?>) m);
+			break;
+		case FLOW_MOD:
+			handleFlowMod((OFFlowMod) m);
+			break;
+		case GROUP_MOD:
+			handleGroupMod((OFGroupMod) m);
+			break;
+		case PORT_MOD:
+			handlePortMod((OFPortMod) m);
+			break;
+		case PACKET_OUT:
+			handlePacketOut((OFPacketOut) m);
+			break;
+		default:
+			sendError(m, OFBadRequestCode.BAD_TYPE);
+			break;
+		}
+	}
+
+	private OFFeaturesReply featuresReply(long xid) {
+		OFFeaturesReply.Builder b = factory.buildFeaturesReply()
+				.setXid(xid)
+				.setDatapathId(dpid)
+				.setNBuffers(getBufferCount())
+				.setNTables((short) 1)
+				.setCapabilities(EnumSet.of(OFCapabilities.FLOW_STATS, OFCapabilities.PORT_STATS));
+		if (factory.getVersion() == OFVersion.OF_10) {
+			b.setActions(EnumSet.of(OFActionType.OUTPUT))
+			.setPorts(describePorts());
+		} else {
+			b.setAuxiliaryId(OFAuxId.MAIN);
+		}
+		return b.build();
+	}
+
+	/**
+	 * @return the number of packets the switch can buffer, which is 0
+	 * since packet-ins carry the whole frame
+	 */
+	protected long getBufferCount() {
+		return 0;
+	}
+
+	private List<OFPortDesc> describePorts() {
+		List<OFPortDesc> descs = new ArrayList<OFPortDesc>(ports.size());
+		for (Port p : ports.values()) {
+			descs.add(describe(p));
+		}
+		return descs;
+	}
+
+	private OFPortDesc describe(Port p) {
+		OFPortDesc.Builder b = factory.buildPortDesc()
+				.setPortNo(p.number)
+				.setHwAddr(p.hwAddr)
+				.setName("eth" + p.number.getPortNumber())
+				.setConfig(p.adminDown ? EnumSet.of(OFPortConfig.PORT_DOWN) : EnumSet.noneOf(OFPortConfig.class))
+				.setState(p.linkDown ? EnumSet.of(OFPortState.LINK_DOWN) : EnumSet.noneOf(OFPortState.class))
+				.setCurr(EnumSet.of(OFPortFeatures.PF_1GB_FD));
+		if (factory.getVersion() != OFVersion.OF_10) {
+			b.setCurrSpeed(1000000)
+			.setMaxSpeed(1000000);
+		}
+		return b.build();
+	}
+
+	private void handleStatsRequest(OFStatsRequest<?> m) {
+		switch (m.getStatsType()) {
+		case DESC:
+			send(factory.buildDescStatsReply()
+					.setXid(m.getXid())
+					.setMfrDesc("Project Floodlight")
+					.setHwDesc("Emulated switch")
+					.setSwDesc("Floodlight benchmark")
+					.setSerialNum(dpid.toString())
+					.setDpDesc("emulated")
+					.build());
+			break;
+		case PORT_DESC:
+			send(factory.buildPortDescStatsReply()
+					.setXid(m.getXid())
+					.setEntries(describePorts())
+					.build());
+			break;
+		case FLOW:
+			send(factory.buildFlowStatsReply()
+					.setXid(m.getXid())
+					.setEntries(flowStats((OFFlowStatsRequest) m))
+					.build());
+			break;
+		case GROUP_DESC:
+			List<OFGroupDescStatsEntry> entries = new ArrayList<OFGroupDescStatsEntry>(groups.size());
+			for (OFGroupMod g : groups.values()) {
+				entries.add(factory.buildGroupDescStatsEntry()
+						.setGroup(g.getGroup())
+						.setGroupType(g.getGroupType())
+						.setBuckets(g.getBuckets())
+						.build());
+			}
+			send(factory.buildGroupDescStatsReply()
+					.setXid(m.getXid())
+					.setEntries(entries)
+					.build());
+			break;
+		default:
+			/* e.g. table features; the controller carries on without them */
+			sendError(m, OFBadRequestCode.BAD_STAT);
+			break;
+		}
+	}
+
+	private List<OFFlowStatsEntry> flowStats(OFFlowStatsRequest req) {
+		List<OFFlowStatsEntry> entries = new ArrayList<OFFlowStatsEntry>();
+		for (OFFlowMod fm : flows) {
+			if (factory.getVersion() == OFVersion.OF_10) {
+				entries.add(factory.buildFlowStatsEntry()
+						.setMatch(fm.getMatch())
+						.setPriority(fm.getPriority())
+						.setCookie(fm.getCookie())
+						.setActions(fm.getActions())
+						.build());
+			} else if (cookieMatches(fm, req.getCookie(), req.getCookieMask())) {
+				entries.add(factory.buildFlowStatsEntry()
+						.setTableId(fm.getTableId())
+						.setMatch(fm.getMatch())
+						.setPriority(fm.getPriority())
+						.setCookie(fm.getCookie())
+						.setInstructions(fm.getInstructions())
+						.build());
+			}
+		}
+		return entries;
+	}
+
+	/*
+	 * Flow and group tables
+	 */
+
+	private static boolean cookieMatches(OFFlowMod fm, U64 cookie, U64 mask) {
+		return (fm.getCookie().getValue() & mask.getValue()) == (cookie.getValue() & mask.getValue());
+	}
+
+	private TableId tableOf(OFFlowMod fm) {
+		return factory.getVersion() == OFVersion.OF_10 ? TableId.ZERO : fm.getTableId();
+	}
+
+	private boolean sameEntry(OFFlowMod a, OFFlowMod b) {
+		return a.getPriority() == b.getPriority() && a.getMatch().equals(b.getMatch())
+				&& tableOf(a).equals(tableOf(b));
+	}
+
+	/**
+	 * @return true if every field the filter matches on is matched
+	 * on with the same value by the entry (non-strict delete semantics)
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static boolean covers(Match filter, Match entry) {
+		for (MatchField f : filter.getMatchFields()) {
+			if (!filter.isExact(f) || !entry.isExact(f) || !filter.get(f).equals(entry.get(f))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void handleFlowMod(OFFlowMod fm) {
+		synchronized (tableLock) {
+			List<OFFlowMod> table = new ArrayList<OFFlowMod>(flows);
+			Iterator<OFFlowMod> itr = table.iterator();
+			boolean found = false;
+			switch (fm.getCommand()) {
+			case ADD:
+				while (itr.hasNext()) {
+					if (sameEntry(itr.next(), fm)) {
+						itr.remove();
+					}
+				}
+				table.add(fm);
+				break;
+			case MODIFY:
+			case MODIFY_STRICT:
+				/* Non-strict modifies are treated as strict; the controller only sends strict ones */
+				for (int i = 0; i < table.size(); i++) {
+					if (sameEntry(table.get(i), fm)) {
+						table.set(i, fm);
+						found = true;
+					}
+				}
+				if (!found && factory.getVersion() == OFVersion.OF_10) {
+					table.add(fm); /* OF1.0 modifies add the flow if it isn't there */
+				}
+				break;
+			case DELETE:
+			case DELETE_STRICT:
+				boolean strict = fm.getCommand() == OFFlowModCommand.DELETE_STRICT;
+				while (itr.hasNext()) {
+					OFFlowMod e = itr.next();
+					if (factory.getVersion() != OFVersion.OF_10) {
+						if (!cookieMatches(e, fm.getCookie(), fm.getCookieMask())
+								|| (!fm.getTableId().equals(TableId.ALL) && !fm.getTableId().equals(e.getTableId()))) {
+							continue;
+						}
+					}
+					if (strict ? (e.getPriority() == fm.getPriority() && e.getMatch().equals(fm.getMatch()))
+							: covers(fm.getMatch(), e.getMatch())) {
+						itr.remove();
+					}
+				}
+				break;
+			default:
+				break;
+			}
+			Collections.sort(table, BY_PRIORITY);
+			flows = Collections.unmodifiableList(table);
+		}
+	}
+
+	protected void handlePacketOut(OFPacketOut po) {
+		apply(po.getActions(), po.getInPort(), po.getData(), new Trace());
+	}
+
+	private void handleGroupMod(OFGroupMod gm) {
+		switch (gm.getCommand()) {
+		case ADD:
+		case MODIFY:
+			groups.put(gm.getGroup(), gm);
+			break;
+		case DELETE:
+			if (gm.getGroup().equals(OFGroup.ALL)) {
+				groups.clear();
+			} else {
+				groups.remove(gm.getGroup());
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void handlePortMod(OFPortMod pm) {
+		Port p = ports.get(pm.getPortNo());
+		if (p == null) {
+			sendError(pm, OFBadRequestCode.BAD_TYPE);
+			return;
+		}
+		if ((pm.getMask() & PORT_DOWN) != 0) {
+			boolean down = (pm.getConfig() & PORT_DOWN) != 0;
+			if (down != p.adminDown) {
+				p.adminDown = down;
+				sendPortStatus(p);
+			}
+		}
+	}
+
+	/*
+	 * Data plane
+	 */
+
+	/**
+	 * A frame arrives on a port, from a host or from another switch.
+	 */
+	protected void receive(OFPort inPort, byte[] frame, Trace trace) {
+		if (--trace.hops < 0) {
+			dropped.incrementAndGet();
+			return;
+		}
+		OFFlowMod fm = lookup(inPort, frame);
+		if (fm == null) {
+			packetIn(inPort, frame, OFPacketInReason.NO_MATCH);
+		} else {
+			apply(actionsOf(fm), inPort, frame, trace);
+		}
+	}
+
+	private OFFlowMod lookup(OFPort inPort, byte[] frame) {
+		for (OFFlowMod fm : flows) {
+			if (tableOf(fm).equals(TableId.ZERO) && matches(fm.getMatch(), inPort, frame)) {
+				return fm;
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static boolean matches(Match m, OFPort inPort, byte[] frame) {
+		for (MatchField f : m.getMatchFields()) {
+			if (!m.isExact(f)) {
+				continue; /* masked fields are treated as wildcards */
+			}
+			switch (f.id) {
+			case IN_PORT:
+				if (!inPort.equals(m.get(MatchField.IN_PORT))) {
+					return false;
+				}
+				break;
+			case ETH_DST:
+				if (!MacAddress.of(Arrays.copyOfRange(frame, 0, 6)).equals(m.get(MatchField.ETH_DST))) {
+					return false;
+				}
+				break;
+			case ETH_SRC:
+				if (!MacAddress.of(Arrays.copyOfRange(frame, 6, 12)).equals(m.get(MatchField.ETH_SRC))) {
+					return false;
+				}
+				break;
+			case ETH_TYPE:
+				if (!EthType.of(((frame[12] & 0xff) << 8) | (frame[13] & 0xff)).equals(m.get(MatchField.ETH_TYPE))) {
+					return false;
+				}
+				break;
+			default:
+				return false; /* not emulated */
+			}
+		}
+		return true;
+	}
+
+	private List<OFAction> actionsOf(OFFlowMod fm) {
+		if (factory.getVersion() == OFVersion.OF_10) {
+			return fm.getActions();
+		}
+		List<OFAction> actions = new ArrayList<OFAction>();
+		for (OFInstruction i : fm.getInstructions()) {
+			if (i instanceof OFInstructionApplyActions) {
+				actions.addAll(((OFInstructionApplyActions) i).getActions());
+			} else if (i instanceof OFInstructionWriteActions) {
+				actions.addAll(((OFInstructionWriteActions) i).getActions());
+			}
+		}
+		return actions;
+	}
+
+	private void apply(List<OFAction> actions, OFPort inPort, byte[] frame, Trace trace) {
+		for (OFAction a : actions) {
+			switch (a.getType()) {
+			case OUTPUT:
+				output(((OFActionOutput) a).getPort(), inPort, frame, trace);
+				break;
+			case GROUP:
+				applyGroup(((OFActionGroup) a).getGroup(), inPort, frame, trace);
+				break;
+			default:
+				break; /* header rewrites are not emulated */
+			}
+		}
+	}
+
+	private void applyGroup(OFGroup id, OFPort inPort, byte[] frame, Trace trace) {
+		OFGroupMod g = groups.get(id);
+		if (g == null || g.getBuckets().isEmpty()) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (g.getGroupType() == OFGroupType.ALL) {
+			for (OFBucket b : g.getBuckets()) {
+				apply(b.getActions(), inPort, frame, trace);
+			}
+		} else if (g.getGroupType() == OFGroupType.FF) {
+			for (OFBucket b : g.getBuckets()) {
+				if (isLive(b)) {
+					apply(b.getActions(), inPort, frame, trace);
+					return;
+				}
+			}
+			dropped.incrementAndGet();
+		} else {
+			/* select and indirect: always the first bucket */
+			apply(g.getBuckets().get(0).getActions(), inPort, frame, trace);
+		}
+	}
+
+	private boolean isLive(OFBucket b) {
+		if (!b.getWatchPort().equals(OFPort.ANY)) {
+			Port p = ports.get(b.getWatchPort());
+			if (p == null || !p.isLive()) {
+				return false;
+			}
+		}
+		/* Watching a group that doesn't exist (e.g. group 0) is the same as not watching one */
+		OFGroupMod watched = b.getWatchGroup().equals(OFGroup.ANY) ? null : groups.get(b.getWatchGroup());
+		if (watched != null) {
+			for (OFBucket wb : watched.getBuckets()) {
+				if (wb.getWatchPort().equals(OFPort.ANY) || isLive(wb.getWatchPort())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	private void output(OFPort port, OFPort inPort, byte[] frame, Trace trace) {
+		if (port.equals(OFPort.CONTROLLER)) {
+			packetIn(inPort, frame, OFPacketInReason.ACTION);
+		} else if (port.equals(OFPort.IN_PORT)) {
+			transmit(inPort, frame, trace);
+		} else if (port.equals(OFPort.FLOOD) || port.equals(OFPort.ALL)) {
+			for (OFPort p : ports.keySet()) {
+				if (!p.equals(inPort)) {
+					transmit(p, frame, trace);
+				}
+			}
+		} else {
+			transmit(port, frame, trace);
+		}
+	}
+
+	private void transmit(OFPort port, byte[] frame, Trace trace) {
+		Port p = ports.get(port);
+		if (p == null || !p.isLive()) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (p.host != null) {
+			p.host.deliver(frame);
+		} else if (p.peer != null && p.peer.isLive(p.peerPort)) {
+			trace.links.add(new NodePortTuple(dpid, port));
+			p.peer.receive(p.peerPort, frame, trace);
+		} else {
+			dropped.incrementAndGet();
+		}
+	}
+
+	private void packetIn(OFPort inPort, byte[] frame, OFPacketInReason reason) {
+		if (!isConnected()) {
+			dropped.incrementAndGet();
+			return;
+		}
+		send(buildPacketIn(inPort, frame, OFBufferId.NO_BUFFER, reason));
+	}
+
+	protected OFPacketIn buildPacketIn(OFPort inPort, byte[] frame, OFBufferId bufferId, OFPacketInReason reason) {
+		OFPacketIn.Builder b = factory.buildPacketIn()
+				.setBufferId(bufferId)
+				.setTotalLen(frame.length)
+				.setReason(reason)
+				.setData(frame);
+		if (factory.getVersion() == OFVersion.OF_10) {
+			b.setInPort(inPort);
+		} else {
+			b.setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, inPort).build())
+			.setTableId(TableId.ZERO)
+			.setCookie(U64.ZERO);
+		}
+		return b.build();
+	}
+
+	@Override
+	public String toString() {
+		return "EmulatedSwitch [dpid=" + dpid.toString() + ", version=" + factory.getVersion().toString()
+				+ ", flows=" + flows.size() + ", groups=" + groups.size() + "]";
+	}
+}
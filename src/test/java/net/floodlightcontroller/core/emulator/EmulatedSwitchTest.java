@@ -0,0 +1,144 @@
+package net.floodlightcontroller.core.emulator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBucket;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class EmulatedSwitchTest {
+	private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+	private EmulatedSwitch sw;
+	private EmulatedHost src;
+	private EmulatedHost dstA;
+	private EmulatedHost dstB;
+	private List<EmulatedHost> received;
+
+	@Before
+	public void setUp() {
+		sw = new EmulatedSwitch(DatapathId.of(1), OFVersion.OF_13);
+		for (int p = 1; p <= 3; p++) {
+			sw.addPort(p);
+		}
+		src = new EmulatedHost(MacAddress.of(1), IPv4Address.of(1));
+		dstA = new EmulatedHost(MacAddress.of(2), IPv4Address.of(2));
+		dstB = new EmulatedHost(MacAddress.of(3), IPv4Address.of(3));
+		sw.attach(OFPort.of(1), src);
+		sw.attach(OFPort.of(2), dstA);
+		sw.attach(OFPort.of(3), dstB);
+
+		received = new ArrayList<EmulatedHost>();
+		EmulatedHost.ProbeListener listener = new EmulatedHost.ProbeListener() {
+			@Override
+			public void probeReceived(EmulatedHost host, long seq) {
+				received.add(host);
+			}
+		};
+		dstA.setProbeListener(listener);
+		dstB.setProbeListener(listener);
+	}
+
+	private OFAction output(int port) {
+		return factory.actions().output(OFPort.of(port), 0xffFFffFF);
+	}
+
+	private OFBucket bucket(int port) {
+		return factory.buildBucket()
+				.setWatchPort(OFPort.of(port))
+				.setWatchGroup(OFGroup.ANY)
+				.setActions(Collections.singletonList(output(port)))
+				.build();
+	}
+
+	private void addFlow(int priority, int inPort, OFAction action) {
+		sw.handle(factory.buildFlowAdd()
+				.setPriority(priority)
+				.setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(inPort)).build())
+				.setActions(Collections.singletonList(action))
+				.build());
+	}
+
+	private void send() {
+		src.send(src.buildProbe(dstA), 1);
+	}
+
+	@Test
+	public void testFastFailoverGroup() {
+		List<OFBucket> buckets = new ArrayList<OFBucket>();
+		buckets.add(bucket(2));
+		buckets.add(bucket(3));
+		sw.handle(factory.buildGroupAdd()
+				.setGroup(OFGroup.of(1))
+				.setGroupType(OFGroupType.FF)
+				.setBuckets(buckets)
+				.build());
+		addFlow(10, 1, factory.actions().group(OFGroup.of(1)));
+
+		send();
+		assertEquals(Collections.singletonList(dstA), received);
+
+		received.clear();
+		sw.setLinkDown(OFPort.of(2), true);
+		send();
+		assertEquals(Collections.singletonList(dstB), received);
+
+		received.clear();
+		sw.setLinkDown(OFPort.of(3), true);
+		send();
+		assertTrue(received.isEmpty());
+		assertEquals(1, sw.getDropped());
+	}
+
+	@Test
+	public void testPriorityAndStrictDelete() {
+		addFlow(10, 1, output(2));
+		addFlow(20, 1, output(3));
+		send();
+		assertEquals(Collections.singletonList(dstB), received);
+
+		received.clear();
+		sw.handle(factory.buildFlowDeleteStrict()
+				.setPriority(20)
+				.setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(1)).build())
+				.build());
+		assertEquals(1, sw.getFlowCount());
+		send();
+		assertEquals(Collections.singletonList(dstA), received);
+	}
+
+	@Test
+	public void testPortModTakesPortDown() {
+		addFlow(10, 1, output(2));
+		sw.handle(factory.buildPortMod()
+				.setPortNo(OFPort.of(2))
+				.setConfig(1)
+				.setMask(1)
+				.setHwAddr(MacAddress.of(2))
+				.build());
+		assertFalse(sw.isLive(OFPort.of(2)));
+		send();
+		assertTrue(received.isEmpty());
+	}
+
+	@Test
+	public void testNoMatch() {
+		send();
+		assertTrue(received.isEmpty());
+		assertEquals(0, sw.getFlowCount());
+	}
+}
@@ -271,6 +271,8 @@ public class ControllerTest extends FloodlightTestCase {
     public void testHandleMessagesNoListeners() throws Exception {
     	IOFSwitch sw = createMock(IOFSwitch.class);
         expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+        sw.flush();
+        expectLastCall().anyTimes();
         replay(sw);
         controller.handleMessage(sw, pi, null);
         verify(sw);
@@ -291,6 +293,8 @@ public class ControllerTest extends FloodlightTestCase {
 
         IOFSwitch sw = createMock(IOFSwitch.class);
         expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+        sw.flush();
+        expectLastCall().anyTimes();
 
         // Setup listener orderings
         IOFMessageListener test1 = createMock(IOFMessageListener.class);
@@ -420,6 +424,8 @@ public class ControllerTest extends FloodlightTestCase {
         doSetUp(HARole.STANDBY);
         IOFSwitch sw = createMock(IOFSwitch.class);
         expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+        sw.flush();
+        expectLastCall().anyTimes();
 
         IOFMessageListener test1 = createMock(IOFMessageListener.class);
         expect(test1.getName()).andReturn("test1").atLeastOnce();
@@ -465,6 +471,8 @@ public class ControllerTest extends FloodlightTestCase {
     public void testHandleMessageWithContext() throws Exception {
         IOFSwitch sw = createMock(IOFSwitch.class);
         expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+        sw.flush();
+        expectLastCall().once();
 
         IOFMessageListener test1 = createMock(IOFMessageListener.class);
         expect(test1.getName()).andReturn("test1").anyTimes();
@@ -0,0 +1,220 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitchBackend;
+import net.floodlightcontroller.debugcounter.DebugCounterResource;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+
+public class OFMessageDispatcherTest {
+    private static final long ERROR_XID = 666;
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_10);
+    private DebugCounterServiceImpl debugCounterService;
+    private SwitchManagerCounters counters;
+    private IOFSwitchBackend sw;
+    private List<OFMessage> handled;
+    private CountDownLatch release;
+    private CountDownLatch handledAll;
+    private OFMessageDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        debugCounterService = new DebugCounterServiceImpl();
+        counters = new SwitchManagerCounters(debugCounterService);
+        sw = createMock(IOFSwitchBackend.class);
+        expect(sw.getId()).andReturn(DatapathId.of(1)).anyTimes();
+        replay(sw);
+        handled = Collections.synchronizedList(new ArrayList<OFMessage>());
+        release = new CountDownLatch(0);
+    }
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null)
+            dispatcher.stop();
+    }
+
+    private void createDispatcher(int queueSize, OFMessageDispatcher.QueueFullPolicy policy, int expected) {
+        handledAll = new CountDownLatch(expected);
+        dispatcher = new OFMessageDispatcher(new OFMessageDispatcher.Handler() {
+            @Override
+            public void handleMessage(IOFSwitchBackend s, OFMessage m, FloodlightContext bContext) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (m.getXid() == ERROR_XID)
+                    throw new NoClassDefFoundError("a listener's class");
+                handled.add(m);
+                handledAll.countDown();
+            }
+        }, counters, debugCounterService, 4, queueSize, policy);
+        dispatcher.start();
+    }
+
+    private OFMessage packetIn(long xid) {
+        return factory.buildPacketIn()
+                .setXid(xid)
+                .setBufferId(OFBufferId.NO_BUFFER)
+                .setInPort(OFPort.of(1))
+                .setData(new byte[] { 1 })
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setTotalLen(1)
+                .build();
+    }
+
+    private void awaitEmptyQueues() throws InterruptedException {
+        for (;;) {
+            int total = 0;
+            for (int depth : dispatcher.getQueueDepths()) {
+                total += depth;
+            }
+            if (total == 0)
+                return;
+            Thread.sleep(1);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testOrderPerSwitch() throws Exception {
+        createDispatcher(1000, OFMessageDispatcher.QueueFullPolicy.BLOCK, 500);
+        List<OFMessage> sent = new ArrayList<OFMessage>();
+        for (int i = 0; i < 500; i++) {
+            OFMessage m = packetIn(i);
+            sent.add(m);
+            assertTrue(dispatcher.dispatch(sw, m, null));
+        }
+        handledAll.await();
+        assertEquals(sent, handled);
+        assertEquals(500, counters.dispatchQueued.getCounterValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testErrorDoesNotStopWorker() throws Exception {
+        createDispatcher(10, OFMessageDispatcher.QueueFullPolicy.BLOCK, 1);
+        assertTrue(dispatcher.dispatch(sw, packetIn(ERROR_XID), null));
+        assertTrue(dispatcher.dispatch(sw, packetIn(1), null));
+        handledAll.await();
+        assertEquals(Collections.singletonList(packetIn(1)), handled);
+        assertEquals(1, counters.dispatchError.getCounterValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testQueueDepthCounters() throws Exception {
+        release = new CountDownLatch(1);
+        createDispatcher(10, OFMessageDispatcher.QueueFullPolicy.BLOCK, 4);
+        assertTrue(dispatcher.dispatch(sw, packetIn(1), null));
+        awaitEmptyQueues();
+        for (int i = 2; i <= 4; i++) {
+            assertTrue(dispatcher.dispatch(sw, packetIn(i), null));
+        }
+
+        List<DebugCounterResource> depths =
+                debugCounterService.getCounterHierarchy(counters.prefix, "dispatch-queue-depth");
+        assertEquals(1 + 4, depths.size()); /* the level itself and one per worker */
+        long total = 0;
+        for (DebugCounterResource r : depths) {
+            total += r.getCounterValue();
+        }
+        assertEquals(3, total);
+
+        release.countDown();
+        handledAll.await();
+        awaitEmptyQueues();
+        total = 0;
+        for (DebugCounterResource r : debugCounterService.getCounterHierarchy(counters.prefix, "dispatch-queue-depth")) {
+            total += r.getCounterValue();
+        }
+        assertEquals(0, total);
+    }
+
+    @Test(timeout = 5000)
+    public void testDropPacketInWhenFull() throws Exception {
+        release = new CountDownLatch(1);
+        createDispatcher(2, OFMessageDispatcher.QueueFullPolicy.DROP_PACKET_IN, 3);
+
+        /* The worker takes the first and waits, so the next two fill the queue */
+        assertTrue(dispatcher.dispatch(sw, packetIn(1), null));
+        awaitEmptyQueues();
+        assertTrue(dispatcher.dispatch(sw, packetIn(2), null));
+        assertTrue(dispatcher.dispatch(sw, packetIn(3), null));
+        assertFalse(dispatcher.dispatch(sw, packetIn(4), null));
+        assertEquals(1, counters.dispatchDropped.getCounterValue());
+
+        release.countDown();
+        handledAll.await();
+        assertEquals(3, handled.size());
+        assertFalse(handled.contains(packetIn(4)));
+    }
+
+    @Test(timeout = 5000)
+    public void testOtherMessagesWaitWhenFull() throws Exception {
+        release = new CountDownLatch(1);
+        createDispatcher(1, OFMessageDispatcher.QueueFullPolicy.DROP_PACKET_IN, 3);
+        final OFMessage first = packetIn(1);
+        final OFMessage second = packetIn(2);
+        final OFMessage echo = factory.echoRequest(new byte[0]);
+
+        assertTrue(dispatcher.dispatch(sw, first, null));
+        awaitEmptyQueues();
+        assertTrue(dispatcher.dispatch(sw, second, null));
+
+        /* The queue is full. The echo request must wait for room instead of being dropped. */
+        Thread io = new Thread() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(sw, echo, null);
+            }
+        };
+        io.start();
+        while (counters.dispatchBlocked.getCounterValue() == 0) {
+            Thread.sleep(1);
+        }
+        assertTrue(io.isAlive());
+
+        release.countDown();
+        handledAll.await();
+        io.join();
+        assertEquals(Arrays.asList(first, second, echo), handled);
+        assertEquals(0, counters.dispatchDropped.getCounterValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testDropAfterStop() throws Exception {
+        release = new CountDownLatch(1);
+        createDispatcher(1, OFMessageDispatcher.QueueFullPolicy.DROP_PACKET_IN, 1);
+        dispatcher.stop();
+
+        /* Nothing drains the queues, so neither may queue nor wait for room */
+        for (int i = 0; i < 3; i++) {
+            assertFalse(dispatcher.dispatch(sw, factory.echoRequest(new byte[0]), null));
+        }
+        assertEquals(0, counters.dispatchBlocked.getCounterValue());
+        assertEquals(3, counters.dispatchDropped.getCounterValue());
+        for (int depth : dispatcher.getQueueDepths()) {
+            assertEquals(0, depth);
+        }
+        release.countDown();
+    }
+}
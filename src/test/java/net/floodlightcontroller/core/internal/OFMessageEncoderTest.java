@@ -0,0 +1,74 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.collect.ImmutableList;
+
+public class OFMessageEncoderTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private OFMessageEncoder encoder;
+    private Channel channel;
+
+    @Before
+    public void setUp() {
+        encoder = new OFMessageEncoder();
+        ChannelConfig config = createMock(ChannelConfig.class);
+        expect(config.getBufferFactory()).andReturn(HeapChannelBufferFactory.getInstance()).anyTimes();
+        channel = createMock(Channel.class);
+        expect(channel.getConfig()).andReturn(config).anyTimes();
+        replay(config, channel);
+    }
+
+    private ChannelBuffer expected(List<OFMessage> msgs) {
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+        for (OFMessage m : msgs) {
+            m.writeTo(buf);
+        }
+        return buf;
+    }
+
+    @Test
+    public void testEncodeExactSize() throws Exception {
+        List<OFMessage> msgs = new ArrayList<OFMessage>();
+        for (int i = 0; i < 1000; i++) {
+            msgs.add(factory.buildPacketOut()
+                    .setData(new byte[100])
+                    .setActions(ImmutableList.<OFAction>of(factory.actions().output(OFPort.of(i + 1), 0)))
+                    .build());
+        }
+        ChannelBuffer out = (ChannelBuffer) encoder.encode(null, channel, msgs);
+        ChannelBuffer exp = expected(msgs);
+        assertEquals(exp, out);
+        assertEquals(out.readableBytes(), out.capacity());
+
+        /* The scratch buffer is reused; the previous result must not change */
+        List<OFMessage> hello = ImmutableList.<OFMessage>of(factory.buildHello().build());
+        ChannelBuffer out2 = (ChannelBuffer) encoder.encode(null, channel, hello);
+        assertEquals(expected(hello), out2);
+        assertEquals(exp, out);
+    }
+
+    @Test
+    public void testPassThrough() throws Exception {
+        ChannelBuffer raw = ChannelBuffers.wrappedBuffer(new byte[] { 1, 2, 3 });
+        assertSame(raw, encoder.encode(null, channel, raw));
+    }
+}
@@ -12,6 +12,7 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.junit.Assert.assertThat;
 
 import java.util.EnumSet;
+import java.util.List;
 
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
@@ -70,6 +71,11 @@ public class OFSwitchHandshakeHandlerVer10Test extends OFSwitchHandlerTestBase {
         switchHandler.beginHandshake();
     }
 
+    @Override
+    void verifyPipelinedRequests(List<OFMessage> msgs) {
+        assertThat(msgs, Matchers.empty());
+    }
+
     public void handleDescStatsAndCreateSwitch(boolean switchDriverComplete) throws Exception {
         // build the stats reply
         OFDescStatsReply sr = createDescriptionStatsReply();
@@ -8,6 +8,7 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.easymock.EasyMock.verify;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import java.util.EnumSet;
@@ -97,6 +98,12 @@ public class OFSwitchHandshakeHandlerVer13Test extends OFSwitchHandlerTestBase {
         switchHandler.processOFMessage(getPortDescStatsReply());
     }
 
+    @Override
+    void verifyPipelinedRequests(List<OFMessage> msgs) {
+        assertEquals(1, msgs.size());
+        assertThat(msgs.get(0), CoreMatchers.instanceOf(OFTableFeaturesStatsRequest.class));
+    }
+
     public void handleDescStatsAndCreateSwitch() throws Exception {
         // build the stats reply
         OFDescStatsReply sr = createDescriptionStatsReply();
@@ -125,10 +132,9 @@ public class OFSwitchHandshakeHandlerVer13Test extends OFSwitchHandlerTestBase {
         // send the description stats reply
         switchHandler.processOFMessage(sr);
 
-        OFMessage msg = connection.retrieveMessage();
-        assertThat(msg, CoreMatchers.instanceOf(OFTableFeaturesStatsRequest.class));
-        verifyUniqueXids(msg);
-        
+        // The table features request was sent when the handshake began
+        assertThat("Unexpected message captured", connection.getMessages(), Matchers.empty());
+
         verify(sw, switchManager);
     }
     
@@ -157,6 +163,53 @@ public class OFSwitchHandshakeHandlerVer13Test extends OFSwitchHandlerTestBase {
                    CoreMatchers.instanceOf(WaitTableFeaturesReplyState.class));
     }
 
+    /**
+     * The switch may answer the pipelined handshake requests in any order.
+     * The replies are still handled one phase at a time.
+     */
+    @Test
+    public void testRepliesOutOfOrder() throws Exception {
+        moveToWaitPortDescStatsReply();
+        connection.clearMessages();
+
+        setupSwitchForInstantiationWithReset();
+        sw.setPortDescStats(anyObject(OFPortDescStatsReply.class));
+        expectLastCall().once();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        sw.processOFTableFeatures(anyObject(List.class));
+        expectLastCall().once();
+        sw.startDriverHandshake();
+        expectLastCall().once();
+        expect(sw.isDriverHandshakeComplete()).andReturn(true).once();
+        replay(sw);
+
+        reset(switchManager);
+        expect(switchManager.getHandshakePlugins()).andReturn(plugins).anyTimes();
+        expect(
+               switchManager.getOFSwitchInstance(anyObject(OFConnection.class),
+                                              anyObject(SwitchDescription.class),
+                                              anyObject(OFFactory.class),
+                                              anyObject(DatapathId.class))).andReturn(sw).once();
+        expect(switchManager.getNumRequiredConnections()).andReturn(1).anyTimes();
+        switchManager.switchAdded(sw);
+        expectLastCall().once();
+        replay(switchManager);
+
+        // Everything but the port descriptions, last phase first
+        switchHandler.processOFMessage(createTableFeaturesStatsReply());
+        switchHandler.processOFMessage(createDescriptionStatsReply());
+        switchHandler.processOFMessage(factory.buildGetConfigReply()
+                .setMissSendLen(0xFFFF)
+                .build());
+        assertThat(switchHandler.getStateForTesting(),
+                   CoreMatchers.instanceOf(OFSwitchHandshakeHandler.WaitPortDescStatsReplyState.class));
+
+        switchHandler.processOFMessage(getPortDescStatsReply());
+        assertThat(switchHandler.getStateForTesting(),
+                   CoreMatchers.instanceOf(WaitAppHandshakeState.class));
+        verify(sw, switchManager);
+    }
+
     @Test
     @Override
     public void moveToWaitAppHandshakeState() throws Exception {
@@ -0,0 +1,126 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.base.Ticker;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.util.LoadMonitor;
+import net.floodlightcontroller.util.LoadMonitor.LoadLevel;
+
+public class PacketInAdmissionTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_10);
+    private SwitchManagerCounters counters;
+    private IOFSwitch sw1;
+    private IOFSwitch sw2;
+    private long now;
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return now;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        counters = new SwitchManagerCounters(new DebugCounterServiceImpl());
+        sw1 = createMock(IOFSwitch.class);
+        expect(sw1.getId()).andReturn(DatapathId.of(1)).anyTimes();
+        sw2 = createMock(IOFSwitch.class);
+        expect(sw2.getId()).andReturn(DatapathId.of(2)).anyTimes();
+        replay(sw1, sw2);
+        now = 0;
+    }
+
+    private OFPacketIn packetIn(int etherType, int inPort) {
+        byte[] data = new byte[60];
+        data[12] = (byte) (etherType >> 8);
+        data[13] = (byte) etherType;
+        return factory.buildPacketIn()
+                .setBufferId(OFBufferId.NO_BUFFER)
+                .setInPort(OFPort.of(inPort))
+                .setData(data)
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setTotalLen(data.length)
+                .build();
+    }
+
+    private int admitted(PacketInAdmission admission, IOFSwitch sw, OFPacketIn pi, int count) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (admission.admit(sw, pi))
+                n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void testSwitchLimit() {
+        /* 1000/s with a 100ms burst: 100 at once, then 1 per ms */
+        PacketInAdmission admission = new PacketInAdmission(counters, null, 1000, 0, 100, ticker);
+        OFPacketIn ip = packetIn(0x0800, 1);
+        assertEquals(100, admitted(admission, sw1, ip, 1000));
+        assertEquals(900, counters.packetInOverSwitchLimit.getCounterValue());
+
+        /* Another switch has its own bucket */
+        assertEquals(100, admitted(admission, sw2, ip, 1000));
+
+        now += 10000000L;
+        assertEquals(10, admitted(admission, sw1, ip, 1000));
+    }
+
+    @Test
+    public void testPortLimit() {
+        PacketInAdmission admission = new PacketInAdmission(counters, null, 0, 1000, 100, ticker);
+        assertEquals(100, admitted(admission, sw1, packetIn(0x0800, 1), 1000));
+        assertEquals(100, admitted(admission, sw1, packetIn(0x0800, 2), 1000));
+        assertEquals(1800, counters.packetInOverPortLimit.getCounterValue());
+    }
+
+    @Test
+    public void testPriority() {
+        PacketInAdmission admission = new PacketInAdmission(counters, null, 1000, 0, 100, ticker);
+        assertEquals(100, admitted(admission, sw1, packetIn(0x0800, 1), 1000));
+
+        /* The switch is over its limit, but LLDP, BDDP and ARP still get through */
+        assertEquals(1000, admitted(admission, sw1, packetIn(0x88cc, 1), 1000));
+        assertEquals(1000, admitted(admission, sw1, packetIn(0x8942, 1), 1000));
+        assertEquals(100, admitted(admission, sw1, packetIn(0x0806, 1), 1000));
+        assertEquals(2000, counters.packetInPriority.getCounterValue());
+        assertEquals(900, counters.packetInOverArpLimit.getCounterValue());
+        assertTrue(PacketInAdmission.isPriority(packetIn(0x88cc, 1)));
+        assertFalse(PacketInAdmission.isPriority(packetIn(0x0806, 1)));
+    }
+
+    @Test
+    public void testShedOnLoad() {
+        LoadMonitor monitor = createMock(LoadMonitor.class);
+        expect(monitor.getLoadLevel()).andReturn(LoadLevel.HIGH).times(1000);
+        expect(monitor.getLoadLevel()).andReturn(LoadLevel.VERYHIGH).anyTimes();
+        replay(monitor);
+        PacketInAdmission admission = new PacketInAdmission(counters, monitor, 1000, 0, 100, ticker);
+
+        /* Each packet-in costs two tokens under high load */
+        assertEquals(50, admitted(admission, sw1, packetIn(0x0800, 1), 1000));
+
+        now += 1000000000L;
+        assertEquals(0, admitted(admission, sw1, packetIn(0x0800, 1), 1000));
+        assertEquals(1000, counters.packetInShed.getCounterValue());
+        /* LLDP and ARP aren't shed */
+        assertEquals(1, admitted(admission, sw1, packetIn(0x88cc, 1), 1));
+        assertEquals(1, admitted(admission, sw1, packetIn(0x0806, 1), 1));
+    }
+}
@@ -0,0 +1,199 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import net.floodlightcontroller.core.internal.Controller.ISwitchUpdate;
+import net.floodlightcontroller.debugcounter.DebugCounterResource;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+
+public class SwitchUpdateQueueTest {
+    private DebugCounterServiceImpl debugCounterService;
+    private ControllerCounters counters;
+    private List<String> dispatched;
+
+    /* REMOVE cancels ADD, CHANGE duplicates CHANGE */
+    private class Update implements ISwitchUpdate {
+        final DatapathId dpid;
+        final String type;
+
+        Update(long dpid, String type) {
+            this.dpid = DatapathId.of(dpid);
+            this.type = type;
+        }
+
+        @Override
+        public void dispatch() {
+            synchronized (dispatched) {
+                dispatched.add(dpid.getLong() + ":" + type);
+            }
+        }
+
+        @Override
+        public DatapathId getSwitchId() {
+            return dpid;
+        }
+
+        @Override
+        public boolean cancels(ISwitchUpdate queued) {
+            return type.equals("REMOVE") && ((Update) queued).type.equals("ADD");
+        }
+
+        @Override
+        public boolean isDuplicateOf(ISwitchUpdate queued) {
+            return type.equals("CHANGE") && ((Update) queued).type.equals("CHANGE");
+        }
+    }
+
+    @Before
+    public void setUp() {
+        debugCounterService = new DebugCounterServiceImpl();
+        counters = new ControllerCounters(debugCounterService);
+        dispatched = new ArrayList<String>();
+    }
+
+    @Test
+    public void testOrderPerSwitch() {
+        SwitchUpdateQueue queue = new SwitchUpdateQueue(counters, debugCounterService, 1);
+        queue.add(new Update(1, "ADD"));
+        queue.add(new Update(1, "ACTIVATE"));
+        queue.add(new Update(2, "ADD"));
+        queue.add(new Update(1, "CHANGE"));
+        assertFalse(queue.isEmpty());
+        assertEquals(4, queue.getQueueDepths()[0]);
+
+        queue.processAllForTesting();
+        assertTrue(queue.isEmpty());
+        /* Switches take turns */
+        assertEquals(4, dispatched.size());
+        assertEquals("1:ADD", dispatched.get(0));
+        assertEquals("2:ADD", dispatched.get(1));
+        assertEquals("1:ACTIVATE", dispatched.get(2));
+        assertEquals("1:CHANGE", dispatched.get(3));
+        assertEquals(4, counters.updatesDispatched.getCounterValue());
+    }
+
+    @Test
+    public void testCoalesce() {
+        SwitchUpdateQueue queue = new SwitchUpdateQueue(counters, debugCounterService, 2);
+        queue.add(new Update(1, "REMOVE"));
+        queue.add(new Update(1, "ADD"));
+        queue.add(new Update(1, "CHANGE"));
+        queue.add(new Update(1, "CHANGE"));
+        queue.add(new Update(1, "REMOVE"));
+        queue.add(new Update(2, "ADD"));
+        queue.add(new Update(2, "REMOVE"));
+        queue.add(new Update(3, "CHANGE"));
+        queue.add(new Update(3, "CHANGE"));
+
+        queue.processAllForTesting();
+        assertEquals(2, dispatched.size());
+        assertTrue(dispatched.contains("1:REMOVE"));
+        assertTrue(dispatched.contains("3:CHANGE"));
+        assertEquals(7, counters.updatesCoalesced.getCounterValue());
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        SwitchUpdateQueue queue = new SwitchUpdateQueue(counters, debugCounterService, 4);
+        final CountDownLatch done = new CountDownLatch(100);
+        queue.start();
+        try {
+            for (int i = 0; i < 100; i++) {
+                queue.add(new Update(i, "ADD") {
+                    @Override
+                    public void dispatch() {
+                        super.dispatch();
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(100, dispatched.size());
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void testErrorDoesNotStopWorker() throws Exception {
+        SwitchUpdateQueue queue = new SwitchUpdateQueue(counters, debugCounterService, 1);
+        final CountDownLatch done = new CountDownLatch(1);
+        queue.start();
+        try {
+            queue.add(new Update(1, "ADD") {
+                @Override
+                public void dispatch() {
+                    throw new NoClassDefFoundError("listener");
+                }
+            });
+            queue.add(new Update(2, "ADD") {
+                @Override
+                public void dispatch() {
+                    super.dispatch();
+                    done.countDown();
+                }
+            });
+            /* The same thread goes on with the next switch */
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(1, dispatched.size());
+            assertEquals("2:ADD", dispatched.get(0));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    private long depthTotal() {
+        long total = 0;
+        for (DebugCounterResource r : debugCounterService.getCounterHierarchy(counters.prefix, "switch-update-queue-depth")) {
+            total += r.getCounterValue();
+        }
+        return total;
+    }
+
+    @Test
+    public void testQueueDepthCounters() throws Exception {
+        SwitchUpdateQueue queue = new SwitchUpdateQueue(counters, debugCounterService, 1);
+        final CountDownLatch dispatching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.start();
+        try {
+            queue.add(new Update(1, "ADD") {
+                @Override
+                public void dispatch() {
+                    dispatching.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(dispatching.await(5, TimeUnit.SECONDS));
+            queue.add(new Update(2, "ADD"));
+            queue.add(new Update(3, "ADD"));
+
+            /* the level itself and one per thread */
+            assertEquals(1 + 1, debugCounterService.getCounterHierarchy(counters.prefix, "switch-update-queue-depth").size());
+            assertEquals(2, depthTotal());
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!queue.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, depthTotal());
+        } finally {
+            release.countDown();
+            queue.stop();
+        }
+    }
+}
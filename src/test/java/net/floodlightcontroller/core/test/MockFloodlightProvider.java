@@ -61,6 +61,7 @@ import org.projectfloodlight.openflow.protocol.OFPacketIn;
 import org.projectfloodlight.openflow.protocol.OFType;
 
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.util.LoadMonitor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -398,6 +399,11 @@ public class MockFloodlightProvider implements IFloodlightModule, IFloodlightPro
         return null;
     }
 
+    @Override
+    public LoadMonitor getLoadMonitor() {
+        return null;
+    }
+
     @Override
     public RoleManager getRoleManager() {
         return null;
@@ -0,0 +1,115 @@
+package net.floodlightcontroller.core.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.floodlightcontroller.core.IListener;
+import net.floodlightcontroller.core.util.ListenerDispatcher.Chain;
+import net.floodlightcontroller.core.util.ListenerDispatcher.IChainClassifier;
+
+import org.junit.Test;
+
+public class ListenerDispatcherTest {
+    private static class Listener implements IListener<String> {
+        private final String name;
+        /* Bit i set: interested in chain i */
+        private final int chains;
+        private final int checks;
+
+        Listener(String name, int chains, int checks) {
+            this.name = name;
+            this.chains = chains;
+            this.checks = checks;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPrereq(String type, String name) {
+            return false;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPostreq(String type, String name) {
+            return false;
+        }
+    }
+
+    /* The filter is the listener's name; counts how often each is asked for */
+    private static class CountingClassifier implements IChainClassifier<Listener, Listener> {
+        final Map<String, Integer> calls = new HashMap<String, Integer>();
+
+        @Override
+        public int getChainCount() {
+            return 3;
+        }
+
+        @Override
+        public Listener getFilter(Listener listener) {
+            Integer n = calls.get(listener.name);
+            calls.put(listener.name, n == null ? 1 : n + 1);
+            return listener;
+        }
+
+        @Override
+        public boolean isInterested(Listener filter, int chain) {
+            return (filter.chains & (1 << chain)) != 0;
+        }
+
+        @Override
+        public boolean needsCheck(Listener filter, int chain) {
+            return (filter.checks & (1 << chain)) != 0;
+        }
+    }
+
+    @Test
+    public void testFiltersCachedWithChains() {
+        Listener a = new Listener("a", 0x3, 0x2);
+        Listener b = new Listener("b", 0x6, 0x0);
+        ListenerDispatcher<String, Listener> ld = new ListenerDispatcher<String, Listener>();
+        ld.addListener("t", a);
+        assertNull(ld.getChain(0));
+
+        CountingClassifier c = new CountingClassifier();
+        ld.setChainClassifier(c);
+        ld.addListener("t", b);
+        /* Once when the classifier is set, once when b is added */
+        assertEquals(Integer.valueOf(2), c.calls.get("a"));
+        assertEquals(Integer.valueOf(1), c.calls.get("b"));
+
+        Chain<Listener> chain0 = ld.getChain(0);
+        assertEquals(Collections.singletonList(a), chain0.getListeners());
+        assertEquals(Collections.singletonList(a), chain0.getFilters());
+        assertFalse(chain0.needsCheck());
+
+        Chain<Listener> chain1 = ld.getChain(1);
+        assertEquals(2, chain1.getListeners().size());
+        for (int i = 0; i < chain1.getListeners().size(); i++) {
+            assertSame(chain1.getListeners().get(i), chain1.getFilters().get(i));
+        }
+        assertTrue(chain1.needsCheck());
+
+        assertEquals(Collections.singletonList(b), ld.getChain(2).getListeners());
+        assertFalse(ld.getChain(2).needsCheck());
+
+        /* Reading the chains doesn't ask for the filters again */
+        for (int i = 0; i < 100; i++) {
+            ld.getChain(i % 3).getFilters();
+        }
+        assertEquals(Integer.valueOf(2), c.calls.get("a"));
+        assertEquals(Integer.valueOf(1), c.calls.get("b"));
+
+        ld.removeListener(a);
+        assertEquals(Arrays.asList(), ld.getChain(0).getListeners());
+        assertEquals(Arrays.asList(), ld.getChain(0).getFilters());
+        assertEquals(Collections.singletonList(b), ld.getChain(1).getFilters());
+        assertFalse(ld.getChain(1).needsCheck());
+    }
+}
@@ -0,0 +1,88 @@
+package net.floodlightcontroller.core.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+public class AllSwitchStatisticsResourceTest {
+
+    @Test
+    public void testRepliesBeforeDeadline() throws Exception {
+        final SettableFuture<List<OFStatsReply>> late = SettableFuture.create();
+        SettableFuture<List<OFStatsReply>> early = SettableFuture.create();
+        List<OFStatsReply> values = Collections.emptyList();
+        early.set(values);
+        Map<DatapathId, SettableFuture<List<OFStatsReply>>> futures =
+                new HashMap<DatapathId, SettableFuture<List<OFStatsReply>>>();
+        futures.put(DatapathId.of(1), early);
+        futures.put(DatapathId.of(2), late);
+
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // reply now
+                }
+                late.set(Collections.<OFStatsReply>emptyList());
+            }
+        }.start();
+
+        // The last reply ends the wait, not the deadline
+        long start = System.nanoTime();
+        Map<String, StatsReply> model =
+                AllSwitchStatisticsResource.collectReplies(futures, OFStatsType.PORT, 60000);
+        assertTrue(System.nanoTime() - start < 10000000000L);
+
+        assertEquals(2, model.size());
+        StatsReply reply = model.get(DatapathId.of(1).toString());
+        assertSame(values, reply.getValues());
+        assertEquals(OFStatsType.PORT, reply.getStatType());
+        assertNull(reply.getError());
+        assertNull(model.get(DatapathId.of(2).toString()).getError());
+    }
+
+    @Test
+    public void testTimeoutsAndFailures() throws Exception {
+        SettableFuture<List<OFStatsReply>> silent = SettableFuture.create();
+        SettableFuture<List<OFStatsReply>> failed = SettableFuture.create();
+        failed.setException(new IllegalStateException("disconnected"));
+        SettableFuture<List<OFStatsReply>> replied = SettableFuture.create();
+        replied.set(Collections.<OFStatsReply>emptyList());
+        Map<DatapathId, SettableFuture<List<OFStatsReply>>> futures =
+                new HashMap<DatapathId, SettableFuture<List<OFStatsReply>>>();
+        futures.put(DatapathId.of(1), silent);
+        futures.put(DatapathId.of(2), failed);
+        futures.put(DatapathId.of(3), replied);
+
+        Map<String, StatsReply> model =
+                AllSwitchStatisticsResource.collectReplies(futures, OFStatsType.FLOW, 100);
+
+        assertEquals(3, model.size());
+        StatsReply timedOut = model.get(DatapathId.of(1).toString());
+        assertEquals(AllSwitchStatisticsResource.TIMEOUT, timedOut.getError());
+        assertNull(timedOut.getValues());
+        assertTrue(silent.isCancelled());
+
+        StatsReply failure = model.get(DatapathId.of(2).toString());
+        assertNull(failure.getError());
+        assertNull(failure.getValues());
+
+        assertNull(model.get(DatapathId.of(3).toString()).getError());
+        assertTrue(model.get(DatapathId.of(3).toString()).getValues() != null);
+    }
+}
@@ -78,4 +78,31 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < 100000; n++) {
+                        c.increment();
+                    }
+                    c.add(5);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(8 * 100005L, c.getCounterValue());
+        assertTrue(c.getLastModified() > 0);
+        c.reset();
+        assertEquals(0L, c.getCounterValue());
+    }
 }
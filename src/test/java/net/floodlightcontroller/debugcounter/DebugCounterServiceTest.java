@@ -541,4 +541,52 @@ public class DebugCounterServiceTest {
         verifyCounters(expectedCounters, counterService.getAllCounterValues());
     }
 
+
+    @Test
+    public void testEpochs() {
+        counterService.registerModule("moduleA");
+        IDebugCounter foo = counterService.registerCounter("moduleA", "foo", "text");
+        IDebugCounter bar = counterService.registerCounter("moduleA", "foo/bar", "text");
+        foo.add(10);
+        bar.add(3);
+
+        long epoch = counterService.markEpoch();
+        foo.add(5);
+        IDebugCounter baz = counterService.registerCounter("moduleA", "baz", "text");
+        baz.add(2);
+        List<DebugCounterDelta> deltas = counterService.getCounterDeltas(epoch, "moduleA", null);
+        assertEquals(3, deltas.size());
+        assertEquals("baz", deltas.get(0).getCounterHierarchy());
+        assertEquals(2, deltas.get(0).getDelta());
+        assertEquals("foo", deltas.get(1).getCounterHierarchy());
+        assertEquals(5, deltas.get(1).getDelta());
+        assertEquals("foo/bar", deltas.get(2).getCounterHierarchy());
+        assertEquals(0, deltas.get(2).getDelta());
+        /* Nothing was reset */
+        assertEquals(15, foo.getCounterValue());
+
+        /* A reset shows as what was counted since */
+        bar.reset();
+        bar.increment();
+        deltas = counterService.getCounterDeltas(epoch, "moduleA", "foo/bar");
+        assertEquals(1, deltas.size());
+        assertEquals(1, deltas.get(0).getDelta());
+        /* Even once it has counted past where it started */
+        bar.add(4);
+        deltas = counterService.getCounterDeltas(epoch, "moduleA", "foo/bar");
+        assertEquals(5, bar.getCounterValue());
+        assertEquals(5, deltas.get(0).getDelta());
+        /* A hierarchy reset, too */
+        counterService.resetCounterHierarchy("moduleA", "foo");
+        foo.add(20);
+        deltas = counterService.getCounterDeltas(epoch, "moduleA", "foo");
+        assertEquals(20, deltas.get(0).getDelta());
+        assertEquals(0, deltas.get(1).getDelta());
+
+        assertTrue(counterService.getCounterDeltas(epoch + 1, "moduleA", null).isEmpty());
+        for (int i = 0; i < 8; i++) {
+            counterService.markEpoch();
+        }
+        assertTrue(counterService.getCounterDeltas(epoch, "moduleA", null).isEmpty());
+    }
 }
@@ -1,8 +1,11 @@
 package net.floodlightcontroller.debugcounter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -92,15 +95,40 @@ public class OFConnectionCountersTest extends FloodlightTestCase {
 
     @Test
     public void TestConnectionCounterRegistered(){
-        for(OFType oft : OFType.values()){
-            boolean found = false;
-            for(DebugCounterResource dcInfo : dc.getAllCounterValues()){
-                if(dcInfo.getCounterHierarchy().contains(oft.toString())){
-                    found = true;
-                }
+        // Only the levels of the connection until messages are counted
+        //
+        for(DebugCounterResource dcInfo : dc.getAllCounterValues()){
+            for(OFType oft : OFType.values()){
+                assertFalse(dcInfo.getCounterHierarchy().endsWith("/" + oft.toString()));
             }
-            assertEquals(true, found);
         }
+
+        OFHello hello = OFFactories.getFactory(OFVersion.OF_13).hello(new ArrayList<OFHelloElem>());
+        counters.updateReadStats(hello);
+        assertEquals(1, counters.getReadCount(OFType.HELLO));
+        assertEquals(0, counters.getWriteCount(OFType.HELLO));
+        List<DebugCounterResource> registered = dc.getCounterHierarchy(OFConnectionCounters.COUNTER_MODULE,
+                dpId.toString() + ":" + auxId.toString() + "/read/" + OFType.HELLO.toString());
+        assertEquals(1, registered.size());
+        assertEquals(Long.valueOf(1), registered.get(0).getCounterValue());
+        assertTrue(dc.getCounterHierarchy(OFConnectionCounters.COUNTER_MODULE,
+                dpId.toString() + ":" + auxId.toString() + "/write/" + OFType.HELLO.toString()).isEmpty());
+    }
+
+    @Test
+    public void TestConnectionCounterResetAndUninstall(){
+        OFHello hello = OFFactories.getFactory(OFVersion.OF_13).hello(new ArrayList<OFHelloElem>());
+        String connection = dpId.toString() + ":" + auxId.toString();
+        counters.updateWriteStats(hello);
+        counters.updateWriteStats(hello);
+        dc.resetCounterHierarchy(OFConnectionCounters.COUNTER_MODULE, connection);
+        counters.updateWriteStats(hello);
+        validateCounter(OFType.HELLO.toString(), 1);
+        assertEquals(3, counters.getWriteCount(OFType.HELLO));
+
+        counters.uninstallCounters();
+        counters.updateWriteStats(hello);
+        assertTrue(dc.getCounterHierarchy(OFConnectionCounters.COUNTER_MODULE, connection).isEmpty());
     }
 
     /**
@@ -73,20 +73,21 @@ public class DebugEventTest extends FloodlightTestCase {
         assertEquals(true, debugEvent.containsModuleEventName("dbgevtest","switchevent"));
         assertEquals(true, debugEvent.containsModuleEventName("dbgevtest","pktinevent"));
 
-        assertEquals(0, debugEvent.allEvents.get(eventId1).circularEventBuffer.size());
-        assertEquals(0, debugEvent.allEvents.get(eventId2).circularEventBuffer.size());
+        assertEquals(0, debugEvent.allEvents.get(eventId1).eventRing.size());
+        assertEquals(0, debugEvent.allEvents.get(eventId2).eventRing.size());
 
         // update is immediately flushed to global store
         event1.newEventWithFlush(new SwitchyEvent(DatapathId.of(1L), "connected"));
-        assertEquals(1, debugEvent.allEvents.get(eventId1).circularEventBuffer.size());
+        assertEquals(1, debugEvent.allEvents.get(eventId1).eventRing.size());
 
-        // update is flushed only when flush is explicitly called
+        // events are no longer held thread-locally, so an update without
+        // flush is in the global store right away too
         event2.newEventNoFlush(new PacketyEvent(DatapathId.of(1L), 24L));
-        assertEquals(0, debugEvent.allEvents.get(eventId2).circularEventBuffer.size());
+        assertEquals(1, debugEvent.allEvents.get(eventId2).eventRing.size());
 
         debugEvent.flushEvents();
-        assertEquals(1, debugEvent.allEvents.get(eventId1).circularEventBuffer.size());
-        assertEquals(1, debugEvent.allEvents.get(eventId2).circularEventBuffer.size());
+        assertEquals(1, debugEvent.allEvents.get(eventId1).eventRing.size());
+        assertEquals(1, debugEvent.allEvents.get(eventId2).eventRing.size());
 
         EventInfoResource de = debugEvent.getSingleEventHistory("dbgevtest","switchevent", 100);
         assertEquals(1, de.events.size());
@@ -0,0 +1,97 @@
+package net.floodlightcontroller.debugevent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class EventRingTest {
+
+    @Test
+    public void testWrapAround() {
+        EventRing ring = new EventRing(5);
+        assertEquals(0, ring.size());
+        assertTrue(ring.snapshot(10).isEmpty());
+
+        for (int i = 0; i < 12; i++) {
+            assertTrue(ring.add(i, Thread.currentThread(), i));
+        }
+        assertEquals(5, ring.size());
+        List<Event> events = ring.snapshot(10);
+        assertEquals(5, events.size());
+        for (int i = 0; i < 5; i++) {
+            // newest first
+            assertEquals(11 - i, events.get(i).geteventData());
+            assertEquals(11 - i, events.get(i).getTimeMs());
+            assertEquals(Thread.currentThread().getId(),
+                         events.get(i).getThreadId());
+        }
+        assertTrue(events.get(0).getEventInstanceId()
+                   < events.get(1).getEventInstanceId());
+        assertEquals(2, ring.snapshot(2).size());
+
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertTrue(ring.snapshot(10).isEmpty());
+        ring.add(12, Thread.currentThread(), 12);
+        assertEquals(1, ring.snapshot(10).size());
+    }
+
+    @Test
+    public void testAck() {
+        EventRing ring = new EventRing(3);
+        ring.add(0, Thread.currentThread(), "a");
+        ring.add(1, Thread.currentThread(), "b");
+        long id = ring.snapshot(3).get(1).getEventInstanceId();
+        ring.setAck(id, true);
+        List<Event> events = ring.snapshot(3);
+        assertFalse(events.get(0).isAcked());
+        assertTrue(events.get(1).isAcked());
+
+        // Acking an event that was overwritten does nothing
+        for (int i = 2; i < 5; i++) {
+            ring.add(i, Thread.currentThread(), i);
+        }
+        ring.setAck(id, true);
+        for (Event e : ring.snapshot(3)) {
+            assertFalse(e.isAcked());
+        }
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final EventRing ring = new EventRing(1000);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int t = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < 100000; n++) {
+                        ring.add(n, this, t * 100000 + n);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        List<Event> events = ring.snapshot(1000);
+        assertTrue(events.size() > 0);
+        assertTrue(events.size() <= 1000);
+        Set<Object> seen = new HashSet<Object>();
+        for (Event e : events) {
+            // every event is whole: its fields come from one add
+            int data = (Integer) e.geteventData();
+            assertEquals(data % 100000, e.getTimeMs());
+            assertEquals(threads[data / 100000].getId(), e.getThreadId());
+            assertTrue(seen.add(e.geteventData()));
+        }
+    }
+}
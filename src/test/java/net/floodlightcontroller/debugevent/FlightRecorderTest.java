@@ -0,0 +1,153 @@
+package net.floodlightcontroller.debugevent;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+
+import net.floodlightcontroller.debugevent.IDebugEventService.EventColumn;
+import net.floodlightcontroller.debugevent.IDebugEventService.EventFieldType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+public class FlightRecorderTest {
+    private File file;
+    private File prev;
+
+    public static class LinkyEvent {
+        @EventColumn(name = "dpid", description = EventFieldType.DPID)
+        DatapathId dpid;
+
+        @EventColumn(name = "port", description = EventFieldType.PRIMITIVE)
+        int port;
+
+        @EventColumn(name = "mac", description = EventFieldType.MAC)
+        long mac;
+
+        @EventColumn(name = "ip", description = EventFieldType.IPv4)
+        int ip;
+
+        @EventColumn(name = "reason", description = EventFieldType.STRING)
+        String reason;
+
+        public LinkyEvent(DatapathId dpid, int port, String reason) {
+            this.dpid = dpid;
+            this.port = port;
+            this.mac = 0x0a0b0c0d0e0fL;
+            this.ip = 0x0a000001;
+            this.reason = reason;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("flightrecorder", ".rec");
+        prev = new File(file.getPath() + ".prev");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        prev.delete();
+    }
+
+    private String read(File f) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new FlightRecorderReader(f).print(new PrintStream(bytes, true));
+        return bytes.toString();
+    }
+
+    @Test
+    public void testRecordAndRead() throws Exception {
+        FlightRecorder fr = new FlightRecorder(file, 1024 * 1024);
+        FlightRecorder.EventSchema schema =
+                fr.addCategory(7, "linkdiscovery", "link", LinkyEvent.class);
+        fr.recordEvent(schema, 1000, new LinkyEvent(DatapathId.of(1), 3, "up"));
+
+        OFMessage m = createMock(OFMessage.class);
+        expect(m.getVersion()).andReturn(OFVersion.OF_13).anyTimes();
+        expect(m.getType()).andReturn(OFType.ECHO_REQUEST).anyTimes();
+        expect(m.getXid()).andReturn(42L).anyTimes();
+        replay(m);
+        fr.recordMessage(1, (short) 0, true, m);
+
+        // A long string is cut to fit its record
+        StringBuilder reason = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            reason.append('x');
+        }
+        fr.recordEvent(schema, 2000, new LinkyEvent(DatapathId.of(2), 4, reason.toString()));
+        fr.close();
+
+        String[] lines = read(file).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[1], lines[1].contains("linkdiscovery/link dpid=00:00:00:00:00:00:00:01 "
+                + "port=3 mac=0a:0b:0c:0d:0e:0f ip=10.0.0.1 reason=\"up\""));
+        assertTrue(lines[2], lines[2].contains("OF out 00:00:00:00:00:00:00:01/0 OF_13 ECHO_REQUEST xid=42"));
+        assertTrue(lines[3], lines[3].contains("dpid=00:00:00:00:00:00:00:02 port=4"));
+        assertTrue(lines[3], lines[3].endsWith(" ..."));
+
+        // A new recorder keeps the last recording
+        fr = new FlightRecorder(file, 1024 * 1024);
+        fr.close();
+        assertEquals(1, read(file).split("\n").length);
+        assertEquals(4, read(prev).split("\n").length);
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        FlightRecorder fr = new FlightRecorder(file,
+                FlightRecorder.HEADER_SIZE + 4 * FlightRecorder.SLOT_SIZE);
+        FlightRecorder.EventSchema schema =
+                fr.addCategory(1, "test", "int", LinkyEvent.class);
+        for (int i = 0; i < 10; i++) {
+            fr.recordEvent(schema, i, new LinkyEvent(DatapathId.of(i), i, "r"));
+        }
+        fr.close();
+
+        String[] lines = read(file).split("\n");
+        assertEquals(5, lines.length);
+        for (int i = 0; i < 4; i++) {
+            // oldest first
+            assertTrue(lines[i + 1], lines[i + 1].contains(" port=" + (6 + i) + " "));
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        FlightRecorder fr = new FlightRecorder(file,
+                FlightRecorder.HEADER_SIZE + 4 * FlightRecorder.SLOT_SIZE);
+        FlightRecorder.EventSchema schema =
+                fr.addCategory(1, "test", "int", LinkyEvent.class);
+        for (int i = 0; i < 3; i++) {
+            fr.recordEvent(schema, i, new LinkyEvent(DatapathId.of(i), i, "r"));
+        }
+        fr.close();
+
+        // As if the crash came before the payload of the second record
+        // reached the file, though its sequence number did
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(FlightRecorder.HEADER_SIZE + FlightRecorder.SLOT_SIZE
+                     + FlightRecorder.OFF_PAYLOAD + 1);
+            raf.writeLong(0);
+        }
+
+        String[] lines = read(file).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[1], lines[1].contains(" port=0 "));
+        assertTrue(lines[2], lines[2].contains(" port=2 "));
+        assertEquals("# 1 records were being written and are left out", lines[3]);
+    }
+}
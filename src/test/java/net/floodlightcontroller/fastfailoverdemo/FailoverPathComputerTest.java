@@ -0,0 +1,98 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.routing.Link;
+
+public class FailoverPathComputerTest {
+	private static final DatapathId s1 = DatapathId.of(1);
+	private static final DatapathId s2a = DatapathId.of(0x2a);
+	private static final DatapathId s2b = DatapathId.of(0x2b);
+	private static final DatapathId s3 = DatapathId.of(3);
+
+	/* Add both directions of a physical link */
+	private static void addLink(List<Link> links, DatapathId a, int aPort, DatapathId b, int bPort) {
+		links.add(new Link(a, OFPort.of(aPort), b, OFPort.of(bPort)));
+		links.add(new Link(b, OFPort.of(bPort), a, OFPort.of(aPort)));
+	}
+
+	/*
+	 * The FastFailoverDemo diamond:
+	 *     2a
+	 *    /  \
+	 *   1    3
+	 *    \  /
+	 *     2b
+	 */
+	private static List<Link> diamond() {
+		List<Link> links = new ArrayList<Link>();
+		addLink(links, s1, 1, s2a, 1);
+		addLink(links, s1, 2, s2b, 1);
+		addLink(links, s2a, 2, s3, 1);
+		addLink(links, s2b, 2, s3, 2);
+		return links;
+	}
+
+	@Test
+	public void testDiamondEdgesAreProtected() {
+		Map<DatapathId, Map<DatapathId, FailoverNextHop>> hops = new FailoverPathComputer(diamond()).compute();
+
+		FailoverNextHop hop = hops.get(s1).get(s3);
+		assertNotNull(hop);
+		assertEquals(OFPort.of(1), hop.getPrimary().getSrcPort());
+		assertTrue(hop.isProtected());
+		assertEquals(OFPort.of(2), hop.getBackup().getSrcPort());
+
+		hop = hops.get(s3).get(s1);
+		assertNotNull(hop);
+		assertEquals(OFPort.of(1), hop.getPrimary().getSrcPort());
+		assertTrue(hop.isProtected());
+		assertEquals(OFPort.of(2), hop.getBackup().getSrcPort());
+	}
+
+	@Test
+	public void testNoBackupThatLoops() {
+		Map<DatapathId, Map<DatapathId, FailoverNextHop>> hops = new FailoverPathComputer(diamond()).compute();
+
+		/*
+		 * 2a's only alternative towards 3 is back through 1, which would
+		 * send the packet right back to 2a. That is not loop-free.
+		 */
+		FailoverNextHop hop = hops.get(s2a).get(s3);
+		assertNotNull(hop);
+		assertEquals(s3, hop.getPrimary().getDst());
+		assertFalse(hop.isProtected());
+	}
+
+	@Test
+	public void testParallelLinksProtectEachOther() {
+		List<Link> links = new ArrayList<Link>();
+		addLink(links, s1, 1, s3, 1);
+		addLink(links, s1, 2, s3, 2);
+
+		Map<DatapathId, Map<DatapathId, FailoverNextHop>> hops = new FailoverPathComputer(links).compute();
+		FailoverNextHop hop = hops.get(s1).get(s3);
+		assertEquals(OFPort.of(1), hop.getPrimary().getSrcPort());
+		assertEquals(OFPort.of(2), hop.getBackup().getSrcPort());
+	}
+
+	@Test
+	public void testUnreachable() {
+		List<Link> links = new ArrayList<Link>();
+		addLink(links, s1, 1, s2a, 1);
+		addLink(links, s2b, 1, s3, 1);
+
+		Map<DatapathId, Map<DatapathId, FailoverNextHop>> hops = new FailoverPathComputer(links).compute();
+		assertNotNull(hops.get(s1).get(s2a));
+		assertNull(hops.get(s1).get(s3));
+		assertNull(hops.get(s3).get(s1));
+	}
+}
@@ -0,0 +1,334 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowModifyStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupAdd;
+import org.projectfloodlight.openflow.protocol.OFGroupDescStatsReply;
+import org.projectfloodlight.openflow.protocol.OFGroupDescStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionGroup;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionApplyActions;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.util.concurrent.Futures;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.PortChangeType;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
+import net.floodlightcontroller.linkdiscovery.LinkInfo;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.topology.ITopologyService;
+
+public class FastFailoverGroupCompilerTest {
+	private static final DatapathId s1 = DatapathId.of(1);
+	private static final DatapathId s2a = DatapathId.of(0x2a);
+	private static final DatapathId s2b = DatapathId.of(0x2b);
+	private static final DatapathId s3 = DatapathId.of(3);
+	private static final MacAddress h1 = MacAddress.of("00:00:00:00:00:01");
+	private static final MacAddress h3 = MacAddress.of("00:00:00:00:00:03");
+
+	private FastFailoverGroupCompiler compiler;
+	private Map<DatapathId, IOFSwitch> switches;
+	private Map<DatapathId, Capture<Iterable<OFMessage>>> writes;
+	private Map<DatapathId, Capture<OFFlowStatsRequest>> seeds;
+	private Map<Link, LinkInfo> links;
+	private List<IDevice> devices;
+
+	@Before
+	public void setUp() {
+		compiler = new FastFailoverGroupCompiler();
+		switches = new HashMap<DatapathId, IOFSwitch>();
+		writes = new HashMap<DatapathId, Capture<Iterable<OFMessage>>>();
+		seeds = new HashMap<DatapathId, Capture<OFFlowStatsRequest>>();
+		links = new HashMap<Link, LinkInfo>();
+		devices = new ArrayList<IDevice>();
+
+		/*
+		 * The FastFailoverDemo diamond, with a host on each edge switch:
+		 *     2a
+		 *    /  \
+		 *   1    3
+		 *    \  /
+		 *     2b
+		 */
+		addLink(s1, 1, s2a, 1);
+		addLink(s1, 2, s2b, 1);
+		addLink(s2a, 2, s3, 1);
+		addLink(s2b, 2, s3, 2);
+		devices.add(host(h1, s1, 10));
+		devices.add(host(h3, s3, 10));
+	}
+
+	private void addLink(DatapathId a, int aPort, DatapathId b, int bPort) {
+		links.put(new Link(a, OFPort.of(aPort), b, OFPort.of(bPort)), new LinkInfo());
+		links.put(new Link(b, OFPort.of(bPort), a, OFPort.of(aPort)), new LinkInfo());
+	}
+
+	private IDevice host(MacAddress mac, DatapathId dpid, int port) {
+		IDevice device = createMock(IDevice.class);
+		expect(device.getMACAddress()).andReturn(mac).anyTimes();
+		expect(device.getAttachmentPoints()).andReturn(new SwitchPort[] { new SwitchPort(dpid, OFPort.of(port)) }).anyTimes();
+		replay(device);
+		return device;
+	}
+
+	private void addSwitch(DatapathId dpid, OFVersion version) {
+		Capture<Iterable<OFMessage>> written = new Capture<Iterable<OFMessage>>(CaptureType.ALL);
+		Capture<OFFlowStatsRequest> seeded = new Capture<OFFlowStatsRequest>(CaptureType.ALL);
+		IOFSwitch sw = createNiceMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(dpid).anyTimes();
+		expect(sw.getOFFactory()).andReturn(OFFactories.getFactory(version)).anyTimes();
+		/* The switch has nothing of ours installed yet */
+		expect(sw.writeStatsRequest(and(isA(OFFlowStatsRequest.class), capture(seeded))))
+				.andReturn(Futures.immediateFuture(Collections.<OFFlowStatsReply>emptyList())).anyTimes();
+		expect(sw.writeStatsRequest(isA(OFGroupDescStatsRequest.class)))
+				.andReturn(Futures.immediateFuture(Collections.<OFGroupDescStatsReply>emptyList())).anyTimes();
+		sw.write(capture(written));
+		expectLastCall().anyTimes();
+		replay(sw);
+		switches.put(dpid, sw);
+		writes.put(dpid, written);
+		seeds.put(dpid, seeded);
+	}
+
+	private void startUp() throws Exception {
+		IOFSwitchService switchService = createNiceMock(IOFSwitchService.class);
+		expect(switchService.getAllSwitchDpids()).andReturn(switches.keySet()).anyTimes();
+		for (Map.Entry<DatapathId, IOFSwitch> e : switches.entrySet()) {
+			expect(switchService.getActiveSwitch(e.getKey())).andReturn(e.getValue()).anyTimes();
+		}
+		ILinkDiscoveryService linkDiscoveryService = createNiceMock(ILinkDiscoveryService.class);
+		expect(linkDiscoveryService.getLinks()).andReturn(links).anyTimes();
+		IDeviceService deviceService = createNiceMock(IDeviceService.class);
+		EasyMock.<Collection<? extends IDevice>>expect(deviceService.getAllDevices()).andReturn(devices).anyTimes();
+		/* Scheduled compiles never run; the tests call compile() themselves */
+		IThreadPoolService threadPoolService = createNiceMock(IThreadPoolService.class);
+		expect(threadPoolService.getScheduledExecutor()).andReturn(createNiceMock(ScheduledExecutorService.class)).anyTimes();
+		ITopologyService topologyService = createNiceMock(ITopologyService.class);
+		replay(switchService, linkDiscoveryService, deviceService, threadPoolService, topologyService);
+
+		FloodlightModuleContext fmc = new FloodlightModuleContext();
+		fmc.addService(IOFSwitchService.class, switchService);
+		fmc.addService(ILinkDiscoveryService.class, linkDiscoveryService);
+		fmc.addService(ITopologyService.class, topologyService);
+		fmc.addService(IDeviceService.class, deviceService);
+		fmc.addService(IThreadPoolService.class, threadPoolService);
+		compiler.init(fmc);
+		compiler.startUp(fmc);
+	}
+
+	private void addAllSwitches(OFVersion s1Version) throws Exception {
+		addSwitch(s1, s1Version);
+		addSwitch(s2a, OFVersion.OF_13);
+		addSwitch(s2b, OFVersion.OF_13);
+		addSwitch(s3, OFVersion.OF_13);
+		startUp();
+	}
+
+	/* @return what was written to the switch since the last call */
+	private List<OFMessage> written(DatapathId dpid) {
+		Capture<Iterable<OFMessage>> c = writes.get(dpid);
+		List<OFMessage> msgs = new ArrayList<OFMessage>();
+		if (c.hasCaptured()) {
+			for (Iterable<OFMessage> batch : c.getValues()) {
+				for (OFMessage m : batch) {
+					msgs.add(m);
+				}
+			}
+		}
+		c.reset();
+		return msgs;
+	}
+
+	private static Map<OFGroup, OFGroupAdd> groupsIn(List<OFMessage> msgs) {
+		Map<OFGroup, OFGroupAdd> groups = new HashMap<OFGroup, OFGroupAdd>();
+		for (OFMessage m : msgs) {
+			if (m instanceof OFGroupAdd) {
+				groups.put(((OFGroupAdd) m).getGroup(), (OFGroupAdd) m);
+			}
+		}
+		return groups;
+	}
+
+	private static Map<MacAddress, OFFlowMod> flowsIn(List<OFMessage> msgs) {
+		Map<MacAddress, OFFlowMod> flows = new HashMap<MacAddress, OFFlowMod>();
+		for (OFMessage m : msgs) {
+			if (m instanceof OFFlowMod) {
+				flows.put(((OFFlowMod) m).getMatch().get(MatchField.ETH_DST), (OFFlowMod) m);
+			}
+		}
+		return flows;
+	}
+
+	private static OFAction actionOf(OFFlowMod fm) {
+		List<OFAction> actions = fm.getVersion() == OFVersion.OF_10
+				? fm.getActions()
+				: ((OFInstructionApplyActions) fm.getInstructions().get(0)).getActions();
+		assertEquals(1, actions.size());
+		return actions.get(0);
+	}
+
+	private static OFPort outputOf(OFFlowMod fm) {
+		return ((OFActionOutput) actionOf(fm)).getPort();
+	}
+
+	private static OFGroup groupOf(OFFlowMod fm) {
+		return ((OFActionGroup) actionOf(fm)).getGroup();
+	}
+
+	@Test
+	public void testGroupsAndFlowsPerSwitch() throws Exception {
+		addAllSwitches(OFVersion.OF_13);
+		compiler.compile();
+
+		List<OFMessage> msgs = written(s1);
+		Map<OFGroup, OFGroupAdd> groups = groupsIn(msgs);
+		Map<MacAddress, OFFlowMod> flows = flowsIn(msgs);
+		/* One group per other switch, then a barrier, then one flow per host */
+		assertEquals(3, groups.size());
+		assertEquals(2, flows.size());
+		assertEquals(6, msgs.size());
+		assertTrue(msgs.get(3) instanceof OFBarrierRequest);
+
+		assertEquals(OFPort.of(10), outputOf(flows.get(h1)));
+		OFGroup toS3 = groupOf(flows.get(h3));
+		assertTrue(toS3.getGroupNumber() >= FastFailoverGroupCompiler.GROUP_ID_BASE);
+		OFGroupAdd group = groups.get(toS3);
+		assertEquals(OFGroupType.FF, group.getGroupType());
+		assertEquals(2, group.getBuckets().size());
+		assertEquals(OFPort.of(1), group.getBuckets().get(0).getWatchPort());
+		assertEquals(OFPort.of(2), group.getBuckets().get(1).getWatchPort());
+
+		/* Group IDs are per destination, and the same on every switch */
+		Map<MacAddress, OFFlowMod> s2aFlows = flowsIn(written(s2a));
+		assertEquals(toS3, groupOf(s2aFlows.get(h3)));
+		Map<MacAddress, OFFlowMod> s3Flows = flowsIn(written(s3));
+		assertEquals(OFPort.of(10), outputOf(s3Flows.get(h3)));
+		assertFalse(toS3.equals(groupOf(s3Flows.get(h1))));
+		assertTrue(groups.containsKey(groupOf(s2aFlows.get(h1))));
+	}
+
+	@Test
+	public void testOnlyChangedSwitchesAreReprogrammed() throws Exception {
+		addAllSwitches(OFVersion.OF_13);
+		compiler.compile();
+		for (DatapathId dpid : switches.keySet()) {
+			assertFalse(written(dpid).isEmpty());
+		}
+
+		/* Nothing changed: neither asked nor told anything */
+		compiler.compile();
+		for (DatapathId dpid : switches.keySet()) {
+			assertTrue(written(dpid).isEmpty());
+			assertEquals(1, seeds.get(dpid).getValues().size());
+		}
+
+		/* h3 moves to another port of s3. The other switches still send to s3's group. */
+		devices.set(1, host(h3, s3, 11));
+		compiler.compile();
+		List<OFMessage> msgs = written(s3);
+		assertEquals(1, msgs.size());
+		assertTrue(msgs.get(0) instanceof OFFlowModifyStrict);
+		assertEquals(OFPort.of(11), outputOf((OFFlowMod) msgs.get(0)));
+		assertTrue(written(s1).isEmpty());
+		assertTrue(written(s2a).isEmpty());
+		assertTrue(written(s2b).isEmpty());
+	}
+
+	@Test
+	public void testRemovedSwitchIsReprogrammed() throws Exception {
+		addAllSwitches(OFVersion.OF_13);
+		compiler.compile();
+		List<OFMessage> first = written(s3);
+		for (DatapathId dpid : switches.keySet()) {
+			written(dpid);
+		}
+
+		compiler.switchRemoved(s3);
+		compiler.compile();
+		/* Asked again what it has, and given everything again */
+		assertEquals(2, seeds.get(s3).getValues().size());
+		List<OFMessage> again = written(s3);
+		assertEquals(first.size(), again.size());
+		assertEquals(groupsIn(first), groupsIn(again));
+		assertEquals(flowsIn(first), flowsIn(again));
+		assertEquals(1, seeds.get(s1).getValues().size());
+		assertTrue(written(s1).isEmpty());
+		assertTrue(written(s2a).isEmpty());
+		assertTrue(written(s2b).isEmpty());
+	}
+
+	@Test
+	public void testOF10SwitchGetsBackupFlows() throws Exception {
+		addAllSwitches(OFVersion.OF_10);
+		compiler.compile();
+
+		List<OFMessage> msgs = written(s1);
+		assertTrue(groupsIn(msgs).isEmpty());
+		Map<MacAddress, OFFlowMod> flows = flowsIn(msgs);
+		assertEquals(2, flows.size());
+		assertEquals(2, msgs.size()); /* no groups, so no barrier */
+		assertEquals(OFPort.of(10), outputOf(flows.get(h1)));
+		assertEquals(OFPort.of(1), outputOf(flows.get(h3)));
+
+		/* The primary port towards s3 goes down; the backup flow goes out right away */
+		OFPortDesc port = OFFactories.getFactory(OFVersion.OF_10).buildPortDesc()
+				.setPortNo(OFPort.of(1))
+				.setName("eth1")
+				.build();
+		compiler.switchPortChanged(s1, port, PortChangeType.DOWN);
+		msgs = written(s1);
+		assertEquals(1, msgs.size());
+		assertTrue(msgs.get(0) instanceof OFFlowModifyStrict);
+		OFFlowMod backup = (OFFlowMod) msgs.get(0);
+		assertEquals(h3, backup.getMatch().get(MatchField.ETH_DST));
+		assertEquals(OFPort.of(2), outputOf(backup));
+
+		/* A port without backup flows sends nothing */
+		compiler.switchPortChanged(s1, port.createBuilder().setPortNo(OFPort.of(10)).build(), PortChangeType.DOWN);
+		assertTrue(written(s1).isEmpty());
+
+		Set<DatapathId> others = new HashSet<DatapathId>(switches.keySet());
+		others.remove(s1);
+		for (DatapathId dpid : others) {
+			assertFalse(groupsIn(written(dpid)).isEmpty());
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
+import org.projectfloodlight.openflow.protocol.OFGroupAdd;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.util.FlowModUtils;
+
+public class FastRerouteTableTest {
+	private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_10);
+	private final DatapathId dpid = DatapathId.of(1);
+	private OFTableReconciler reconciler;
+	private FastRerouteTable table;
+	private List<OFMessage> backup;
+
+	@Before
+	public void setUp() {
+		reconciler = new OFTableReconciler(U64.ofRaw(0x1234), 1, 1);
+		table = new FastRerouteTable(reconciler);
+		backup = Collections.<OFMessage>singletonList(factory.buildFlowModifyStrict()
+				.setMatch(factory.buildMatch().build())
+				.build());
+	}
+
+	@Test
+	public void testPortDownSendsBackup() {
+		table.protect(dpid, OFPort.of(1), backup);
+		assertTrue(table.isProtected(dpid, OFPort.of(1)));
+
+		IOFSwitch sw = createMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(dpid).anyTimes();
+		sw.write(backup);
+		expectLastCall().once();
+		sw.flush();
+		expectLastCall().once();
+		replay(sw);
+
+		assertEquals(1, table.onPortDown(sw, OFPort.of(1)));
+		assertFalse(reconciler.isKnown(dpid));
+		verify(sw);
+	}
+
+	private OFFlowAdd primary(int outPort) {
+		return factory.buildFlowAdd()
+				.setCookie(U64.ofRaw(0x1234))
+				.setPriority(100)
+				.setMatch(factory.buildMatch()
+						.setExact(MatchField.IN_PORT, OFPort.of(3))
+						.build())
+				.setActions(Collections.singletonList((OFAction) factory.actions().output(OFPort.of(outPort), 0xffFF)))
+				.build();
+	}
+
+	@Test
+	public void testPrimaryRestoredAfterBackup() {
+		List<OFFlowAdd> primaries = Collections.singletonList(primary(1));
+		table.protect(dpid, OFPort.of(1), Collections.<OFMessage>singletonList(FlowModUtils.toFlowModifyStrict(primary(2))));
+
+		Capture<Iterable<OFMessage>> written = new Capture<Iterable<OFMessage>>(CaptureType.ALL);
+		IOFSwitch sw = createMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(dpid).anyTimes();
+		expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+		sw.write(capture(written));
+		expectLastCall().anyTimes();
+		sw.flush();
+		expectLastCall().anyTimes();
+		replay(sw);
+
+		/* Primary flows in place */
+		reconciler.reconcile(sw, Collections.<OFGroupAdd>emptyList(), primaries);
+		assertEquals(0, reconciler.reconcile(sw, Collections.<OFGroupAdd>emptyList(), primaries));
+
+		/* Port down: backup flows replace the primary flows behind the reconciler's back */
+		assertEquals(1, table.onPortDown(sw, OFPort.of(1)));
+		assertFalse(reconciler.isKnown(dpid));
+
+		/* Toggle and port up: the primary flows must be sent again */
+		written.reset();
+		assertTrue(reconciler.reconcile(sw, Collections.<OFGroupAdd>emptyList(), primaries) > 0);
+		boolean restored = false;
+		for (OFMessage m : written.getValue()) {
+			restored |= m.equals(primary(1));
+		}
+		assertTrue(restored);
+		verify(sw);
+	}
+
+	@Test
+	public void testUnprotectedPortSendsNothing() {
+		table.protect(dpid, OFPort.of(1), backup);
+
+		IOFSwitch sw = createMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(dpid).anyTimes();
+		replay(sw);
+
+		assertEquals(0, table.onPortDown(sw, OFPort.of(2)));
+		assertEquals(0, table.onPortDown(null, OFPort.of(1)));
+		verify(sw);
+	}
+
+	@Test
+	public void testClear() {
+		table.protect(dpid, OFPort.of(1), backup);
+		table.protect(dpid, OFPort.of(2), backup);
+		table.protect(DatapathId.of(2), OFPort.of(1), backup);
+		table.clear(dpid);
+		assertFalse(table.isProtected(dpid, OFPort.of(1)));
+		assertFalse(table.isProtected(dpid, OFPort.of(2)));
+		assertTrue(table.isProtected(DatapathId.of(2), OFPort.of(1)));
+
+		table.protect(DatapathId.of(2), OFPort.of(1), Collections.<OFMessage>emptyList());
+		assertFalse(table.isProtected(DatapathId.of(2), OFPort.of(1)));
+	}
+}
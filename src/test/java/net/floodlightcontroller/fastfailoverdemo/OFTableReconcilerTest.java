@@ -0,0 +1,284 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
+import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowModifyStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupAdd;
+import org.projectfloodlight.openflow.protocol.OFGroupDescStatsReply;
+import org.projectfloodlight.openflow.protocol.OFGroupDescStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupModify;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import com.google.common.util.concurrent.Futures;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+public class OFTableReconcilerTest {
+	private static final U64 cookie = U64.ofRaw(0x1234);
+	private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+	private OFTableReconciler reconciler;
+	private IOFSwitch sw;
+	private Capture<Iterable<OFMessage>> written;
+
+	@Before
+	public void setUp() {
+		reconciler = new OFTableReconciler(cookie, 1, 10);
+		written = new Capture<Iterable<OFMessage>>(CaptureType.ALL);
+		sw = createMock(IOFSwitch.class);
+		expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+		expect(sw.getId()).andReturn(DatapathId.of(1)).anyTimes();
+		sw.write(capture(written));
+		expectLastCall().anyTimes();
+		replay(sw);
+	}
+
+	private OFFlowAdd flow(int inPort, int outPort) {
+		return factory.buildFlowAdd()
+				.setCookie(cookie)
+				.setPriority(100)
+				.setMatch(factory.buildMatch()
+						.setExact(MatchField.IN_PORT, OFPort.of(inPort))
+						.build())
+				.setActions(Collections.singletonList((OFAction) factory.actions().output(OFPort.of(outPort), 0xffff)))
+				.build();
+	}
+
+	private OFGroupAdd group(int id, int port) {
+		return factory.buildGroupAdd()
+				.setGroup(OFGroup.of(id))
+				.setGroupType(OFGroupType.FF)
+				.setBuckets(Collections.singletonList(factory.buildBucket()
+						.setWatchPort(OFPort.of(port))
+						.setWatchGroup(OFGroup.ZERO)
+						.setActions(Collections.singletonList((OFAction) factory.actions().output(OFPort.of(port), 0xffff)))
+						.build()))
+				.build();
+	}
+
+	private List<OFType> types(Iterable<OFMessage> msgs) {
+		List<OFType> types = new ArrayList<OFType>();
+		for (OFMessage m : msgs) {
+			types.add(m.getType());
+		}
+		return types;
+	}
+
+	@Test
+	public void testUnknownSwitchIsReplaced() {
+		assertFalse(reconciler.isKnown(sw.getId()));
+		reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), Collections.singletonList(flow(1, 2)));
+
+		assertTrue(reconciler.isKnown(sw.getId()));
+		List<OFType> types = types(written.getValue());
+		assertEquals(OFType.FLOW_MOD, types.get(0)); /* delete by cookie */
+		assertTrue(types.contains(OFType.BARRIER_REQUEST));
+		assertTrue(types.contains(OFType.GROUP_MOD));
+	}
+
+	@Test
+	public void testUnknownOF10SwitchIsNotWiped() {
+		OFFactory factory10 = OFFactories.getFactory(OFVersion.OF_10);
+		IOFSwitch sw10 = createMock(IOFSwitch.class);
+		expect(sw10.getOFFactory()).andReturn(factory10).anyTimes();
+		expect(sw10.getId()).andReturn(DatapathId.of(2)).anyTimes();
+		sw10.write(capture(written));
+		expectLastCall().anyTimes();
+		replay(sw10);
+
+		OFFlowAdd f = factory10.buildFlowAdd()
+				.setCookie(cookie)
+				.setPriority(100)
+				.setMatch(factory10.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(1)).build())
+				.build();
+		/* No cookie-less delete of every flow; the add replaces our old copy */
+		assertEquals(1, reconciler.reconcile(sw10, Collections.<OFGroupAdd>emptyList(), Collections.singletonList(f)));
+		assertEquals(f, written.getValue().iterator().next());
+	}
+
+	@Test
+	public void testOnlyChangesAreSent() {
+		List<OFFlowAdd> flows = new ArrayList<OFFlowAdd>();
+		flows.add(flow(1, 2));
+		flows.add(flow(2, 1));
+		flows.add(flow(3, 1));
+		reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), flows);
+		written.reset();
+
+		/* unchanged, changed, removed */
+		flows.clear();
+		flows.add(flow(1, 2));
+		flows.add(flow(2, 3));
+		assertEquals(2, reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), flows));
+
+		List<OFMessage> msgs = new ArrayList<OFMessage>();
+		for (OFMessage m : written.getValue()) {
+			msgs.add(m);
+		}
+		assertEquals(2, msgs.size());
+		assertTrue(msgs.get(0) instanceof OFFlowModifyStrict);
+		assertTrue(msgs.get(1) instanceof OFFlowDeleteStrict);
+	}
+
+	@Test
+	public void testGroupChangeIsModify() {
+		reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), Collections.<OFFlowAdd>emptyList());
+		written.reset();
+
+		assertEquals(1, reconciler.reconcile(sw, Collections.singletonList(group(1, 2)), Collections.<OFFlowAdd>emptyList()));
+		OFMessage m = written.getValue().iterator().next();
+		assertTrue(m instanceof OFGroupModify);
+	}
+
+	@Test
+	public void testGroupsAddedBeforeFlows() {
+		reconciler.reconcile(sw, Collections.<OFGroupAdd>emptyList(), Collections.singletonList(flow(1, 2)));
+		written.reset();
+
+		reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), Collections.singletonList(flow(1, 2)));
+		List<OFType> types = types(written.getValue());
+		assertEquals(2, types.size());
+		assertEquals(OFType.GROUP_MOD, types.get(0));
+		assertEquals(OFType.BARRIER_REQUEST, types.get(1));
+	}
+
+	private OFFlowAdd ipFlow(Match match) {
+		return factory.buildFlowAdd()
+				.setCookie(cookie)
+				.setPriority(100)
+				.setTableId(TableId.of(0))
+				.setMatch(match)
+				.setActions(Collections.singletonList((OFAction) factory.actions().output(OFPort.of(2), 0xffff)))
+				.build();
+	}
+
+	private OFFlowStatsEntry installed(OFFlowAdd f, Match match) {
+		return factory.buildFlowStatsEntry()
+				.setCookie(f.getCookie())
+				.setPriority(f.getPriority())
+				.setTableId(f.getTableId())
+				.setMatch(match)
+				.setInstructions(f.getInstructions())
+				.build();
+	}
+
+	@Test
+	public void testEquivalentSeededMatch() throws Exception {
+		/* What we send, and the equivalent forms a switch reports back */
+		OFFlowAdd fullMask = ipFlow(factory.buildMatch()
+				.setExact(MatchField.ETH_TYPE, EthType.IPv4)
+				.setMasked(MatchField.IPV4_DST, IPv4Address.of("10.0.0.5"), IPv4Address.NO_MASK)
+				.setExact(MatchField.IP_PROTO, IpProtocol.TCP)
+				.setExact(MatchField.TCP_DST, TransportPort.of(80))
+				.build());
+		OFFlowAdd hostBits = ipFlow(factory.buildMatch()
+				.setExact(MatchField.ETH_TYPE, EthType.IPv4)
+				.setMasked(MatchField.IPV4_DST, IPv4Address.of("10.0.1.7"), IPv4Address.of("255.255.255.0"))
+				.build());
+		List<OFFlowStatsEntry> entries = new ArrayList<OFFlowStatsEntry>();
+		entries.add(installed(fullMask, factory.buildMatch()
+				.setExact(MatchField.ETH_TYPE, EthType.IPv4)
+				.setExact(MatchField.IP_PROTO, IpProtocol.TCP)
+				.setExact(MatchField.IPV4_DST, IPv4Address.of("10.0.0.5"))
+				.setExact(MatchField.TCP_DST, TransportPort.of(80))
+				.build()));
+		entries.add(installed(hostBits, factory.buildMatch()
+				.setExact(MatchField.ETH_TYPE, EthType.IPv4)
+				.setMasked(MatchField.IPV4_DST, IPv4Address.of("10.0.1.0"), IPv4Address.of("255.255.255.0"))
+				.build()));
+
+		IOFSwitch seeded = createMock(IOFSwitch.class);
+		expect(seeded.getOFFactory()).andReturn(factory).anyTimes();
+		expect(seeded.getId()).andReturn(DatapathId.of(2)).anyTimes();
+		expect(seeded.writeStatsRequest(isA(OFGroupDescStatsRequest.class)))
+				.andReturn(Futures.immediateFuture(Collections.<OFGroupDescStatsReply>emptyList()));
+		expect(seeded.writeStatsRequest(isA(OFFlowStatsRequest.class)))
+				.andReturn(Futures.immediateFuture(Collections.singletonList(
+						factory.buildFlowStatsReply().setEntries(entries).build())));
+		replay(seeded);
+
+		reconciler.seed(seeded).get();
+		List<OFFlowAdd> flows = new ArrayList<OFFlowAdd>();
+		flows.add(fullMask);
+		flows.add(hostBits);
+		/* Neither re-added nor deleted as stale */
+		assertEquals(0, reconciler.reconcile(seeded, Collections.<OFGroupAdd>emptyList(), flows));
+		verify(seeded);
+	}
+
+	@Test
+	public void testSeededMatchingStateSendsNothing() throws Exception {
+		OFFlowAdd f = flow(1, 2);
+		OFGroupAdd g = group(1, 1);
+
+		IOFSwitch seeded = createMock(IOFSwitch.class);
+		expect(seeded.getOFFactory()).andReturn(factory).anyTimes();
+		expect(seeded.getId()).andReturn(DatapathId.of(3)).anyTimes();
+		expect(seeded.writeStatsRequest(isA(OFGroupDescStatsRequest.class)))
+				.andReturn(Futures.immediateFuture(Collections.singletonList(
+						factory.buildGroupDescStatsReply()
+						.setEntries(Collections.singletonList(factory.buildGroupDescStatsEntry()
+								.setGroup(g.getGroup())
+								.setGroupType(g.getGroupType())
+								.setBuckets(g.getBuckets())
+								.build()))
+						.build())));
+		expect(seeded.writeStatsRequest(isA(OFFlowStatsRequest.class)))
+				.andReturn(Futures.immediateFuture(Collections.singletonList(
+						factory.buildFlowStatsReply()
+						.setEntries(Collections.singletonList(installed(f, f.getMatch())))
+						.build())));
+		replay(seeded);
+
+		reconciler.seed(seeded).get();
+		/* No write() expected; the mock fails if one is made */
+		assertEquals(0, reconciler.reconcile(seeded, Collections.singletonList(g), Collections.singletonList(f)));
+		assertTrue(reconciler.isKnown(seeded.getId()));
+		verify(seeded);
+	}
+
+	@Test
+	public void testNothingChanged() {
+		reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), Collections.singletonList(flow(1, 2)));
+		written.reset();
+
+		assertEquals(0, reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), Collections.singletonList(flow(1, 2))));
+		assertFalse(written.hasCaptured());
+	}
+
+	@Test
+	public void testForget() {
+		reconciler.reconcile(sw, Collections.singletonList(group(1, 1)), Collections.singletonList(flow(1, 2)));
+		reconciler.forget(sw.getId());
+		assertFalse(reconciler.isKnown(sw.getId()));
+	}
+}
@@ -0,0 +1,160 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
+import org.projectfloodlight.openflow.protocol.OFBundleAddMsg;
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlMsg;
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlType;
+import org.projectfloodlight.openflow.protocol.OFBundleFailedCode;
+import org.projectfloodlight.openflow.protocol.OFErrorMsg;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.OFErrorMsgException;
+
+public class SwitchoverTransactionTest {
+
+	private IOFSwitch createSwitch(OFFactory factory, Capture<Iterable<OFMessage>> written, SettableFuture<OFBarrierReply> barrier) {
+		IOFSwitch sw = createMock(IOFSwitch.class);
+		expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+		expect(sw.getId()).andReturn(DatapathId.of(1)).anyTimes();
+		sw.write(capture(written));
+		expectLastCall().once();
+		expect(sw.writeRequest((OFBarrierRequest) anyObject())).andReturn(barrier).once();
+		replay(sw);
+		return sw;
+	}
+
+	private IOFSwitch createBundleSwitch(OFFactory factory, Capture<Iterable<OFMessage>> written,
+			Capture<OFBundleCtrlMsg> commit, SettableFuture<OFBundleCtrlMsg> reply) {
+		IOFSwitch sw = createMock(IOFSwitch.class);
+		expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+		expect(sw.getId()).andReturn(DatapathId.of(1)).anyTimes();
+		sw.write(capture(written));
+		expectLastCall().once();
+		expect(sw.writeRequest(capture(commit))).andReturn(reply).once();
+		replay(sw);
+		return sw;
+	}
+
+	private OFMessage portMod(OFFactory factory, int port) {
+		return factory.buildPortMod()
+				.setPortNo(OFPort.of(port))
+				.setConfig(0)
+				.setMask(0)
+				.setHwAddr(MacAddress.of(port))
+				.build();
+	}
+
+	private List<OFMessage> toList(Iterable<OFMessage> msgs) {
+		List<OFMessage> l = new ArrayList<OFMessage>();
+		for (OFMessage m : msgs) {
+			l.add(m);
+		}
+		return l;
+	}
+
+	@Test
+	public void testBundleForOF14() throws Exception {
+		OFFactory factory = OFFactories.getFactory(OFVersion.OF_14);
+		Capture<Iterable<OFMessage>> written = new Capture<Iterable<OFMessage>>(CaptureType.ALL);
+		Capture<OFBundleCtrlMsg> commit = new Capture<OFBundleCtrlMsg>();
+		SettableFuture<OFBundleCtrlMsg> reply = SettableFuture.create();
+		IOFSwitch sw = createBundleSwitch(factory, written, commit, reply);
+
+		ListenableFuture<List<OFMessage>> done = new SwitchoverTransaction()
+				.add(sw, portMod(factory, 1))
+				.add(sw, portMod(factory, 2))
+				.commit();
+		verify(sw);
+
+		List<OFMessage> msgs = toList(written.getValue());
+		assertEquals(3, msgs.size());
+		OFBundleCtrlMsg open = (OFBundleCtrlMsg) msgs.get(0);
+		assertEquals(OFBundleCtrlType.OPEN_REQUEST, open.getBundleCtrlType());
+		OFBundleAddMsg add = (OFBundleAddMsg) msgs.get(1);
+		assertEquals(OFType.PORT_MOD, add.getData().getType());
+		assertEquals(add.getXid(), add.getData().getXid());
+		assertEquals(OFBundleCtrlType.COMMIT_REQUEST, commit.getValue().getBundleCtrlType());
+		assertEquals(open.getBundleId(), commit.getValue().getBundleId());
+
+		assertFalse(done.isDone());
+		reply.set(factory.buildBundleCtrlMsg()
+				.setBundleId(open.getBundleId())
+				.setBundleCtrlType(OFBundleCtrlType.COMMIT_REPLY)
+				.build());
+		assertTrue(done.isDone());
+		done.get();
+	}
+
+	@Test
+	public void testRejectedBundleFails() throws Exception {
+		OFFactory factory = OFFactories.getFactory(OFVersion.OF_14);
+		Capture<Iterable<OFMessage>> written = new Capture<Iterable<OFMessage>>(CaptureType.ALL);
+		Capture<OFBundleCtrlMsg> commit = new Capture<OFBundleCtrlMsg>();
+		SettableFuture<OFBundleCtrlMsg> reply = SettableFuture.create();
+		IOFSwitch sw = createBundleSwitch(factory, written, commit, reply);
+
+		SwitchoverTransaction txn = new SwitchoverTransaction().add(sw, portMod(factory, 1));
+		ListenableFuture<List<OFMessage>> done = txn.commit();
+
+		/* The switch answers the commit with an error, as OFConnection reports it */
+		OFErrorMsg error = factory.errorMsgs().buildBundleFailedErrorMsg()
+				.setCode(OFBundleFailedCode.BAD_ID)
+				.build();
+		reply.setException(new OFErrorMsgException(error));
+		try {
+			done.get();
+			fail("A rejected bundle must fail the transaction");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof OFErrorMsgException);
+		}
+		assertTrue(txn.getConfirmations().get(DatapathId.of(1)).isDone());
+	}
+
+	@Test
+	public void testBarrierFallbackForOF13() throws Exception {
+		OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+		Capture<Iterable<OFMessage>> written = new Capture<Iterable<OFMessage>>(CaptureType.ALL);
+		SettableFuture<OFBarrierReply> barrier = SettableFuture.create();
+		IOFSwitch sw = createSwitch(factory, written, barrier);
+
+		new SwitchoverTransaction()
+				.add(sw, portMod(factory, 1))
+				.add(sw, portMod(factory, 2))
+				.commit();
+		verify(sw);
+
+		List<OFMessage> msgs = toList(written.getValue());
+		assertEquals(2, msgs.size());
+		assertEquals(OFType.PORT_MOD, msgs.get(0).getType());
+		assertEquals(OFType.PORT_MOD, msgs.get(1).getType());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testNoAddAfterCommit() {
+		SwitchoverTransaction txn = new SwitchoverTransaction();
+		txn.commit();
+		txn.add(createMock(IOFSwitch.class), null);
+	}
+}
@@ -0,0 +1,173 @@
+package net.floodlightcontroller.fastfailoverdemo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+public class ToggleJobQueueTest {
+	/* Runs nothing until told to, so we control when jobs run */
+	private final List<Runnable> pending = new ArrayList<Runnable>();
+	private final Executor executor = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			pending.add(command);
+		}
+	};
+	private int runs;
+	private boolean failNext;
+	private boolean errorNext;
+	private ToggleJobQueue queue;
+
+	@Before
+	public void setUp() {
+		runs = 0;
+		failNext = false;
+		errorNext = false;
+		pending.clear();
+		queue = new ToggleJobQueue(executor, new ToggleJobQueue.Worker() {
+			@Override
+			public String run(ToggleJob job) throws Exception {
+				runs++;
+				job.progress(DatapathId.of(1), "path-confirmed", null);
+				if (failNext) {
+					throw new IllegalStateException("boom");
+				}
+				if (errorNext) {
+					throw new NoClassDefFoundError("gone");
+				}
+				return "run " + runs;
+			}
+		}, 2);
+	}
+
+	private void runPending() {
+		Runnable r = pending.remove(0);
+		r.run();
+	}
+
+	@Test
+	public void testRequestsWhileQueuedAreCoalesced() {
+		ToggleJob first = queue.submit();
+		assertEquals(ToggleJob.State.QUEUED, first.getState());
+		assertEquals(1, pending.size());
+
+		/* The first one is queued on the executor, but is still waiting to run */
+		ToggleJob second = queue.submit();
+		assertNotSame(first, second);
+		ToggleJob third = queue.submit();
+		assertSame(second, third);
+		assertEquals(2, second.getRequests());
+		assertEquals(1, pending.size());
+
+		runPending();
+		assertEquals(ToggleJob.State.SUCCEEDED, first.getState());
+		assertEquals("run 1", first.getResult());
+		assertTrue(first.getFuture().isDone());
+
+		/* The waiting job starts once the running one is done */
+		assertEquals(1, pending.size());
+		assertEquals(ToggleJob.State.QUEUED, second.getState());
+		runPending();
+		assertEquals(ToggleJob.State.SUCCEEDED, second.getState());
+		assertEquals(2, runs);
+		assertTrue(pending.isEmpty());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		failNext = true;
+		ToggleJob job = queue.submit();
+		runPending();
+		assertEquals(ToggleJob.State.FAILED, job.getState());
+		assertEquals("boom", job.getResult());
+		assertSame(job, job.getFuture().get());
+
+		/* A failed job doesn't block the ones after it */
+		failNext = false;
+		ToggleJob next = queue.submit();
+		assertEquals(1, pending.size());
+		runPending();
+		assertEquals(ToggleJob.State.SUCCEEDED, next.getState());
+	}
+
+	@Test
+	public void testErrorFailsJob() throws Exception {
+		errorNext = true;
+		ToggleJob job = queue.submit();
+		runPending();
+		assertEquals(ToggleJob.State.FAILED, job.getState());
+		assertTrue(job.getFuture().isDone());
+
+		errorNext = false;
+		ToggleJob next = queue.submit();
+		runPending();
+		assertEquals(ToggleJob.State.SUCCEEDED, next.getState());
+	}
+
+	@Test
+	public void testLookupAndHistory() {
+		ToggleJob a = queue.submit();
+		runPending();
+		ToggleJob b = queue.submit();
+		runPending();
+		assertSame(a, queue.get(a.getId()));
+
+		ToggleJob c = queue.submit();
+		runPending();
+		assertNull(queue.get(a.getId()));
+		assertEquals(2, queue.getJobs().size());
+		assertSame(b, queue.getJobs().get(0));
+		assertSame(c, queue.getJobs().get(1));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testEventsSince() {
+		ToggleJob job = queue.submit();
+		runPending();
+
+		Map<String, Object> all = job.toMap(0);
+		List<Map<String, Object>> events = (List<Map<String, Object>>) all.get("events");
+		/* started, path-confirmed, succeeded */
+		assertEquals(3, events.size());
+		assertEquals(3, all.get("next"));
+		assertEquals("path-confirmed",
+				((Map<String, Object>) ((Map<String, Object>) all.get("switches")).get(DatapathId.of(1).toString())).get("phase"));
+
+		Map<String, Object> rest = job.toMap(2);
+		events = (List<Map<String, Object>>) rest.get("events");
+		assertEquals(1, events.size());
+		assertEquals("succeeded", events.get(0).get("phase"));
+		assertTrue(((List<?>) job.toMap(3).get("events")).isEmpty());
+	}
+
+	@Test
+	public void testRejectedJobFails() {
+		ToggleJobQueue rejecting = new ToggleJobQueue(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("shut down");
+			}
+		}, new ToggleJobQueue.Worker() {
+			@Override
+			public String run(ToggleJob job) {
+				return "ran";
+			}
+		}, 2);
+
+		ToggleJob first = rejecting.submit();
+		assertEquals(ToggleJob.State.FAILED, first.getState());
+		/* Nothing is left running, so the next request gets a job of its own */
+		ToggleJob second = rejecting.submit();
+		assertNotSame(first, second);
+		assertEquals(ToggleJob.State.FAILED, second.getState());
+	}
+}
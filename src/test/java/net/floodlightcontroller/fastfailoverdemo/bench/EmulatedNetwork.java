@@ -0,0 +1,171 @@
+package net.floodlightcontroller.fastfailoverdemo.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.core.emulator.EmulatedHost;
+import net.floodlightcontroller.core.emulator.EmulatedSwitch;
+import net.floodlightcontroller.topology.NodePortTuple;
+
+/**
+ * A set of emulated switches, the cables between them and the hosts on them.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class EmulatedNetwork {
+	private static int nextHostId = 1;
+
+	private final String name;
+	private final Map<DatapathId, EmulatedSwitch> switches = new LinkedHashMap<DatapathId, EmulatedSwitch>();
+	private final List<EmulatedHost> hosts = new ArrayList<EmulatedHost>();
+	private int links = 0;
+
+	private EmulatedNetwork(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * The topology FastFailoverDemo expects: sw1 and sw3, each with a host
+	 * on port 1, connected through sw2a (ports 2) and sw2b (ports 3).
+	 */
+	public static EmulatedNetwork diamond(OFVersion version) {
+		EmulatedNetwork net = new EmulatedNetwork("diamond");
+		EmulatedSwitch sw1 = net.addSwitch(DatapathId.of(0x01), version, 3);
+		EmulatedSwitch sw2a = net.addSwitch(DatapathId.of(0x2a), version, 2);
+		EmulatedSwitch sw2b = net.addSwitch(DatapathId.of(0x2b), version, 2);
+		EmulatedSwitch sw3 = net.addSwitch(DatapathId.of(0x03), version, 3);
+		net.link(sw1, 2, sw2a, 1);
+		net.link(sw1, 3, sw2b, 1);
+		net.link(sw2a, 2, sw3, 2);
+		net.link(sw2b, 2, sw3, 3);
+		net.addHost(sw1, 1);
+		net.addHost(sw3, 1);
+		return net;
+	}
+
+	/**
+	 * A ring of n switches. Switch i has port 2 towards switch i+1 and
+	 * port 3 towards switch i-1. Hosts are on port 1 of switch 0 and of
+	 * the switch opposite it, so traffic crosses half of the ring.
+	 * @param dpidBase, added to the switch index to get its DPID, so
+	 * that rings of different sizes do not reuse DPIDs
+	 */
+	public static EmulatedNetwork ring(int n, OFVersion version, long dpidBase) {
+		if (n < 3) {
+			throw new IllegalArgumentException("A ring needs at least 3 switches");
+		}
+		EmulatedNetwork net = new EmulatedNetwork("ring");
+		List<EmulatedSwitch> ring = new ArrayList<EmulatedSwitch>(n);
+		for (int i = 0; i < n; i++) {
+			ring.add(net.addSwitch(DatapathId.of(dpidBase + i + 1), version, 3));
+		}
+		for (int i = 0; i < n; i++) {
+			net.link(ring.get(i), 2, ring.get((i + 1) % n), 3);
+		}
+		net.addHost(ring.get(0), 1);
+		net.addHost(ring.get(n / 2), 1);
+		return net;
+	}
+
+	private EmulatedSwitch addSwitch(DatapathId dpid, OFVersion version, int ports) {
+		EmulatedSwitch sw = new EmulatedSwitch(dpid, version);
+		for (int p = 1; p <= ports; p++) {
+			sw.addPort(p);
+		}
+		switches.put(dpid, sw);
+		return sw;
+	}
+
+	private void link(EmulatedSwitch a, int aPort, EmulatedSwitch b, int bPort) {
+		EmulatedSwitch.link(a, OFPort.of(aPort), b, OFPort.of(bPort));
+		links++;
+	}
+
+	private static synchronized int nextHostId() {
+		return nextHostId++;
+	}
+
+	private void addHost(EmulatedSwitch sw, int port) {
+		int id = nextHostId();
+		EmulatedHost host = new EmulatedHost(MacAddress.of(0x020000000000L + id), IPv4Address.of(10 << 24 | id));
+		sw.attach(OFPort.of(port), host);
+		hosts.add(host);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Collection<EmulatedSwitch> getSwitches() {
+		return Collections.unmodifiableCollection(switches.values());
+	}
+
+	public EmulatedSwitch getSwitch(DatapathId dpid) {
+		return switches.get(dpid);
+	}
+
+	public List<EmulatedHost> getHosts() {
+		return Collections.unmodifiableList(hosts);
+	}
+
+	public int getLinkCount() {
+		return links;
+	}
+
+	public void connect(InetSocketAddress controller) throws IOException {
+		for (EmulatedSwitch sw : switches.values()) {
+			sw.connect(controller);
+		}
+	}
+
+	public void disconnect() {
+		for (EmulatedSwitch sw : switches.values()) {
+			sw.disconnect();
+		}
+	}
+
+	/**
+	 * Pull or plug the cable on the given switch port.
+	 */
+	public void setLinkDown(NodePortTuple end, boolean down) {
+		switches.get(end.getNodeId()).setLinkDown(end.getPortId(), down);
+	}
+
+	public long getMessagesFromController() {
+		long total = 0;
+		for (EmulatedSwitch sw : switches.values()) {
+			total += sw.getMessagesFromController();
+		}
+		return total;
+	}
+
+	public long getMessagesFromController(OFType type) {
+		long total = 0;
+		for (EmulatedSwitch sw : switches.values()) {
+			total += sw.getMessagesFromController(type);
+		}
+		return total;
+	}
+
+	public long getMessagesToController() {
+		long total = 0;
+		for (EmulatedSwitch sw : switches.values()) {
+			total += sw.getMessagesToController();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,454 @@
+package net.floodlightcontroller.fastfailoverdemo.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.FloodlightModuleLoader;
+import net.floodlightcontroller.core.module.IFloodlightModuleContext;
+import net.floodlightcontroller.core.emulator.EmulatedHost;
+import net.floodlightcontroller.core.emulator.EmulatedSwitch;
+import net.floodlightcontroller.fastfailoverdemo.IFastFailoverDemoService;
+import net.floodlightcontroller.fastfailoverdemo.ToggleJob;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.test.BenchmarkReport;
+import net.floodlightcontroller.topology.NodePortTuple;
+
+/**
+ * Measures how quickly traffic recovers from link failures.
+ *
+ * The benchmark starts a controller in this JVM and connects emulated switches
+ * to it over loopback. A probe stream flows between two hosts; each trial pulls
+ * the cable of one link on the path the probes take, records the time until
+ * probes are delivered again along with the messages the controller sent and
+ * the CPU time its threads used in reaction, and then plugs the cable back in.
+ * Results are written as JSON percentiles per topology.
+ *
+ * Scenarios:
+ *   demo - FastFailoverDemo on its fixed four-switch diamond
+ *   ring - FastFailoverGroupCompiler on rings of increasing size
+ *
+ * Run with "ant bench-failover", or directly on the test classpath, e.g.
+ *   FailoverBenchmark -scenario ring -of 1.3 -sizes 4,8,16 -trials 20 -out ring.json
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class FailoverBenchmark {
+	private static final Logger log = LoggerFactory.getLogger(FailoverBenchmark.class);
+
+	private static final long SETUP_TIMEOUT_S = 60;
+	private static final long QUIET_MS = 500;
+	private static final long QUIET_TIMEOUT_MS = 30000;
+
+	public static class Settings {
+		@Option(name="-scenario", usage="demo (FastFailoverDemo, diamond) or ring (FastFailoverGroupCompiler)")
+		private String scenario = "ring";
+
+		@Option(name="-of", usage="OpenFlow version of the emulated switches: 1.0 or 1.3")
+		private String version = "1.3";
+
+		@Option(name="-sizes", usage="comma-separated ring sizes")
+		private String sizes = "4,8,16,32";
+
+		@Option(name="-trials", usage="link failures per topology")
+		private int trials = 20;
+
+		@Option(name="-interval", usage="probe interval in microseconds")
+		private long intervalUs = 100;
+
+		@Option(name="-timeout", usage="time to wait for recovery in milliseconds")
+		private long timeoutMs = 3000;
+
+		@Option(name="-out", usage="JSON output file (default stdout)")
+		private String out = null;
+	}
+
+	/**
+	 * What one trial measured.
+	 */
+	private static class Trial {
+		long recoveryNs; /* -1 if not recovered */
+		long lostProbes;
+		long controllerMessages;
+		long tableMods;
+		long switchMessages;
+		long controllerCpuNs;
+	}
+
+	private final Settings settings;
+	private final OFVersion version;
+	private InetSocketAddress controllerAddress;
+	private IFloodlightModuleContext context;
+
+	public FailoverBenchmark(Settings settings) {
+		this.settings = settings;
+		if ("1.0".equals(settings.version)) {
+			this.version = OFVersion.OF_10;
+		} else if ("1.3".equals(settings.version)) {
+			this.version = OFVersion.OF_13;
+		} else {
+			throw new IllegalArgumentException("Unsupported OpenFlow version " + settings.version);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Settings settings = new Settings();
+		CmdLineParser parser = new CmdLineParser(settings);
+		try {
+			parser.parseArgument(args);
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			System.exit(1);
+		}
+		int status = 0;
+		try {
+			new FailoverBenchmark(settings).run();
+		} catch (Exception e) {
+			log.error("Benchmark failed", e);
+			status = 1;
+		}
+		/* The controller has no clean shutdown; take it down with us */
+		System.exit(status);
+	}
+
+	public void run() throws Exception {
+		List<String> modules = new ArrayList<String>(Arrays.asList(
+				"net.floodlightcontroller.storage.memory.MemoryStorageSource",
+				"net.floodlightcontroller.core.internal.FloodlightProvider",
+				"net.floodlightcontroller.core.internal.OFSwitchManager",
+				"net.floodlightcontroller.threadpool.ThreadPool",
+				"org.sdnplatform.sync.internal.SyncManager",
+				"net.floodlightcontroller.debugcounter.DebugCounterServiceImpl",
+				"net.floodlightcontroller.debugevent.DebugEventService",
+				"net.floodlightcontroller.perfmon.PktInProcessingTime",
+				"net.floodlightcontroller.restserver.RestApiServer",
+				"net.floodlightcontroller.topology.TopologyManager",
+				"net.floodlightcontroller.linkdiscovery.internal.LinkDiscoveryManager",
+				"net.floodlightcontroller.devicemanager.internal.DeviceManagerImpl"));
+		if ("demo".equals(settings.scenario)) {
+			modules.add("net.floodlightcontroller.fastfailoverdemo.FastFailoverDemo");
+		} else if ("ring".equals(settings.scenario)) {
+			modules.add("net.floodlightcontroller.fastfailoverdemo.FastFailoverGroupCompiler");
+		} else {
+			throw new IllegalArgumentException("Unknown scenario " + settings.scenario);
+		}
+		startController(modules);
+
+		BenchmarkReport report = new BenchmarkReport(settings.out);
+		JsonGenerator jGen = report.getGenerator();
+		jGen.writeStartObject();
+		jGen.writeStringField("scenario", settings.scenario);
+		jGen.writeStringField("openflow", version.toString());
+		jGen.writeNumberField("probeIntervalUs", settings.intervalUs);
+		jGen.writeNumberField("recoveryTimeoutMs", settings.timeoutMs);
+		jGen.writeArrayFieldStart("runs");
+
+		if ("demo".equals(settings.scenario)) {
+			runDemo(jGen);
+		} else {
+			int run = 0;
+			for (String size : settings.sizes.split(",")) {
+				run++;
+				runRing(jGen, Integer.parseInt(size.trim()), (long) run << 16);
+			}
+		}
+
+		jGen.writeEndArray();
+		jGen.writeEndObject();
+		report.close();
+	}
+
+	/*
+	 * Controller
+	 */
+
+	private static int freePort() throws IOException {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return s.getLocalPort();
+		}
+	}
+
+	private void startController(List<String> modules) throws Exception {
+		Properties props = new Properties();
+		try (InputStream is = getClass().getClassLoader().getResourceAsStream("floodlightdefault.properties")) {
+			props.load(is);
+		}
+		props.remove("floodlight.modules");
+		int ofPort = freePort();
+		props.setProperty("net.floodlightcontroller.core.internal.FloodlightProvider.openflowPort", Integer.toString(ofPort));
+		props.setProperty("net.floodlightcontroller.restserver.RestApiServer.httpPort", Integer.toString(freePort()));
+		props.setProperty("org.sdnplatform.sync.internal.SyncManager.port", Integer.toString(freePort()));
+		props.setProperty("org.sdnplatform.sync.internal.SyncManager.authScheme", "NO_AUTH");
+		props.setProperty("org.sdnplatform.sync.internal.SyncManager.persistenceEnabled", "false");
+
+		final FloodlightModuleLoader fml = new FloodlightModuleLoader();
+		context = fml.loadModulesFromList(modules, props);
+		context.getServiceImpl(IRestApiService.class).run();
+		Thread controller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					fml.runModules();
+				} catch (FloodlightModuleException e) {
+					log.error("Failed to run controller modules", e);
+				}
+			}
+		}, "floodlight-main");
+		controller.setDaemon(true);
+		controller.start();
+
+		controllerAddress = new InetSocketAddress("127.0.0.1", ofPort);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SETUP_TIMEOUT_S);
+		while (true) {
+			try (Socket s = new Socket()) {
+				s.connect(controllerAddress);
+				break;
+			} catch (IOException e) {
+				if (System.nanoTime() > deadline) {
+					throw new IOException("Controller is not listening on " + controllerAddress.toString(), e);
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	private void connect(EmulatedNetwork net) throws Exception {
+		net.connect(controllerAddress);
+		IOFSwitchService switchService = context.getServiceImpl(IOFSwitchService.class);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SETUP_TIMEOUT_S);
+		for (EmulatedSwitch sw : net.getSwitches()) {
+			while (switchService.getActiveSwitch(sw.getId()) == null) {
+				if (System.nanoTime() > deadline) {
+					throw new IllegalStateException("Switch " + sw.getId().toString() + " did not complete its handshake");
+				}
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	private void disconnect(EmulatedNetwork net) throws InterruptedException {
+		net.disconnect();
+		IOFSwitchService switchService = context.getServiceImpl(IOFSwitchService.class);
+		for (EmulatedSwitch sw : net.getSwitches()) {
+			while (switchService.getSwitch(sw.getId()) != null) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	/**
+	 * @return the CPU time used so far by all threads except the emulated
+	 * data plane and the benchmark itself
+	 */
+	private static long controllerCpuNanos() {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (ThreadInfo ti : mx.getThreadInfo(mx.getAllThreadIds())) {
+			if (ti != null && !ti.getThreadName().startsWith("emu-") && !ti.getThreadName().equals("main")) {
+				long t = mx.getThreadCpuTime(ti.getThreadId());
+				if (t > 0) {
+					total += t;
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * @return messages from the controller that change or query switch state;
+	 * echoes and packet-outs (LLDP) are sent all the time and don't count
+	 */
+	private static long controlMessages(EmulatedNetwork net) {
+		return net.getMessagesFromController()
+				- net.getMessagesFromController(OFType.ECHO_REQUEST)
+				- net.getMessagesFromController(OFType.PACKET_OUT);
+	}
+
+	/**
+	 * Wait until the controller has stopped sending control messages for a while.
+	 */
+	private static void awaitQuiet(EmulatedNetwork net) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + QUIET_TIMEOUT_MS;
+		long last = controlMessages(net);
+		long lastChange = System.currentTimeMillis();
+		while (System.currentTimeMillis() - lastChange < QUIET_MS && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			long now = controlMessages(net);
+			if (now != last) {
+				last = now;
+				lastChange = System.currentTimeMillis();
+			}
+		}
+	}
+
+	/*
+	 * Scenarios
+	 */
+
+	private void runDemo(JsonGenerator jGen) throws Exception {
+		EmulatedNetwork net = EmulatedNetwork.diamond(version);
+		connect(net);
+
+		/* The toggle fails until all links are known, which takes a round of LLDP */
+		IFastFailoverDemoService demo = context.getServiceImpl(IFastFailoverDemoService.class);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SETUP_TIMEOUT_S);
+		ToggleJob job;
+		while ((job = demo.toggle("{}").getFuture().get(SETUP_TIMEOUT_S, TimeUnit.SECONDS)).getState() != ToggleJob.State.SUCCEEDED) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("FastFailoverDemo did not set up its flows: " + job.getResult());
+			}
+			Thread.sleep(500);
+		}
+
+		/* The toggle takes path B down on sw1 and sw3. Bring it back so there is a path to fail over to. */
+		net.getSwitch(DatapathId.of(0x01)).setAdminDown(OFPort.of(3), false);
+		net.getSwitch(DatapathId.of(0x03)).setAdminDown(OFPort.of(3), false);
+		awaitQuiet(net);
+
+		List<EmulatedHost> hosts = net.getHosts();
+		TrafficProbe probe = new TrafficProbe(hosts.get(0), hosts.get(1), settings.intervalUs, TimeUnit.MICROSECONDS);
+		probe.start();
+		if (!probe.awaitDelivery(SETUP_TIMEOUT_S, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("Probes are not delivered in the diamond");
+		}
+		writeRun(jGen, net, runTrials(net, probe));
+		probe.stop();
+		disconnect(net);
+	}
+
+	private void runRing(JsonGenerator jGen, int size, long dpidBase) throws Exception {
+		EmulatedNetwork net = EmulatedNetwork.ring(size, version, dpidBase);
+		connect(net);
+
+		/*
+		 * The compiler installs flows for hosts it knows about. Hosts are
+		 * learned from their packet-ins, so both hosts talk until the
+		 * forward path works.
+		 */
+		List<EmulatedHost> hosts = net.getHosts();
+		EmulatedHost a = hosts.get(0);
+		EmulatedHost b = hosts.get(1);
+		byte[] reverse = b.buildProbe(a);
+		TrafficProbe probe = new TrafficProbe(a, b, settings.intervalUs, TimeUnit.MICROSECONDS);
+		probe.start();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SETUP_TIMEOUT_S);
+		while (!probe.awaitDelivery(200, TimeUnit.MILLISECONDS)) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Probes are not delivered in the ring of " + size);
+			}
+			b.send(reverse, 0);
+		}
+		writeRun(jGen, net, runTrials(net, probe));
+		probe.stop();
+		disconnect(net);
+	}
+
+	private List<Trial> runTrials(EmulatedNetwork net, TrafficProbe probe) throws InterruptedException {
+		List<Trial> trials = new ArrayList<Trial>(settings.trials);
+		for (int i = 0; i < settings.trials; i++) {
+			awaitQuiet(net);
+			if (!probe.awaitDelivery(SETUP_TIMEOUT_S, TimeUnit.SECONDS)) {
+				log.error("Probes were not delivered before trial {} in {}. Stopping.", i, net.getName());
+				break;
+			}
+			/* Walk along the path, so that every hop gets its turn */
+			List<NodePortTuple> path = probe.getLastPath();
+			NodePortTuple victim = path.get(i % path.size());
+
+			Trial t = new Trial();
+			long sent = probe.getSent();
+			long delivered = probe.getDelivered();
+			long messages = net.getMessagesFromController();
+			long mods = net.getMessagesFromController(OFType.FLOW_MOD) + net.getMessagesFromController(OFType.GROUP_MOD);
+			long switchMessages = net.getMessagesToController();
+			long cpu = controllerCpuNanos();
+
+			probe.mark();
+			net.setLinkDown(victim, true);
+			t.recoveryNs = probe.awaitRecovery(settings.timeoutMs, TimeUnit.MILLISECONDS);
+			awaitQuiet(net);
+
+			t.controllerCpuNs = controllerCpuNanos() - cpu;
+			t.controllerMessages = net.getMessagesFromController() - messages;
+			t.tableMods = net.getMessagesFromController(OFType.FLOW_MOD) + net.getMessagesFromController(OFType.GROUP_MOD) - mods;
+			t.switchMessages = net.getMessagesToController() - switchMessages;
+			t.lostProbes = (probe.getSent() - sent) - (probe.getDelivered() - delivered);
+			trials.add(t);
+			log.info("Trial {}: failed {} in {} of {}, recovery {} us, {} controller messages",
+					new Object[] { i, victim.toString(), net.getName(), net.getSwitches().size(),
+					t.recoveryNs < 0 ? "none" : TimeUnit.NANOSECONDS.toMicros(t.recoveryNs), t.controllerMessages });
+
+			net.setLinkDown(victim, false);
+		}
+		return trials;
+	}
+
+	/*
+	 * Results
+	 */
+
+	private static void writeRun(JsonGenerator jGen, EmulatedNetwork net, List<Trial> trials) throws IOException {
+		List<Long> recovery = new ArrayList<Long>();
+		long[] lost = new long[trials.size()];
+		long[] messages = new long[trials.size()];
+		long[] mods = new long[trials.size()];
+		long[] switchMessages = new long[trials.size()];
+		long[] cpu = new long[trials.size()];
+		for (int i = 0; i < trials.size(); i++) {
+			Trial t = trials.get(i);
+			if (t.recoveryNs >= 0) {
+				recovery.add(TimeUnit.NANOSECONDS.toMicros(t.recoveryNs));
+			}
+			lost[i] = t.lostProbes;
+			messages[i] = t.controllerMessages;
+			mods[i] = t.tableMods;
+			switchMessages[i] = t.switchMessages;
+			cpu[i] = TimeUnit.NANOSECONDS.toMicros(t.controllerCpuNs);
+		}
+		long[] rec = new long[recovery.size()];
+		for (int i = 0; i < rec.length; i++) {
+			rec[i] = recovery.get(i);
+		}
+
+		jGen.writeStartObject();
+		jGen.writeStringField("topology", net.getName());
+		jGen.writeNumberField("switches", net.getSwitches().size());
+		jGen.writeNumberField("links", net.getLinkCount());
+		jGen.writeNumberField("trials", trials.size());
+		jGen.writeNumberField("recovered", rec.length);
+		BenchmarkReport.writePercentiles(jGen, "recoveryUs", rec);
+		BenchmarkReport.writePercentiles(jGen, "lostProbes", lost);
+		BenchmarkReport.writePercentiles(jGen, "controllerMessages", messages);
+		BenchmarkReport.writePercentiles(jGen, "flowAndGroupMods", mods);
+		BenchmarkReport.writePercentiles(jGen, "switchMessages", switchMessages);
+		BenchmarkReport.writePercentiles(jGen, "controllerCpuUs", cpu);
+		jGen.writeEndObject();
+		jGen.flush();
+	}
+}
@@ -0,0 +1,137 @@
+package net.floodlightcontroller.fastfailoverdemo.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import net.floodlightcontroller.core.emulator.EmulatedHost;
+import net.floodlightcontroller.core.emulator.EmulatedSwitch;
+import net.floodlightcontroller.topology.NodePortTuple;
+
+/**
+ * Sends a steady stream of probes from one host to another and keeps
+ * track of which ones arrive, so that the benchmark can tell when, and
+ * how quickly, delivery resumes after a failure.
+ *
+ * @author Ryan Izard, rizard@g.clemson.edu, ryan.izard@bigswitch.com
+ *
+ */
+public class TrafficProbe implements EmulatedHost.ProbeListener {
+	private final EmulatedHost src;
+	private final EmulatedHost dst;
+	private final byte[] probe;
+	private final long intervalNs;
+
+	private final AtomicLong nextSeq = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private volatile long lastDeliveredSeq = -1;
+
+	/* Set by mark(): the first probe at or after markSeq to arrive ends the outage */
+	private volatile long markSeq = Long.MAX_VALUE;
+	private volatile long markNs;
+	private volatile long recoveredNs;
+
+	private volatile Thread sender;
+	private volatile List<NodePortTuple> lastPath;
+
+	public TrafficProbe(EmulatedHost src, EmulatedHost dst, long interval, TimeUnit unit) {
+		this.src = src;
+		this.dst = dst;
+		this.probe = src.buildProbe(dst);
+		this.intervalNs = unit.toNanos(interval);
+		dst.setProbeListener(this);
+	}
+
+	public synchronized void start() {
+		if (sender != null) {
+			return;
+		}
+		sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (sender == Thread.currentThread()) {
+					sendOne();
+					LockSupport.parkNanos(intervalNs);
+				}
+			}
+		}, "emu-probe-" + src.getMac().toString());
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	public synchronized void stop() {
+		sender = null;
+	}
+
+	private void sendOne() {
+		long seq = nextSeq.getAndIncrement();
+		EmulatedSwitch.Trace trace = src.send(probe, seq);
+		if (lastDeliveredSeq == seq) {
+			lastPath = trace.getLinks();
+		}
+	}
+
+	@Override
+	public void probeReceived(EmulatedHost host, long seq) {
+		delivered.incrementAndGet();
+		lastDeliveredSeq = seq;
+		if (seq >= markSeq && recoveredNs == 0) {
+			recoveredNs = System.nanoTime();
+		}
+	}
+
+	/**
+	 * @return the links the last delivered probe took, or null if none has been delivered
+	 */
+	public List<NodePortTuple> getLastPath() {
+		return lastPath;
+	}
+
+	public long getSent() {
+		return nextSeq.get();
+	}
+
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	/**
+	 * Wait until probes are being delivered.
+	 * @return true if the last probe sent within the timeout was delivered
+	 */
+	public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (System.nanoTime() < deadline) {
+			long sent = nextSeq.get();
+			if (sent > 0 && lastDeliveredSeq >= sent - 1) {
+				return true;
+			}
+			Thread.sleep(1);
+		}
+		return false;
+	}
+
+	/**
+	 * Note the time right before a failure is injected. Only probes sent
+	 * from now on count towards recovery.
+	 */
+	public void mark() {
+		recoveredNs = 0;
+		markNs = System.nanoTime();
+		markSeq = nextSeq.get();
+	}
+
+	/**
+	 * Wait for the first probe sent after mark() to be delivered.
+	 * @return the time from mark() to that delivery in nanoseconds, or -1 on timeout
+	 */
+	public long awaitRecovery(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = markNs + unit.toNanos(timeout);
+		while (recoveredNs == 0 && System.nanoTime() < deadline) {
+			LockSupport.parkNanos(100000);
+		}
+		long recovered = recoveredNs;
+		return recovered == 0 ? -1 : recovered - markNs;
+	}
+}
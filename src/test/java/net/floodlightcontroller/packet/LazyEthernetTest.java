@@ -0,0 +1,137 @@
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+public class LazyEthernetTest {
+    private static Ethernet udpPacket(short vlan) {
+        UDP udp = new UDP();
+        udp.setSourcePort(TransportPort.of(68));
+        udp.setDestinationPort(TransportPort.of(67));
+        udp.setPayload(new Data(new byte[] { 1, 2, 3 }));
+        return (Ethernet) new Ethernet()
+            .setSourceMACAddress("00:11:22:33:44:55")
+            .setDestinationMACAddress("ff:ff:ff:ff:ff:ff")
+            .setEtherType(EthType.IPv4)
+            .setVlanID(vlan)
+            .setPriorityCode((byte) 3)
+            .setPayload(new IPv4()
+                .setSourceAddress(IPv4Address.of("10.0.0.1"))
+                .setDestinationAddress(IPv4Address.of("10.0.0.2"))
+                .setTtl((byte) 64)
+                .setProtocol(IpProtocol.UDP)
+                .setPayload(udp));
+    }
+
+    @Test
+    public void testHeaders() {
+        byte[] frame = udpPacket((short) 42).serialize();
+        LazyEthernet eth = new LazyEthernet(frame, 0, frame.length);
+
+        assertEquals(0xffffffffffffL, eth.getDestinationMACLong());
+        assertEquals(MacAddress.of("00:11:22:33:44:55").getLong(), eth.getSourceMACLong());
+        assertEquals(EthType.IPv4.getValue(), eth.getEtherTypeValue());
+        assertEquals(42, eth.getVlanID());
+        assertEquals(3, eth.getPriorityCode());
+        assertTrue(eth.isBroadcast());
+        assertFalse(eth.isMulticast());
+        assertEquals(17, eth.getIpProtocolNumber());
+        assertEquals(IPv4Address.of("10.0.0.1").getInt(), eth.getNetworkSource());
+        assertEquals(IPv4Address.of("10.0.0.2").getInt(), eth.getNetworkDestination());
+        assertEquals(68, eth.getTransportSource());
+        assertEquals(67, eth.getTransportDestination());
+    }
+
+    @Test
+    public void testSameAsEagerDecode() throws Exception {
+        byte[] frame = udpPacket(Ethernet.VLAN_UNTAGGED).serialize();
+        Ethernet eager = (Ethernet) new Ethernet().deserialize(frame, 0, frame.length);
+        LazyEthernet lazy = new LazyEthernet(frame, 0, frame.length);
+
+        assertEquals(eager.getSourceMACAddress(), lazy.getSourceMACAddress());
+        assertEquals(eager.getDestinationMACAddress(), lazy.getDestinationMACAddress());
+        assertEquals(eager.getEtherType(), lazy.getEtherType());
+        assertEquals(eager.getVlanID(), lazy.getVlanID());
+        assertEquals(eager.getPayload(), lazy.getPayload());
+        assertSame(lazy, lazy.getPayload().getParent());
+        assertTrue(Arrays.equals(frame, lazy.serialize()));
+    }
+
+    @Test
+    public void testChanges() {
+        byte[] frame = udpPacket(Ethernet.VLAN_UNTAGGED).serialize();
+        LazyEthernet eth = new LazyEthernet(frame, 0, frame.length);
+
+        eth.setSourceMACAddress("00:00:00:00:00:01");
+        eth.setVlanID((short) 7);
+        assertEquals(1L, eth.getSourceMACLong());
+        assertEquals(7, eth.getVlanID());
+
+        IPv4 ip = (IPv4) eth.getPayload();
+        ((UDP) ip.getPayload()).setDestinationPort(TransportPort.of(53));
+        assertEquals(53, eth.getTransportDestination());
+
+        Ethernet copy = (Ethernet) new Ethernet().deserialize(eth.serialize(), 0, eth.serialize().length);
+        assertEquals(MacAddress.of(1), copy.getSourceMACAddress());
+        assertEquals(7, copy.getVlanID());
+        /* The received bytes are left alone */
+        assertEquals(0x00, frame[6]);
+        assertEquals(0x11, frame[7]);
+    }
+
+    @Test
+    public void testSetPayloadThenSerialize() {
+        byte[] frame = udpPacket(Ethernet.VLAN_UNTAGGED).serialize();
+        LazyEthernet eth = new LazyEthernet(frame, 0, frame.length);
+
+        /* No header field has been read before the payload is replaced */
+        eth.setPayload(new Data(new byte[] { 9, 9 }));
+        Ethernet copy = (Ethernet) new Ethernet().deserialize(eth.serialize(), 0, eth.serialize().length);
+        assertEquals(MacAddress.of("ff:ff:ff:ff:ff:ff"), copy.getDestinationMACAddress());
+        assertEquals(MacAddress.of("00:11:22:33:44:55"), copy.getSourceMACAddress());
+        assertEquals(EthType.IPv4, copy.getEtherType());
+    }
+
+    @Test
+    public void testSetEtherTypeKeepsPayload() {
+        byte[] frame = udpPacket(Ethernet.VLAN_UNTAGGED).serialize();
+        LazyEthernet eth = new LazyEthernet(frame, 0, frame.length);
+
+        /* The payload was received as IPv4 and must still decode as such */
+        eth.setEtherType(EthType.of(0x88b5));
+        assertTrue(eth.getPayload() instanceof IPv4);
+        assertEquals(0x88b5, eth.getEtherTypeValue());
+    }
+
+    @Test
+    public void testNotIPv4() {
+        Ethernet arp = new Ethernet()
+            .setSourceMACAddress("00:11:22:33:44:55")
+            .setDestinationMACAddress("01:00:5e:00:00:01")
+            .setEtherType(EthType.ARP);
+        arp.setPayload(new Data(new byte[28]));
+        byte[] frame = arp.serialize();
+        LazyEthernet eth = new LazyEthernet(frame, 0, frame.length);
+        assertTrue(eth.isMulticast());
+        assertEquals(EthType.ARP.getValue(), eth.getEtherTypeValue());
+        assertEquals(-1, eth.getIpProtocolNumber());
+        assertEquals(-1, eth.getTransportSource());
+    }
+
+    @Test
+    public void testRunt() {
+        LazyEthernet eth = new LazyEthernet(new byte[10], 0, 10);
+        assertNull(eth.getDestinationMACAddress());
+        assertNull(eth.getEtherType());
+        assertNull(eth.getPayload());
+        assertEquals(-1, eth.getIpProtocolNumber());
+    }
+}
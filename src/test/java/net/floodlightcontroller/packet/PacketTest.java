@@ -18,6 +18,7 @@ package net.floodlightcontroller.packet;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.junit.Before;
@@ -142,5 +143,28 @@ public class PacketTest {
             doTestClone(pkt);
         }
     }
+
+    private static IPacket freshPayload(IPacket pkt) {
+        IPacket payload = ((IPacket) pkt.clone()).getPayload();
+        // Have checksums computed again
+        IPacket p = payload;
+        while (p.getPayload() != null)
+            p = p.getPayload();
+        p.resetChecksum();
+        return payload;
+    }
+
+    @Test
+    public void testSerializeInPlace() throws Exception {
+        for (IPacket pkt: packets) {
+            byte[] expected = freshPayload(pkt).serialize();
+
+            ByteBuffer bb = ByteBuffer.allocate(expected.length + 3);
+            bb.position(3);
+            freshPayload(pkt).serialize(bb);
+            assertEquals(bb.capacity(), bb.position());
+            assertArrayEquals(expected, Arrays.copyOfRange(bb.array(), 3, bb.position()));
+        }
+    }
     
 }
@@ -0,0 +1,87 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        // Every bucket holds exactly the times between the ends of its
+        // neighbours
+        long lowest = 0;
+        for (int b = 0; b < LatencyHistogram.BUCKETS - 1; b++) {
+            long highest = LatencyHistogram.highestTimeOf(b);
+            assertEquals(b, LatencyHistogram.bucketOf(lowest));
+            assertEquals(b, LatencyHistogram.bucketOf(highest));
+            assertTrue(highest - lowest <= lowest / LatencyHistogram.SUB_BUCKETS);
+            lowest = highest + 1;
+        }
+        assertEquals(0, LatencyHistogram.bucketOf(-5));
+        assertEquals(LatencyHistogram.BUCKETS - 1,
+                     LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, h.getMin());
+        assertEquals(Long.MIN_VALUE, h.getMax());
+
+        for (long t = 1; t <= 100000; t++) {
+            h.record(t * 1000);
+        }
+        assertEquals(100000, h.getCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(100000000, h.getMax());
+        assertEquals(1000L * 100000 * 100001 / 2, h.getSum());
+        assertPercentile(50000000, h.getValueAtPercentile(50));
+        assertPercentile(99000000, h.getValueAtPercentile(99));
+        assertPercentile(99900000, h.getValueAtPercentile(99.9));
+        assertEquals(h.getMax(), h.getValueAtPercentile(100));
+
+        // Beyond the last bucket only the max is exact
+        h.record(1L << 40);
+        assertEquals(1L << 40, h.getValueAtPercentile(100));
+    }
+
+    private static void assertPercentile(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                   actual >= expected
+                   && actual - expected <= expected / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void testRecorder() throws Exception {
+        final LatencyRecorder r = new LatencyRecorder();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final long time = (i + 1) * 1000;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < 100000; n++) {
+                        r.record(time);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        LatencyHistogram h = r.snapshot();
+        assertEquals(8 * 100000L, h.getCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(8000, h.getMax());
+        assertPercentile(4000, h.getValueAtPercentile(50));
+
+        r.reset();
+        assertEquals(0, r.snapshot().getCount());
+        r.record(42);
+        assertEquals(1, r.snapshot().getCount());
+    }
+}
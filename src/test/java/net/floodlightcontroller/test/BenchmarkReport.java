@@ -0,0 +1,81 @@
+package net.floodlightcontroller.test;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+
+/**
+ * The JSON results of a benchmark harness, written to a file or to stdout,
+ * and the summary statistics the harnesses report.
+ */
+public class BenchmarkReport implements Closeable {
+    private final OutputStream os;
+    private final JsonGenerator jGen;
+
+    /**
+     * @param file the file to write, or null for stdout
+     */
+    public BenchmarkReport(String file) throws IOException {
+        os = file == null ? System.out : new FileOutputStream(file);
+        jGen = new MappingJsonFactory().createGenerator(os, JsonEncoding.UTF8);
+        jGen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        jGen.useDefaultPrettyPrinter();
+    }
+
+    public JsonGenerator getGenerator() {
+        return jGen;
+    }
+
+    @Override
+    public void close() throws IOException {
+        jGen.writeRaw('\n');
+        jGen.close();
+        if (os != System.out) {
+            os.close();
+        } else {
+            os.flush();
+        }
+    }
+
+    /**
+     * Write the count, min, percentiles, max and mean of the values as an
+     * object field
+     * @param values in any order
+     */
+    public static void writePercentiles(JsonGenerator jGen, String name, long[] values) throws IOException {
+        jGen.writeObjectFieldStart(name);
+        jGen.writeNumberField("count", values.length);
+        if (values.length > 0) {
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long v : sorted) {
+                sum += v;
+            }
+            jGen.writeNumberField("min", sorted[0]);
+            jGen.writeNumberField("p50", percentile(sorted, 50));
+            jGen.writeNumberField("p90", percentile(sorted, 90));
+            jGen.writeNumberField("p99", percentile(sorted, 99));
+            jGen.writeNumberField("p999", percentile(sorted, 99.9));
+            jGen.writeNumberField("max", sorted[sorted.length - 1]);
+            jGen.writeNumberField("mean", (double) sum / sorted.length);
+        }
+        jGen.writeEndObject();
+    }
+
+    /**
+     * Nearest-rank percentile.
+     * @param sorted, values in ascending order (at least one)
+     * @param p, in (0, 100]
+     */
+    public static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}